@@ -70,6 +70,8 @@ public abstract class AbstractFederationStrategy implements FederationStrategy {
 
     private int maxStartIndex;
 
+    private FederationScheduler federationScheduler = new FederationScheduler();
+
     /**
      * Instantiates an {@code AbstractFederationStrategy} with the provided {@link ExecutorService}.
      *
@@ -162,9 +164,9 @@ public QueryResponse federate(List<Source> sources, final QueryRequest queryRequ
                         LOGGER.warn("Plugin stopped processing: ", e);
                     }
 
-                    futures.put(source, queryExecutorService
-                            .submit(new CallableSourceResponse(source,
-                                    modifiedQueryRequest.getQuery(),
+                    futures.put(source, federationScheduler.submit(queryExecutorService, source,
+                            null, modifiedQueryRequest.getQuery().getTimeoutMillis(),
+                            new CallableSourceResponse(source, modifiedQueryRequest.getQuery(),
                                     modifiedQueryRequest.getProperties())));
                 } else {
                     LOGGER.warn("Duplicate source found with name " + source.getId()
@@ -276,6 +278,16 @@ public void setMaxStartIndex(int maxStartIndex) {
         }
     }
 
+    /**
+     * Sets the scheduler that bounds the number of concurrent queries per federated source.
+     *
+     * @param federationScheduler
+     *            the scheduler, may be shared with other federation strategies
+     */
+    public void setFederationScheduler(FederationScheduler federationScheduler) {
+        this.federationScheduler = federationScheduler;
+    }
+
     private class CallableSourceResponse implements Callable<SourceResponse> {
 
         private Query query = null;
@@ -0,0 +1,366 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.federation.base;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ddf.catalog.source.FederatedSource;
+import ddf.catalog.source.Source;
+import ddf.catalog.source.SourceUnavailableException;
+
+/**
+ * Limits how many queries run against each {@link FederatedSource} at the same time. Queries over
+ * the limit wait in a per-source queue, without holding a thread, and are handed to their
+ * executor once a slot frees up. The slot goes to the next subject in round-robin order, so a
+ * user with many outstanding queries cannot starve the others; queries without a subject each
+ * take their own turn. A query whose timeout elapsed while it was waiting fails with a
+ * {@link SourceUnavailableException} instead of running. Queries against local sources are not
+ * limited.
+ * <p>
+ * One scheduler is meant to be shared by all federation strategies so the limits hold across
+ * them.
+ */
+public class FederationScheduler {
+
+    public static final int DEFAULT_MAX_CONCURRENT_QUERIES_PER_SOURCE = 10;
+
+    public static final int DEFAULT_MAX_QUEUED_QUERIES_PER_SOURCE = 200;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FederationScheduler.class);
+
+    private final ConcurrentMap<String, SourceBulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    private volatile int maxConcurrentQueriesPerSource = DEFAULT_MAX_CONCURRENT_QUERIES_PER_SOURCE;
+
+    private volatile int maxQueuedQueriesPerSource = DEFAULT_MAX_QUEUED_QUERIES_PER_SOURCE;
+
+    /**
+     * Runs a query task on {@code executor} as soon as its source has a free slot.
+     *
+     * @param executor
+     *            the executor that runs the task
+     * @param source
+     *            the source the task queries
+     * @param subject
+     *            name of the user the query runs for, {@code null} if unknown
+     * @param timeoutMillis
+     *            the query timeout, the task fails instead of running if it elapsed while the
+     *            task was waiting for a slot; {@code 0} or less to wait as long as it takes
+     * @param task
+     *            the query task
+     * @return the future result of {@code task}
+     */
+    public <T> Future<T> submit(Executor executor, Source source, String subject,
+            long timeoutMillis, Callable<T> task) {
+        return submit(executor, source, subject, timeoutMillis, task, null);
+    }
+
+    /**
+     * Runs a query task on {@code executor} as soon as its source has a free slot, and adds its
+     * future to {@code completionQueue} once the task completed, failed or was cancelled.
+     *
+     * @see #submit(Executor, Source, String, long, Callable)
+     */
+    public <T> Future<T> submit(Executor executor, Source source, String subject,
+            long timeoutMillis, Callable<T> task, Queue<? super Future<T>> completionQueue) {
+        if (!(source instanceof FederatedSource) || maxConcurrentQueriesPerSource < 1) {
+            ScheduledQuery<T> query = new ScheduledQuery<>(null, executor, 0, task,
+                    completionQueue);
+            query.dispatch();
+            return query;
+        }
+
+        long deadline = timeoutMillis > 0 ? System.currentTimeMillis() + timeoutMillis : 0;
+        SourceBulkhead bulkhead = getBulkhead(source.getId());
+        ScheduledQuery<T> query = new ScheduledQuery<>(bulkhead, executor, deadline, task,
+                completionQueue);
+        // a query without a subject is its own turn taker
+        bulkhead.admit(subject == null ? query : subject, query);
+        return query;
+    }
+
+    /**
+     * @param maxConcurrentQueriesPerSource
+     *            number of queries allowed to run against one federated source at the same time,
+     *            0 or less for no limit
+     */
+    public void setMaxConcurrentQueriesPerSource(int maxConcurrentQueriesPerSource) {
+        this.maxConcurrentQueriesPerSource = maxConcurrentQueriesPerSource;
+        for (SourceBulkhead bulkhead : bulkheads.values()) {
+            bulkhead.grantWaiters();
+        }
+    }
+
+    public int getMaxConcurrentQueriesPerSource() {
+        return maxConcurrentQueriesPerSource;
+    }
+
+    /**
+     * @param maxQueuedQueriesPerSource
+     *            number of queries allowed to wait for one federated source, queries beyond it
+     *            are rejected right away
+     */
+    public void setMaxQueuedQueriesPerSource(int maxQueuedQueriesPerSource) {
+        this.maxQueuedQueriesPerSource = maxQueuedQueriesPerSource;
+    }
+
+    public int getMaxQueuedQueriesPerSource() {
+        return maxQueuedQueriesPerSource;
+    }
+
+    int getActiveQueries(String sourceId) {
+        SourceBulkhead bulkhead = bulkheads.get(sourceId);
+        return bulkhead == null ? 0 : bulkhead.getActive();
+    }
+
+    int getQueuedQueries(String sourceId) {
+        SourceBulkhead bulkhead = bulkheads.get(sourceId);
+        return bulkhead == null ? 0 : bulkhead.getQueued();
+    }
+
+    private SourceBulkhead getBulkhead(String sourceId) {
+        SourceBulkhead bulkhead = bulkheads.get(sourceId);
+        if (bulkhead == null) {
+            SourceBulkhead newBulkhead = new SourceBulkhead(sourceId);
+            bulkhead = bulkheads.putIfAbsent(sourceId, newBulkhead);
+            if (bulkhead == null) {
+                bulkhead = newBulkhead;
+            }
+        }
+        return bulkhead;
+    }
+
+    /**
+     * A query task that holds a slot of its source from the moment it is dispatched until it
+     * finished running.
+     */
+    private static class ScheduledQuery<T> extends FutureTask<T> {
+
+        private final SourceBulkhead bulkhead;
+
+        private final Executor executor;
+
+        private final long deadline;
+
+        private final Queue<? super Future<T>> completionQueue;
+
+        ScheduledQuery(SourceBulkhead bulkhead, Executor executor, long deadline, Callable<T> task,
+                Queue<? super Future<T>> completionQueue) {
+            super(task);
+            this.bulkhead = bulkhead;
+            this.executor = executor;
+            this.deadline = deadline;
+            this.completionQueue = completionQueue;
+        }
+
+        boolean isExpired(long now) {
+            return deadline > 0 && now >= deadline;
+        }
+
+        /**
+         * Hands the query to its executor; the caller already took a slot for it.
+         */
+        void dispatch() {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                setException(e);
+                release();
+            }
+        }
+
+        void fail(Exception e) {
+            setException(e);
+        }
+
+        @Override
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                release();
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (completionQueue != null) {
+                completionQueue.add(this);
+            }
+        }
+
+        private void release() {
+            if (bulkhead != null) {
+                bulkhead.release();
+            }
+        }
+    }
+
+    private class SourceBulkhead {
+
+        private final String sourceId;
+
+        /**
+         * Waiting queries per subject, in the order the subjects get their next slot
+         */
+        private final Map<Object, Deque<ScheduledQuery<?>>> waiters = new LinkedHashMap<>();
+
+        private int active = 0;
+
+        private int queued = 0;
+
+        SourceBulkhead(String sourceId) {
+            this.sourceId = sourceId;
+        }
+
+        void admit(Object subject, ScheduledQuery<?> query) {
+            synchronized (this) {
+                if (queued == 0 && hasFreeSlot()) {
+                    active++;
+                } else {
+                    if (queued >= maxQueuedQueriesPerSource) {
+                        expireWaiters();
+                    }
+                    if (queued >= maxQueuedQueriesPerSource) {
+                        LOGGER.debug("Rejecting query to {}, {} queries are already waiting",
+                                sourceId, queued);
+                        query.fail(new SourceUnavailableException(
+                                "Too many queries are waiting for source " + sourceId));
+                        return;
+                    }
+                    Deque<ScheduledQuery<?>> subjectWaiters = waiters.get(subject);
+                    if (subjectWaiters == null) {
+                        subjectWaiters = new ArrayDeque<>();
+                        waiters.put(subject, subjectWaiters);
+                    }
+                    subjectWaiters.add(query);
+                    queued++;
+                    return;
+                }
+            }
+            query.dispatch();
+        }
+
+        void release() {
+            synchronized (this) {
+                active--;
+            }
+            grantWaiters();
+        }
+
+        /**
+         * Dispatches waiting queries while there are free slots. Queries whose timeout elapsed
+         * or that were cancelled while waiting are dropped.
+         */
+        void grantWaiters() {
+            List<ScheduledQuery<?>> granted = new ArrayList<>();
+            List<ScheduledQuery<?>> expired = new ArrayList<>();
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                while (queued > 0 && hasFreeSlot()) {
+                    Iterator<Map.Entry<Object, Deque<ScheduledQuery<?>>>> subjects = waiters
+                            .entrySet().iterator();
+                    Map.Entry<Object, Deque<ScheduledQuery<?>>> next = subjects.next();
+                    ScheduledQuery<?> query = next.getValue().poll();
+                    subjects.remove();
+                    if (!next.getValue().isEmpty()) {
+                        // move the subject to the back of the line
+                        waiters.put(next.getKey(), next.getValue());
+                    }
+                    queued--;
+                    if (query.isDone()) {
+                        continue;
+                    }
+                    if (query.isExpired(now)) {
+                        expired.add(query);
+                        continue;
+                    }
+                    active++;
+                    granted.add(query);
+                }
+            }
+            // outside the lock, the executor may run the query on this thread
+            failExpired(expired);
+            for (ScheduledQuery<?> query : granted) {
+                query.dispatch();
+            }
+        }
+
+        synchronized int getActive() {
+            return active;
+        }
+
+        synchronized int getQueued() {
+            return queued;
+        }
+
+        private boolean hasFreeSlot() {
+            int limit = maxConcurrentQueriesPerSource;
+            return limit < 1 || active < limit;
+        }
+
+        /**
+         * Drops waiting queries whose timeout elapsed or that were cancelled, to make room in a
+         * full queue. Called with the lock held.
+         */
+        private void expireWaiters() {
+            long now = System.currentTimeMillis();
+            List<ScheduledQuery<?>> expired = new ArrayList<>();
+            Iterator<Deque<ScheduledQuery<?>>> subjects = waiters.values().iterator();
+            while (subjects.hasNext()) {
+                Deque<ScheduledQuery<?>> subjectWaiters = subjects.next();
+                Iterator<ScheduledQuery<?>> queries = subjectWaiters.iterator();
+                while (queries.hasNext()) {
+                    ScheduledQuery<?> query = queries.next();
+                    if (query.isDone() || query.isExpired(now)) {
+                        queries.remove();
+                        queued--;
+                        if (!query.isDone()) {
+                            expired.add(query);
+                        }
+                    }
+                }
+                if (subjectWaiters.isEmpty()) {
+                    subjects.remove();
+                }
+            }
+            failExpired(expired);
+        }
+
+        private void failExpired(List<ScheduledQuery<?>> expired) {
+            for (ScheduledQuery<?> query : expired) {
+                LOGGER.debug("Query to {} timed out waiting for a free slot", sourceId);
+                query.fail(new SourceUnavailableException(
+                        "Timed out waiting for source " + sourceId));
+            }
+        }
+    }
+}
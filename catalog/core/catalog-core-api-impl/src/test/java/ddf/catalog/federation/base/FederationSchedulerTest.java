@@ -0,0 +1,358 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.federation.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ddf.catalog.source.FederatedSource;
+import ddf.catalog.source.Source;
+import ddf.catalog.source.SourceUnavailableException;
+
+public class FederationSchedulerTest {
+
+    private static final String SLOW_SOURCE = "slow";
+
+    private static final String FAST_SOURCE = "fast";
+
+    private FederationScheduler scheduler;
+
+    private ExecutorService executor;
+
+    private FederatedSource slowSource;
+
+    private FederatedSource fastSource;
+
+    @Before
+    public void setUp() {
+        scheduler = new FederationScheduler();
+        executor = Executors.newCachedThreadPool();
+        slowSource = mockSource(SLOW_SOURCE);
+        fastSource = mockSource(FAST_SOURCE);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testLocalSourcesAreNotScheduled() throws Exception {
+        scheduler.setMaxConcurrentQueriesPerSource(1);
+        Source localSource = mock(Source.class);
+        when(localSource.getId()).thenReturn("local");
+        CountDownLatch gate = new CountDownLatch(1);
+        Future<String> first = submit(localSource, "user", 0, new GateTask(gate));
+
+        Future<String> second = submit(localSource, "user", 0,
+                new RecordingTask("local", 0, new ArrayList<String>()));
+
+        assertEquals("local", second.get(5, TimeUnit.SECONDS));
+        assertEquals(0, scheduler.getQueuedQueries("local"));
+        gate.countDown();
+        assertEquals("gate", first.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSubjectsTakeTurns() throws Exception {
+        scheduler.setMaxConcurrentQueriesPerSource(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch gate = new CountDownLatch(1);
+
+        List<Future<String>> futures = new ArrayList<>();
+        futures.add(submit(slowSource, "gate", 0, new GateTask(gate)));
+        awaitActive(SLOW_SOURCE, 1);
+
+        for (int i = 1; i <= 5; i++) {
+            futures.add(submit(slowSource, "heavy", 0, new RecordingTask("heavy", 0, order)));
+            awaitQueued(SLOW_SOURCE, i);
+        }
+        futures.add(submit(slowSource, "light", 0, new RecordingTask("light", 0, order)));
+        awaitQueued(SLOW_SOURCE, 6);
+
+        gate.countDown();
+        for (Future<String> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(6, order.size());
+        assertEquals("heavy", order.get(0));
+        assertEquals("light", order.get(1));
+        assertEquals(0, scheduler.getActiveQueries(SLOW_SOURCE));
+    }
+
+    @Test
+    public void testQueriesWithoutSubjectTakeTurns() throws Exception {
+        scheduler.setMaxConcurrentQueriesPerSource(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch gate = new CountDownLatch(1);
+
+        List<Future<String>> futures = new ArrayList<>();
+        futures.add(submit(slowSource, "gate", 0, new GateTask(gate)));
+        awaitActive(SLOW_SOURCE, 1);
+
+        for (int i = 1; i <= 3; i++) {
+            futures.add(submit(slowSource, "heavy", 0, new RecordingTask("heavy", 0, order)));
+        }
+        futures.add(submit(slowSource, null, 0, new RecordingTask("anonymous1", 0, order)));
+        futures.add(submit(slowSource, null, 0, new RecordingTask("anonymous2", 0, order)));
+        awaitQueued(SLOW_SOURCE, 5);
+
+        gate.countDown();
+        for (Future<String> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(Arrays.asList("heavy", "anonymous1", "anonymous2", "heavy", "heavy"), order);
+    }
+
+    @Test
+    public void testWaitingQueriesDoNotHoldThreads() throws Exception {
+        scheduler.setMaxConcurrentQueriesPerSource(1);
+        CountingExecutor countingExecutor = new CountingExecutor(executor);
+        CountDownLatch gate = new CountDownLatch(1);
+        Future<String> running = scheduler.submit(countingExecutor, slowSource, "user", 0,
+                new GateTask(gate));
+        awaitActive(SLOW_SOURCE, 1);
+
+        List<Future<String>> waiting = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            waiting.add(scheduler.submit(countingExecutor, slowSource, "user", 0,
+                    new RecordingTask("waiting", 0, new ArrayList<String>())));
+        }
+
+        assertEquals(5, scheduler.getQueuedQueries(SLOW_SOURCE));
+        assertEquals(1, countingExecutor.getExecuted());
+
+        gate.countDown();
+        running.get(5, TimeUnit.SECONDS);
+        for (Future<String> future : waiting) {
+            assertEquals("waiting", future.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(6, countingExecutor.getExecuted());
+    }
+
+    @Test
+    public void testTimesOutWaitingForSlot() throws Exception {
+        scheduler.setMaxConcurrentQueriesPerSource(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        submit(slowSource, "user", 0, new GateTask(gate));
+        awaitActive(SLOW_SOURCE, 1);
+        List<String> record = new ArrayList<>();
+        Future<String> waiting = submit(slowSource, "user", 50,
+                new RecordingTask("late", 0, record));
+        awaitQueued(SLOW_SOURCE, 1);
+
+        Thread.sleep(100);
+        gate.countDown();
+
+        assertRejected(waiting);
+        assertTrue(record.isEmpty());
+        assertEquals(0, scheduler.getQueuedQueries(SLOW_SOURCE));
+        awaitActive(SLOW_SOURCE, 0);
+    }
+
+    @Test
+    public void testReportsCompletion() throws Exception {
+        scheduler.setMaxConcurrentQueriesPerSource(1);
+        scheduler.setMaxQueuedQueriesPerSource(0);
+        BlockingQueue<Future<String>> completed = new LinkedBlockingQueue<>();
+        CountDownLatch gate = new CountDownLatch(1);
+        Future<String> running = scheduler.submit(executor, slowSource, "user", 0,
+                new GateTask(gate), completed);
+        awaitActive(SLOW_SOURCE, 1);
+
+        Future<String> rejected = scheduler.submit(executor, slowSource, "user", 0,
+                new RecordingTask("rejected", 0, new ArrayList<String>()), completed);
+        assertSame(rejected, completed.poll(5, TimeUnit.SECONDS));
+
+        gate.countDown();
+        assertSame(running, completed.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRejectsWhenQueueIsFull() throws Exception {
+        scheduler.setMaxConcurrentQueriesPerSource(1);
+        scheduler.setMaxQueuedQueriesPerSource(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        submit(slowSource, "user", 0, new GateTask(gate));
+        awaitActive(SLOW_SOURCE, 1);
+        Future<String> queued = submit(slowSource, "user", 0,
+                new RecordingTask("queued", 0, new ArrayList<String>()));
+        awaitQueued(SLOW_SOURCE, 1);
+
+        Future<String> rejected = submit(slowSource, "user", 0,
+                new RecordingTask("rejected", 0, new ArrayList<String>()));
+
+        assertRejected(rejected);
+        gate.countDown();
+        assertEquals("queued", queued.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * One user floods a slow source while another queries both the slow and a fast source. The
+     * fast source must not be held up by the slow one, and the light user's query to the slow
+     * source must not wait behind the whole backlog of the heavy user.
+     */
+    @Test
+    public void testSimulatedLoadKeepsLightUserLatencyLow() throws Exception {
+        scheduler.setMaxConcurrentQueriesPerSource(2);
+        List<String> completions = Collections.synchronizedList(new ArrayList<String>());
+
+        List<Future<String>> heavyFutures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            heavyFutures.add(submit(slowSource, "heavy", 0,
+                    new RecordingTask("heavy", 50, completions)));
+        }
+        awaitQueued(SLOW_SOURCE, 18);
+
+        long start = System.currentTimeMillis();
+        Future<String> lightFast = submit(fastSource, "light", 0,
+                new RecordingTask("light-fast", 5, completions));
+        Future<String> lightSlow = submit(slowSource, "light", 0,
+                new RecordingTask("light-slow", 50, completions));
+
+        lightFast.get(5, TimeUnit.SECONDS);
+        long fastLatency = System.currentTimeMillis() - start;
+        lightSlow.get(5, TimeUnit.SECONDS);
+        for (Future<String> future : heavyFutures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        // The heavy backlog alone takes 10 rounds of 50 ms
+        assertTrue("fast source waited " + fastLatency + " ms", fastLatency < 250);
+        int lightSlowRank = completions.indexOf("light-slow");
+        assertTrue("light user finished at position " + lightSlowRank, lightSlowRank <= 6);
+    }
+
+    private Future<String> submit(Source source, String subject, long timeoutMillis,
+            Callable<String> task) {
+        return scheduler.submit(executor, source, subject, timeoutMillis, task);
+    }
+
+    private void assertRejected(Future<String> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Expected the query to be rejected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SourceUnavailableException);
+        }
+    }
+
+    private void awaitActive(String sourceId, int active) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (scheduler.getActiveQueries(sourceId) != active
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(active, scheduler.getActiveQueries(sourceId));
+    }
+
+    private void awaitQueued(String sourceId, int queued) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (scheduler.getQueuedQueries(sourceId) < queued
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(queued, scheduler.getQueuedQueries(sourceId));
+    }
+
+    private FederatedSource mockSource(String id) {
+        FederatedSource source = mock(FederatedSource.class);
+        when(source.getId()).thenReturn(id);
+        return source;
+    }
+
+    private static class CountingExecutor implements Executor {
+
+        private final Executor executor;
+
+        private final AtomicInteger executed = new AtomicInteger();
+
+        CountingExecutor(Executor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            executed.incrementAndGet();
+            executor.execute(command);
+        }
+
+        int getExecuted() {
+            return executed.get();
+        }
+    }
+
+    private static class GateTask implements Callable<String> {
+
+        private final CountDownLatch gate;
+
+        GateTask(CountDownLatch gate) {
+            this.gate = gate;
+        }
+
+        @Override
+        public String call() throws Exception {
+            gate.await(5, TimeUnit.SECONDS);
+            return "gate";
+        }
+    }
+
+    private static class RecordingTask implements Callable<String> {
+
+        private final String name;
+
+        private final long latencyMillis;
+
+        private final List<String> record;
+
+        RecordingTask(String name, long latencyMillis, List<String> record) {
+            this.name = name;
+            this.latencyMillis = latencyMillis;
+            this.record = record;
+        }
+
+        @Override
+        public String call() throws Exception {
+            Thread.sleep(latencyMillis);
+            record.add(name);
+            return name;
+        }
+    }
+}
@@ -71,6 +71,16 @@ public class DynamicSchemaResolver {
 
     public static final String LUX_XML_FIELD_NAME = "lux_xml";
 
+    /**
+     * Element and attribute paths present in the metadata, used to pre-filter XPath queries
+     */
+    public static final String XPATH_PATHS_FIELD_NAME = "xpath_paths";
+
+    /**
+     * Text of selected metadata elements, used to pre-filter XPath queries
+     */
+    public static final String XPATH_VALUES_FIELD_NAME = "xpath_values";
+
     protected static final char FIRST_CHAR_OF_SUFFIX = '_';
 
     protected static final String COULD_NOT_READ_METACARD_TYPE_MESSAGE = "Could not read MetacardType.";
@@ -186,7 +196,17 @@ public void addFields(Metacard metacard, SolrInputDocument solrInputDocument)
                     if (AttributeFormat.XML.equals(format)) {
                         // raw
                         solrInputDocument.addField(formatIndexName, attributeValue);
-                        String parsedText = parseTextFrom(attributeValue.toString());
+
+                        XpathIndex xpathIndex = null;
+                        if (Metacard.METADATA.equals(ad.getName()) && !ConfigurationStore
+                                .getInstance().isDisableTextPath()) {
+                            xpathIndex = new XpathIndex(Arrays.asList(
+                                    ConfigurationStore.getInstance().getXpathValueElements()));
+                        }
+                        String parsedText = parseTextFrom(attributeValue.toString(), xpathIndex);
+                        if (xpathIndex != null) {
+                            xpathIndex.addFields(solrInputDocument);
+                        }
 
                         // text => metadata_txt_ws
                         String whitespaceTokenizedIndexName =
@@ -551,6 +571,14 @@ private String findAnyMatchingNumericalField(String propertyName) {
      * @return parsed CDATA and element text
      */
     protected String parseTextFrom(String xmlData) {
+        return parseTextFrom(xmlData, null);
+    }
+
+    /**
+     * Extracts the text of an XML document, feeding its structure to {@code xpathIndex} in the
+     * same pass if one is given.
+     */
+    private String parseTextFrom(String xmlData, XpathIndex xpathIndex) {
 
         StringBuilder builder = new StringBuilder();
 
@@ -569,11 +597,24 @@ protected String parseTextFrom(String xmlData) {
 
                     String text = xmlStreamReader.getText();
 
+                    if (xpathIndex != null) {
+                        xpathIndex.text(text);
+                    }
+
                     if (StringUtils.isNotBlank(text)) {
                         builder.append(" ").append(text.trim());
                     }
 
                 }
+                if (xpathIndex != null) {
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        xpathIndex.startElement(xmlStreamReader);
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        xpathIndex.endElement();
+                    } else if (event == XMLStreamConstants.ENTITY_REFERENCE) {
+                        xpathIndex.unreadableText();
+                    }
+                }
                 if (event == XMLStreamConstants.START_ELEMENT) {
                     for (int i = 0; i < xmlStreamReader.getAttributeCount(); i++) {
 
@@ -586,6 +627,9 @@ protected String parseTextFrom(String xmlData) {
                 }
             }
         } catch (XMLStreamException e1) {
+            if (xpathIndex != null) {
+                xpathIndex.abandon();
+            }
             LOGGER.warn(
                     "Failure occurred in parsing the xml data. No data has been stored or indexed.",
                     e1);
@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.source.solr;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.solr.common.SolrInputDocument;
+
+/**
+ * Collects the element and attribute paths of an XML document, and the lower-cased text of
+ * selected elements, while the document is being parsed. The solr-xpath query parser turns
+ * XPath expressions into queries on these fields to skip documents that cannot match before
+ * evaluating the XPath itself.
+ * <p/>
+ * Paths are absolute and namespace-free, e.g. {@code /MD_Metadata/contact/@id}. Element values
+ * are indexed as {@code <local name>=<text>}. A document also gets a {@code <local name>#indexed}
+ * marker for every selected element whose values were all indexed, and a {@code #indexed} path
+ * marker; documents without markers are never skipped.
+ */
+class XpathIndex {
+
+    static final String INDEXED_MARKER = "#indexed";
+
+    static final String VALUE_SEPARATOR = "=";
+
+    /**
+     * Longer values are not indexed, keeping terms well below the Lucene term size limit
+     */
+    static final int MAX_VALUE_LENGTH = 4096;
+
+    private final Set<String> valueElements;
+
+    private final Deque<String> paths = new ArrayDeque<>();
+
+    private final Deque<Capture> captures = new ArrayDeque<>();
+
+    private final Set<String> indexedPaths = new LinkedHashSet<>();
+
+    private final Set<String> indexedValues = new LinkedHashSet<>();
+
+    private final Set<String> indexedElements = new HashSet<>();
+
+    private final Set<String> skippedElements = new HashSet<>();
+
+    private boolean abandoned;
+
+    XpathIndex(Collection<String> valueElements) {
+        this.valueElements = new HashSet<>(valueElements);
+    }
+
+    void startElement(XMLStreamReader reader) {
+        String localName = reader.getLocalName();
+        String path = (paths.isEmpty() ? "" : paths.peek()) + "/" + localName;
+        paths.push(path);
+        indexedPaths.add(path);
+
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            indexedPaths.add(path + "/@" + reader.getAttributeLocalName(i));
+        }
+
+        if (valueElements.contains(localName)) {
+            captures.push(new Capture(localName, paths.size()));
+        }
+    }
+
+    void text(String text) {
+        boolean whitespace = isWhitespace(text);
+        for (Capture capture : captures) {
+            if (capture.value.length() <= MAX_VALUE_LENGTH) {
+                capture.value.append(text);
+                if (!whitespace) {
+                    capture.strippedValue.append(text);
+                }
+            }
+        }
+    }
+
+    /**
+     * Text that could not be read, e.g. an unresolved entity, makes the enclosing values unusable
+     * for pre-filtering.
+     */
+    void unreadableText() {
+        for (Capture capture : captures) {
+            capture.value.setLength(MAX_VALUE_LENGTH + 1);
+        }
+    }
+
+    void endElement() {
+        Capture capture = captures.peek();
+        if (capture != null && capture.depth == paths.size()) {
+            captures.pop();
+            if (capture.value.length() > MAX_VALUE_LENGTH) {
+                skippedElements.add(capture.localName);
+            } else {
+                indexedElements.add(capture.localName);
+                // the string value seen by the XPath evaluator depends on whether whitespace-only
+                // text nodes were stripped from the stored document, so both variants are indexed
+                addValue(capture.localName, capture.value);
+                addValue(capture.localName, capture.strippedValue);
+            }
+        }
+        paths.pop();
+    }
+
+    private void addValue(String localName, CharSequence value) {
+        indexedValues.add(
+                localName + VALUE_SEPARATOR + value.toString().toLowerCase(Locale.ENGLISH));
+    }
+
+    private static boolean isWhitespace(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Called when the document could not be parsed to the end; nothing is indexed so the document
+     * is never skipped.
+     */
+    void abandon() {
+        abandoned = true;
+    }
+
+    void addFields(SolrInputDocument solrInputDocument) {
+        if (abandoned) {
+            return;
+        }
+        solrInputDocument.addField(DynamicSchemaResolver.XPATH_PATHS_FIELD_NAME, INDEXED_MARKER);
+        for (String path : indexedPaths) {
+            solrInputDocument.addField(DynamicSchemaResolver.XPATH_PATHS_FIELD_NAME, path);
+        }
+
+        for (String localName : indexedElements) {
+            if (!skippedElements.contains(localName)) {
+                solrInputDocument.addField(DynamicSchemaResolver.XPATH_VALUES_FIELD_NAME,
+                        localName + INDEXED_MARKER);
+            }
+        }
+        for (String value : indexedValues) {
+            solrInputDocument.addField(DynamicSchemaResolver.XPATH_VALUES_FIELD_NAME, value);
+        }
+    }
+
+    private static class Capture {
+
+        private final String localName;
+
+        private final int depth;
+
+        private final StringBuilder value = new StringBuilder();
+
+        private final StringBuilder strippedValue = new StringBuilder();
+
+        Capture(String localName, int depth) {
+            this.localName = localName;
+            this.depth = depth;
+        }
+    }
+}
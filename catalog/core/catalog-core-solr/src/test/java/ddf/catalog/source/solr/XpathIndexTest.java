@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.source.solr;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.StringReader;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.Test;
+
+public class XpathIndexTest {
+
+    private static final String METADATA = "<gmd:MD_Metadata xmlns:gmd=\"http://www.isotc211.org/2005/gmd\""
+            + " xmlns:gco=\"http://www.isotc211.org/2005/gco\">"
+            + "<gmd:identificationInfo id=\"1\"><gmd:title>\n  <gco:CharacterString>Flood Map</gco:CharacterString>\n"
+            + "</gmd:title></gmd:identificationInfo><gmd:abstract>Rivers</gmd:abstract></gmd:MD_Metadata>";
+
+    @Test
+    public void testPaths() throws Exception {
+        SolrInputDocument document = index(METADATA, "title");
+
+        assertThat(document.getFieldValues(DynamicSchemaResolver.XPATH_PATHS_FIELD_NAME),
+                hasItems((Object) XpathIndex.INDEXED_MARKER, "/MD_Metadata",
+                        "/MD_Metadata/identificationInfo", "/MD_Metadata/identificationInfo/@id",
+                        "/MD_Metadata/identificationInfo/title",
+                        "/MD_Metadata/identificationInfo/title/CharacterString",
+                        "/MD_Metadata/abstract"));
+    }
+
+    @Test
+    public void testValuesWithAndWithoutWhitespaceNodes() throws Exception {
+        SolrInputDocument document = index(METADATA, "title");
+
+        assertThat(document.getFieldValues(DynamicSchemaResolver.XPATH_VALUES_FIELD_NAME),
+                hasItems((Object) "title#indexed", "title=flood map", "title=\n  flood map\n"));
+        assertThat(document.getFieldValues(DynamicSchemaResolver.XPATH_VALUES_FIELD_NAME),
+                not(hasItem((Object) "abstract=rivers")));
+    }
+
+    @Test
+    public void testLongValueIsNotMarkedIndexed() throws Exception {
+        String longTitle = StringUtils.repeat("a", XpathIndex.MAX_VALUE_LENGTH + 1);
+        SolrInputDocument document = index(
+                "<doc><title>short</title><title>" + longTitle + "</title></doc>", "title");
+
+        assertThat(document.getFieldValues(DynamicSchemaResolver.XPATH_VALUES_FIELD_NAME),
+                hasItem((Object) "title=short"));
+        assertThat(document.getFieldValues(DynamicSchemaResolver.XPATH_VALUES_FIELD_NAME),
+                not(hasItem((Object) "title#indexed")));
+    }
+
+    @Test
+    public void testAbandonedIndexAddsNoFields() throws Exception {
+        XpathIndex xpathIndex = new XpathIndex(Arrays.asList("title"));
+        xpathIndex.abandon();
+        SolrInputDocument document = new SolrInputDocument();
+
+        xpathIndex.addFields(document);
+
+        assertThat(document.getFieldValues(DynamicSchemaResolver.XPATH_PATHS_FIELD_NAME),
+                nullValue());
+    }
+
+    private SolrInputDocument index(String xml, String... valueElements) throws Exception {
+        XpathIndex xpathIndex = new XpathIndex(Arrays.asList(valueElements));
+        XMLStreamReader reader = XMLInputFactory.newInstance()
+                .createXMLStreamReader(new StringReader(xml));
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                xpathIndex.startElement(reader);
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                xpathIndex.endElement();
+            } else if (event == XMLStreamConstants.CHARACTERS) {
+                xpathIndex.text(reader.getText());
+            }
+        }
+        reader.close();
+
+        SolrInputDocument document = new SolrInputDocument();
+        xpathIndex.addFields(document);
+        return document;
+    }
+}
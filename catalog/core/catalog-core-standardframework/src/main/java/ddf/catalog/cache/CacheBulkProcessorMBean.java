@@ -0,0 +1,48 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.cache;
+
+/**
+ * Metrics of the processor that adds federated query results to the Solr cache in the background.
+ */
+public interface CacheBulkProcessorMBean {
+
+    public static final String OBJECTNAME = "ddf.catalog.cache.solr.impl.CacheBulkProcessor:service=cache-bulk-processor";
+
+    /**
+     * @return number of metacards held in memory waiting to be cached
+     */
+    int getBacklogSize();
+
+    /**
+     * @return number of metacards spilled to disk waiting to be cached
+     */
+    int getSpilledCount();
+
+    /**
+     * @return size in bytes of the spill journal
+     */
+    long getSpillSize();
+
+    /**
+     * @return number of metacards that could neither be held in memory nor spilled to disk
+     */
+    long getDroppedCount();
+
+    /**
+     * @return number of metacards currently sent to the cache in a single request
+     */
+    int getCurrentBatchSize();
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.cache;
+
+import java.util.Map;
+
+/**
+ * Hit and miss statistics of the caching federation strategy. A query counts as a hit for a
+ * source when the cache held fresh copies of every result the source returned, as stale when
+ * some of those copies were older than the source's time to live, and as a miss otherwise.
+ */
+public interface CacheStatisticsMBean {
+
+    public static final String OBJECTNAME = "ddf.catalog.cache.solr.impl.CachingFederationStrategy:service=cache-statistics";
+
+    /**
+     * @return number of source queries the cache answered with fresh results
+     */
+    long getHitCount();
+
+    /**
+     * @return number of source queries the cache answered with results past their time to live
+     */
+    long getStaleHitCount();
+
+    /**
+     * @return number of source queries the cache could not answer
+     */
+    long getMissCount();
+
+    /**
+     * @return fraction of source queries answered with fresh results, 0 when nothing was recorded
+     */
+    double getHitRatio();
+
+    /**
+     * @return number of background queries sent to sources to refresh stale cache entries
+     */
+    long getRefreshCount();
+
+    /**
+     * @return hit ratio keyed by source id
+     */
+    Map<String, Double> getSourceHitRatios();
+
+    /**
+     * @return hit ratio keyed by query shape, e.g. {@code contextual+spatial}
+     */
+    Map<String, Double> getQueryShapeHitRatios();
+
+    /**
+     * Clears all recorded statistics.
+     */
+    void reset();
+}
@@ -13,43 +13,83 @@
  */
 package ddf.catalog.cache.solr.impl;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.Lists;
-
+import ddf.catalog.cache.CacheBulkProcessorMBean;
 import ddf.catalog.data.Metacard;
 import ddf.catalog.data.Result;
 
 /**
  * Bulk adds metacards to the cache that are not needed immediately.
+ * <p/>
+ * Metacards are held in memory, keyed by id so a metacard added again replaces the pending one.
+ * Once the in-memory backlog is full, new metacards are appended to a spill journal, when one has
+ * been configured, and are read back as the backlog drains. Several flush workers send the
+ * backlog to the cache, adapting the batch size to the time the cache takes to add a batch.
  */
-class CacheBulkProcessor {
+class CacheBulkProcessor implements CacheBulkProcessorMBean {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CacheBulkProcessor.class);
 
-    private final ScheduledExecutorService batchScheduler = Executors
-            .newSingleThreadScheduledExecutor();
+    private static final int DEFAULT_FLUSH_WORKERS = 2;
+
+    private final ScheduledExecutorService batchScheduler;
+
+    private final ConcurrentMap<String, Metacard> metacardsToCache = new ConcurrentHashMap<>();
+
+    /**
+     * Sequence of the latest spilled version of each metacard id that has not been superseded,
+     * used to skip stale versions read back from the spill journal.
+     */
+    private final ConcurrentMap<String, Long> spilledSequences = new ConcurrentHashMap<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private final AtomicInteger inFlightCount = new AtomicInteger();
+
+    private final Object claimLock = new Object();
+
+    private final SolrCache cache;
 
-    private final Map<String, Metacard> metacardsToCache = new ConcurrentHashMap<>();
+    private volatile long flushInterval = TimeUnit.SECONDS.toMillis(10);
 
-    private long flushInterval = TimeUnit.SECONDS.toMillis(10);
+    private volatile int maximumBacklogSize = 10000;
 
-    private int maximumBacklogSize = 10000;
+    private volatile int configuredBatchSize = 500;
 
-    private int batchSize = 500;
+    private volatile int batchSize = 500;
 
-    private Date lastBulkAdd = new Date();
+    private volatile long targetBatchLatency = TimeUnit.SECONDS.toMillis(2);
+
+    private volatile long lastBulkAdd = System.currentTimeMillis();
+
+    private volatile CacheSpillJournal spillJournal;
+
+    private ObjectName objectName;
 
     public CacheBulkProcessor(final SolrCache cache) {
         this(cache, 1, TimeUnit.SECONDS);
@@ -64,77 +104,295 @@ public CacheBulkProcessor(final SolrCache cache) {
      * @param delayUnit units of the delay
      */
     public CacheBulkProcessor(final SolrCache cache, final long delay, final TimeUnit delayUnit) {
-        batchScheduler.scheduleWithFixedDelay(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    if (metacardsToCache.size() > 0 && (metacardsToCache.size() >= batchSize
-                            || timeToFlush())) {
-                        LOGGER.debug("{} metacards to batch add to cache", metacardsToCache.size());
-
-                        List<Metacard> metacards = new ArrayList<>(metacardsToCache.values());
-                        for (Collection<Metacard> batch : Lists.partition(metacards, batchSize)) {
-                            LOGGER.debug("Caching a batch of {} metacards", batch.size());
-                            cache.create(batch);
-
-                            for (Metacard metacard : batch) {
-                                metacardsToCache.remove(metacard.getId());
-                            }
-                        }
-
-                        lastBulkAdd = new Date();
+        this(cache, delay, delayUnit, DEFAULT_FLUSH_WORKERS);
+    }
+
+    /**
+     * Create a new cache bulk processor with the given number of flush workers.
+     *
+     * @param cache target Solr cache to bulk add metacards
+     * @param delay delay between decision to bulk add
+     * @param delayUnit units of the delay
+     * @param flushWorkers number of threads adding batches to the cache concurrently
+     */
+    public CacheBulkProcessor(final SolrCache cache, final long delay, final TimeUnit delayUnit,
+            final int flushWorkers) {
+        this.cache = cache;
+        int workers = Math.max(1, flushWorkers);
+        batchScheduler = Executors.newScheduledThreadPool(workers);
+        for (int i = 0; i < workers; i++) {
+            batchScheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        flush();
+                    } catch (Throwable throwable) {
+                        LOGGER.warn("Scheduled bulk ingest to cache failed", throwable);
                     }
-                } catch (Throwable throwable) {
-                    LOGGER.warn("Scheduled bulk ingest to cache failed", throwable);
+                }
+            }, delay, delay, delayUnit);
+        }
+    }
+
+    private void flush() {
+        refillFromSpillJournal();
+
+        if (metacardsToCache.isEmpty() || (metacardsToCache.size() < batchSize
+                && !timeToFlush())) {
+            return;
+        }
+
+        List<Metacard> batch = claimBatch();
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        LOGGER.debug("Caching a batch of {} metacards, {} remaining", batch.size(),
+                metacardsToCache.size());
+        long start = System.currentTimeMillis();
+        try {
+            cache.create(batch);
+        } catch (RuntimeException e) {
+            // Put the batch back unless a newer version of a metacard has been added since
+            for (Metacard metacard : batch) {
+                metacardsToCache.putIfAbsent(metacard.getId(), metacard);
+            }
+            throw e;
+        } finally {
+            inFlightCount.addAndGet(-batch.size());
+        }
+        adaptBatchSize(batch.size(), System.currentTimeMillis() - start);
+
+        lastBulkAdd = System.currentTimeMillis();
+    }
+
+    /**
+     * Removes up to one batch of metacards from the backlog. Metacards are only removed if they
+     * have not been replaced in the meantime so the latest version is never lost.
+     */
+    private List<Metacard> claimBatch() {
+        synchronized (claimLock) {
+            int size = batchSize;
+            List<Metacard> batch = new ArrayList<>(Math.min(size, metacardsToCache.size()));
+            Iterator<Map.Entry<String, Metacard>> entries = metacardsToCache.entrySet()
+                    .iterator();
+            while (batch.size() < size && entries.hasNext()) {
+                Map.Entry<String, Metacard> entry = entries.next();
+                if (metacardsToCache.remove(entry.getKey(), entry.getValue())) {
+                    batch.add(entry.getValue());
+                }
+            }
+            inFlightCount.addAndGet(batch.size());
+            return batch;
+        }
+    }
+
+    private void refillFromSpillJournal() {
+        CacheSpillJournal journal = spillJournal;
+        if (journal == null) {
+            return;
+        }
+
+        synchronized (claimLock) {
+            int room = maximumBacklogSize - metacardsToCache.size();
+            if (room <= 0 || journal.getPendingCount() == 0) {
+                return;
+            }
+
+            for (CacheSpillJournal.SpilledMetacard spilled : journal.read(room)) {
+                String id = spilled.getMetacard().getId();
+                // Only the latest spilled version that has not been superseded by a newer
+                // in-memory one is put back into the backlog
+                if (spilledSequences.remove(id, spilled.getSequence())) {
+                    metacardsToCache.putIfAbsent(id, spilled.getMetacard());
                 }
             }
-        }, delay, delay, delayUnit);
+        }
+    }
+
+    private void adaptBatchSize(int size, long latency) {
+        int current = batchSize;
+        if (latency > targetBatchLatency) {
+            batchSize = Math.max(Math.max(1, configuredBatchSize / 10), current / 2);
+        } else if (latency < targetBatchLatency / 2 && size >= current) {
+            batchSize = Math.min(configuredBatchSize * 10, current + Math.max(1, current / 4));
+        }
+        if (batchSize != current) {
+            LOGGER.debug("Adding {} metacards to cache took {} ms, batch size is now {}", size,
+                    latency, batchSize);
+        }
     }
 
     private boolean timeToFlush() {
-        Date now = new Date();
-        return now.getTime() - lastBulkAdd.getTime() > flushInterval;
+        return System.currentTimeMillis() - lastBulkAdd > flushInterval;
     }
 
     /**
-     * Adds metacards to be bulk added to cache.  Metacards will be ignored if backlog grows too
-     * large.  Metacard currently in backlog will be updated if added again.
+     * Adds metacards to be bulk added to cache. Metacard currently in backlog will be updated if
+     * added again. Once the backlog is full, metacards are spilled to disk if a spill journal is
+     * configured and ignored otherwise.
      *
      * @param results metacards to add to current batch
      */
     public void add(final List<Result> results) {
-        if (metacardsToCache.size() < maximumBacklogSize) {
-            for (Result result : results) {
-                if (result != null) {
-                    Metacard metacard = result.getMetacard();
-                    if (metacard != null) {
-                        metacardsToCache.put(metacard.getId(), metacard);
-                    }
+        for (Result result : results) {
+            if (result != null) {
+                Metacard metacard = result.getMetacard();
+                if (metacard != null) {
+                    add(metacard);
                 }
             }
         }
     }
 
+    private void add(Metacard metacard) {
+        String id = metacard.getId();
+        if (metacardsToCache.size() < maximumBacklogSize || metacardsToCache
+                .containsKey(id)) {
+            metacardsToCache.put(id, metacard);
+            spilledSequences.remove(id);
+            return;
+        }
+
+        CacheSpillJournal journal = spillJournal;
+        long spillSequence = sequence.incrementAndGet();
+        if (journal != null && journal.append(metacard, spillSequence)) {
+            spilledSequences.put(id, spillSequence);
+        } else {
+            long dropped = droppedCount.incrementAndGet();
+            LOGGER.debug("Cache backlog is full, dropping metacard {} ({} dropped)", id, dropped);
+        }
+    }
+
+    /**
+     * Spills metacards to the given file once the in-memory backlog is full.
+     *
+     * @param spillFile file holding the spilled metacards, replaced if it exists
+     * @param maximumSpillSize maximum size of the spill file in bytes
+     */
+    public void setSpillFile(File spillFile, long maximumSpillSize) {
+        CacheSpillJournal previous = spillJournal;
+        try {
+            spillJournal = new CacheSpillJournal(spillFile, maximumSpillSize);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to create cache spill journal {}, metacards will be dropped "
+                    + "once the backlog is full", spillFile, e);
+            spillJournal = null;
+        }
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Sets the maximum size of the spill file in bytes.
+     *
+     * @param maximumSpillSize maximum size of the spill file in bytes
+     */
+    public void setMaximumSpillSize(long maximumSpillSize) {
+        CacheSpillJournal journal = spillJournal;
+        if (journal != null) {
+            journal.setMaximumSize(maximumSpillSize);
+        }
+    }
+
+    /**
+     * Registers the metrics of this processor as an MBean.
+     */
+    public void registerMBean() {
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            objectName = new ObjectName(CacheBulkProcessorMBean.OBJECTNAME);
+            try {
+                mbeanServer.registerMBean(
+                        new StandardMBean(this, CacheBulkProcessorMBean.class), objectName);
+            } catch (InstanceAlreadyExistsException e) {
+                LOGGER.info("Re-registering Cache Bulk Processor MBean");
+                mbeanServer.unregisterMBean(objectName);
+                mbeanServer.registerMBean(
+                        new StandardMBean(this, CacheBulkProcessorMBean.class), objectName);
+            }
+        } catch (MalformedObjectNameException e) {
+            LOGGER.warn("Could not create object name", e);
+        } catch (Exception e) {
+            LOGGER.warn("Could not register MBean.", e);
+        }
+    }
+
     /**
      * Shutdown scheduled tasks.
      */
     public void shutdown() {
         batchScheduler.shutdown();
+
+        CacheSpillJournal journal = spillJournal;
+        if (journal != null) {
+            journal.close();
+        }
+
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Exception e) {
+                LOGGER.debug("Could not unregister MBean.", e);
+            }
+        }
     }
 
     int pendingMetacards() {
+        CacheSpillJournal journal = spillJournal;
+        return metacardsToCache.size() + inFlightCount.get() + (journal == null ?
+                0 :
+                journal.getPendingCount());
+    }
+
+    @Override
+    public int getBacklogSize() {
         return metacardsToCache.size();
     }
 
+    @Override
+    public int getSpilledCount() {
+        CacheSpillJournal journal = spillJournal;
+        return journal == null ? 0 : journal.getPendingCount();
+    }
+
+    @Override
+    public long getSpillSize() {
+        CacheSpillJournal journal = spillJournal;
+        return journal == null ? 0 : journal.getSize();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @Override
+    public int getCurrentBatchSize() {
+        return batchSize;
+    }
+
     public void setFlushInterval(long flushInterval) {
         this.flushInterval = flushInterval;
     }
 
     public void setBatchSize(int batchSize) {
+        this.configuredBatchSize = batchSize;
         this.batchSize = batchSize;
     }
 
     public void setMaximumBacklogSize(int maximumBacklogSize) {
         this.maximumBacklogSize = maximumBacklogSize;
     }
+
+    /**
+     * Sets the time adding a batch to the cache should take. Batches are made smaller when they
+     * take longer and larger when they take less than half of it.
+     *
+     * @param targetBatchLatency target time in milliseconds
+     */
+    public void setTargetBatchLatency(long targetBatchLatency) {
+        this.targetBatchLatency = targetBatchLatency;
+    }
 }
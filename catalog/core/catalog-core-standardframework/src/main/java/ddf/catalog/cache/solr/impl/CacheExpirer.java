@@ -0,0 +1,345 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.cache.solr.impl;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Removes documents from the metacard cache in small chunks so a single run never deletes the
+ * whole expired portion of the cache in one transaction. Each run first deletes documents older
+ * than the expiration age, oldest first, one time slice of at most {@link #setChunkSize chunk
+ * size} documents at a time. If a maximum number of documents is configured, it then evicts the
+ * least recently used documents until the cache fits. A document is considered used when it was
+ * cached or when it was last returned by a cache query, whichever is later; hits are only tracked
+ * while a maximum is configured, and only approximately for the most recently hit documents.
+ * Runs pause between chunks and stop once their time budget is spent; the next run picks up where
+ * it stopped.
+ */
+class CacheExpirer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheExpirer.class);
+
+    private static final int DEFAULT_HIT_TRACKER_CAPACITY = 100000;
+
+    private static final String DATE_PATTERN = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private final ConcurrentMap<String, Long> lastHits = new ConcurrentHashMap<>();
+
+    private final AtomicInteger trackedHits = new AtomicInteger();
+
+    private final AtomicBoolean trimmingHits = new AtomicBoolean();
+
+    private final int hitTrackerCapacity;
+
+    private volatile long expirationAgeInMinutes = TimeUnit.DAYS.toMinutes(7);
+
+    private volatile int chunkSize = 1000;
+
+    private volatile long chunkDelayMillis = 100;
+
+    private volatile long timeBudgetMillis = TimeUnit.MINUTES.toMillis(1);
+
+    private volatile long maximumDocuments = 0;
+
+    CacheExpirer() {
+        this(DEFAULT_HIT_TRACKER_CAPACITY);
+    }
+
+    /**
+     * @param hitTrackerCapacity number of most recently hit documents whose last hit is tracked;
+     *                           up to twice as many are tracked between trims
+     */
+    CacheExpirer(int hitTrackerCapacity) {
+        this.hitTrackerCapacity = Math.max(1, hitTrackerCapacity);
+    }
+
+    boolean isEvictionEnabled() {
+        return maximumDocuments > 0;
+    }
+
+    /**
+     * Records that the document with the given unique id was returned by a cache query. Does
+     * nothing unless a maximum number of documents is configured.
+     */
+    void recordHit(String uniqueId) {
+        if (!isEvictionEnabled()) {
+            return;
+        }
+        if (lastHits.put(uniqueId, System.currentTimeMillis()) == null
+                && trackedHits.incrementAndGet() > 2L * hitTrackerCapacity) {
+            trimHits();
+        }
+    }
+
+    /**
+     * Forgets all but the most recently hit documents. Callers that find another thread already
+     * trimming carry on without waiting.
+     */
+    private void trimHits() {
+        if (!trimmingHits.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            List<Long> hits = new ArrayList<>(lastHits.values());
+            if (hits.size() <= hitTrackerCapacity) {
+                return;
+            }
+            Collections.sort(hits);
+            long oldestKept = hits.get(hits.size() - hitTrackerCapacity);
+            for (Map.Entry<String, Long> hit : lastHits.entrySet()) {
+                if (hit.getValue() < oldestKept && lastHits.remove(hit.getKey(), hit.getValue())) {
+                    trackedHits.decrementAndGet();
+                }
+            }
+        } finally {
+            trimmingHits.set(false);
+        }
+    }
+
+    private Long getLastHit(String uniqueId) {
+        return lastHits.get(uniqueId);
+    }
+
+    /**
+     * Runs one expiration pass against the given cache core.
+     *
+     * @return number of documents deleted
+     */
+    long expire(SolrServer server) throws SolrServerException, IOException {
+        long now = System.currentTimeMillis();
+        long deadline = now + timeBudgetMillis;
+        // an absolute bound keeps both phases of the run on the same side of the expiration age
+        String upperBound = formatDate(
+                new Date(now - TimeUnit.MINUTES.toMillis(expirationAgeInMinutes)));
+
+        long expired = expireByAge(server, upperBound, deadline);
+
+        long evicted = 0;
+        if (maximumDocuments > 0 && System.currentTimeMillis() < deadline) {
+            evicted = evictLeastRecentlyUsed(server, upperBound, deadline);
+        }
+
+        LOGGER.debug("Expired {} and evicted {} cached documents", expired, evicted);
+        return expired + evicted;
+    }
+
+    private long expireByAge(SolrServer server, String upperBound, long deadline)
+            throws SolrServerException, IOException {
+        String lowerBound = "*";
+        long deleted = 0;
+
+        while (true) {
+            // Find the cached date that ends a slice of chunkSize documents. The lower bound of
+            // the slice excludes earlier slices whose deletes have not been committed yet.
+            String range = dateRange(lowerBound, upperBound);
+            SolrQuery sliceQuery = new SolrQuery(range);
+            sliceQuery.setFields(SolrCache.CACHED_DATE);
+            sliceQuery.setSort(SolrCache.CACHED_DATE, SolrQuery.ORDER.asc);
+            sliceQuery.setStart(chunkSize - 1);
+            sliceQuery.setRows(1);
+
+            SolrDocumentList slice = server.query(sliceQuery).getResults();
+            long found = slice.getNumFound();
+            if (found == 0) {
+                break;
+            }
+
+            if (found <= chunkSize || slice.isEmpty()) {
+                server.deleteByQuery(range);
+                deleted += found;
+                break;
+            }
+
+            // Documents cached in the same millisecond as the end of the slice are all part of
+            // it, so a slice can hold more than chunkSize documents.
+            String sliceEnd = formatDate(slice.get(0).getFieldValue(SolrCache.CACHED_DATE));
+            String sliceRange = dateRange(lowerBound, sliceEnd);
+            long sliceSize = count(server, sliceRange);
+            if (sliceEnd.equals(lowerBound) || sliceSize == 0) {
+                LOGGER.warn("Cache expiration does not advance past {}, {} documents left "
+                        + "to expire", lowerBound, found);
+                break;
+            }
+
+            LOGGER.debug("Expiring {} cached documents {}", sliceSize, sliceRange);
+            server.deleteByQuery(sliceRange);
+            deleted += sliceSize;
+            lowerBound = sliceEnd;
+
+            if (!pause(deadline)) {
+                LOGGER.debug("Cache expiration time budget spent, {} documents left to expire",
+                        found - sliceSize);
+                break;
+            }
+        }
+        return deleted;
+    }
+
+    private long evictLeastRecentlyUsed(SolrServer server, String expirationBound,
+            long deadline) throws SolrServerException, IOException {
+        // Documents expired by age may not be committed yet; leave them out of the count and
+        // the candidates instead of committing.
+        String unexpired = dateRange(expirationBound, "*");
+        long excess = count(server, unexpired) - maximumDocuments;
+        if (excess <= 0) {
+            return 0;
+        }
+
+        LOGGER.debug("Cache holds {} documents more than its maximum of {}", excess,
+                maximumDocuments);
+
+        SolrQuery candidates = new SolrQuery("*:*");
+        candidates.addFilterQuery(unexpired);
+        candidates.setFields(SolrCache.METACARD_UNIQUE_ID_NAME, SolrCache.CACHED_DATE);
+        candidates.addSort(SolrCache.CACHED_DATE, SolrQuery.ORDER.asc);
+        candidates.addSort(SolrCache.METACARD_UNIQUE_ID_NAME, SolrQuery.ORDER.asc);
+        candidates.setRows(chunkSize);
+
+        long evicted = 0;
+        String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+        while (evicted < excess) {
+            candidates.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+            QueryResponse response = server.query(candidates);
+            SolrDocumentList documents = response.getResults();
+            if (documents.isEmpty()) {
+                break;
+            }
+
+            // Documents hit after the most recently cached candidate of this page are more
+            // recently used than the rest of the page and are kept.
+            Date horizon = (Date) documents.get(documents.size() - 1)
+                    .getFieldValue(SolrCache.CACHED_DATE);
+            List<String> ids = new ArrayList<>(documents.size());
+            for (SolrDocument document : documents) {
+                if (evicted + ids.size() >= excess) {
+                    break;
+                }
+                String uniqueId = (String) document
+                        .getFirstValue(SolrCache.METACARD_UNIQUE_ID_NAME);
+                Long lastHit = getLastHit(uniqueId);
+                if (lastHit == null || horizon == null || lastHit <= horizon.getTime()) {
+                    ids.add(uniqueId);
+                }
+            }
+
+            if (!ids.isEmpty()) {
+                server.deleteById(ids);
+                evicted += ids.size();
+            }
+
+            String nextCursorMark = response.getNextCursorMark();
+            if (cursorMark.equals(nextCursorMark) || !pause(deadline)) {
+                break;
+            }
+            cursorMark = nextCursorMark;
+        }
+        return evicted;
+    }
+
+    /**
+     * Waits between two chunks.
+     *
+     * @return {@code false} if the time budget of the run is spent or the thread was interrupted
+     */
+    private boolean pause(long deadline) {
+        if (System.currentTimeMillis() + chunkDelayMillis >= deadline) {
+            return false;
+        }
+        if (chunkDelayMillis > 0) {
+            try {
+                Thread.sleep(chunkDelayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long count(SolrServer server, String query) throws SolrServerException {
+        SolrQuery countQuery = new SolrQuery(query);
+        countQuery.setRows(0);
+        return server.query(countQuery).getResults().getNumFound();
+    }
+
+    /**
+     * @return range query over the cached date that excludes its lower bound, unless the lower
+     * bound is open
+     */
+    private String dateRange(String lowerBound, String upperBound) {
+        return SolrCache.CACHED_DATE + ":" + ("*".equals(lowerBound) ? "[" : "{") + lowerBound
+                + " TO " + upperBound + "]";
+    }
+
+    /**
+     * Formats cached dates with millisecond precision so slice bounds match the stored values.
+     */
+    private String formatDate(Object value) {
+        if (value instanceof Date) {
+            SimpleDateFormat format = new SimpleDateFormat(DATE_PATTERN, Locale.ROOT);
+            format.setTimeZone(UTC);
+            return format.format((Date) value);
+        }
+        return String.valueOf(value);
+    }
+
+    void setExpirationAgeInMinutes(long expirationAgeInMinutes) {
+        this.expirationAgeInMinutes = expirationAgeInMinutes;
+    }
+
+    void setChunkSize(int chunkSize) {
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    void setChunkDelayMillis(long chunkDelayMillis) {
+        this.chunkDelayMillis = Math.max(0, chunkDelayMillis);
+    }
+
+    void setTimeBudgetMillis(long timeBudgetMillis) {
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
+    void setMaximumDocuments(long maximumDocuments) {
+        this.maximumDocuments = maximumDocuments;
+        if (!isEvictionEnabled()) {
+            lastHits.clear();
+            trackedHits.set(0);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.cache.solr.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.impl.MetacardImpl;
+
+/**
+ * Append-only file that holds metacards waiting to be cached while the in-memory backlog of the
+ * {@link CacheBulkProcessor} is full. Records are read back in the order they were written and
+ * the file is truncated whenever every record has been read. The journal only lives as long as
+ * the processor that owns it; it is deleted on close.
+ */
+class CacheSpillJournal {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheSpillJournal.class);
+
+    private final File file;
+
+    private long maximumSize;
+
+    private RandomAccessFile journal;
+
+    private long readPosition = 0;
+
+    private long writePosition = 0;
+
+    private int pendingCount = 0;
+
+    /**
+     * @param file        file used to hold spilled metacards, replaced if it already exists
+     * @param maximumSize maximum size of the journal in bytes, metacards that do not fit anymore
+     *                    are rejected
+     */
+    CacheSpillJournal(File file, long maximumSize) throws IOException {
+        this.file = file;
+        this.maximumSize = maximumSize;
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create cache spill directory " + directory);
+        }
+        journal = new RandomAccessFile(file, "rw");
+        journal.setLength(0);
+    }
+
+    /**
+     * Appends a metacard to the journal.
+     *
+     * @return {@code false} if the metacard could not be written or the journal is full
+     */
+    synchronized boolean append(Metacard metacard, long sequence) {
+        if (journal == null) {
+            return false;
+        }
+
+        byte[] bytes;
+        try {
+            bytes = serialize(metacard);
+        } catch (IOException e) {
+            LOGGER.debug("Unable to serialize metacard {} for the cache spill journal",
+                    metacard.getId(), e);
+            return false;
+        }
+
+        long recordSize = 12L + bytes.length;
+        if (writePosition + recordSize > maximumSize) {
+            return false;
+        }
+
+        try {
+            journal.seek(writePosition);
+            journal.writeLong(sequence);
+            journal.writeInt(bytes.length);
+            journal.write(bytes);
+            writePosition += recordSize;
+            pendingCount++;
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("Unable to write to cache spill journal {}", file, e);
+            return false;
+        }
+    }
+
+    /**
+     * Reads up to {@code maximum} of the oldest unread records from the journal.
+     */
+    synchronized List<SpilledMetacard> read(int maximum) {
+        List<SpilledMetacard> spilled = new ArrayList<>(Math.min(maximum, pendingCount));
+        if (journal == null) {
+            return spilled;
+        }
+
+        try {
+            journal.seek(readPosition);
+            while (spilled.size() < maximum && readPosition < writePosition) {
+                long sequence = journal.readLong();
+                byte[] bytes = new byte[journal.readInt()];
+                journal.readFully(bytes);
+                readPosition = journal.getFilePointer();
+                pendingCount--;
+
+                try {
+                    spilled.add(new SpilledMetacard(deserialize(bytes), sequence));
+                } catch (IOException | ClassNotFoundException e) {
+                    LOGGER.debug("Unable to read metacard from cache spill journal", e);
+                }
+            }
+        } catch (EOFException e) {
+            LOGGER.warn("Cache spill journal {} is truncated, discarding it", file, e);
+            reset();
+        } catch (IOException e) {
+            LOGGER.warn("Unable to read from cache spill journal {}, discarding it", file, e);
+            reset();
+        }
+
+        if (readPosition >= writePosition) {
+            reset();
+        }
+        return spilled;
+    }
+
+    /**
+     * Sets the maximum size of the journal in bytes. Metacards already written are kept.
+     */
+    synchronized void setMaximumSize(long maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Number of metacards written but not yet read.
+     */
+    synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * Size of the journal in bytes.
+     */
+    synchronized long getSize() {
+        return writePosition;
+    }
+
+    synchronized void close() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            LOGGER.debug("Unable to close cache spill journal {}", file, e);
+        }
+        journal = null;
+        if (!file.delete()) {
+            LOGGER.debug("Unable to delete cache spill journal {}", file);
+        }
+    }
+
+    private void reset() {
+        readPosition = 0;
+        writePosition = 0;
+        pendingCount = 0;
+        try {
+            journal.setLength(0);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to truncate cache spill journal {}", file, e);
+        }
+    }
+
+    private byte[] serialize(Metacard metacard) throws IOException {
+        // Copy metacards of other implementations so they can be read back using the classes
+        // visible to this bundle.
+        Metacard copy = metacard instanceof MetacardImpl ? metacard : new MetacardImpl(metacard);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(copy);
+        }
+        return bytes.toByteArray();
+    }
+
+    private Metacard deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (Metacard) input.readObject();
+        }
+    }
+
+    static class SpilledMetacard {
+
+        private final Metacard metacard;
+
+        private final long sequence;
+
+        SpilledMetacard(Metacard metacard, long sequence) {
+            this.metacard = metacard;
+            this.sequence = sequence;
+        }
+
+        Metacard getMetacard() {
+            return metacard;
+        }
+
+        long getSequence() {
+            return sequence;
+        }
+    }
+}
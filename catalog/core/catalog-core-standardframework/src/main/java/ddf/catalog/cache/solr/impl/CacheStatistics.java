@@ -0,0 +1,262 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.cache.solr.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.apache.commons.lang.StringUtils;
+import org.opengis.filter.BinaryComparisonOperator;
+import org.opengis.filter.BinaryLogicOperator;
+import org.opengis.filter.Filter;
+import org.opengis.filter.Id;
+import org.opengis.filter.Not;
+import org.opengis.filter.PropertyIsBetween;
+import org.opengis.filter.PropertyIsLike;
+import org.opengis.filter.PropertyIsNull;
+import org.opengis.filter.expression.PropertyName;
+import org.opengis.filter.spatial.SpatialOperator;
+import org.opengis.filter.temporal.BinaryTemporalOperator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ddf.catalog.cache.CacheStatisticsMBean;
+import ddf.catalog.operation.impl.QueryImpl;
+
+/**
+ * Counts cache hits, stale hits and misses per source and per query shape. The query shape is
+ * the set of filter categories (contextual, spatial, temporal, ...) a query combines, so that
+ * e.g. keyword searches and area searches are reported separately.
+ */
+class CacheStatistics implements CacheStatisticsMBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheStatistics.class);
+
+    static final String CONTEXTUAL_SHAPE = "contextual";
+
+    static final String XPATH_SHAPE = "xpath";
+
+    static final String SPATIAL_SHAPE = "spatial";
+
+    static final String TEMPORAL_SHAPE = "temporal";
+
+    static final String COMPARISON_SHAPE = "comparison";
+
+    static final String ID_SHAPE = "id";
+
+    static final String OTHER_SHAPE = "other";
+
+    private final Counter totals = new Counter();
+
+    private final ConcurrentMap<String, Counter> sourceCounters = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Counter> shapeCounters = new ConcurrentHashMap<>();
+
+    private final AtomicLong refreshCount = new AtomicLong();
+
+    private ObjectName objectName;
+
+    void recordHit(String sourceId, String queryShape) {
+        totals.hits.incrementAndGet();
+        getCounter(sourceCounters, sourceId).hits.incrementAndGet();
+        getCounter(shapeCounters, queryShape).hits.incrementAndGet();
+    }
+
+    void recordStaleHit(String sourceId, String queryShape) {
+        totals.staleHits.incrementAndGet();
+        getCounter(sourceCounters, sourceId).staleHits.incrementAndGet();
+        getCounter(shapeCounters, queryShape).staleHits.incrementAndGet();
+    }
+
+    void recordMiss(String sourceId, String queryShape) {
+        totals.misses.incrementAndGet();
+        getCounter(sourceCounters, sourceId).misses.incrementAndGet();
+        getCounter(shapeCounters, queryShape).misses.incrementAndGet();
+    }
+
+    void recordRefresh() {
+        refreshCount.incrementAndGet();
+    }
+
+    @Override
+    public long getHitCount() {
+        return totals.hits.get();
+    }
+
+    @Override
+    public long getStaleHitCount() {
+        return totals.staleHits.get();
+    }
+
+    @Override
+    public long getMissCount() {
+        return totals.misses.get();
+    }
+
+    @Override
+    public double getHitRatio() {
+        return totals.getHitRatio();
+    }
+
+    @Override
+    public long getRefreshCount() {
+        return refreshCount.get();
+    }
+
+    @Override
+    public Map<String, Double> getSourceHitRatios() {
+        return getHitRatios(sourceCounters);
+    }
+
+    @Override
+    public Map<String, Double> getQueryShapeHitRatios() {
+        return getHitRatios(shapeCounters);
+    }
+
+    @Override
+    public void reset() {
+        totals.reset();
+        sourceCounters.clear();
+        shapeCounters.clear();
+        refreshCount.set(0);
+    }
+
+    /**
+     * Classifies a filter by the kinds of criteria it contains, ignoring the values compared
+     * against, e.g. {@code contextual+temporal}.
+     */
+    static String getQueryShape(Filter filter) {
+        Set<String> shapes = new TreeSet<>();
+        addShapes(filter, shapes);
+        if (shapes.isEmpty()) {
+            return OTHER_SHAPE;
+        }
+        return StringUtils.join(shapes, "+");
+    }
+
+    private static void addShapes(Filter filter, Set<String> shapes) {
+        if (filter instanceof QueryImpl) {
+            addShapes(((QueryImpl) filter).getFilter(), shapes);
+        } else if (filter instanceof BinaryLogicOperator) {
+            for (Filter child : ((BinaryLogicOperator) filter).getChildren()) {
+                addShapes(child, shapes);
+            }
+        } else if (filter instanceof Not) {
+            addShapes(((Not) filter).getFilter(), shapes);
+        } else if (filter instanceof PropertyIsLike) {
+            shapes.add(isXpath(((PropertyIsLike) filter).getExpression()) ?
+                    XPATH_SHAPE :
+                    CONTEXTUAL_SHAPE);
+        } else if (filter instanceof SpatialOperator) {
+            shapes.add(SPATIAL_SHAPE);
+        } else if (filter instanceof BinaryTemporalOperator) {
+            shapes.add(TEMPORAL_SHAPE);
+        } else if (filter instanceof Id) {
+            shapes.add(ID_SHAPE);
+        } else if (filter instanceof BinaryComparisonOperator || filter instanceof PropertyIsBetween
+                || filter instanceof PropertyIsNull) {
+            shapes.add(COMPARISON_SHAPE);
+        } else if (filter != null && filter != Filter.INCLUDE && filter != Filter.EXCLUDE) {
+            shapes.add(OTHER_SHAPE);
+        }
+    }
+
+    private static boolean isXpath(Object expression) {
+        return expression instanceof PropertyName && StringUtils
+                .startsWith(((PropertyName) expression).getPropertyName(), "/");
+    }
+
+    public void registerMBean() {
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            objectName = new ObjectName(CacheStatisticsMBean.OBJECTNAME);
+            try {
+                mbeanServer.registerMBean(new StandardMBean(this, CacheStatisticsMBean.class),
+                        objectName);
+            } catch (InstanceAlreadyExistsException e) {
+                LOGGER.info("Re-registering Cache Statistics MBean");
+                mbeanServer.unregisterMBean(objectName);
+                mbeanServer.registerMBean(new StandardMBean(this, CacheStatisticsMBean.class),
+                        objectName);
+            }
+        } catch (MalformedObjectNameException e) {
+            LOGGER.warn("Could not create object name", e);
+        } catch (Exception e) {
+            LOGGER.warn("Could not register MBean.", e);
+        }
+    }
+
+    public void unregisterMBean() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Exception e) {
+                LOGGER.debug("Could not unregister MBean.", e);
+            }
+        }
+    }
+
+    private Counter getCounter(ConcurrentMap<String, Counter> counters, String key) {
+        String counterKey = StringUtils.defaultString(key, OTHER_SHAPE);
+        Counter counter = counters.get(counterKey);
+        if (counter == null) {
+            Counter newCounter = new Counter();
+            counter = counters.putIfAbsent(counterKey, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        return counter;
+    }
+
+    private Map<String, Double> getHitRatios(Map<String, Counter> counters) {
+        Map<String, Double> ratios = new HashMap<>();
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            ratios.put(entry.getKey(), entry.getValue().getHitRatio());
+        }
+        return ratios;
+    }
+
+    private static class Counter {
+
+        private final AtomicLong hits = new AtomicLong();
+
+        private final AtomicLong staleHits = new AtomicLong();
+
+        private final AtomicLong misses = new AtomicLong();
+
+        double getHitRatio() {
+            long hitCount = hits.get();
+            long total = hitCount + staleHits.get() + misses.get();
+            return total == 0 ? 0 : (double) hitCount / total;
+        }
+
+        void reset() {
+            hits.set(0);
+            staleHits.set(0);
+            misses.set(0);
+        }
+    }
+}
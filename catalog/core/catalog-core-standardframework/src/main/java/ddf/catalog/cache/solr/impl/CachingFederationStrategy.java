@@ -13,37 +13,48 @@
  */
 package ddf.catalog.cache.solr.impl;
 
+import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Phaser;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.shiro.subject.Subject;
 import org.codice.ddf.platform.util.Exceptions;
+import org.opengis.filter.Filter;
 import org.opengis.filter.expression.PropertyName;
 import org.opengis.filter.sort.SortBy;
 import org.opengis.filter.sort.SortOrder;
 import org.slf4j.LoggerFactory;
 import org.slf4j.ext.XLogger;
 
+import ddf.catalog.data.Attribute;
 import ddf.catalog.data.Metacard;
 import ddf.catalog.data.Result;
 import ddf.catalog.federation.FederationStrategy;
+import ddf.catalog.federation.base.FederationScheduler;
 import ddf.catalog.operation.CreateResponse;
 import ddf.catalog.operation.DeleteResponse;
 import ddf.catalog.operation.ProcessingDetails;
@@ -67,6 +78,8 @@
 import ddf.catalog.util.impl.DistanceResultComparator;
 import ddf.catalog.util.impl.RelevanceResultComparator;
 import ddf.catalog.util.impl.TemporalResultComparator;
+import ddf.security.SecurityConstants;
+import ddf.security.SubjectUtils;
 
 /**
  * This class represents a {@link ddf.catalog.federation.FederationStrategy} based on sorting {@link ddf.catalog.data.Metacard}s. The
@@ -112,6 +125,21 @@ public class CachingFederationStrategy implements FederationStrategy, PostIngest
 
     private static final int DEFAULT_MAX_START_INDEX = 50000;
 
+    private static final String KARAF_HOME = "karaf.home";
+
+    private static final String CACHE_SPILL_DIRECTORY = "data" + File.separator + "cache-spill";
+
+    private static final String CACHE_SPILL_FILE = "cache-bulk-processor.journal";
+
+    private static final long DEFAULT_MAX_CACHE_SPILL_SIZE_MB = 256;
+
+    private static final long BYTES_IN_MEGABYTE = 1024L * 1024L;
+
+    /**
+     * Source id that applies a time to live to every source without one of its own
+     */
+    private static final String DEFAULT_TIME_TO_LIVE_SOURCE = "*";
+
     private static XLogger logger = new XLogger(
             LoggerFactory.getLogger(CachingFederationStrategy.class));
 
@@ -141,6 +169,21 @@ public class CachingFederationStrategy implements FederationStrategy, PostIngest
 
     private boolean isCachingEverything = false;
 
+    private long maximumCacheSpillSizeInMegabytes = DEFAULT_MAX_CACHE_SPILL_SIZE_MB;
+
+    private final CacheStatistics cacheStatistics = new CacheStatistics();
+
+    private FederationScheduler federationScheduler = new FederationScheduler();
+
+    private boolean isCacheStatisticsEnabled = false;
+
+    private boolean isStaleWhileRevalidate = false;
+
+    private volatile Map<String, Long> sourceTimeToLiveMillis = Collections.emptyMap();
+
+    private final Set<String> pendingRefreshes = Collections
+            .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
     /**
      * Instantiates an {@code AbstractFederationStrategy} with the provided {@link ExecutorService}.
      *
@@ -156,6 +199,24 @@ public CachingFederationStrategy(ExecutorService queryExecutorService,
         this.maxStartIndex = DEFAULT_MAX_START_INDEX;
         this.cache = cache;
         cacheBulkProcessor = new CacheBulkProcessor(cache);
+        configureCacheSpillFile();
+        cacheBulkProcessor.registerMBean();
+        cacheStatistics.registerMBean();
+    }
+
+    /**
+     * Lets the bulk processor spill metacards to {@code <karaf.home>/data/cache-spill} instead
+     * of dropping them when its backlog is full. Spilling is disabled outside of a container.
+     */
+    private void configureCacheSpillFile() {
+        String karafHome = System.getProperty(KARAF_HOME);
+        if (karafHome == null) {
+            logger.debug("{} is not set, cache spill journal disabled", KARAF_HOME);
+            return;
+        }
+        cacheBulkProcessor.setSpillFile(
+                new File(new File(karafHome, CACHE_SPILL_DIRECTORY), CACHE_SPILL_FILE),
+                maximumCacheSpillSizeInMegabytes * BYTES_IN_MEGABYTE);
     }
 
     @Override
@@ -169,16 +230,25 @@ public QueryResponse federate(List<Source> sources, QueryRequest queryRequest) {
 
         if (queryRequest.getProperties().containsKey(QUERY_MODE) && CACHE_QUERY_MODE
                 .equals(queryRequest.getProperties().get(QUERY_MODE))) {
-            return queryCache(modifiedQueryRequest);
+            return queryCache(modifiedQueryRequest, sources);
         } else {
             return sourceFederate(sources, modifiedQueryRequest);
         }
     }
 
     private QueryResponse queryCache(QueryRequest queryRequest) {
+        return queryCache(queryRequest, Collections.<Source>emptyList());
+    }
+
+    /**
+     * Queries the cache and checks the freshness of the cached results of each of the given
+     * sources.
+     */
+    private QueryResponse queryCache(QueryRequest queryRequest, List<Source> sources) {
         final QueryResponseImpl queryResponse = new QueryResponseImpl(queryRequest);
         try {
             SourceResponse result = cache.query(queryRequest);
+            checkFreshness(sources, queryRequest, result.getResults());
             queryResponse.setHits(result.getHits());
             queryResponse.setProperties(result.getProperties());
             queryResponse.addResults(result.getResults(), true);
@@ -189,6 +259,190 @@ private QueryResponse queryCache(QueryRequest queryRequest) {
         return queryResponse;
     }
 
+    /**
+     * Records how fresh the cached results of each source are. In stale-while-revalidate mode,
+     * sources whose results are stale or missing are queried in the background to update the
+     * cache while the cached results are returned as they are.
+     */
+    private void checkFreshness(List<Source> sources, QueryRequest queryRequest,
+            List<Result> results) {
+        if (sources.isEmpty()) {
+            return;
+        }
+
+        Set<String> cachedSourceIds = new HashSet<>();
+        Set<String> staleSourceIds = new HashSet<>();
+        long now = System.currentTimeMillis();
+        for (Result result : results) {
+            Metacard metacard = result.getMetacard();
+            if (metacard != null) {
+                cachedSourceIds.add(metacard.getSourceId());
+                if (isStale(metacard, now)) {
+                    staleSourceIds.add(metacard.getSourceId());
+                }
+            }
+        }
+
+        // A source missing from a full page may simply have been outranked by the others
+        int pageSize = queryRequest.getQuery().getPageSize();
+        boolean isPageFull = pageSize > 0 && results.size() >= pageSize;
+        String queryShape = CacheStatistics.getQueryShape(queryRequest.getQuery());
+
+        for (Source source : sources) {
+            if (source == null) {
+                continue;
+            }
+            String sourceId = source.getId();
+            if (staleSourceIds.contains(sourceId)) {
+                cacheStatistics.recordStaleHit(sourceId, queryShape);
+            } else if (cachedSourceIds.contains(sourceId)) {
+                cacheStatistics.recordHit(sourceId, queryShape);
+                continue;
+            } else if (!isPageFull) {
+                cacheStatistics.recordMiss(sourceId, queryShape);
+            } else {
+                continue;
+            }
+
+            if (isStaleWhileRevalidate) {
+                refreshCache(source, queryRequest);
+            }
+        }
+    }
+
+    private boolean isStale(Metacard metacard, long now) {
+        Map<String, Long> timesToLive = sourceTimeToLiveMillis;
+        Long timeToLive = timesToLive.get(metacard.getSourceId());
+        if (timeToLive == null) {
+            timeToLive = timesToLive.get(DEFAULT_TIME_TO_LIVE_SOURCE);
+        }
+        Attribute cachedDate = metacard.getAttribute(SolrCache.CACHED_DATE_ATTRIBUTE);
+        if (timeToLive == null || cachedDate == null || !(cachedDate
+                .getValue() instanceof Date)) {
+            return false;
+        }
+        return now - ((Date) cachedDate.getValue()).getTime() > timeToLive;
+    }
+
+    /**
+     * Queries a single source in {@code update} mode in the background. At most one refresh of
+     * the same query and source runs at a time.
+     */
+    private void refreshCache(final Source source, final QueryRequest queryRequest) {
+        Query query = queryRequest.getQuery();
+        Filter filter = query instanceof QueryImpl ? ((QueryImpl) query).getFilter() : query;
+        final String refreshKey = source.getId() + ":" + query.getStartIndex() + ":" + query
+                .getPageSize() + ":" + filter;
+        if (!pendingRefreshes.add(refreshKey)) {
+            return;
+        }
+
+        Map<String, Serializable> properties = new HashMap<>(queryRequest.getProperties());
+        properties.put(QUERY_MODE, UPDATE_QUERY_MODE);
+        final QueryRequest refreshRequest = applyPreFederatedQueryPlugins(source,
+                new QueryRequestImpl(query, false, Collections.singleton(source.getId()),
+                        properties));
+
+        // Nobody waits for a refresh, so it waits for a free slot as long as it takes and only
+        // fails when the source already has too many queries waiting.
+        Future<SourceResponse> refresh = federationScheduler.submit(queryExecutorService, source,
+                getSubjectName(refreshRequest), 0, new Callable<SourceResponse>() {
+                    @Override
+                    public SourceResponse call() throws Exception {
+                        try {
+                            logger.debug("Refreshing stale cache entries of source {}",
+                                    source.getId());
+                            SourceResponse response = new CallableSourceResponse(source,
+                                    refreshRequest, false).call();
+                            cacheStatistics.recordRefresh();
+                            return response;
+                        } catch (Exception e) {
+                            logger.warn("Unable to refresh cache entries of source {}",
+                                    source.getId(), e);
+                            throw e;
+                        } finally {
+                            pendingRefreshes.remove(refreshKey);
+                        }
+                    }
+                });
+        if (refresh.isDone()) {
+            // rejected without running
+            pendingRefreshes.remove(refreshKey);
+        }
+    }
+
+    /**
+     * Compares the results of a source with what the cache holds for the same query, to tell
+     * whether the cache could have answered it.
+     */
+    private void recordCacheStatistics(Source source, QueryRequest request,
+            SourceResponse sourceResponse) {
+        Set<String> ids = new HashSet<>();
+        for (Result result : sourceResponse.getResults()) {
+            if (result.getMetacard() != null) {
+                ids.add(result.getMetacard().getId());
+            }
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        String sourceId = source.getId();
+        String queryShape = CacheStatistics.getQueryShape(request.getQuery());
+        try {
+            SourceResponse cachedResponse = cache.query(new QueryRequestImpl(request.getQuery(),
+                    false, Collections.singleton(sourceId), request.getProperties()));
+
+            boolean isStale = false;
+            long now = System.currentTimeMillis();
+            for (Result result : cachedResponse.getResults()) {
+                Metacard metacard = result.getMetacard();
+                if (metacard != null && ids.remove(metacard.getId()) && isStale(metacard,
+                        now)) {
+                    isStale = true;
+                }
+            }
+
+            if (!ids.isEmpty()) {
+                cacheStatistics.recordMiss(sourceId, queryShape);
+            } else if (isStale) {
+                cacheStatistics.recordStaleHit(sourceId, queryShape);
+            } else {
+                cacheStatistics.recordHit(sourceId, queryShape);
+            }
+        } catch (UnsupportedQueryException | RuntimeException e) {
+            logger.debug("Unable to compare results of {} with the cache", sourceId, e);
+        }
+    }
+
+    /**
+     * @return name of the user a request runs for, used to take turns on busy sources
+     */
+    private String getSubjectName(QueryRequest queryRequest) {
+        Object subject = queryRequest.getPropertyValue(SecurityConstants.SECURITY_SUBJECT);
+        if (subject instanceof Subject) {
+            return SubjectUtils.getName((Subject) subject, null);
+        }
+        return null;
+    }
+
+    private QueryRequest applyPreFederatedQueryPlugins(Source source,
+            QueryRequest queryRequest) {
+        QueryRequest modifiedQueryRequest = queryRequest;
+        try {
+            for (PreFederatedQueryPlugin service : preQuery) {
+                try {
+                    modifiedQueryRequest = service.process(source, modifiedQueryRequest);
+                } catch (PluginExecutionException e) {
+                    logger.warn("Error executing PreFederatedQueryPlugin", e);
+                }
+            }
+        } catch (StopProcessingException e) {
+            logger.warn("Plugin stopped processing", e);
+        }
+        return modifiedQueryRequest;
+    }
+
     private QueryResponse sourceFederate(List<Source> sources, final QueryRequest queryRequest) {
         if (logger.isDebugEnabled()) {
             for (Source source : sources) {
@@ -217,8 +471,11 @@ private QueryResponse sourceFederate(List<Source> sources, final QueryRequest qu
                 queryRequest.isEnterprise(), queryRequest.getSourceIds(),
                 queryRequest.getProperties());
 
+        // Source queries wait for a free slot in the scheduler, not in the completion service,
+        // and report their completion to its queue themselves.
+        BlockingQueue<Future<SourceResponse>> completedQueries = new LinkedBlockingQueue<>();
         CompletionService<SourceResponse> queryCompletion = new ExecutorCompletionService<SourceResponse>(
-                queryExecutorService);
+                queryExecutorService, completedQueries);
 
         // Do NOT call source.isAvailable() when checking sources
         for (final Source source : sources) {
@@ -226,22 +483,14 @@ private QueryResponse sourceFederate(List<Source> sources, final QueryRequest qu
                 if (!futures.containsValue(source)) {
                     logger.debug("running query on source: {}", source.getId());
 
-                    try {
-                        for (PreFederatedQueryPlugin service : preQuery) {
-                            try {
-                                modifiedQueryRequest = service
-                                        .process(source, modifiedQueryRequest);
-                            } catch (PluginExecutionException e) {
-                                logger.warn("Error executing PreFederatedQueryPlugin", e);
-                            }
-                        }
-                    } catch (StopProcessingException e) {
-                        logger.warn("Plugin stopped processing", e);
-                    }
+                    modifiedQueryRequest = applyPreFederatedQueryPlugins(source,
+                            modifiedQueryRequest);
 
-                    futures.put(queryCompletion
-                            .submit(new CallableSourceResponse(source, modifiedQueryRequest)),
-                            source);
+                    futures.put(federationScheduler.submit(queryExecutorService, source,
+                            getSubjectName(modifiedQueryRequest),
+                            modifiedQueryRequest.getQuery().getTimeoutMillis(),
+                            new CallableSourceResponse(source, modifiedQueryRequest,
+                                    isCacheStatisticsEnabled), completedQueries), source);
                 } else {
                     logger.warn("Duplicate source found with name {}. Ignoring second one.",
                             source.getId());
@@ -402,10 +651,74 @@ public void setExpirationAgeInMinutes(long expirationAgeInMinutes) {
         cache.setExpirationAgeInMinutes(expirationAgeInMinutes);
     }
 
+    public void setExpirationChunkSize(int expirationChunkSize) {
+        cache.setExpirationChunkSize(expirationChunkSize);
+    }
+
+    public void setExpirationChunkDelayMillis(long expirationChunkDelayMillis) {
+        cache.setExpirationChunkDelayMillis(expirationChunkDelayMillis);
+    }
+
+    public void setExpirationTimeBudgetInSeconds(long expirationTimeBudgetInSeconds) {
+        cache.setExpirationTimeBudgetInSeconds(expirationTimeBudgetInSeconds);
+    }
+
+    public void setMaximumCachedDocuments(long maximumCachedDocuments) {
+        cache.setMaximumCachedDocuments(maximumCachedDocuments);
+    }
+
     public void setCachingEverything(boolean cachingEverything) {
         this.isCachingEverything = cachingEverything;
     }
 
+    public void setCacheStatisticsEnabled(boolean cacheStatisticsEnabled) {
+        this.isCacheStatisticsEnabled = cacheStatisticsEnabled;
+    }
+
+    public void setStaleWhileRevalidate(boolean staleWhileRevalidate) {
+        this.isStaleWhileRevalidate = staleWhileRevalidate;
+    }
+
+    /**
+     * Sets how long cached results of a source stay fresh.
+     *
+     * @param sourceTimeToLive
+     *            entries of the form {@code <source id>=<minutes>}, where a source id of
+     *            {@code *} applies to all sources without an entry of their own
+     */
+    public void setSourceTimeToLive(String[] sourceTimeToLive) {
+        Map<String, Long> timesToLive = new HashMap<>();
+        if (sourceTimeToLive != null) {
+            for (String entry : sourceTimeToLive) {
+                String sourceId = StringUtils.trim(StringUtils.substringBefore(entry, "="));
+                String minutes = StringUtils.trim(StringUtils.substringAfter(entry, "="));
+                if (StringUtils.isEmpty(sourceId) || !NumberUtils.isDigits(minutes)) {
+                    logger.warn("Ignoring invalid source time to live [{}], expected "
+                            + "<source id>=<minutes>", entry);
+                    continue;
+                }
+                timesToLive.put(sourceId, TimeUnit.MINUTES.toMillis(Long.parseLong(minutes)));
+            }
+        }
+        this.sourceTimeToLiveMillis = timesToLive;
+    }
+
+    /**
+     * Sets the scheduler that bounds the number of concurrent queries per federated source.
+     *
+     * @param federationScheduler
+     *            the scheduler, shared with other federation strategies
+     */
+    public void setFederationScheduler(FederationScheduler federationScheduler) {
+        this.federationScheduler = federationScheduler;
+    }
+
+    public void setMaximumCacheSpillSizeInMegabytes(long maximumCacheSpillSizeInMegabytes) {
+        this.maximumCacheSpillSizeInMegabytes = maximumCacheSpillSizeInMegabytes;
+        cacheBulkProcessor
+                .setMaximumSpillSize(maximumCacheSpillSizeInMegabytes * BYTES_IN_MEGABYTE);
+    }
+
     protected Runnable createMonitor(final CompletionService<SourceResponse> completionService,
             final Map<Future<SourceResponse>, Source> futures,
             final QueryResponseImpl returnResults, final QueryRequest request) {
@@ -416,6 +729,7 @@ protected Runnable createMonitor(final CompletionService<SourceResponse> complet
     public void shutdown() {
         cacheCommitPhaser.shutdown();
         cacheBulkProcessor.shutdown();
+        cacheStatistics.unregisterMBean();
     }
 
     private static class OffsetResultHandler implements Runnable {
@@ -481,9 +795,13 @@ private class CallableSourceResponse implements Callable<SourceResponse> {
 
         private final Source source;
 
-        public CallableSourceResponse(Source source, QueryRequest request) {
+        private final boolean isRecordingCacheStatistics;
+
+        public CallableSourceResponse(Source source, QueryRequest request,
+                boolean isRecordingCacheStatistics) {
             this.source = source;
             this.request = request;
+            this.isRecordingCacheStatistics = isRecordingCacheStatistics;
         }
 
         @Override
@@ -493,16 +811,27 @@ public SourceResponse call() throws Exception {
 
             if (INDEX_QUERY_MODE.equals(request.getPropertyValue(QUERY_MODE))) {
                 cacheCommitPhaser.add(sourceResponse.getResults());
-            } else if (!NATIVE_QUERY_MODE.equals(request.getPropertyValue(QUERY_MODE))) {
-                if (isCachingEverything || UPDATE_QUERY_MODE
-                        .equals(request.getPropertyValue(QUERY_MODE))) {
+            } else {
+                final boolean isAddingToCache =
+                        !NATIVE_QUERY_MODE.equals(request.getPropertyValue(QUERY_MODE)) && (
+                                isCachingEverything || UPDATE_QUERY_MODE
+                                        .equals(request.getPropertyValue(QUERY_MODE)));
+
+                if (isAddingToCache || isRecordingCacheStatistics) {
+                    // Compare with the cache before these results are added to it
                     cacheExecutorService.submit(new Runnable() {
                         @Override
                         public void run() {
-                            try {
-                                cacheBulkProcessor.add(sourceResponse.getResults());
-                            } catch (Throwable throwable) {
-                                logger.warn("Unable to add results for bulk processing", throwable);
+                            if (isRecordingCacheStatistics) {
+                                recordCacheStatistics(source, request, sourceResponse);
+                            }
+                            if (isAddingToCache) {
+                                try {
+                                    cacheBulkProcessor.add(sourceResponse.getResults());
+                                } catch (Throwable throwable) {
+                                    logger.warn("Unable to add results for bulk processing",
+                                            throwable);
+                                }
                             }
                         }
                     });
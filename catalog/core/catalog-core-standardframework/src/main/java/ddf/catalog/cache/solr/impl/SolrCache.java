@@ -82,6 +82,11 @@ public class SolrCache implements SolrCacheMBean {
 
     public static final String CACHED_DATE = "cached" + SchemaFields.DATE_SUFFIX;
 
+    /**
+     * Metacard attribute holding the {@link Date} a metacard returned from the cache was cached at
+     */
+    public static final String CACHED_DATE_ATTRIBUTE = "cached";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(SolrCache.class);
 
     private FilterAdapter filterAdapter;
@@ -102,7 +107,7 @@ public class SolrCache implements SolrCacheMBean {
 
     private long expirationIntervalInMinutes = 10;
 
-    private long expirationAgeInMinutes = TimeUnit.DAYS.toMinutes(7);
+    private final CacheExpirer cacheExpirer = new CacheExpirer();
 
     private MBeanServer mbeanServer;
 
@@ -137,7 +142,23 @@ public SolrCache(FilterAdapter adapter, SolrFilterDelegateFactory solrFilterDele
     }
 
     public SourceResponse query(QueryRequest request) throws UnsupportedQueryException {
-        return client.query(request);
+        SourceResponse response = client.query(request);
+        recordHits(response);
+        return response;
+    }
+
+    private void recordHits(SourceResponse response) {
+        // hits only matter to least recently used eviction
+        if (!cacheExpirer.isEvictionEnabled() || response == null
+                || response.getResults() == null) {
+            return;
+        }
+        for (Result result : response.getResults()) {
+            Metacard metacard = result.getMetacard();
+            if (metacard != null) {
+                cacheExpirer.recordHit(metacard.getSourceId() + metacard.getId());
+            }
+        }
     }
 
     public void create(Collection<Metacard> metacards) {
@@ -195,7 +216,36 @@ public void setExpirationIntervalInMinutes(long expirationInterval) {
     }
 
     public void setExpirationAgeInMinutes(long expirationAgeInMinutes) {
-        this.expirationAgeInMinutes = expirationAgeInMinutes;
+        cacheExpirer.setExpirationAgeInMinutes(expirationAgeInMinutes);
+    }
+
+    /**
+     * @param expirationChunkSize maximum number of documents removed from the cache at once
+     */
+    public void setExpirationChunkSize(int expirationChunkSize) {
+        cacheExpirer.setChunkSize(expirationChunkSize);
+    }
+
+    /**
+     * @param expirationChunkDelayMillis pause between two chunks of removed documents
+     */
+    public void setExpirationChunkDelayMillis(long expirationChunkDelayMillis) {
+        cacheExpirer.setChunkDelayMillis(expirationChunkDelayMillis);
+    }
+
+    /**
+     * @param expirationTimeBudgetInSeconds maximum time spent removing documents per run
+     */
+    public void setExpirationTimeBudgetInSeconds(long expirationTimeBudgetInSeconds) {
+        cacheExpirer.setTimeBudgetMillis(TimeUnit.SECONDS.toMillis(expirationTimeBudgetInSeconds));
+    }
+
+    /**
+     * @param maximumCachedDocuments maximum number of documents kept in the cache, the least
+     *                               recently used are evicted beyond it. {@code 0} for no limit.
+     */
+    public void setMaximumCachedDocuments(long maximumCachedDocuments) {
+        cacheExpirer.setMaximumDocuments(maximumCachedDocuments);
     }
 
     private void configureCacheExpirationScheduler() {
@@ -335,9 +385,8 @@ private class ExpirationRunner implements Runnable {
         public void run() {
             try {
                 LOGGER.debug("Expiring cache.");
-                server.deleteByQuery(CACHED_DATE + ":[* TO NOW-" + expirationAgeInMinutes
-                        + "MINUTES]");
-            } catch (SolrServerException | IOException e) {
+                cacheExpirer.expire(server);
+            } catch (SolrServerException | SolrException | IOException e) {
                 LOGGER.warn("Unable to expire cache.", e);
             }
         }
@@ -358,6 +407,11 @@ public MetacardImpl createMetacard(SolrDocument doc) throws MetacardCreationExce
             metacard.setSourceId(getMetacardSource(doc));
             metacard.setId(getMetacardId(doc));
 
+            Object cachedDate = doc.getFieldValue(CACHED_DATE);
+            if (cachedDate instanceof Date) {
+                metacard.setAttribute(CACHED_DATE_ATTRIBUTE, (Date) cachedDate);
+            }
+
             return metacard;
         }
 
@@ -14,11 +14,13 @@
 package ddf.catalog.impl;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -29,6 +31,7 @@
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.builder.ToStringBuilder;
 import org.codice.ddf.configuration.ConfigurationManager;
@@ -41,6 +44,8 @@
 import org.slf4j.LoggerFactory;
 import org.slf4j.ext.XLogger;
 
+import com.google.common.io.ByteStreams;
+
 import ddf.catalog.CatalogFramework;
 import ddf.catalog.Constants;
 import ddf.catalog.cache.impl.CacheKey;
@@ -96,6 +101,8 @@
 import ddf.catalog.resource.ResourceReader;
 import ddf.catalog.resource.download.DownloadException;
 import ddf.catalog.resource.download.ReliableResourceDownloadManager;
+import ddf.catalog.resource.download.ReliableResourceDownloader;
+import ddf.catalog.resource.impl.ResourceImpl;
 import ddf.catalog.resourceretriever.LocalResourceRetriever;
 import ddf.catalog.resourceretriever.RemoteResourceRetriever;
 import ddf.catalog.resourceretriever.ResourceRetriever;
@@ -1499,8 +1506,15 @@ protected ResourceResponse getResource(ResourceRequest resourceRequest, boolean
             if (productCache != null && productCache.containsValid(key, metacard)) {
                 try {
                     Resource resource = productCache.getValid(key, metacard);
-                    resourceResponse = new ResourceResponseImpl(resourceRequest, requestProperties,
-                            resource);
+                    Map<String, Serializable> responseProperties = new HashMap<>(
+                            requestProperties);
+                    long bytesToSkip = getBytesToSkip(requestProperties);
+                    if (bytesToSkip > 0) {
+                        resource = skipBytes(resource, bytesToSkip);
+                        responseProperties.put(ReliableResourceDownloader.BYTES_SKIPPED, true);
+                    }
+                    resourceResponse = new ResourceResponseImpl(resourceRequest,
+                            responseProperties, resource);
                     LOGGER.info("Successfully retrieved product from cache for metacard ID = {}",
                             metacard.getId());
                 } catch (Exception ce) {
@@ -1673,6 +1687,44 @@ protected ResourceResponse getResourceUsingResourceReader(URI resourceUri,
         return resource;
     }
 
+    private long getBytesToSkip(Map<String, Serializable> requestProperties) {
+        Serializable bytesToSkip = requestProperties.get(ResourceRetriever.BYTES_TO_SKIP);
+        if (bytesToSkip == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(bytesToSkip.toString());
+        } catch (NumberFormatException e) {
+            LOGGER.debug("Ignoring invalid {} value: {}", ResourceRetriever.BYTES_TO_SKIP,
+                    bytesToSkip);
+            return 0;
+        }
+    }
+
+    /**
+     * Returns a copy of the cached {@link Resource} positioned {@code bytesToSkip} bytes into the
+     * product so range requests can be answered from the product cache.
+     */
+    private Resource skipBytes(Resource resource, long bytesToSkip) throws IOException {
+        InputStream inputStream = resource.getInputStream();
+        if (inputStream == null) {
+            throw new IOException("Cached product " + resource.getName() + " has no content.");
+        }
+        try {
+            ByteStreams.skipFully(inputStream, bytesToSkip);
+        } catch (IOException e) {
+            IOUtils.closeQuietly(inputStream);
+            throw e;
+        }
+        ResourceImpl skippedResource = new ResourceImpl(inputStream, resource.getMimeType(),
+                resource.getName());
+        if (resource.getSize() > 0) {
+            skippedResource.setSize(resource.getSize() - bytesToSkip);
+        }
+        LOGGER.debug("Skipped {} bytes of cached product {}", bytesToSkip, resource.getName());
+        return skippedResource;
+    }
+
     /**
      * Retrieves a resource by URI.
      * <p/>
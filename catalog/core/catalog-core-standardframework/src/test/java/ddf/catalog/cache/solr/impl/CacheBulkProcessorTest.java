@@ -26,12 +26,16 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
@@ -42,6 +46,8 @@
 
 import ddf.catalog.data.Metacard;
 import ddf.catalog.data.Result;
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.data.impl.ResultImpl;
 
 @RunWith(MockitoJUnitRunner.class)
 public class CacheBulkProcessorTest {
@@ -49,6 +55,9 @@ public class CacheBulkProcessorTest {
     @Captor
     ArgumentCaptor<Collection<Metacard>> capturedMetacards;
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private CacheBulkProcessor cacheBulkProcessor;
 
     @Mock
@@ -148,6 +157,70 @@ public void updateMetacards() throws Exception {
         assertThat(capturedMetacards.getValue()).containsAll(getMetacards(mockResults));
     }
 
+    @Test
+    public void exceedsBacklogCountsDropped() throws Exception {
+        cacheBulkProcessor.setMaximumBacklogSize(5);
+        cacheBulkProcessor.setFlushInterval(TimeUnit.MINUTES.toMillis(1));
+        cacheBulkProcessor.add(getMockResults(10));
+
+        assertThat(cacheBulkProcessor.getDroppedCount()).isEqualTo(5);
+    }
+
+    @Test
+    public void exceedsBacklogSpillsToDisk() throws Exception {
+        cacheBulkProcessor.setMaximumBacklogSize(3);
+        cacheBulkProcessor.setFlushInterval(1);
+        cacheBulkProcessor.setSpillFile(temporaryFolder.newFile("spill.journal"), 1024 * 1024);
+        List<Result> results = getResults(10);
+
+        cacheBulkProcessor.add(results);
+        waitForPendingMetacardsToCache();
+
+        verify(mockSolrCache, atLeast(1)).create(capturedMetacards.capture());
+        Set<String> cachedIds = new HashSet<>();
+        for (Collection<Metacard> metacards : capturedMetacards.getAllValues()) {
+            for (Metacard metacard : metacards) {
+                cachedIds.add(metacard.getId());
+            }
+        }
+        assertThat(cachedIds).containsAll(getIds(results));
+        assertThat(cacheBulkProcessor.getDroppedCount()).isEqualTo(0);
+        assertThat(cacheBulkProcessor.getSpillSize()).isEqualTo(0);
+    }
+
+    @Test
+    public void spilledMetacardsLastWriterWins() throws Exception {
+        cacheBulkProcessor.setMaximumBacklogSize(1);
+        cacheBulkProcessor.setFlushInterval(1);
+        cacheBulkProcessor.setSpillFile(temporaryFolder.newFile("spill.journal"), 1024 * 1024);
+
+        List<Result> results = getResults(2);
+        results.add(getResult("1", "newer"));
+
+        cacheBulkProcessor.add(results);
+        waitForPendingMetacardsToCache();
+
+        verify(mockSolrCache, atLeast(1)).create(capturedMetacards.capture());
+        for (Collection<Metacard> metacards : capturedMetacards.getAllValues()) {
+            for (Metacard metacard : metacards) {
+                if ("1".equals(metacard.getId())) {
+                    assertThat(metacard.getTitle()).isEqualTo("newer");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void spillFileFull() throws Exception {
+        cacheBulkProcessor.setMaximumBacklogSize(0);
+        cacheBulkProcessor.setSpillFile(temporaryFolder.newFile("spill.journal"), 1);
+
+        cacheBulkProcessor.add(getResults(3));
+
+        assertThat(cacheBulkProcessor.getDroppedCount()).isEqualTo(3);
+        verify(mockSolrCache, never()).create(anyCollectionOf(Metacard.class));
+    }
+
     private void waitForPendingMetacardsToCache() throws InterruptedException {
         while (cacheBulkProcessor.pendingMetacards() > 0) {
             Thread.sleep(2);
@@ -164,6 +237,34 @@ private Collection<Metacard> getMetacards(List<Result> results) {
         return metacards;
     }
 
+    private Collection<String> getIds(List<Result> results) {
+        List<String> ids = new ArrayList<>(results.size());
+
+        for (Result result : results) {
+            ids.add(result.getMetacard().getId());
+        }
+
+        return ids;
+    }
+
+    private List<Result> getResults(int size) {
+        List<Result> results = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            results.add(getResult(Integer.toString(i), "original"));
+        }
+
+        return results;
+    }
+
+    private Result getResult(String id, String title) {
+        MetacardImpl metacard = new MetacardImpl();
+        metacard.setId(id);
+        metacard.setTitle(title);
+
+        return new ResultImpl(metacard);
+    }
+
     private List<Result> getMockResults(int size) {
         List<Result> results = new ArrayList<>(size);
 
@@ -0,0 +1,221 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.cache.solr.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+import java.util.List;
+
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.SolrParams;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class CacheExpirerTest {
+
+    private SolrServer server;
+
+    private CacheExpirer cacheExpirer;
+
+    @Before
+    public void setUp() throws Exception {
+        server = mock(SolrServer.class);
+        cacheExpirer = new CacheExpirer();
+        cacheExpirer.setChunkSize(1000);
+        cacheExpirer.setChunkDelayMillis(0);
+    }
+
+    @Test
+    public void expiresInSlices() throws Exception {
+        QueryResponse firstSlice = response(2500, document("first", new Date(1000)));
+        QueryResponse secondSlice = response(1500, document("second", new Date(2000)));
+        QueryResponse lastSlice = response(500);
+        when(server.query(any(SolrParams.class)))
+                .thenReturn(firstSlice, response(1000), secondSlice, response(1000), lastSlice);
+
+        assertThat(cacheExpirer.expire(server)).isEqualTo(2500);
+
+        ArgumentCaptor<String> deletes = ArgumentCaptor.forClass(String.class);
+        verify(server, times(3)).deleteByQuery(deletes.capture());
+        List<String> queries = deletes.getAllValues();
+        assertThat(queries.get(0))
+                .isEqualTo(SolrCache.CACHED_DATE + ":[* TO 1970-01-01T00:00:01.000Z]");
+        assertThat(queries.get(1)).isEqualTo(SolrCache.CACHED_DATE
+                + ":{1970-01-01T00:00:01.000Z TO 1970-01-01T00:00:02.000Z]");
+        assertThat(queries.get(2)).startsWith(SolrCache.CACHED_DATE
+                + ":{1970-01-01T00:00:02.000Z TO ");
+        verify(server, never()).commit();
+    }
+
+    @Test
+    public void advancesThroughDocumentsCachedInTheSameSecond() throws Exception {
+        // slices end within the same second, and the second slice holds more documents than
+        // the chunk size because they share its last millisecond
+        QueryResponse firstSlice = response(3000, document("first", new Date(5001)));
+        QueryResponse secondSlice = response(2000, document("second", new Date(5002)));
+        QueryResponse lastSlice = response(800, document("third", new Date(5999)));
+        when(server.query(any(SolrParams.class)))
+                .thenReturn(firstSlice, response(1000), secondSlice, response(1200), lastSlice);
+
+        assertThat(cacheExpirer.expire(server)).isEqualTo(3000);
+
+        ArgumentCaptor<String> deletes = ArgumentCaptor.forClass(String.class);
+        verify(server, times(3)).deleteByQuery(deletes.capture());
+        List<String> queries = deletes.getAllValues();
+        assertThat(queries.get(0))
+                .isEqualTo(SolrCache.CACHED_DATE + ":[* TO 1970-01-01T00:00:05.001Z]");
+        assertThat(queries.get(1)).isEqualTo(SolrCache.CACHED_DATE
+                + ":{1970-01-01T00:00:05.001Z TO 1970-01-01T00:00:05.002Z]");
+        assertThat(queries.get(2)).startsWith(SolrCache.CACHED_DATE
+                + ":{1970-01-01T00:00:05.002Z TO ");
+    }
+
+    @Test
+    public void stopsWhenSliceDoesNotAdvance() throws Exception {
+        when(server.query(any(SolrParams.class))).thenReturn(
+                response(3000, document("first", new Date(5001))), response(1000),
+                response(2000, document("first", new Date(5001))));
+
+        assertThat(cacheExpirer.expire(server)).isEqualTo(1000);
+
+        verify(server, times(1)).deleteByQuery(anyString());
+    }
+
+    @Test
+    public void stopsWhenTimeBudgetIsSpent() throws Exception {
+        cacheExpirer.setTimeBudgetMillis(0);
+        when(server.query(any(SolrParams.class)))
+                .thenReturn(response(2500, document("first", new Date(1000))));
+
+        cacheExpirer.expire(server);
+
+        verify(server, times(1)).deleteByQuery(anyString());
+    }
+
+    @Test
+    public void nothingToExpire() throws Exception {
+        when(server.query(any(SolrParams.class))).thenReturn(response(0));
+
+        assertThat(cacheExpirer.expire(server)).isEqualTo(0);
+
+        verify(server, never()).deleteByQuery(anyString());
+        verify(server, never()).commit();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void evictsLeastRecentlyUsed() throws Exception {
+        cacheExpirer.setMaximumDocuments(1);
+        cacheExpirer.recordHit("hit");
+
+        QueryResponse page = response(3, document("hit", new Date(1000)),
+                document("old", new Date(2000)), document("older", new Date(3000)));
+        when(page.getNextCursorMark()).thenReturn("next");
+        when(server.query(any(SolrParams.class))).thenReturn(response(0), response(3), page);
+
+        assertThat(cacheExpirer.expire(server)).isEqualTo(2);
+
+        ArgumentCaptor<List> ids = ArgumentCaptor.forClass(List.class);
+        verify(server).deleteById(ids.capture());
+        assertThat((List<String>) ids.getValue()).containsExactly("old", "older");
+
+        ArgumentCaptor<SolrParams> queries = ArgumentCaptor.forClass(SolrParams.class);
+        verify(server, times(3)).query(queries.capture());
+        SolrParams candidates = queries.getAllValues().get(2);
+        assertThat(candidates.get(CommonParams.FQ)).startsWith(SolrCache.CACHED_DATE + ":{")
+                .endsWith(" TO *]");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void hitsNotTrackedWithoutMaximum() throws Exception {
+        cacheExpirer.recordHit("hit");
+        cacheExpirer.setMaximumDocuments(1);
+
+        QueryResponse page = response(3, document("hit", new Date(1000)),
+                document("old", new Date(2000)), document("older", new Date(3000)));
+        when(server.query(any(SolrParams.class))).thenReturn(response(0), response(3), page);
+
+        assertThat(cacheExpirer.expire(server)).isEqualTo(2);
+
+        ArgumentCaptor<List> ids = ArgumentCaptor.forClass(List.class);
+        verify(server).deleteById(ids.capture());
+        assertThat((List<String>) ids.getValue()).containsExactly("hit", "old");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void tracksMostRecentHits() throws Exception {
+        cacheExpirer = new CacheExpirer(1);
+        cacheExpirer.setChunkDelayMillis(0);
+        cacheExpirer.setMaximumDocuments(1);
+        cacheExpirer.recordHit("first");
+        Thread.sleep(10);
+        cacheExpirer.recordHit("second");
+        Thread.sleep(10);
+        cacheExpirer.recordHit("third");
+
+        QueryResponse page = response(3, document("third", new Date(1000)),
+                document("second", new Date(2000)), document("first", new Date(3000)));
+        when(server.query(any(SolrParams.class))).thenReturn(response(0), response(3), page);
+
+        assertThat(cacheExpirer.expire(server)).isEqualTo(2);
+
+        ArgumentCaptor<List> ids = ArgumentCaptor.forClass(List.class);
+        verify(server).deleteById(ids.capture());
+        assertThat((List<String>) ids.getValue()).containsExactly("second", "first");
+    }
+
+    @Test
+    public void withinMaximumDocuments() throws Exception {
+        cacheExpirer.setMaximumDocuments(10);
+        when(server.query(any(SolrParams.class))).thenReturn(response(0), response(3));
+
+        cacheExpirer.expire(server);
+
+        verify(server, never()).deleteById(anyListOf(String.class));
+    }
+
+    private QueryResponse response(long numFound, SolrDocument... documents) {
+        SolrDocumentList results = new SolrDocumentList();
+        results.setNumFound(numFound);
+        for (SolrDocument document : documents) {
+            results.add(document);
+        }
+        QueryResponse response = mock(QueryResponse.class);
+        when(response.getResults()).thenReturn(results);
+        return response;
+    }
+
+    private SolrDocument document(String uniqueId, Date cachedDate) {
+        SolrDocument document = new SolrDocument();
+        document.setField(SolrCache.METACARD_UNIQUE_ID_NAME, uniqueId);
+        document.setField(SolrCache.CACHED_DATE, cachedDate);
+        return document;
+    }
+}
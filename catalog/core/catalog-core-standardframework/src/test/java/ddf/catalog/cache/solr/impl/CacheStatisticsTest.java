@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.cache.solr.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+import java.util.Date;
+
+import org.geotools.filter.FilterFactoryImpl;
+import org.junit.Test;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.operation.impl.QueryImpl;
+
+public class CacheStatisticsTest {
+
+    private FilterFactory filterFactory = new FilterFactoryImpl();
+
+    @Test
+    public void hitRatiosPerSourceAndShape() {
+        CacheStatistics cacheStatistics = new CacheStatistics();
+
+        cacheStatistics.recordHit("source1", "contextual");
+        cacheStatistics.recordHit("source1", "spatial");
+        cacheStatistics.recordStaleHit("source1", "contextual");
+        cacheStatistics.recordMiss("source2", "contextual");
+
+        assertThat(cacheStatistics.getHitCount()).isEqualTo(2);
+        assertThat(cacheStatistics.getStaleHitCount()).isEqualTo(1);
+        assertThat(cacheStatistics.getMissCount()).isEqualTo(1);
+        assertThat(cacheStatistics.getHitRatio()).isEqualTo(0.5);
+        assertThat(cacheStatistics.getSourceHitRatios())
+                .containsOnly(entry("source1", 2.0 / 3), entry("source2", 0.0));
+        assertThat(cacheStatistics.getQueryShapeHitRatios())
+                .containsOnly(entry("contextual", 1.0 / 3), entry("spatial", 1.0));
+    }
+
+    @Test
+    public void reset() {
+        CacheStatistics cacheStatistics = new CacheStatistics();
+        cacheStatistics.recordHit("source1", "contextual");
+        cacheStatistics.recordRefresh();
+
+        cacheStatistics.reset();
+
+        assertThat(cacheStatistics.getHitCount()).isZero();
+        assertThat(cacheStatistics.getRefreshCount()).isZero();
+        assertThat(cacheStatistics.getHitRatio()).isZero();
+        assertThat(cacheStatistics.getSourceHitRatios()).isEmpty();
+    }
+
+    @Test
+    public void queryShapeCombinesFilterCategories() {
+        Filter keyword = filterFactory.like(filterFactory.property(Metacard.ANY_TEXT), "foo");
+        Filter area = filterFactory.bbox(Metacard.ANY_GEO, 0, 0, 10, 10, "EPSG:4326");
+        Filter modified = filterFactory.after(filterFactory.property(Metacard.MODIFIED),
+                filterFactory.literal(new Date()));
+
+        assertThat(CacheStatistics.getQueryShape(new QueryImpl(keyword))).isEqualTo("contextual");
+        assertThat(CacheStatistics.getQueryShape(new QueryImpl(filterFactory
+                .and(keyword, filterFactory.or(area, filterFactory.not(modified))))))
+                .isEqualTo("contextual+spatial+temporal");
+    }
+
+    @Test
+    public void queryShapeOfXpathAndInclude() {
+        Filter xpath = filterFactory.like(filterFactory.property("//title"), "foo");
+
+        assertThat(CacheStatistics.getQueryShape(xpath)).isEqualTo("xpath");
+        assertThat(CacheStatistics.getQueryShape(Filter.INCLUDE)).isEqualTo("other");
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.federation.layered.replication;
+
+/**
+ * Thrown when an operation could not be replicated to the parent node.
+ */
+public class ReplicationException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean retryable;
+
+    public ReplicationException(String message, boolean retryable) {
+        super(message);
+        this.retryable = retryable;
+    }
+
+    public ReplicationException(String message, Throwable cause, boolean retryable) {
+        super(message, cause);
+        this.retryable = retryable;
+    }
+
+    /**
+     * @return {@code true} if the failure is transient, e.g. the parent is unreachable or returned
+     * a server error, and the operation should be sent again later
+     */
+    public boolean isRetryable() {
+        return retryable;
+    }
+}
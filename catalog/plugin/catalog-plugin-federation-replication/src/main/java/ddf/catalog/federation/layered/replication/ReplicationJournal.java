@@ -0,0 +1,308 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.federation.layered.replication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only, file based journal of pending {@link ReplicationOperation}s. Every operation is
+ * written to the journal before it is acknowledged to the ingest thread and an acknowledgement
+ * record is appended once the parent has accepted it, so unacknowledged operations survive a
+ * restart. Operations that can never be delivered are copied to a separate dead letter file, and
+ * the ids of the metacards they belong to are remembered for as long as that file exists.
+ * <p/>
+ * This class is not thread safe; {@link ReplicationQueue} serializes access to it.
+ */
+public class ReplicationJournal {
+
+    public static final String JOURNAL_FILE_NAME = "replication.journal";
+
+    public static final String DEAD_LETTER_FILE_NAME = "replication.deadletter";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicationJournal.class);
+
+    private static final String KARAF_HOME = "karaf.home";
+
+    private static final byte OPERATION_RECORD = 'O';
+
+    private static final byte ACK_RECORD = 'A';
+
+    private static final String NO_VALUE = "";
+
+    private final File directory;
+
+    private final File journalFile;
+
+    private final File deadLetterFile;
+
+    private final Set<String> deadLetteredIds = new HashSet<>();
+
+    private DataOutputStream journalOut;
+
+    private long nextSequence = 1;
+
+    private long acknowledgedSinceCompaction = 0;
+
+    /**
+     * @param directory directory the journal files are kept in; relative paths are resolved
+     *                  against {@code karaf.home} when it is defined
+     */
+    public ReplicationJournal(String directory) {
+        this.directory = resolveDirectory(directory);
+        this.journalFile = new File(this.directory, JOURNAL_FILE_NAME);
+        this.deadLetterFile = new File(this.directory, DEAD_LETTER_FILE_NAME);
+    }
+
+    /**
+     * Reads the journal from disk and opens it for appending.
+     *
+     * @return the operations that were never acknowledged, in sequence order
+     * @throws IOException if the journal directory cannot be created or the journal cannot be read
+     */
+    public List<ReplicationOperation> open() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException(
+                    "Unable to create replication journal directory " + directory.getAbsolutePath());
+        }
+
+        Map<Long, ReplicationOperation> pending = new LinkedHashMap<>();
+        if (journalFile.exists()) {
+            readJournal(pending);
+        }
+
+        deadLetteredIds.clear();
+        if (deadLetterFile.exists()) {
+            readDeadLetteredIds();
+        }
+
+        List<ReplicationOperation> operations = new ArrayList<>(pending.values());
+        compact(operations);
+
+        LOGGER.debug("Opened replication journal {} with {} pending operation(s).",
+                journalFile.getAbsolutePath(), operations.size());
+
+        return operations;
+    }
+
+    /**
+     * Creates a new operation with the next sequence number and appends it to the journal.
+     */
+    public ReplicationOperation append(ReplicationOperation.Type type, String metacardId,
+            String mimeType, byte[] payload) throws IOException {
+        ensureOpen();
+        ReplicationOperation operation = new ReplicationOperation(nextSequence++, type,
+                metacardId, mimeType, payload, System.currentTimeMillis());
+        writeOperation(journalOut, operation);
+        journalOut.flush();
+        return operation;
+    }
+
+    /**
+     * Records that the operation was replicated and no longer needs to be replayed.
+     */
+    public void acknowledge(ReplicationOperation operation) throws IOException {
+        ensureOpen();
+        journalOut.writeByte(ACK_RECORD);
+        journalOut.writeLong(operation.getSequence());
+        journalOut.flush();
+        acknowledgedSinceCompaction++;
+    }
+
+    /**
+     * Copies the operation to the dead letter file and acknowledges it in the journal.
+     */
+    public void deadLetter(ReplicationOperation operation) throws IOException {
+        try (DataOutputStream deadLetterOut = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(deadLetterFile, true)))) {
+            writeOperation(deadLetterOut, operation);
+        }
+        if (operation.getMetacardId() != null) {
+            deadLetteredIds.add(operation.getMetacardId());
+        }
+        acknowledge(operation);
+    }
+
+    /**
+     * @return true if an operation for the given metacard has been moved to the dead letter file
+     */
+    public boolean isDeadLettered(String metacardId) {
+        return metacardId != null && deadLetteredIds.contains(metacardId);
+    }
+
+    /**
+     * @return the number of acknowledgements written since the journal was last compacted
+     */
+    public long getAcknowledgedSinceCompaction() {
+        return acknowledgedSinceCompaction;
+    }
+
+    /**
+     * Rewrites the journal so that it only contains the given pending operations. The new journal
+     * is written to a temporary file and moved over the old one so a crash during compaction
+     * leaves the previous journal intact.
+     */
+    public void compact(Collection<ReplicationOperation> pending) throws IOException {
+        close();
+
+        File compacted = new File(directory, JOURNAL_FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(compacted, false)))) {
+            for (ReplicationOperation operation : pending) {
+                writeOperation(out, operation);
+            }
+        }
+        Files.move(compacted.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        acknowledgedSinceCompaction = 0;
+        ensureOpen();
+    }
+
+    public void close() {
+        if (journalOut != null) {
+            try {
+                journalOut.close();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to close replication journal {}", journalFile, e);
+            }
+            journalOut = null;
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (journalOut == null) {
+            journalOut = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(journalFile, true)));
+        }
+    }
+
+    private void readJournal(Map<Long, ReplicationOperation> pending) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(journalFile)))) {
+            while (true) {
+                byte recordType;
+                try {
+                    recordType = in.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                try {
+                    if (recordType == OPERATION_RECORD) {
+                        ReplicationOperation operation = readOperation(in);
+                        pending.put(operation.getSequence(), operation);
+                        nextSequence = Math.max(nextSequence, operation.getSequence() + 1);
+                    } else if (recordType == ACK_RECORD) {
+                        pending.remove(in.readLong());
+                    } else {
+                        LOGGER.warn(
+                                "Replication journal {} is corrupt; ignoring everything after an unknown record.",
+                                journalFile);
+                        break;
+                    }
+                } catch (EOFException e) {
+                    // a crash while appending can leave a partial record at the end of the journal
+                    LOGGER.warn("Ignoring truncated record at the end of replication journal {}",
+                            journalFile);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void readDeadLetteredIds() throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(deadLetterFile)))) {
+            while (in.read() == OPERATION_RECORD) {
+                ReplicationOperation operation = readOperation(in);
+                if (operation.getMetacardId() != null) {
+                    deadLetteredIds.add(operation.getMetacardId());
+                }
+            }
+        } catch (EOFException e) {
+            LOGGER.warn("Ignoring truncated record at the end of dead letter file {}",
+                    deadLetterFile);
+        }
+    }
+
+    private void writeOperation(DataOutputStream out, ReplicationOperation operation)
+            throws IOException {
+        out.writeByte(OPERATION_RECORD);
+        out.writeLong(operation.getSequence());
+        out.writeUTF(operation.getType().name());
+        out.writeUTF(operation.getMetacardId() == null ? NO_VALUE : operation.getMetacardId());
+        out.writeUTF(operation.getMimeType() == null ? NO_VALUE : operation.getMimeType());
+        out.writeLong(operation.getEnqueuedTime());
+        byte[] payload = operation.getPayload();
+        if (payload == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(payload.length);
+            out.write(payload);
+        }
+    }
+
+    private ReplicationOperation readOperation(DataInputStream in) throws IOException {
+        long sequence = in.readLong();
+        ReplicationOperation.Type type = ReplicationOperation.Type.valueOf(in.readUTF());
+        String metacardId = emptyToNull(in.readUTF());
+        String mimeType = emptyToNull(in.readUTF());
+        long enqueuedTime = in.readLong();
+        int length = in.readInt();
+        byte[] payload = null;
+        if (length >= 0) {
+            payload = new byte[length];
+            in.readFully(payload);
+        }
+        return new ReplicationOperation(sequence, type, metacardId, mimeType, payload,
+                enqueuedTime);
+    }
+
+    private String emptyToNull(String value) {
+        return NO_VALUE.equals(value) ? null : value;
+    }
+
+    private File resolveDirectory(String path) {
+        File dir = new File(path);
+        String karafHome = System.getProperty(KARAF_HOME);
+        if (!dir.isAbsolute() && karafHome != null) {
+            dir = new File(karafHome, path);
+        }
+        return dir;
+    }
+}
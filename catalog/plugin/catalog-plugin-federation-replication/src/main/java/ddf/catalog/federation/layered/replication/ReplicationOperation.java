@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.federation.layered.replication;
+
+import java.util.Arrays;
+
+/**
+ * A single create, update or delete waiting to be replicated to the parent node. The payload is the
+ * already transformed metacard so that replaying the operation after a restart does not depend on
+ * the transformer or the local catalog.
+ */
+public class ReplicationOperation {
+
+    public enum Type {
+        CREATE, UPDATE, DELETE
+    }
+
+    private final long sequence;
+
+    private final Type type;
+
+    private final String metacardId;
+
+    private final String mimeType;
+
+    private final byte[] payload;
+
+    private final long enqueuedTime;
+
+    private int attempts;
+
+    public ReplicationOperation(long sequence, Type type, String metacardId, String mimeType,
+            byte[] payload, long enqueuedTime) {
+        if (type == null) {
+            throw new IllegalArgumentException("Replication operation type cannot be null.");
+        }
+        this.sequence = sequence;
+        this.type = type;
+        this.metacardId = metacardId;
+        this.mimeType = mimeType;
+        this.payload = payload;
+        this.enqueuedTime = enqueuedTime;
+    }
+
+    /**
+     * @return the journal sequence number; operations are replicated in ascending sequence order
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getMetacardId() {
+        return metacardId;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public long getEnqueuedTime() {
+        return enqueuedTime;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    int incrementAttempts() {
+        return ++attempts;
+    }
+
+    @Override
+    public String toString() {
+        return "ReplicationOperation [sequence=" + sequence + ", type=" + type + ", metacardId="
+                + metacardId + ", mimeType=" + mimeType + ", payloadLength=" + (payload == null ?
+                0 :
+                payload.length) + ", attempts=" + attempts + "]";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ReplicationOperation)) {
+            return false;
+        }
+        ReplicationOperation that = (ReplicationOperation) o;
+        return sequence == that.sequence && type == that.type && Arrays
+                .equals(payload, that.payload) && (metacardId == null ?
+                that.metacardId == null :
+                metacardId.equals(that.metacardId));
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (sequence ^ (sequence >>> 32));
+    }
+}
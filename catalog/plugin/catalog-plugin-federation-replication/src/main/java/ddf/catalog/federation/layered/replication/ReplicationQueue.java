@@ -0,0 +1,331 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.federation.layered.replication;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Durable outbound queue of operations to replicate to the parent node.
+ * <p/>
+ * Operations are journaled by {@link #enqueue} on the ingest thread and delivered by a single
+ * background thread in journal order, which keeps creates, updates and deletes of the same
+ * metacard in order. Each drain sends up to {@code batchSize} operations over the same client
+ * before yielding. When the parent is unavailable the head of the queue is retried with
+ * exponential back-off for as long as the outage lasts; only operations the parent rejects
+ * outright are moved to the dead letter file so they do not block the queue. Later
+ * operations for a metacard with a dead-lettered operation are held back in the dead letter file
+ * behind it rather than sent, so replaying that file applies them in their original order.
+ */
+public class ReplicationQueue implements ReplicationQueueMBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicationQueue.class);
+
+    private static final int COMPACTION_THRESHOLD = 1000;
+
+    private final ReplicationJournal journal;
+
+    private final ScheduledExecutorService executor;
+
+    private final LinkedList<ReplicationOperation> pending = new LinkedList<>();
+
+    private final AtomicLong replicatedCount = new AtomicLong();
+
+    private final AtomicLong failureCount = new AtomicLong();
+
+    private final AtomicLong deadLetterCount = new AtomicLong();
+
+    private volatile ReplicationSender sender;
+
+    private int batchSize = 100;
+
+    private long initialRetryDelayMillis = TimeUnit.SECONDS.toMillis(1);
+
+    private long maxRetryDelayMillis = TimeUnit.MINUTES.toMillis(5);
+
+    private int consecutiveFailures = 0;
+
+    private boolean drainScheduled = false;
+
+    private ObjectName objectName;
+
+    private MBeanServer mbeanServer;
+
+    public ReplicationQueue(ReplicationJournal journal) {
+        this(journal, Executors.newSingleThreadScheduledExecutor());
+    }
+
+    ReplicationQueue(ReplicationJournal journal, ScheduledExecutorService executor) {
+        this.journal = journal;
+        this.executor = executor;
+    }
+
+    public void init() throws IOException {
+        synchronized (this) {
+            pending.addAll(journal.open());
+            if (!pending.isEmpty()) {
+                LOGGER.info("Resuming replication of {} journaled operation(s).",
+                        pending.size());
+            }
+        }
+
+        configureMBean();
+        scheduleDrain(0);
+    }
+
+    public void destroy() {
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                LOGGER.warn("Replication queue did not terminate.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            journal.close();
+        }
+
+        try {
+            if (objectName != null && mbeanServer != null) {
+                mbeanServer.unregisterMBean(objectName);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Exception unregistering MBean: ", e);
+        }
+    }
+
+    /**
+     * Journals an operation and schedules it for replication. Once this method returns the
+     * operation will be delivered even if the parent is down or the node restarts.
+     *
+     * @throws IOException if the operation could not be written to the journal
+     */
+    public void enqueue(ReplicationOperation.Type type, String metacardId, String mimeType,
+            byte[] payload) throws IOException {
+        synchronized (this) {
+            pending.add(journal.append(type, metacardId, mimeType, payload));
+        }
+        scheduleDrain(0);
+    }
+
+    public void setSender(ReplicationSender sender) {
+        this.sender = sender;
+        scheduleDrain(0);
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public void setInitialRetryDelayMillis(long initialRetryDelayMillis) {
+        this.initialRetryDelayMillis = Math.max(1, initialRetryDelayMillis);
+    }
+
+    public void setMaxRetryDelayMillis(long maxRetryDelayMillis) {
+        this.maxRetryDelayMillis = Math.max(1, maxRetryDelayMillis);
+    }
+
+    @Override
+    public synchronized int getQueueDepth() {
+        return pending.size();
+    }
+
+    @Override
+    public synchronized long getLagMillis() {
+        ReplicationOperation head = pending.peek();
+        if (head == null) {
+            return 0;
+        }
+        return Math.max(0, System.currentTimeMillis() - head.getEnqueuedTime());
+    }
+
+    @Override
+    public long getReplicatedCount() {
+        return replicatedCount.get();
+    }
+
+    @Override
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    @Override
+    public long getDeadLetterCount() {
+        return deadLetterCount.get();
+    }
+
+    private void scheduleDrain(long delayMillis) {
+        synchronized (this) {
+            if (drainScheduled || executor.isShutdown()) {
+                return;
+            }
+            drainScheduled = true;
+        }
+        try {
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    drain();
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Replication queue is shutting down; operations remain journaled.", e);
+        }
+    }
+
+    private void drain() {
+        synchronized (this) {
+            drainScheduled = false;
+        }
+
+        ReplicationSender currentSender = sender;
+        if (currentSender == null || !currentSender.isAvailable()) {
+            return;
+        }
+
+        for (ReplicationOperation operation : nextBatch()) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+
+            if (isHeldBack(operation)) {
+                LOGGER.warn("Holding back {} behind an earlier dead-lettered operation for the "
+                        + "same metacard.", operation);
+                deadLetterCount.incrementAndGet();
+                complete(operation, true);
+                continue;
+            }
+
+            try {
+                currentSender.send(operation);
+                consecutiveFailures = 0;
+                replicatedCount.incrementAndGet();
+                complete(operation, false);
+            } catch (ReplicationException e) {
+                failureCount.incrementAndGet();
+                int attempts = operation.incrementAttempts();
+                if (!e.isRetryable()) {
+                    LOGGER.warn("Giving up on replicating {} after {} attempt(s).", operation,
+                            attempts, e);
+                    deadLetterCount.incrementAndGet();
+                    complete(operation, true);
+                } else {
+                    // the parent is unreachable or failing, which says nothing about the
+                    // operation itself, so it is retried until delivered; stop at it so later
+                    // operations are not sent out of order
+                    consecutiveFailures++;
+                    long delay = getRetryDelay();
+                    LOGGER.debug("Unable to replicate {}, retrying in {} ms.", operation, delay,
+                            e);
+                    scheduleDrain(delay);
+                    return;
+                }
+            }
+        }
+
+        synchronized (this) {
+            if (!pending.isEmpty()) {
+                scheduleDrain(0);
+            }
+        }
+    }
+
+    private synchronized List<ReplicationOperation> nextBatch() {
+        List<ReplicationOperation> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+        for (ReplicationOperation operation : pending) {
+            if (batch.size() >= batchSize) {
+                break;
+            }
+            batch.add(operation);
+        }
+        return batch;
+    }
+
+    private synchronized boolean isHeldBack(ReplicationOperation operation) {
+        return journal.isDeadLettered(operation.getMetacardId());
+    }
+
+    private synchronized void complete(ReplicationOperation operation, boolean deadLetter) {
+        try {
+            if (deadLetter) {
+                journal.deadLetter(operation);
+            } else {
+                journal.acknowledge(operation);
+            }
+            pending.remove(operation);
+
+            if (journal.getAcknowledgedSinceCompaction() >= COMPACTION_THRESHOLD) {
+                journal.compact(pending);
+            }
+        } catch (IOException e) {
+            // the operation stays in the journal and will be replayed, possibly twice, on restart
+            pending.remove(operation);
+            LOGGER.warn("Unable to record completion of {} in the replication journal.",
+                    operation, e);
+        }
+    }
+
+    private long getRetryDelay() {
+        int exponent = Math.min(consecutiveFailures - 1, 30);
+        long delay = initialRetryDelayMillis << exponent;
+        if (delay <= 0 || delay > maxRetryDelayMillis) {
+            return maxRetryDelayMillis;
+        }
+        return delay;
+    }
+
+    private void configureMBean() {
+        mbeanServer = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            objectName = new ObjectName(ReplicationQueueMBean.OBJECT_NAME);
+        } catch (MalformedObjectNameException e) {
+            LOGGER.info("Could not create object name", e);
+            return;
+        }
+
+        try {
+            try {
+                mbeanServer.registerMBean(new StandardMBean(this, ReplicationQueueMBean.class),
+                        objectName);
+            } catch (InstanceAlreadyExistsException e) {
+                LOGGER.info("Re-registering Replication Queue MBean");
+                mbeanServer.unregisterMBean(objectName);
+                mbeanServer.registerMBean(new StandardMBean(this, ReplicationQueueMBean.class),
+                        objectName);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Could not register MBean.", e);
+        }
+    }
+}
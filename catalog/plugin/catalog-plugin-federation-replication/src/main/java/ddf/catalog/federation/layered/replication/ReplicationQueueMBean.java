@@ -0,0 +1,48 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.federation.layered.replication;
+
+/**
+ * Exposes the state of the outbound replication queue over JMX.
+ */
+public interface ReplicationQueueMBean {
+
+    String OBJECT_NAME = "ddf.catalog.federation.layered.replication:service=replication-queue";
+
+    /**
+     * @return number of operations waiting to be replicated
+     */
+    int getQueueDepth();
+
+    /**
+     * @return age in milliseconds of the oldest operation waiting to be replicated, or 0 if the
+     * queue is empty
+     */
+    long getLagMillis();
+
+    /**
+     * @return number of operations successfully replicated since startup
+     */
+    long getReplicatedCount();
+
+    /**
+     * @return number of failed send attempts since startup
+     */
+    long getFailureCount();
+
+    /**
+     * @return number of operations moved to the dead letter file since startup
+     */
+    long getDeadLetterCount();
+}
@@ -0,0 +1,35 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.federation.layered.replication;
+
+/**
+ * Delivers {@link ReplicationOperation}s to the parent node.
+ */
+public interface ReplicationSender {
+
+    /**
+     * Sends a single operation to the parent.
+     *
+     * @param operation the operation to replicate
+     * @throws ReplicationException if the parent did not accept the operation;
+     *                              {@link ReplicationException#isRetryable()} tells the caller
+     *                              whether sending it again may succeed
+     */
+    void send(ReplicationOperation operation) throws ReplicationException;
+
+    /**
+     * @return {@code true} if the sender has a parent to replicate to
+     */
+    boolean isAvailable();
+}
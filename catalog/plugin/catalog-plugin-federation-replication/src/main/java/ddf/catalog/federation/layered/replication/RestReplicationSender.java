@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.federation.layered.replication;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.apache.cxf.jaxrs.client.WebClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ReplicationSender} that replicates operations to the parent's REST endpoint.
+ */
+public class RestReplicationSender implements ReplicationSender {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RestReplicationSender.class);
+
+    private volatile WebClient client;
+
+    public void setParentAddress(String parentAddress) {
+        if (parentAddress == null) {
+            client = null;
+        } else {
+            client = WebClient.create(parentAddress, true);
+        }
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return client != null;
+    }
+
+    @Override
+    public void send(ReplicationOperation operation) throws ReplicationException {
+        WebClient baseClient = client;
+        if (baseClient == null) {
+            throw new ReplicationException("No parent address is configured.", true);
+        }
+
+        // WebClient keeps path state, so each operation gets its own copy
+        WebClient operationClient = WebClient.fromClient(baseClient);
+        operationClient.type(getValidMimeType(operation.getMimeType()));
+
+        Response response;
+        try {
+            switch (operation.getType()) {
+            case CREATE:
+                response = operationClient.post(operation.getPayload());
+                break;
+            case UPDATE:
+                response = operationClient.path(operation.getMetacardId())
+                        .put(operation.getPayload());
+                break;
+            case DELETE:
+                response = operationClient.path(operation.getMetacardId()).delete();
+                break;
+            default:
+                throw new ReplicationException("Unknown operation type " + operation.getType(),
+                        false);
+            }
+        } catch (ProcessingException e) {
+            throw new ReplicationException("Unable to reach parent.", e, true);
+        }
+
+        try {
+            int status = response.getStatus();
+            LOGGER.debug("Replicated {}, parent responded with status {}", operation, status);
+
+            if (status >= 500) {
+                throw new ReplicationException("Parent responded with status " + status, true);
+            } else if (status >= 400) {
+                throw new ReplicationException("Parent rejected operation with status " + status,
+                        false);
+            }
+        } finally {
+            response.close();
+        }
+    }
+
+    private String getValidMimeType(String mimeTypeValue) {
+        if (mimeTypeValue == null) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+        return mimeTypeValue;
+    }
+}
@@ -14,14 +14,8 @@
 package ddf.catalog.federation.layered.replication;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.util.List;
 
-import javax.ws.rs.core.MediaType;
-import javax.ws.rs.core.Response;
-
-import org.apache.commons.lang.builder.ToStringBuilder;
-import org.apache.cxf.jaxrs.client.WebClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,6 +31,12 @@
 import ddf.catalog.transform.CatalogTransformerException;
 import ddf.catalog.transform.MetacardTransformer;
 
+/**
+ * {@link PostIngestPlugin} that replicates creates, updates and deletes to a parent node's REST
+ * endpoint. Operations are transformed on the ingest thread and handed to a durable
+ * {@link ReplicationQueue}, which delivers them in the background so a slow or unavailable parent
+ * does not stall ingest.
+ */
 public class RestReplicatorPlugin implements PostIngestPlugin {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RestReplicatorPlugin.class);
@@ -48,7 +48,9 @@ public class RestReplicatorPlugin implements PostIngestPlugin {
 
     private MetacardTransformer transformer = null;
 
-    private WebClient client;
+    private final RestReplicationSender sender = new RestReplicationSender();
+
+    private ReplicationQueue replicationQueue;
 
     public RestReplicatorPlugin(String endpointAddress) {
         setParentAddress(endpointAddress);
@@ -57,16 +59,13 @@ public RestReplicatorPlugin(String endpointAddress) {
     @Override
     public CreateResponse process(CreateResponse input) throws PluginExecutionException {
 
-        if (client != null && transformer != null) {
+        if (parentAddress != null && transformer != null) {
 
             for (Metacard m : input.getCreatedMetacards()) {
 
-                String data = transform(m, client);
+                replicate(ReplicationOperation.Type.CREATE, m.getId(), m);
 
-                Response r = client.post(data);
-
-                LOGGER.debug("Posted the following GeoJSON: {}\n", data);
-                LOGGER.debug("RESPONSE: [{}]", ToStringBuilder.reflectionToString(r));
+                LOGGER.debug("Queued create of [{}] for replication", m.getId());
             }
         }
 
@@ -76,11 +75,7 @@ public CreateResponse process(CreateResponse input) throws PluginExecutionExcept
     @Override
     public UpdateResponse process(UpdateResponse input) throws PluginExecutionException {
 
-        if (client != null && transformer != null) {
-
-            WebClient updateClient = WebClient.fromClient(client);
-
-            updateClient.type(MediaType.APPLICATION_JSON);
+        if (parentAddress != null && transformer != null) {
 
             List<Update> updates = input.getUpdatedMetacards();
 
@@ -102,15 +97,11 @@ public UpdateResponse process(UpdateResponse input) throws PluginExecutionExcept
                         && request.getUpdates().get(i) != null
                         && request.getUpdates().get(i).getKey() != null) {
 
-                    updateClient.path(request.getUpdates().get(i).getKey());
+                    String id = request.getUpdates().get(i).getKey().toString();
 
-                    Metacard newMetacard = update.getNewMetacard();
+                    replicate(ReplicationOperation.Type.UPDATE, id, update.getNewMetacard());
 
-                    String newData = transform(newMetacard, updateClient);
-
-                    Response r = updateClient.put(newData);
-
-                    LOGGER.debug("RESPONSE: [{}]", ToStringBuilder.reflectionToString(r));
+                    LOGGER.debug("Queued update of [{}] for replication", id);
                 }
 
             }
@@ -122,11 +113,7 @@ public UpdateResponse process(UpdateResponse input) throws PluginExecutionExcept
     @Override
     public DeleteResponse process(DeleteResponse input) throws PluginExecutionException {
 
-        if (client != null) {
-
-            WebClient updateClient = WebClient.fromClient(client);
-
-            updateClient.type(MediaType.APPLICATION_JSON);
+        if (parentAddress != null) {
 
             if (input == null || input.getDeletedMetacards() == null || input.getDeletedMetacards()
                     .isEmpty()) {
@@ -139,11 +126,9 @@ public DeleteResponse process(DeleteResponse input) throws PluginExecutionExcept
 
                 if (metacard != null && metacard.getId() != null) {
 
-                    updateClient.path(metacard.getId());
-
-                    Response r = updateClient.delete();
+                    replicate(ReplicationOperation.Type.DELETE, metacard.getId(), null);
 
-                    LOGGER.debug("RESPONSE: [{}]", ToStringBuilder.reflectionToString(r));
+                    LOGGER.debug("Queued delete of [{}] for replication", metacard.getId());
                 }
 
             }
@@ -162,7 +147,7 @@ public void setParentAddress(String endpointAddress) {
 
             this.parentAddress = endpointAddress;
 
-            client = null;
+            sender.setParentAddress(null);
 
         } else if (!endpointAddress.equals(this.parentAddress)) {
 
@@ -170,12 +155,16 @@ public void setParentAddress(String endpointAddress) {
 
             this.parentAddress = endpointAddress;
 
-            client = WebClient.create(this.parentAddress, true);
+            sender.setParentAddress(this.parentAddress);
 
             LOGGER.debug("Changed the parent address property from [{}] to [{}]", previous,
                     this.parentAddress);
         }
 
+        if (replicationQueue != null) {
+            // wakes the queue up in case operations were waiting for a parent
+            replicationQueue.setSender(sender);
+        }
     }
 
     public MetacardTransformer getTransformer() {
@@ -187,26 +176,46 @@ public void setTransformer(MetacardTransformer transformer) {
         LOGGER.debug("Changed transformer to [{}]", this.transformer);
     }
 
-    private String transform(Metacard m, WebClient client) throws PluginExecutionException {
+    public ReplicationQueue getReplicationQueue() {
+        return replicationQueue;
+    }
 
-        BinaryContent binaryContent;
-        try {
-            binaryContent = transformer.transform(m, null);
-            client.type(getValidMimeType(binaryContent.getMimeTypeValue()));
-            return new String(binaryContent.getByteArray(), StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            LOGGER.warn("Could not understand metacard.", e);
-            throw new PluginExecutionException("Could not send metacard.");
-        } catch (CatalogTransformerException e) {
-            LOGGER.warn("Could not transform metacard.", e);
-            throw new PluginExecutionException("Could not send metacard.");
+    public void setReplicationQueue(ReplicationQueue replicationQueue) {
+        this.replicationQueue = replicationQueue;
+        if (replicationQueue != null) {
+            replicationQueue.setSender(sender);
         }
     }
 
-    private String getValidMimeType(String mimeTypeValue) {
-        if (mimeTypeValue == null) {
-            return MediaType.APPLICATION_OCTET_STREAM;
+    private void replicate(ReplicationOperation.Type type, String id, Metacard metacard)
+            throws PluginExecutionException {
+
+        String mimeType = null;
+        byte[] payload = null;
+
+        if (metacard != null) {
+            try {
+                BinaryContent binaryContent = transformer.transform(metacard, null);
+                mimeType = binaryContent.getMimeTypeValue();
+                payload = binaryContent.getByteArray();
+            } catch (IOException e) {
+                LOGGER.warn("Could not understand metacard.", e);
+                throw new PluginExecutionException("Could not send metacard.");
+            } catch (CatalogTransformerException e) {
+                LOGGER.warn("Could not transform metacard.", e);
+                throw new PluginExecutionException("Could not send metacard.");
+            }
+        }
+
+        if (replicationQueue == null) {
+            throw new PluginExecutionException("No replication queue is available.");
+        }
+
+        try {
+            replicationQueue.enqueue(type, id, mimeType, payload);
+        } catch (IOException e) {
+            LOGGER.warn("Could not journal metacard [{}] for replication.", id, e);
+            throw new PluginExecutionException("Could not send metacard.");
         }
-        return mimeTypeValue;
     }
 }
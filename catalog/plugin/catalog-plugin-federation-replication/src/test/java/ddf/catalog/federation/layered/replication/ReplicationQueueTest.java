@@ -0,0 +1,243 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.federation.layered.replication;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ReplicationQueueTest {
+
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(20);
+
+    @Rule
+    public TemporaryFolder journalFolder = new TemporaryFolder();
+
+    private FakeParent parent;
+
+    private ReplicationQueue queue;
+
+    @Before
+    public void setup() throws IOException {
+        parent = new FakeParent();
+        queue = createQueue();
+    }
+
+    @After
+    public void tearDown() {
+        queue.destroy();
+    }
+
+    @Test
+    public void testOperationsReplicatedInOrder() throws Exception {
+        List<String> expected = enqueueInterleaved(queue, 50);
+
+        waitForEmptyQueue(queue);
+
+        assertThat(parent.getReceived(), is(expected));
+        assertThat(queue.getReplicatedCount(), is((long) expected.size()));
+        assertThat(queue.getFailureCount(), is(0L));
+    }
+
+    @Test
+    public void testParentDownThenRecovers() throws Exception {
+        parent.setUp(false);
+
+        List<String> expected = enqueueInterleaved(queue, 50);
+
+        // let the queue retry against the unavailable parent for a while
+        Thread.sleep(500);
+        assertThat(queue.getQueueDepth(), is(expected.size()));
+        assertThat(parent.getReceived().isEmpty(), is(true));
+
+        parent.setUp(true);
+        waitForEmptyQueue(queue);
+
+        assertThat(parent.getReceived(), is(expected));
+        assertThat(queue.getDeadLetterCount(), is(0L));
+        assertThat(queue.getFailureCount() > 0, is(true));
+    }
+
+    @Test
+    public void testLongOutageDoesNotDeadLetter() throws Exception {
+        parent.setUp(false);
+
+        List<String> expected = enqueueInterleaved(queue, 10);
+
+        // far more failed attempts on the head of the queue than the old attempt budget of 20
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (queue.getFailureCount() < 40 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(queue.getFailureCount() >= 40, is(true));
+        assertThat(queue.getDeadLetterCount(), is(0L));
+
+        parent.setUp(true);
+        waitForEmptyQueue(queue);
+
+        assertThat(parent.getReceived(), is(expected));
+        assertThat(queue.getDeadLetterCount(), is(0L));
+    }
+
+    @Test
+    public void testJournaledOperationsSurviveRestart() throws Exception {
+        parent.setUp(false);
+
+        List<String> expected = enqueueInterleaved(queue, 20);
+        queue.destroy();
+
+        parent.setUp(true);
+        queue = createQueue();
+
+        waitForEmptyQueue(queue);
+
+        assertThat(parent.getReceived(), is(expected));
+    }
+
+    @Test
+    public void testRejectedOperationIsDeadLettered() throws Exception {
+        parent.reject("bad");
+
+        queue.enqueue(ReplicationOperation.Type.CREATE, "bad", null, payload("bad"));
+        queue.enqueue(ReplicationOperation.Type.CREATE, "good", null, payload("good"));
+
+        waitForEmptyQueue(queue);
+
+        assertThat(parent.getReceived(), is(Collections.singletonList("CREATE:good")));
+        assertThat(queue.getDeadLetterCount(), is(1L));
+    }
+
+    @Test
+    public void testLaterOperationsHeldBackBehindDeadLetter() throws Exception {
+        parent.reject("bad");
+
+        queue.enqueue(ReplicationOperation.Type.CREATE, "bad", null, payload("bad"));
+        queue.enqueue(ReplicationOperation.Type.CREATE, "good", null, payload("good"));
+        waitForEmptyQueue(queue);
+
+        // the parent would now accept it, but the create it depends on was never delivered
+        parent.reject(null);
+        queue.enqueue(ReplicationOperation.Type.UPDATE, "bad", null, payload("bad"));
+        queue.enqueue(ReplicationOperation.Type.UPDATE, "good", null, payload("good"));
+        waitForEmptyQueue(queue);
+
+        assertThat(parent.getReceived(), is(Arrays.asList("CREATE:good", "UPDATE:good")));
+        assertThat(queue.getDeadLetterCount(), is(2L));
+    }
+
+    @Test
+    public void testOperationsHeldBackAfterRestart() throws Exception {
+        parent.reject("bad");
+        queue.enqueue(ReplicationOperation.Type.CREATE, "bad", null, payload("bad"));
+        waitForEmptyQueue(queue);
+        queue.destroy();
+
+        parent.reject(null);
+        queue = createQueue();
+        queue.enqueue(ReplicationOperation.Type.DELETE, "bad", null, null);
+        waitForEmptyQueue(queue);
+
+        assertThat(parent.getReceived().isEmpty(), is(true));
+        assertThat(queue.getDeadLetterCount(), is(1L));
+    }
+
+    private ReplicationQueue createQueue() throws IOException {
+        ReplicationQueue replicationQueue = new ReplicationQueue(
+                new ReplicationJournal(journalFolder.getRoot().getAbsolutePath()));
+        replicationQueue.setBatchSize(7);
+        replicationQueue.setInitialRetryDelayMillis(5);
+        replicationQueue.setMaxRetryDelayMillis(50);
+        replicationQueue.setSender(parent);
+        replicationQueue.init();
+        return replicationQueue;
+    }
+
+    private List<String> enqueueInterleaved(ReplicationQueue replicationQueue, int count)
+            throws IOException {
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String id = "id" + (i % 5);
+            ReplicationOperation.Type type = ReplicationOperation.Type.values()[i % 3];
+            replicationQueue.enqueue(type, id, "application/json",
+                    type == ReplicationOperation.Type.DELETE ? null : payload(id));
+            expected.add(type + ":" + id);
+        }
+        return expected;
+    }
+
+    private byte[] payload(String id) {
+        return ("{\"id\":\"" + id + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void waitForEmptyQueue(ReplicationQueue replicationQueue)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (replicationQueue.getQueueDepth() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(replicationQueue.getQueueDepth(), is(0));
+    }
+
+    private static class FakeParent implements ReplicationSender {
+
+        private final List<String> received = new ArrayList<>();
+
+        private volatile boolean up = true;
+
+        private volatile String rejectedId;
+
+        void setUp(boolean up) {
+            this.up = up;
+        }
+
+        void reject(String id) {
+            this.rejectedId = id;
+        }
+
+        synchronized List<String> getReceived() {
+            return new ArrayList<>(received);
+        }
+
+        @Override
+        public void send(ReplicationOperation operation) throws ReplicationException {
+            if (!up) {
+                throw new ReplicationException("Parent is down", true);
+            }
+            if (operation.getMetacardId().equals(rejectedId)) {
+                throw new ReplicationException("Parent rejected operation", false);
+            }
+            synchronized (this) {
+                received.add(operation.getType() + ":" + operation.getMetacardId());
+            }
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+    }
+}
@@ -13,15 +13,34 @@
  */
 package ddf.catalog.plugin.jpeg2000.thumbnail.converter;
 
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
 import javax.imageio.spi.IIORegistry;
+import javax.imageio.stream.ImageInputStream;
 
-import com.sun.media.imageioimpl.plugins.jpeg2000.IISRandomAccessIO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.media.imageio.plugins.jpeg2000.J2KImageReadParam;
 import com.sun.media.imageioimpl.plugins.jpeg2000.J2KImageReaderSpi;
 
 import ddf.catalog.data.Metacard;
@@ -35,6 +54,10 @@
 /**
  * check for Jpeg 2000 thumbnails in the result set, and convert them
  * to standard Jpeg so the browser can render them.
+ * <br/>
+ * Only the lowest resolution level that is still at least the thumbnail size is decoded, so a
+ * large image costs little more than a small one. Conversions run on a bounded pool within a time
+ * budget per query response; a thumbnail that fails or does not finish in time is left as it was.
  */
 public class Jpeg2000ThumbnailConverter implements PostQueryPlugin {
 
@@ -46,51 +69,266 @@ public class Jpeg2000ThumbnailConverter implements PostQueryPlugin {
 
     public static final short START_OF_CODESTREAM_MARKER = (short) 0xff4f;
 
+    private static final short CODING_STYLE_MARKER = (short) 0xff52;
+
+    private static final short START_OF_TILE_MARKER = (short) 0xff90;
+
+    /**
+     * Offset of the number of decomposition levels from the start of the COD marker segment.
+     */
+    private static final int DECOMPOSITION_LEVELS_OFFSET = 9;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Jpeg2000ThumbnailConverter.class);
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private static final int DEFAULT_THUMBNAIL_SIZE = 200;
+
+    private static final int DEFAULT_CONVERTER_THREADS = 2;
+
+    private static final long DEFAULT_TIMEOUT_SECONDS = 10;
+
+    private final J2KImageReaderSpi readerSpi = new J2KImageReaderSpi();
+
+    private final ThreadPoolExecutor converterExecutor = createConverterExecutor(
+            DEFAULT_CONVERTER_THREADS);
+
+    private int thumbnailSize = DEFAULT_THUMBNAIL_SIZE;
+
+    private long timeoutSeconds = DEFAULT_TIMEOUT_SECONDS;
+
     public Jpeg2000ThumbnailConverter() {
-        IIORegistry.getDefaultInstance().registerServiceProvider(new J2KImageReaderSpi());
+        IIORegistry.getDefaultInstance().registerServiceProvider(readerSpi);
+    }
+
+    /**
+     * @param thumbnailSize largest side, in pixels, of converted thumbnails; smaller images are
+     *                      not scaled
+     */
+    public void setThumbnailSize(int thumbnailSize) {
+        this.thumbnailSize = Math.max(1, thumbnailSize);
+    }
+
+    /**
+     * Sets how long a query response waits for its thumbnails to be converted, including time
+     * spent waiting for a converter thread.
+     *
+     * @param timeoutSeconds timeout in seconds, or 0 to wait indefinitely
+     */
+    public void setTimeoutSeconds(long timeoutSeconds) {
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    /**
+     * @param converterThreads number of threads thumbnails are converted on, at least 1
+     */
+    public void setConverterThreads(int converterThreads) {
+        int threads = Math.max(1, converterThreads);
+        synchronized (converterExecutor) {
+            if (threads > converterExecutor.getMaximumPoolSize()) {
+                converterExecutor.setMaximumPoolSize(threads);
+                converterExecutor.setCorePoolSize(threads);
+            } else {
+                converterExecutor.setCorePoolSize(threads);
+                converterExecutor.setMaximumPoolSize(threads);
+            }
+        }
+    }
+
+    public void destroy() {
+        converterExecutor.shutdownNow();
     }
 
     @Override
     public QueryResponse process(QueryResponse input)
             throws PluginExecutionException, StopProcessingException {
+        List<Metacard> metacards = new ArrayList<>();
+        List<Future<byte[]>> conversions = new ArrayList<>();
         for (Result result : input.getResults()) {
             Metacard metacard = result.getMetacard();
-            byte[] thumbnailBytes = metacard.getThumbnail();
-            if (thumbnailBytes == null) {
+            final byte[] thumbnailBytes = metacard.getThumbnail();
+            if (thumbnailBytes == null || !isJpeg2000(thumbnailBytes)) {
                 continue;
             }
 
-            try (
-                    ByteArrayInputStream original = new ByteArrayInputStream(thumbnailBytes);
-                    ByteArrayOutputStream converted = new ByteArrayOutputStream()
-            ) {
-                IISRandomAccessIO in = new IISRandomAccessIO(
-                        ImageIO.createImageInputStream(original));
-                // extracted from jj2000.j2k.fileformat.reader.FileFormatReader
-                if (in.readInt() != OTHER_JP2_SIGNATURE ||
-                        in.readInt() != JP2_SIGNATURE_BOX ||
-                        in.readInt() != OFFICIAL_JP2_SIGNATURE) { // Not a JP2 file
-                    in.seek(0);
-
-                    if (in.readShort() != START_OF_CODESTREAM_MARKER) //Standard syntax marker found
-                    {
-                        continue;
-                    }
+            metacards.add(metacard);
+            conversions.add(converterExecutor.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    return convert(thumbnailBytes);
+                }
+            }));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        for (int i = 0; i < conversions.size(); i++) {
+            Future<byte[]> conversion = conversions.get(i);
+            Metacard metacard = metacards.get(i);
+            try {
+                byte[] converted;
+                if (timeoutSeconds > 0) {
+                    converted = conversion
+                            .get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                } else {
+                    converted = conversion.get();
                 }
 
-                // convert j2k thumbnail to jpeg thumbnail
-                original.reset();
-                BufferedImage thumbnail = ImageIO.read(original);
-                if (thumbnail == null) {
-                    continue;
+                if (converted != null) {
+                    metacard.setAttribute(new AttributeImpl(Metacard.THUMBNAIL, converted));
                 }
-                ImageIO.write(thumbnail, "jpeg", converted);
-                metacard.setAttribute(
-                        new AttributeImpl(Metacard.THUMBNAIL, converted.toByteArray()));
-            } catch (IOException e) {
-                throw new PluginExecutionException(e);
+            } catch (TimeoutException e) {
+                conversion.cancel(true);
+                LOGGER.info("Jpeg 2000 thumbnail of metacard {} was not converted within {} "
+                        + "seconds.", metacard.getId(), timeoutSeconds);
+            } catch (ExecutionException e) {
+                LOGGER.info("Unable to convert Jpeg 2000 thumbnail of metacard {}.",
+                        metacard.getId(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (Future<byte[]> remaining : conversions.subList(i, conversions.size())) {
+                    remaining.cancel(true);
+                }
+                throw new PluginExecutionException(
+                        "Interrupted while converting Jpeg 2000 thumbnails", e);
             }
         }
         return input;
     }
-}
\ No newline at end of file
+
+    static boolean isJpeg2000(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        // extracted from jj2000.j2k.fileformat.reader.FileFormatReader
+        if (bytes.length >= 12 && buffer.getInt(0) == OTHER_JP2_SIGNATURE
+                && buffer.getInt(4) == JP2_SIGNATURE_BOX
+                && buffer.getInt(8) == OFFICIAL_JP2_SIGNATURE) {
+            return true;
+        }
+        //Standard syntax marker found
+        return bytes.length >= 2 && buffer.getShort(0) == START_OF_CODESTREAM_MARKER;
+    }
+
+    /**
+     * Converts a Jpeg 2000 image to a Jpeg thumbnail, decoding it at the lowest resolution level
+     * that is still at least the thumbnail size.
+     *
+     * @return the Jpeg thumbnail, or null if the image could not be read
+     */
+    byte[] convert(byte[] jpeg2000) throws IOException {
+        ImageReader reader = readerSpi.createReaderInstance();
+        try (ImageInputStream input = ImageIO
+                .createImageInputStream(new ByteArrayInputStream(jpeg2000))) {
+            reader.setInput(input, true, true);
+
+            int largestSide = Math.max(reader.getWidth(0), reader.getHeight(0));
+            J2KImageReadParam param = (J2KImageReadParam) reader.getDefaultReadParam();
+            int levels = getDecompositionLevels(jpeg2000);
+            if (levels > 0) {
+                // Each level discarded halves the decoded width and height.
+                int discard = 0;
+                while (discard < levels && (largestSide >> (discard + 1)) >= thumbnailSize) {
+                    discard++;
+                }
+                param.setResolution(levels - discard);
+                LOGGER.debug("Decoding Jpeg 2000 image of {} pixels at resolution level {} of {}.",
+                        largestSide, levels - discard, levels);
+            }
+
+            BufferedImage image = reader.read(0, param);
+            if (image == null) {
+                return null;
+            }
+
+            try (ByteArrayOutputStream converted = new ByteArrayOutputStream()) {
+                ImageIO.write(toThumbnail(image), "jpeg", converted);
+                return converted.toByteArray();
+            }
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * Draws the image onto an RGB image, since Jpeg has no alpha channel, scaling it down to the
+     * thumbnail size if it is larger.
+     */
+    private BufferedImage toThumbnail(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int largestSide = Math.max(width, height);
+        if (largestSide > thumbnailSize) {
+            width = Math.max(1, width * thumbnailSize / largestSide);
+            height = Math.max(1, height * thumbnailSize / largestSide);
+        }
+
+        BufferedImage thumbnail = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = thumbnail.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Reads the number of wavelet decomposition levels from the COD marker segment of the main
+     * codestream header.
+     *
+     * @return the number of levels, or -1 if the header could not be read
+     */
+    static int getDecompositionLevels(byte[] jpeg2000) {
+        ByteBuffer buffer = ByteBuffer.wrap(jpeg2000);
+        int position = findCodestream(buffer);
+        if (position < 0) {
+            return -1;
+        }
+
+        // Skip the SOC marker, then walk the main header's marker segments.
+        position += 2;
+        while (position + 4 <= buffer.limit()) {
+            short marker = buffer.getShort(position);
+            if (marker == CODING_STYLE_MARKER) {
+                int levelsPosition = position + DECOMPOSITION_LEVELS_OFFSET;
+                return levelsPosition < buffer.limit() ? buffer.get(levelsPosition) & 0xff : -1;
+            }
+            if (marker == START_OF_TILE_MARKER) {
+                return -1;
+            }
+            position += 2 + (buffer.getShort(position + 2) & 0xffff);
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the start of the codestream, which follows the boxes of a JP2 file.
+     */
+    private static int findCodestream(ByteBuffer buffer) {
+        for (int i = 0; i + 1 < buffer.limit(); i++) {
+            if (buffer.getShort(i) == START_OF_CODESTREAM_MARKER
+                    && (i + 3 >= buffer.limit() || buffer.get(i + 2) == (byte) 0xff)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Idle converter threads time out, so an unused plugin does not keep threads around.
+     */
+    private static ThreadPoolExecutor createConverterExecutor(int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable,
+                                "jpeg2000-thumbnail-" + THREAD_COUNT.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -13,21 +13,40 @@
  */
 package ddf.catalog.plugin.jpeg2000.thumbnail.converter;
 
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
 import javax.imageio.spi.IIORegistry;
+import javax.imageio.stream.ImageOutputStream;
 
+import org.junit.After;
 import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.media.imageio.plugins.jpeg2000.J2KImageWriteParam;
+import com.sun.media.imageioimpl.plugins.jpeg2000.J2KImageWriterSpi;
 
 import ddf.catalog.data.Metacard;
 import ddf.catalog.data.Result;
@@ -39,8 +58,18 @@
 import ddf.catalog.plugin.StopProcessingException;
 
 public class Jpeg2000ThumbnailConverterTest {
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(Jpeg2000ThumbnailConverterTest.class);
+
+    private static final int DECOMPOSITION_LEVELS = 5;
+
     private final Jpeg2000ThumbnailConverter jpeg2000ThumbnailConverter = new Jpeg2000ThumbnailConverter();
 
+    @After
+    public void tearDown() {
+        jpeg2000ThumbnailConverter.destroy();
+    }
+
     @Test
     public void testConversion()
             throws IOException, StopProcessingException, PluginExecutionException {
@@ -65,4 +94,95 @@ public void testConversion()
         // verify the plugin ignored  the non-j2k
         assertTrue(Arrays.equals(output.toByteArray(), metacard.getThumbnail()));
     }
+
+    @Test
+    public void testDecompositionLevels() throws IOException {
+        for (boolean codestreamOnly : new boolean[] {true, false}) {
+            byte[] j2kbytes = createJpeg2000(64, 48, codestreamOnly);
+            assertTrue(Jpeg2000ThumbnailConverter.isJpeg2000(j2kbytes));
+            assertThat(Jpeg2000ThumbnailConverter.getDecompositionLevels(j2kbytes),
+                    is(DECOMPOSITION_LEVELS));
+        }
+        assertThat(Jpeg2000ThumbnailConverter.getDecompositionLevels(new byte[] {1, 2, 3}),
+                is(-1));
+    }
+
+    @Test
+    public void testLargeImagesAreScaledToThumbnailSize()
+            throws IOException, StopProcessingException, PluginExecutionException {
+        jpeg2000ThumbnailConverter.setThumbnailSize(200);
+        for (int side : new int[] {1024, 2048, 4096}) {
+            byte[] j2kbytes = createJpeg2000(side, side / 2, true);
+            Metacard metacard = new MetacardImpl();
+            metacard.setAttribute(new AttributeImpl(Metacard.THUMBNAIL, j2kbytes));
+            List<Result> resultList = new ArrayList<>();
+            resultList.add(new ResultImpl(metacard));
+
+            resetPeakHeap();
+            long start = System.nanoTime();
+            jpeg2000ThumbnailConverter.process(new QueryResponseImpl(null, resultList, 1));
+            long elapsedMillis = (System.nanoTime() - start) / 1000000;
+            LOGGER.info("Converted {}x{} Jpeg 2000 ({} bytes) in {} ms with a peak heap of {} KB",
+                    side, side / 2, j2kbytes.length, elapsedMillis, getPeakHeap() / 1024);
+
+            BufferedImage thumbnail = ImageIO
+                    .read(new ByteArrayInputStream(metacard.getThumbnail()));
+            assertThat(thumbnail.getWidth(), is(200));
+            assertThat(thumbnail.getHeight(), lessThanOrEqualTo(200));
+        }
+    }
+
+    @Test
+    public void testUnreadableImageIsLeftUnchanged()
+            throws IOException, StopProcessingException, PluginExecutionException {
+        byte[] j2kbytes = createJpeg2000(256, 256, true);
+        byte[] truncated = Arrays.copyOf(j2kbytes, 24);
+        Metacard metacard = new MetacardImpl();
+        metacard.setAttribute(new AttributeImpl(Metacard.THUMBNAIL, truncated));
+        List<Result> resultList = new ArrayList<>();
+        resultList.add(new ResultImpl(metacard));
+
+        jpeg2000ThumbnailConverter.process(new QueryResponseImpl(null, resultList, 1));
+
+        assertTrue(Arrays.equals(truncated, metacard.getThumbnail()));
+    }
+
+    private byte[] createJpeg2000(int width, int height, boolean codestreamOnly)
+            throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, Color.BLUE, width, height, Color.ORANGE));
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+
+        ImageWriter writer = new J2KImageWriterSpi().createWriterInstance();
+        J2KImageWriteParam param = (J2KImageWriteParam) writer.getDefaultWriteParam();
+        param.setNumDecompositionLevels(DECOMPOSITION_LEVELS);
+        param.setWriteCodeStreamOnly(codestreamOnly);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOutput = ImageIO.createImageOutputStream(output)) {
+            writer.setOutput(imageOutput);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return output.toByteArray();
+    }
+
+    private void resetPeakHeap() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+    }
+
+    private long getPeakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
 }
@@ -0,0 +1,321 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.endpoints.rest;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.activation.MimeType;
+import javax.activation.MimeTypeParseException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.cxf.jaxrs.ext.multipart.Attachment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ddf.catalog.CatalogFramework;
+import ddf.catalog.Constants;
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.MetacardCreationException;
+import ddf.catalog.data.impl.AttributeImpl;
+import ddf.catalog.operation.CreateResponse;
+import ddf.catalog.operation.impl.CreateRequestImpl;
+import ddf.catalog.source.IngestException;
+import ddf.catalog.source.SourceUnavailableException;
+import net.minidev.json.JSONObject;
+
+/**
+ * Ingests a stream of records in batches and writes the outcome of each record to the response
+ * as newline-delimited JSON as soon as its batch has been committed. Each status line contains the
+ * zero-based {@code index} of the record in the request and either the {@code id} of the created
+ * metacard or an {@code error} describing why it was not created.
+ * <p/>
+ * Metacards without an id are given one before they are created. Statuses are matched to the
+ * created metacards by id, so a catalog that reorders, re-identifies in place or drops metacards
+ * of a batch still gets the right status for each record.
+ */
+class BulkIngestOutput implements StreamingOutput {
+
+    static final String INDEX = "index";
+
+    static final String ERROR = "error";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkIngestOutput.class);
+
+    private static final Logger INGEST_LOGGER = LoggerFactory
+            .getLogger(Constants.INGEST_LOGGER_NAME);
+
+    private final RESTEndpoint endpoint;
+
+    private final CatalogFramework catalogFramework;
+
+    private final Iterator<Record> records;
+
+    private final int batchSize;
+
+    BulkIngestOutput(RESTEndpoint endpoint, CatalogFramework catalogFramework,
+            Iterator<Record> records, int batchSize) {
+        this.endpoint = endpoint;
+        this.catalogFramework = catalogFramework;
+        this.records = records;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException, WebApplicationException {
+        Writer writer = new BufferedWriter(
+                new OutputStreamWriter(output, StandardCharsets.UTF_8));
+
+        // statuses of all records of the current batch in request order, the ones of the
+        // metacards in the batch are completed once the batch has been committed
+        List<JSONObject> statuses = new ArrayList<>(batchSize);
+        List<JSONObject> batchStatuses = new ArrayList<>(batchSize);
+        List<Metacard> batch = new ArrayList<>(batchSize);
+        int index = 0;
+
+        while (true) {
+            Record record;
+            InputStream message;
+            try {
+                if (!records.hasNext()) {
+                    break;
+                }
+                record = records.next();
+                message = record.getInputStream();
+            } catch (RuntimeException | IOException e) {
+                // the request itself cannot be read any further
+                LOGGER.warn("Unable to read record {} of bulk ingest request.", index, e);
+                JSONObject status = new JSONObject();
+                status.put(INDEX, index);
+                status.put(ERROR, "Unable to read record: " + e.getMessage());
+                statuses.add(status);
+                break;
+            }
+
+            JSONObject status = new JSONObject();
+            status.put(INDEX, index);
+            statuses.add(status);
+
+            try (InputStream in = message) {
+                Metacard metacard = endpoint.generateMetacard(record.getMimeType(), null, in);
+                if (metacard.getId() == null) {
+                    metacard.setAttribute(new AttributeImpl(Metacard.ID,
+                            UUID.randomUUID().toString().replaceAll("-", "")));
+                }
+                batch.add(metacard);
+                batchStatuses.add(status);
+            } catch (MetacardCreationException | IOException | RuntimeException e) {
+                // only this record is affected, e.g. a transformer failing on its content
+                LOGGER.debug("Unable to create metacard from record {}", index, e);
+                status.put(ERROR, "Unable to create Metacard from provided metadata: "
+                        + e.getMessage());
+            }
+            index++;
+
+            if (statuses.size() >= batchSize) {
+                commit(writer, batch, batchStatuses, statuses);
+            }
+        }
+
+        commit(writer, batch, batchStatuses, statuses);
+    }
+
+    private void commit(Writer writer, List<Metacard> batch, List<JSONObject> batchStatuses,
+            List<JSONObject> statuses) throws IOException {
+        if (!batch.isEmpty()) {
+            try {
+                CreateResponse createResponse = catalogFramework
+                        .create(new CreateRequestImpl(new ArrayList<>(batch)));
+                List<Metacard> created = createResponse.getCreatedMetacards();
+
+                Set<String> createdIds = new HashSet<>();
+                if (created != null) {
+                    for (Metacard metacard : created) {
+                        createdIds.add(metacard.getId());
+                    }
+                }
+
+                // the ids are read again because the catalog may assign new ones in place
+                for (int i = 0; i < batchStatuses.size(); i++) {
+                    String id = batch.get(i).getId();
+                    if (id != null && createdIds.contains(id)) {
+                        batchStatuses.get(i).put(Metacard.ID, id);
+                    } else {
+                        batchStatuses.get(i).put(ERROR, "Entry was not created.");
+                    }
+                }
+
+                if (INGEST_LOGGER.isInfoEnabled()) {
+                    INGEST_LOGGER.info("Bulk ingest saved {} entries.",
+                            created == null ? 0 : created.size());
+                }
+            } catch (IngestException | SourceUnavailableException | RuntimeException e) {
+                LOGGER.warn("Error while storing bulk ingest batch in catalog.", e);
+                for (JSONObject status : batchStatuses) {
+                    status.remove(Metacard.ID);
+                    status.put(ERROR, "Error while storing entry in catalog: " + e.getMessage());
+                }
+            }
+        }
+
+        for (JSONObject status : statuses) {
+            writeLine(writer, status);
+        }
+
+        batch.clear();
+        batchStatuses.clear();
+        statuses.clear();
+        // let the client see the statuses of this batch before the next one is processed
+        writer.flush();
+    }
+
+    private void writeLine(Writer writer, JSONObject status) throws IOException {
+        writer.write(status.toJSONString());
+        writer.write('\n');
+    }
+
+    /**
+     * A single record of a bulk ingest request.
+     */
+    interface Record {
+
+        MimeType getMimeType();
+
+        InputStream getInputStream() throws IOException;
+    }
+
+    /**
+     * Reads one record per non-blank line of a newline-delimited stream, e.g., GeoJSON features.
+     */
+    static class LineRecordIterator implements Iterator<Record> {
+
+        private final BufferedReader reader;
+
+        private final MimeType mimeType;
+
+        private String nextLine;
+
+        LineRecordIterator(InputStream in, MimeType mimeType) {
+            this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            this.mimeType = mimeType;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (nextLine == null) {
+                String line;
+                try {
+                    line = reader.readLine();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+                if (line == null) {
+                    return false;
+                }
+                if (!line.trim().isEmpty()) {
+                    nextLine = line;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Record next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final byte[] bytes = nextLine.getBytes(StandardCharsets.UTF_8);
+            nextLine = null;
+            return new Record() {
+                @Override
+                public MimeType getMimeType() {
+                    return mimeType;
+                }
+
+                @Override
+                public InputStream getInputStream() {
+                    return new ByteArrayInputStream(bytes);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Reads one record per part of a multipart request, using each part's content type.
+     */
+    static class AttachmentRecordIterator implements Iterator<Record> {
+
+        private final Iterator<Attachment> attachments;
+
+        AttachmentRecordIterator(List<Attachment> attachments) {
+            this.attachments = attachments.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return attachments.hasNext();
+        }
+
+        @Override
+        public Record next() {
+            final Attachment attachment = attachments.next();
+            return new Record() {
+                @Override
+                public MimeType getMimeType() {
+                    if (attachment.getContentType() == null) {
+                        return null;
+                    }
+                    try {
+                        return new MimeType(attachment.getContentType().toString());
+                    } catch (MimeTypeParseException e) {
+                        LOGGER.debug("Unable to create MimeType from {}",
+                                attachment.getContentType());
+                        return null;
+                    }
+                }
+
+                @Override
+                public InputStream getInputStream() throws IOException {
+                    return attachment.getDataHandler().getInputStream();
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.endpoints.rest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.FileBackedOutputStream;
+
+/**
+ * Re-readable copy of ingested content. The content is read from the request exactly once, in
+ * fixed size chunks; anything larger than the memory threshold is spooled to a temporary file so
+ * memory use does not depend on the size of the upload. The length and a checksum of the content
+ * are computed while it is copied so neither requires another pass over the data, and the checksum
+ * can be verified against the instance digest a client sent with the content.
+ */
+class IngestSpool implements Closeable {
+
+    static final String CHECKSUM_ALGORITHM = "SHA-256";
+
+    private static final String DIGEST_SEPARATOR = "=";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileBackedOutputStream spool;
+
+    private long size = 0;
+
+    private byte[] digestBytes;
+
+    /**
+     * @param memoryThreshold number of bytes kept in memory before the content is spooled to disk
+     */
+    IngestSpool(int memoryThreshold) {
+        this.spool = new FileBackedOutputStream(memoryThreshold);
+    }
+
+    /**
+     * Copies the stream into the spool. The stream is not closed.
+     */
+    void write(InputStream in) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(CHECKSUM_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("Unable to compute " + CHECKSUM_ALGORITHM + " checksum.", e);
+        }
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            spool.write(buffer, 0, read);
+            digest.update(buffer, 0, read);
+            size += read;
+        }
+        spool.flush();
+
+        digestBytes = digest.digest();
+    }
+
+    /**
+     * @return a new stream positioned at the beginning of the spooled content
+     */
+    InputStream openStream() throws IOException {
+        return spool.asByteSource().openStream();
+    }
+
+    /**
+     * @return the number of bytes spooled
+     */
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * @return hex encoded {@value #CHECKSUM_ALGORITHM} checksum of the spooled content, or null if
+     * nothing has been written yet
+     */
+    String getChecksum() {
+        if (digestBytes == null) {
+            return null;
+        }
+        return BaseEncoding.base16().lowerCase().encode(digestBytes);
+    }
+
+    /**
+     * Checks the spooled content against an RFC 3230 {@code Digest} header value such as
+     * {@code SHA-256=uU0nuZNNPgilLlLX2n2r+sSE7+N6U4DukIj3rOLvzek=}. Digests computed with other
+     * algorithms are ignored.
+     *
+     * @param digestHeader the header value, may be null
+     * @return false only if the header holds a {@value #CHECKSUM_ALGORITHM} digest that does not
+     * match the spooled content
+     */
+    boolean matchesDigest(String digestHeader) {
+        if (digestHeader == null || digestBytes == null) {
+            return true;
+        }
+        for (String instanceDigest : digestHeader.split(",")) {
+            String[] parts = instanceDigest.trim().split(DIGEST_SEPARATOR, 2);
+            if (parts.length == 2 && CHECKSUM_ALGORITHM.equalsIgnoreCase(parts[0].trim())) {
+                return BaseEncoding.base64().encode(digestBytes).equals(parts[1].trim());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Releases the spooled content, deleting the temporary file if one was created.
+     */
+    @Override
+    public void close() throws IOException {
+        spool.reset();
+    }
+}
@@ -21,6 +21,7 @@
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -29,6 +30,7 @@
 import javax.activation.MimeType;
 import javax.activation.MimeTypeParseException;
 import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.HEAD;
@@ -39,6 +41,7 @@
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
@@ -46,7 +49,6 @@
 import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.cxf.jaxrs.ext.multipart.Attachment;
 import org.apache.cxf.jaxrs.ext.multipart.MultipartBody;
@@ -54,7 +56,8 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.io.FileBackedOutputStream;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
 
 import ddf.catalog.CatalogFramework;
 import ddf.catalog.Constants;
@@ -69,14 +72,18 @@
 import ddf.catalog.filter.FilterBuilder;
 import ddf.catalog.operation.CreateResponse;
 import ddf.catalog.operation.QueryResponse;
+import ddf.catalog.operation.ResourceResponse;
 import ddf.catalog.operation.SourceInfoResponse;
 import ddf.catalog.operation.impl.CreateRequestImpl;
 import ddf.catalog.operation.impl.DeleteRequestImpl;
 import ddf.catalog.operation.impl.QueryImpl;
 import ddf.catalog.operation.impl.QueryRequestImpl;
+import ddf.catalog.operation.impl.ResourceRequestById;
 import ddf.catalog.operation.impl.SourceInfoRequestEnterprise;
 import ddf.catalog.operation.impl.UpdateRequestImpl;
 import ddf.catalog.resource.Resource;
+import ddf.catalog.resource.ResourceNotFoundException;
+import ddf.catalog.resource.ResourceNotSupportedException;
 import ddf.catalog.source.IngestException;
 import ddf.catalog.source.SourceDescriptor;
 import ddf.catalog.source.SourceUnavailableException;
@@ -96,6 +103,8 @@ public class RESTEndpoint implements RESTService {
 
     static final String BYTES_TO_SKIP = "BytesToSkip";
 
+    static final String BYTES_SKIPPED = "BytesSkipped";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(RESTEndpoint.class);
 
     private static final Logger INGEST_LOGGER = LoggerFactory
@@ -109,6 +118,20 @@ public class RESTEndpoint implements RESTService {
 
     private static final String HEADER_CONTENT_DISPOSITION = "Content-Disposition";
 
+    private static final String HEADER_CONTENT_RANGE = "Content-Range";
+
+    private static final String HEADER_ETAG = "ETag";
+
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private static final String WEAK_ENTITY_TAG_PREFIX = "W/";
+
+    private static final int HTTP_PARTIAL_CONTENT = 206;
+
+    private static final String RESOURCE_TRANSFORMER = "resource";
+
     private static final String FILE_ATTACHMENT_CONTENT_ID = "file";
 
     private static final String FILENAME_CONTENT_DISPOSITION_PARAMETER_NAME = "filename";
@@ -119,6 +142,20 @@ public class RESTEndpoint implements RESTService {
 
     private static final String JSON_MIME_TYPE_STRING = "application/json";
 
+    /**
+     * RFC 3230 header a client can use to send the checksum of the content it is ingesting.
+     */
+    private static final String DIGEST_HEADER = "Digest";
+
+    /**
+     * Number of bytes of an ingested message kept in memory before it is spooled to disk.
+     */
+    private static final int SPOOL_MEMORY_THRESHOLD = 1000000;
+
+    private static final String NDJSON_MIME_TYPE_STRING = "application/x-ndjson";
+
+    private static final int DEFAULT_BULK_INGEST_BATCH_SIZE = 500;
+
     private static MimeType jsonMimeType = null;
 
     static {
@@ -140,6 +177,8 @@ public class RESTEndpoint implements RESTService {
 
     private MimeTypeResolver tikaMimeTypeResolver;
 
+    private int bulkIngestBatchSize = DEFAULT_BULK_INGEST_BATCH_SIZE;
+
     public RESTEndpoint(CatalogFramework framework) {
         LOGGER.debug("constructing rest endpoint");
         this.catalogFramework = framework;
@@ -180,7 +219,6 @@ public Response getHeaders(@PathParam("sourceid") String sourceid, @PathParam("i
 
         Response response;
         Response.ResponseBuilder responseBuilder;
-        QueryResponse queryResponse;
         Metacard card = null;
 
         LOGGER.debug("getHeaders");
@@ -200,30 +238,11 @@ public Response getHeaders(@PathParam("sourceid") String sourceid, @PathParam("i
             try {
                 String transformer = DEFAULT_METACARD_TRANSFORMER;
 
-                Filter filter = getFilterBuilder().attribute(Metacard.ID).is().equalTo().text(id);
+                card = getMetacard(sourceid, id, convertedMap);
 
-                Collection<String> sources = null;
-                if (sourceid != null) {
-                    sources = new ArrayList<String>();
-                    sources.add(sourceid);
-                }
-
-                QueryRequestImpl request = new QueryRequestImpl(new QueryImpl(filter), sources);
-                request.setProperties(convertedMap);
-                queryResponse = catalogFramework.query(request, null);
-
-                // pull the metacard out of the blocking queue
-                List<Result> results = queryResponse.getResults();
-
-                // TODO: should be poll? do we want to specify a timeout? (will
-                // return null if timeout elapsed)
-                if (results != null && !results.isEmpty()) {
-                    card = results.get(0).getMetacard();
-                }
-
-                if (card == null) {
-                    throw new ServerErrorException("Unable to retrieve requested metacard.",
-                            Status.NOT_FOUND);
+                String entityTag = getEntityTag(card, transformer);
+                if (isNotModified(httpRequest, card, entityTag)) {
+                    return notModified(card, entityTag);
                 }
 
                 LOGGER.debug("Calling transform.");
@@ -233,6 +252,8 @@ public Response getHeaders(@PathParam("sourceid") String sourceid, @PathParam("i
 
                 responseBuilder = Response.noContent();
 
+                addCacheValidators(responseBuilder, card, entityTag);
+
                 // Add the Accept-ranges header to let the client know that we accept ranges in bytes
                 responseBuilder.header(HEADER_ACCEPT_RANGES, BYTES);
 
@@ -388,7 +409,6 @@ public Response getDocument(@PathParam("sourceid") String sourceid, @PathParam("
 
         Response response = null;
         Response.ResponseBuilder responseBuilder;
-        QueryResponse queryResponse;
         Metacard card = null;
 
         LOGGER.debug("GET");
@@ -411,47 +431,75 @@ public Response getDocument(@PathParam("sourceid") String sourceid, @PathParam("
                 if (transformerParam != null) {
                     transformer = transformerParam;
                 }
-                Filter filter = getFilterBuilder().attribute(Metacard.ID).is().equalTo().text(id);
-
-                Collection<String> sources = null;
-                if (sourceid != null) {
-                    sources = new ArrayList<String>();
-                    sources.add(sourceid);
-                }
-
-                QueryRequestImpl request = new QueryRequestImpl(new QueryImpl(filter), sources);
-                request.setProperties(convertedMap);
-                queryResponse = catalogFramework.query(request, null);
-
-                // pull the metacard out of the blocking queue
-                List<Result> results = queryResponse.getResults();
 
-                // TODO: should be poll? do we want to specify a timeout? (will
-                // return null if timeout elapsed)
-                if (results != null && !results.isEmpty()) {
-                    card = results.get(0).getMetacard();
-                }
+                card = getMetacard(sourceid, id, convertedMap);
 
-                if (card == null) {
-                    throw new ServerErrorException("Unable to retrieve requested metacard.",
-                            Status.NOT_FOUND);
+                String entityTag = getEntityTag(card, transformer);
+                if (isNotModified(httpRequest, card, entityTag)) {
+                    return notModified(card, entityTag);
                 }
 
                 // Check for Range header set the value in the map appropriately so that the catalogFramework
                 // can take care of the skipping
                 long bytesToSkip = getRangeStart(httpRequest);
+                long rangeEnd = getRangeEnd(httpRequest);
+                if (rangeEnd >= 0 && rangeEnd < bytesToSkip) {
+                    // an invalid range is ignored rather than rejected (RFC 7233, section 3.1)
+                    LOGGER.debug("Ignoring invalid range {}-{}.", bytesToSkip, rangeEnd);
+                    bytesToSkip = 0;
+                }
 
+                BinaryContent content;
+                boolean partialContent = false;
                 if (bytesToSkip > 0) {
                     LOGGER.debug("Bytes to skip: {}", String.valueOf(bytesToSkip));
                     convertedMap.put(BYTES_TO_SKIP, bytesToSkip);
                 }
 
-                LOGGER.debug("Calling transform.");
-                final BinaryContent content = catalogFramework
-                        .transform(card, transformer, convertedMap);
+                if (bytesToSkip > 0 && RESOURCE_TRANSFORMER.equals(transformer)) {
+                    // Retrieve the resource directly so we can tell whether the bytes were skipped
+                    // for us, which the product cache does, and answer with partial content.
+                    ResourceResponse resourceResponse = getResource(card, convertedMap);
+                    content = resourceResponse.getResource();
+                    partialContent = Boolean.TRUE
+                            .equals(resourceResponse.getPropertyValue(BYTES_SKIPPED));
+                } else {
+                    LOGGER.debug("Calling transform.");
+                    content = catalogFramework.transform(card, transformer, convertedMap);
+                }
                 LOGGER.debug("Read and transform complete, preparing response.");
 
-                responseBuilder = Response.ok(content.getInputStream(), content.getMimeTypeValue());
+                long length = partialContent ? getResourceLength(bytesToSkip, content, card) : -1;
+                if (partialContent && length <= bytesToSkip) {
+                    // A partial response must say which bytes it holds, so without the length
+                    // send the whole resource instead.
+                    LOGGER.debug("Length of the resource is unknown, sending all of it.");
+                    try {
+                        content.getInputStream().close();
+                    } catch (IOException e) {
+                        LOGGER.debug("Unable to close partial resource.", e);
+                    }
+                    convertedMap.remove(BYTES_TO_SKIP);
+                    content = catalogFramework.transform(card, transformer, convertedMap);
+                    partialContent = false;
+                }
+
+                if (partialContent) {
+                    long lastByte = length - 1;
+                    InputStream entity = content.getInputStream();
+                    if (rangeEnd >= 0 && rangeEnd < lastByte) {
+                        lastByte = rangeEnd;
+                        entity = ByteStreams.limit(entity, lastByte - bytesToSkip + 1);
+                    }
+                    responseBuilder = Response.status(HTTP_PARTIAL_CONTENT).entity(entity)
+                            .type(content.getMimeTypeValue()).header(HEADER_CONTENT_RANGE,
+                                    BYTES + " " + bytesToSkip + "-" + lastByte + "/" + length);
+                } else {
+                    responseBuilder = Response
+                            .ok(content.getInputStream(), content.getMimeTypeValue());
+                }
+
+                addCacheValidators(responseBuilder, card, entityTag);
 
                 // Add the Accept-ranges header to let the client know that we accept ranges in bytes
                 responseBuilder.header(HEADER_ACCEPT_RANGES, BYTES);
@@ -598,7 +646,8 @@ public Response updateDocument(@PathParam("id") String id, @Context HttpHeaders
 
                 MimeType mimeType = getMimeType(headers);
                 UpdateRequestImpl updateReq = new UpdateRequestImpl(id,
-                        generateMetacard(mimeType, id, message));
+                        generateMetacard(mimeType, id, message,
+                                headers.getHeaderString(DIGEST_HEADER)));
 
                 catalogFramework.update(updateReq);
                 response = Response.ok().build();
@@ -641,7 +690,8 @@ public Response addDocument(@Context HttpHeaders headers, @Context UriInfo reque
             if (message != null) {
 
                 CreateRequestImpl createReq = new CreateRequestImpl(
-                        generateMetacard(mimeType, null, message));
+                        generateMetacard(mimeType, null, message,
+                                headers.getHeaderString(DIGEST_HEADER)));
 
                 CreateResponse createResponse = catalogFramework.create(createReq);
 
@@ -690,6 +740,71 @@ public Response addDocument(@Context HttpHeaders headers, @Context UriInfo reque
         return response;
     }
 
+    /**
+     * REST Post. Creates many metadata entries in the catalog from a newline-delimited stream,
+     * one record per line. The records are transformed using the MIME type given by the
+     * {@code recordType} query parameter, defaulting to {@code application/json}. The response is
+     * a newline-delimited JSON stream with the status of each record.
+     *
+     * @param message
+     * @return
+     */
+    @POST
+    @Path("/bulk")
+    @Consumes({NDJSON_MIME_TYPE_STRING, MediaType.TEXT_PLAIN})
+    public Response addDocuments(@QueryParam("recordType") String recordType,
+            @Context HttpServletRequest httpRequest, InputStream message) {
+        LOGGER.debug("POST bulk");
+
+        if (message == null) {
+            String errorMessage = "No content found, cannot do bulk CREATE.";
+            LOGGER.warn(errorMessage);
+            throw new ServerErrorException(errorMessage, Status.BAD_REQUEST);
+        }
+
+        MimeType mimeType = jsonMimeType;
+        if (StringUtils.isNotEmpty(recordType)) {
+            try {
+                mimeType = new MimeType(recordType);
+            } catch (MimeTypeParseException e) {
+                String errorMessage = "Invalid record type: " + recordType;
+                LOGGER.warn(errorMessage);
+                throw new ServerErrorException(errorMessage, Status.BAD_REQUEST);
+            }
+        }
+
+        return Response.ok(new BulkIngestOutput(this, catalogFramework,
+                new BulkIngestOutput.LineRecordIterator(message, mimeType), bulkIngestBatchSize),
+                NDJSON_MIME_TYPE_STRING).build();
+    }
+
+    /**
+     * REST Post. Creates many metadata entries in the catalog, one per part of a multipart
+     * request. Each part is transformed using its own content type. The response is a
+     * newline-delimited JSON stream with the status of each part.
+     *
+     * @param multipartBody
+     * @return
+     */
+    @POST
+    @Path("/bulk")
+    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    public Response addDocuments(MultipartBody multipartBody,
+            @Context HttpServletRequest httpRequest) {
+        LOGGER.debug("POST bulk multipart");
+
+        if (multipartBody == null || multipartBody.getAllAttachments() == null) {
+            String errorMessage = "No content found, cannot do bulk CREATE.";
+            LOGGER.warn(errorMessage);
+            throw new ServerErrorException(errorMessage, Status.BAD_REQUEST);
+        }
+
+        return Response.ok(new BulkIngestOutput(this, catalogFramework,
+                new BulkIngestOutput.AttachmentRecordIterator(
+                        multipartBody.getAllAttachments()), bulkIngestBatchSize),
+                NDJSON_MIME_TYPE_STRING).build();
+    }
+
     /**
      * REST Delete. Deletes a record from the catalog.
      *
@@ -743,7 +858,17 @@ private Map<String, Serializable> convert(MultivaluedMap<String, String> map) {
         return convertedMap;
     }
 
-    private Metacard generateMetacard(MimeType mimeType, String id, InputStream message)
+    Metacard generateMetacard(MimeType mimeType, String id, InputStream message)
+            throws MetacardCreationException {
+        return generateMetacard(mimeType, id, message, null);
+    }
+
+    /**
+     * @param digest value of the request's {@code Digest} header; when it holds a
+     *               {@value IngestSpool#CHECKSUM_ALGORITHM} digest that does not match the
+     *               message, no metacard is created
+     */
+    Metacard generateMetacard(MimeType mimeType, String id, InputStream message, String digest)
             throws MetacardCreationException {
 
         List<InputTransformer> listOfCandidates = mimeTypeToTransformerMapper
@@ -753,11 +878,11 @@ private Metacard generateMetacard(MimeType mimeType, String id, InputStream mess
 
         Metacard generatedMetacard = null;
 
-        try (FileBackedOutputStream fileBackedOutputStream = new FileBackedOutputStream(1000000)) {
+        try (IngestSpool spool = new IngestSpool(SPOOL_MEMORY_THRESHOLD)) {
 
             try {
                 if (null != message) {
-                    IOUtils.copy(message, fileBackedOutputStream);
+                    spool.write(message);
                 } else {
                     throw new MetacardCreationException(
                             "Could not copy bytes of content message.  Message was NULL.");
@@ -766,6 +891,15 @@ private Metacard generateMetacard(MimeType mimeType, String id, InputStream mess
                 throw new MetacardCreationException("Could not copy bytes of content message.", e);
             }
 
+            LOGGER.debug("Spooled {} bytes of content with {} checksum {}", spool.getSize(),
+                    IngestSpool.CHECKSUM_ALGORITHM, spool.getChecksum());
+
+            if (!spool.matchesDigest(digest)) {
+                throw new MetacardCreationException(
+                        "Content " + IngestSpool.CHECKSUM_ALGORITHM + " checksum " + spool
+                                .getChecksum() + " does not match the Digest header.");
+            }
+
             Iterator<InputTransformer> it = listOfCandidates.iterator();
 
             StringBuilder causeMessage = new StringBuilder(
@@ -775,8 +909,7 @@ private Metacard generateMetacard(MimeType mimeType, String id, InputStream mess
             while (it.hasNext()) {
                 InputTransformer transformer = it.next();
 
-                try (InputStream inputStreamMessageCopy = fileBackedOutputStream.asByteSource()
-                        .openStream()) {
+                try (InputStream inputStreamMessageCopy = spool.openStream()) {
                     generatedMetacard = transformer.transform(inputStreamMessageCopy);
                 } catch (CatalogTransformerException | IOException e) {
                     causeMessage.append(System.lineSeparator());
@@ -856,7 +989,150 @@ private boolean rangeHeaderExists(HttpServletRequest httpRequest) {
         return response;
     }
 
-    // Return 0 (beginning of stream) if the range header does not exist.
+    /**
+     * Looks up the metacard with the given id. Requests without a source, or for the local
+     * source, only ask for the single matching metacard without a total result count.
+     */
+    private Metacard getMetacard(String sourceid, String id, Map<String, Serializable> properties)
+            throws UnsupportedQueryException, SourceUnavailableException, FederationException {
+        Filter filter = getFilterBuilder().attribute(Metacard.ID).is().equalTo().text(id);
+
+        QueryRequestImpl request;
+        if (sourceid == null || sourceid.equals(catalogFramework.getId())) {
+            request = new QueryRequestImpl(new QueryImpl(filter, 1, 1, null, false, 0), false);
+        } else {
+            Collection<String> sources = new ArrayList<String>();
+            sources.add(sourceid);
+            request = new QueryRequestImpl(new QueryImpl(filter), sources);
+        }
+        request.setProperties(properties);
+        QueryResponse queryResponse = catalogFramework.query(request, null);
+
+        // pull the metacard out of the blocking queue
+        List<Result> results = queryResponse.getResults();
+
+        Metacard card = null;
+        // TODO: should be poll? do we want to specify a timeout? (will
+        // return null if timeout elapsed)
+        if (results != null && !results.isEmpty()) {
+            card = results.get(0).getMetacard();
+        }
+
+        if (card == null) {
+            throw new ServerErrorException("Unable to retrieve requested metacard.",
+                    Status.NOT_FOUND);
+        }
+        return card;
+    }
+
+    private ResourceResponse getResource(Metacard card, Map<String, Serializable> properties) {
+        String sourceName = card.getSourceId();
+        if (StringUtils.isBlank(sourceName)) {
+            sourceName = catalogFramework.getId();
+        }
+
+        ResourceResponse resourceResponse;
+        try {
+            resourceResponse = catalogFramework
+                    .getResource(new ResourceRequestById(card.getId(), properties), sourceName);
+        } catch (ResourceNotFoundException e) {
+            String exceptionMessage = "Unable to retrieve requested resource: ";
+            LOGGER.warn(exceptionMessage, e);
+            throw new ServerErrorException(exceptionMessage, Status.NOT_FOUND);
+        } catch (IOException | ResourceNotSupportedException e) {
+            String exceptionMessage = "Unable to retrieve requested resource: ";
+            LOGGER.warn(exceptionMessage, e);
+            throw new ServerErrorException(exceptionMessage, Status.INTERNAL_SERVER_ERROR);
+        }
+
+        if (resourceResponse == null || resourceResponse.getResource() == null) {
+            throw new ServerErrorException("Unable to retrieve requested resource.",
+                    Status.NOT_FOUND);
+        }
+        return resourceResponse;
+    }
+
+    /**
+     * Builds a strong entity tag for the given metacard as returned by the given transformer. The
+     * tag changes whenever the metacard is modified; metacards without a modified date get none.
+     */
+    String getEntityTag(Metacard card, String transformer) {
+        Date modified = card.getModifiedDate();
+        if (modified == null) {
+            return null;
+        }
+        String version = card.getSourceId() + '/' + card.getId() + '/' + modified.getTime() + '/'
+                + transformer;
+        return '"' + Hashing.sha1().hashString(version, StandardCharsets.UTF_8).toString() + '"';
+    }
+
+    /**
+     * Evaluates the If-None-Match and If-Modified-Since request headers against the metacard.
+     * If-None-Match takes precedence when both are present.
+     */
+    private boolean isNotModified(HttpServletRequest httpRequest, Metacard card,
+            String entityTag) {
+        if (httpRequest == null || entityTag == null) {
+            return false;
+        }
+
+        String ifNoneMatch = httpRequest.getHeader(HEADER_IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                String candidate = tag.trim();
+                if (candidate.startsWith(WEAK_ENTITY_TAG_PREFIX)) {
+                    candidate = candidate.substring(WEAK_ENTITY_TAG_PREFIX.length());
+                }
+                if ("*".equals(candidate) || entityTag.equals(candidate)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = httpRequest.getDateHeader(HEADER_IF_MODIFIED_SINCE);
+        } catch (IllegalArgumentException e) {
+            LOGGER.debug("Ignoring invalid {} header", HEADER_IF_MODIFIED_SINCE, e);
+            return false;
+        }
+
+        // HTTP dates only have a precision of seconds
+        return ifModifiedSince > 0
+                && card.getModifiedDate().getTime() / 1000 <= ifModifiedSince / 1000;
+    }
+
+    private Response notModified(Metacard card, String entityTag) {
+        LOGGER.debug("Metacard {} not modified, skipping transform.", card.getId());
+        ResponseBuilder responseBuilder = Response.notModified();
+        addCacheValidators(responseBuilder, card, entityTag);
+        return responseBuilder.build();
+    }
+
+    private void addCacheValidators(ResponseBuilder responseBuilder, Metacard card,
+            String entityTag) {
+        if (entityTag != null) {
+            responseBuilder.header(HEADER_ETAG, entityTag);
+            responseBuilder.lastModified(card.getModifiedDate());
+        }
+    }
+
+    /**
+     * @return the full length of a resource whose first bytes were skipped, or -1 if it is not
+     * known
+     */
+    private long getResourceLength(long bytesToSkip, BinaryContent content, Metacard card) {
+        long remaining = content.getSize();
+        if (remaining > 0) {
+            return bytesToSkip + remaining;
+        } else if (card != null && StringUtils.isNumeric(card.getResourceSize())
+                && StringUtils.isNotEmpty(card.getResourceSize())) {
+            return Long.parseLong(card.getResourceSize());
+        }
+        return -1;
+    }
+
     private long getRangeStart(HttpServletRequest httpRequest) throws UnsupportedQueryException {
         long response = 0;
 
@@ -874,6 +1150,20 @@ private long getRangeStart(HttpServletRequest httpRequest) throws UnsupportedQue
         return response;
     }
 
+    /**
+     * @return the last byte of the requested range, or -1 if the range is open-ended
+     */
+    private long getRangeEnd(HttpServletRequest httpRequest) {
+        if (rangeHeaderExists(httpRequest)) {
+            String rangeHeader = httpRequest.getHeader(HEADER_RANGE);
+            String end = rangeHeader.substring(rangeHeader.lastIndexOf("-") + 1).trim();
+            if (StringUtils.isNotEmpty(end) && StringUtils.isNumeric(end)) {
+                return Long.parseLong(end);
+            }
+        }
+        return -1;
+    }
+
     private String getRange(String rangeHeader) throws UnsupportedQueryException {
         String response = null;
 
@@ -914,4 +1204,14 @@ public void setFilterBuilder(FilterBuilder filterBuilder) {
     public void setTikaMimeTypeResolver(MimeTypeResolver mimeTypeResolver) {
         this.tikaMimeTypeResolver = mimeTypeResolver;
     }
+
+    /**
+     * Sets the number of records of a bulk ingest request that are committed to the catalog in a
+     * single create request.
+     *
+     * @param bulkIngestBatchSize
+     */
+    public void setBulkIngestBatchSize(int bulkIngestBatchSize) {
+        this.bulkIngestBatchSize = bulkIngestBatchSize;
+    }
 }
@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.endpoints.rest;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class IngestSpoolTest {
+
+    // SHA-256 of "hello world"
+    private static final String HELLO_WORLD_CHECKSUM =
+            "b94d27b9934d3e08a52e52d7da7dabfac484efe37a5380ee9088f7ace2efcde9";
+
+    // the same checksum, base64 encoded as in a Digest header
+    private static final String HELLO_WORLD_DIGEST =
+            "uU0nuZNNPgilLlLX2n2r+sSE7+N6U4DukIj3rOLvzek=";
+
+    @Test
+    public void testSizeAndChecksum() throws IOException {
+        try (IngestSpool spool = new IngestSpool(1024)) {
+            spool.write(new ByteArrayInputStream("hello world".getBytes(StandardCharsets.UTF_8)));
+
+            assertThat(spool.getSize(), is(11L));
+            assertThat(spool.getChecksum(), is(HELLO_WORLD_CHECKSUM));
+        }
+    }
+
+    @Test
+    public void testMatchesDigest() throws IOException {
+        try (IngestSpool spool = new IngestSpool(1024)) {
+            spool.write(new ByteArrayInputStream("hello world".getBytes(StandardCharsets.UTF_8)));
+
+            assertThat(spool.matchesDigest(null), is(true));
+            assertThat(spool.matchesDigest("SHA-256=" + HELLO_WORLD_DIGEST), is(true));
+            assertThat(spool.matchesDigest("MD5=XrY7u+Ae7tCTyyK7j1rNww==, sha-256="
+                    + HELLO_WORLD_DIGEST), is(true));
+            assertThat(spool.matchesDigest("MD5=XrY7u+Ae7tCTyyK7j1rNww=="), is(true));
+            assertThat(spool.matchesDigest("SHA-256=" + HELLO_WORLD_DIGEST.replace('u', 'v')),
+                    is(false));
+        }
+    }
+
+    @Test
+    public void testContentIsReReadable() throws IOException {
+        byte[] content = new byte[200000];
+        Arrays.fill(content, (byte) 'a');
+
+        // threshold is smaller than the content so it is spooled to disk
+        try (IngestSpool spool = new IngestSpool(1024)) {
+            spool.write(new ByteArrayInputStream(content));
+
+            assertThat(spool.getSize(), is((long) content.length));
+            assertArrayEquals(content, read(spool));
+            assertArrayEquals(content, read(spool));
+        }
+    }
+
+    @Test
+    public void testEmptyContent() throws IOException {
+        try (IngestSpool spool = new IngestSpool(1024)) {
+            spool.write(new ByteArrayInputStream(new byte[0]));
+
+            assertThat(spool.getSize(), is(0L));
+            assertThat(read(spool).length, is(0));
+        }
+    }
+
+    private byte[] read(IngestSpool spool) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = spool.openStream()) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -16,6 +16,7 @@
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
@@ -25,17 +26,24 @@
 import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -47,6 +55,7 @@
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
 
@@ -67,6 +76,7 @@
 import ddf.catalog.data.ContentType;
 import ddf.catalog.data.Metacard;
 import ddf.catalog.data.Result;
+import ddf.catalog.data.impl.AttributeImpl;
 import ddf.catalog.data.impl.ContentTypeImpl;
 import ddf.catalog.data.impl.MetacardImpl;
 import ddf.catalog.federation.FederationException;
@@ -76,13 +86,16 @@
 import ddf.catalog.operation.CreateRequest;
 import ddf.catalog.operation.QueryRequest;
 import ddf.catalog.operation.QueryResponse;
+import ddf.catalog.operation.ResourceRequest;
 import ddf.catalog.operation.SourceInfoResponse;
 import ddf.catalog.operation.impl.CreateResponseImpl;
+import ddf.catalog.operation.impl.ResourceResponseImpl;
 import ddf.catalog.operation.impl.SourceInfoRequestEnterprise;
 import ddf.catalog.operation.impl.SourceInfoResponseImpl;
 import ddf.catalog.resource.Resource;
 import ddf.catalog.resource.ResourceNotFoundException;
 import ddf.catalog.resource.ResourceNotSupportedException;
+import ddf.catalog.resource.impl.ResourceImpl;
 import ddf.catalog.source.IngestException;
 import ddf.catalog.source.SourceDescriptor;
 import ddf.catalog.source.SourceUnavailableException;
@@ -105,6 +118,10 @@ public class TestRestEndpoint {
 
     private static final int NO_CONTENT = 204;
 
+    private static final int PARTIAL_CONTENT = 206;
+
+    private static final int NOT_MODIFIED = 304;
+
     private static final int INTERNAL_SERVER_ERROR = 500;
 
     private static final String SAMPLE_ID = "12345678900987654321abcdeffedcba";
@@ -221,6 +238,31 @@ public void testInvalidMimeType()
                 .findMatches(eq(InputTransformer.class), isNull(MimeType.class));
     }
 
+    @Test(expected = ServerErrorException.class)
+    public void testAddDocumentDigestMismatch() throws Exception {
+        CatalogFramework framework = givenCatalogFramework(SAMPLE_ID);
+
+        RESTEndpoint rest = new RESTEndpoint(framework);
+
+        MimeTypeToTransformerMapper matchingService = mock(MimeTypeToTransformerMapper.class);
+        List list = Arrays.asList(getSimpleTransformer());
+        when(matchingService.findMatches(eq(InputTransformer.class), isNull(MimeType.class)))
+                .thenReturn(list);
+        rest.setMimeTypeToTransformerMapper(matchingService);
+
+        HttpHeaders headers = mock(HttpHeaders.class);
+        // SHA-256 of "hello world", not of the empty message
+        when(headers.getHeaderString("Digest"))
+                .thenReturn("SHA-256=uU0nuZNNPgilLlLX2n2r+sSE7+N6U4DukIj3rOLvzek=");
+
+        try {
+            rest.addDocument(headers, givenUriInfo(SAMPLE_ID), mock(HttpServletRequest.class),
+                    new ByteArrayInputStream("".getBytes()));
+        } finally {
+            verify(framework, never()).create(isA(CreateRequest.class));
+        }
+    }
+
     @Test(expected = ServerErrorException.class)
     public void testAddDocumentNullMessage() {
 
@@ -366,6 +408,232 @@ public void testAddDocumentPositiveCase()
         assertThat(response.getMetadata().get(Metacard.ID).get(0).toString(), equalTo(SAMPLE_ID));
     }
 
+    @Test
+    public void testAddDocumentsBulkReportsEachRecord() throws Exception {
+
+        final List<String> requestIds = new ArrayList<String>();
+        CatalogFramework framework = mock(CatalogFramework.class);
+        when(framework.create(isA(CreateRequest.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                CreateRequest request = (CreateRequest) invocation.getArguments()[0];
+                List<Metacard> created = new ArrayList<Metacard>();
+                for (Metacard metacard : request.getMetacards()) {
+                    requestIds.add(metacard.getId());
+                    // created metacards are copies, returned in reverse order
+                    created.add(0, new MetacardImpl(metacard));
+                }
+                return new CreateResponseImpl(request, null, created);
+            }
+        });
+
+        RESTEndpoint rest = new RESTEndpoint(framework);
+        rest.setBulkIngestBatchSize(2);
+
+        addMatchingService(rest, Arrays.asList((InputTransformer) new InputTransformer() {
+            @Override
+            public Metacard transform(InputStream input)
+                    throws IOException, CatalogTransformerException {
+                return transform(input, null);
+            }
+
+            @Override
+            public Metacard transform(InputStream input, String id)
+                    throws IOException, CatalogTransformerException {
+                if (IOUtils.toString(input).contains("bad")) {
+                    throw new CatalogTransformerException("bad record");
+                }
+                return new MetacardImpl();
+            }
+        }));
+
+        InputStream records = new ByteArrayInputStream(
+                "{\"a\":1}\n\n{\"bad\":2}\n{\"c\":3}\n{\"d\":4}\n".getBytes());
+
+        Response response = rest.addDocuments(null, mock(HttpServletRequest.class), records);
+
+        assertThat(response.getStatus(), equalTo(OK));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(output);
+
+        String[] lines = output.toString("UTF-8").split("\n");
+        assertThat(lines.length, equalTo(4));
+
+        JSONObject first = (JSONObject) new JSONParser().parse(lines[0]);
+        JSONObject failure = (JSONObject) new JSONParser().parse(lines[1]);
+        JSONObject last = (JSONObject) new JSONParser().parse(lines[3]);
+
+        assertThat(requestIds.size(), equalTo(3));
+        assertThat(first.get("index").toString(), equalTo("0"));
+        assertThat(first.get(Metacard.ID).toString(), equalTo(requestIds.get(0)));
+        assertThat(failure.get("index").toString(), equalTo("1"));
+        assertThat(failure.get("error"), notNullValue());
+        assertThat(last.get("index").toString(), equalTo("3"));
+        assertThat(last.get(Metacard.ID).toString(), equalTo(requestIds.get(2)));
+
+        verify(framework, times(2)).create(isA(CreateRequest.class));
+    }
+
+    @Test
+    public void testAddDocumentsBulkReportsMetacardsNotCreated() throws Exception {
+
+        CatalogFramework framework = mock(CatalogFramework.class);
+        when(framework.create(isA(CreateRequest.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                CreateRequest request = (CreateRequest) invocation.getArguments()[0];
+                // only the second metacard of the batch is created, under a new id
+                Metacard metacard = request.getMetacards().get(1);
+                metacard.setAttribute(new AttributeImpl(Metacard.ID, "assigned"));
+                return new CreateResponseImpl(request, null,
+                        Arrays.asList((Metacard) new MetacardImpl(metacard)));
+            }
+        });
+
+        RESTEndpoint rest = new RESTEndpoint(framework);
+        addMatchingService(rest, Arrays.asList(getSimpleTransformer()));
+
+        Response response = rest.addDocuments(null, mock(HttpServletRequest.class),
+                new ByteArrayInputStream("{\"a\":1}\n{\"b\":2}\n".getBytes()));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(output);
+
+        String[] lines = output.toString("UTF-8").split("\n");
+        JSONObject first = (JSONObject) new JSONParser().parse(lines[0]);
+        JSONObject second = (JSONObject) new JSONParser().parse(lines[1]);
+
+        assertThat(first.get("error"), notNullValue());
+        assertThat(second.get(Metacard.ID).toString(), equalTo("assigned"));
+    }
+
+    @Test
+    public void testAddDocumentsBulkContinuesAfterTransformerFailure() throws Exception {
+
+        CatalogFramework framework = mock(CatalogFramework.class);
+        when(framework.create(isA(CreateRequest.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                CreateRequest request = (CreateRequest) invocation.getArguments()[0];
+                return new CreateResponseImpl(request, null, request.getMetacards());
+            }
+        });
+
+        RESTEndpoint rest = new RESTEndpoint(framework);
+        addMatchingService(rest, Arrays.asList((InputTransformer) new InputTransformer() {
+            @Override
+            public Metacard transform(InputStream input)
+                    throws IOException, CatalogTransformerException {
+                return transform(input, null);
+            }
+
+            @Override
+            public Metacard transform(InputStream input, String id)
+                    throws IOException, CatalogTransformerException {
+                if (IOUtils.toString(input).contains("bad")) {
+                    throw new ClassCastException("not a feature");
+                }
+                return new MetacardImpl();
+            }
+        }));
+
+        Response response = rest.addDocuments(null, mock(HttpServletRequest.class),
+                new ByteArrayInputStream("{\"a\":1}\n{\"bad\":2}\n{\"c\":3}\n".getBytes()));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(output);
+
+        String[] lines = output.toString("UTF-8").split("\n");
+        assertThat(lines.length, equalTo(3));
+        JSONObject first = (JSONObject) new JSONParser().parse(lines[0]);
+        JSONObject failure = (JSONObject) new JSONParser().parse(lines[1]);
+        JSONObject last = (JSONObject) new JSONParser().parse(lines[2]);
+
+        assertThat(first.get(Metacard.ID), notNullValue());
+        assertThat(failure.get("error"), notNullValue());
+        assertThat(last.get("index").toString(), equalTo("2"));
+        assertThat(last.get(Metacard.ID), notNullValue());
+    }
+
+    @Test
+    public void testAddDocumentsBulkReportsFailedBatch() throws Exception {
+
+        CatalogFramework framework = mock(CatalogFramework.class);
+        when(framework.create(isA(CreateRequest.class))).thenAnswer(new Answer<Object>() {
+            private boolean failed = false;
+
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                if (!failed) {
+                    failed = true;
+                    throw new IllegalStateException("catalog failure");
+                }
+                CreateRequest request = (CreateRequest) invocation.getArguments()[0];
+                return new CreateResponseImpl(request, null, request.getMetacards());
+            }
+        });
+
+        RESTEndpoint rest = new RESTEndpoint(framework);
+        rest.setBulkIngestBatchSize(1);
+        addMatchingService(rest, Arrays.asList(getSimpleTransformer()));
+
+        Response response = rest.addDocuments(null, mock(HttpServletRequest.class),
+                new ByteArrayInputStream("{\"a\":1}\n{\"b\":2}\n".getBytes()));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(output);
+
+        String[] lines = output.toString("UTF-8").split("\n");
+        assertThat(lines.length, equalTo(2));
+        JSONObject first = (JSONObject) new JSONParser().parse(lines[0]);
+        JSONObject second = (JSONObject) new JSONParser().parse(lines[1]);
+
+        assertThat(first.get("error"), notNullValue());
+        assertThat(first.get(Metacard.ID), nullValue());
+        assertThat(second.get(Metacard.ID), notNullValue());
+        verify(framework, times(2)).create(isA(CreateRequest.class));
+    }
+
+    @Test
+    public void testAddDocumentsBulkStopsWhenRequestCannotBeRead() throws Exception {
+
+        CatalogFramework framework = mock(CatalogFramework.class);
+        when(framework.create(isA(CreateRequest.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                CreateRequest request = (CreateRequest) invocation.getArguments()[0];
+                return new CreateResponseImpl(request, null, request.getMetacards());
+            }
+        });
+
+        RESTEndpoint rest = new RESTEndpoint(framework);
+        addMatchingService(rest, Arrays.asList(getSimpleTransformer()));
+
+        // the connection breaks after the first record
+        InputStream records = new SequenceInputStream(
+                new ByteArrayInputStream("{\"a\":1}\n".getBytes()), new InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        throw new IOException("connection reset");
+                    }
+                });
+
+        Response response = rest.addDocuments(null, mock(HttpServletRequest.class), records);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(output);
+
+        String[] lines = output.toString("UTF-8").split("\n");
+        assertThat(lines.length, equalTo(2));
+        JSONObject first = (JSONObject) new JSONParser().parse(lines[0]);
+        JSONObject failure = (JSONObject) new JSONParser().parse(lines[1]);
+
+        assertThat(first.get(Metacard.ID), notNullValue());
+        assertThat(failure.get("index").toString(), equalTo("1"));
+        assertThat(failure.get("error"), notNullValue());
+    }
+
     /**
      * Tests local retrieve with a null QueryResponse
      *
@@ -501,6 +769,178 @@ public void testGetDocumentKml() throws Exception {
         assertEquals(GET_KML_TYPE_OUTPUT, response.getMetadata().toString());
     }
 
+    @Test
+    public void testGetDocumentNotModified() throws Exception {
+
+        CatalogFramework framework = givenCatalogFramework(SAMPLE_ID);
+        MetacardImpl metacard = givenModifiedMetacard(framework);
+
+        RESTEndpoint rest = new RESTEndpoint(framework);
+        rest.setFilterBuilder(new GeotoolsFilterBuilder());
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getHeader("If-None-Match"))
+                .thenReturn(rest.getEntityTag(metacard, RESTEndpoint.DEFAULT_METACARD_TRANSFORMER));
+
+        Response response = rest.getDocument(GET_ID, null,
+                createSpecificUriInfo(LOCAL_RETRIEVE_ADDRESS), request);
+
+        assertEquals(NOT_MODIFIED, response.getStatus());
+        assertThat(response.getMetadata().getFirst("ETag"), notNullValue());
+        verify(framework, never()).transform(isA(Metacard.class), anyString(), isA(Map.class));
+    }
+
+    @Test
+    public void testGetDocumentModifiedSinceIfModifiedSince() throws Exception {
+
+        CatalogFramework framework = givenCatalogFramework(SAMPLE_ID);
+        MetacardImpl metacard = givenModifiedMetacard(framework);
+
+        BinaryContent content = mock(BinaryContent.class);
+        when(content.getInputStream()).thenReturn(
+                new ByteArrayInputStream(GET_STREAM.getBytes(GET_OUTPUT_TYPE)));
+        when(content.getMimeTypeValue()).thenReturn(GET_MIME_TYPE);
+        when(framework.transform(isA(Metacard.class), anyString(), isA(Map.class)))
+                .thenReturn(content);
+
+        RESTEndpoint rest = new RESTEndpoint(framework);
+        rest.setFilterBuilder(new GeotoolsFilterBuilder());
+        rest.setTikaMimeTypeResolver(new TikaMimeTypeResolver());
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getDateHeader("If-Modified-Since"))
+                .thenReturn(metacard.getModifiedDate().getTime() - 60000);
+
+        Response response = rest.getDocument(GET_ID, null,
+                createSpecificUriInfo(LOCAL_RETRIEVE_ADDRESS), request);
+
+        assertEquals(OK, response.getStatus());
+        assertThat(response.getMetadata().getFirst("ETag"), notNullValue());
+    }
+
+    @Test
+    public void testGetDocumentResourceRangeFromCache() throws Exception {
+
+        CatalogFramework framework = givenCatalogFramework(SAMPLE_ID);
+        givenModifiedMetacard(framework);
+
+        String remaining = GET_STREAM.substring(5);
+        ResourceImpl resource = new ResourceImpl(
+                new ByteArrayInputStream(remaining.getBytes(GET_OUTPUT_TYPE)), GET_MIME_TYPE,
+                GET_FILENAME);
+        resource.setSize(remaining.length());
+        Map<String, Serializable> properties = new HashMap<String, Serializable>();
+        properties.put(RESTEndpoint.BYTES_SKIPPED, true);
+        when(framework.getResource(isA(ResourceRequest.class), eq(GET_SITENAME)))
+                .thenReturn(new ResourceResponseImpl(null, properties, resource));
+
+        RESTEndpoint rest = new RESTEndpoint(framework);
+        rest.setFilterBuilder(new GeotoolsFilterBuilder());
+        rest.setTikaMimeTypeResolver(new TikaMimeTypeResolver());
+
+        Response response = rest.getDocument(GET_ID, "resource",
+                createSpecificUriInfo(LOCAL_RETRIEVE_ADDRESS), createServletRequest("5"));
+
+        assertEquals(PARTIAL_CONTENT, response.getStatus());
+        assertEquals("bytes 5-" + (GET_STREAM.length() - 1) + "/" + GET_STREAM.length(),
+                response.getMetadata().getFirst("Content-Range"));
+        assertEquals(remaining,
+                IOUtils.toString((ByteArrayInputStream) response.getEntity()));
+        verify(framework, never()).transform(isA(Metacard.class), anyString(), isA(Map.class));
+    }
+
+    @Test
+    public void testGetDocumentResourceRangeOfUnknownLength() throws Exception {
+
+        Response response = getCachedRange(null, createServletRequest("5"));
+
+        // without the length there is no valid Content-Range, so the whole resource is sent
+        assertEquals(OK, response.getStatus());
+        assertThat(response.getMetadata().getFirst("Content-Range"), nullValue());
+        assertEquals(GET_STREAM, IOUtils.toString((InputStream) response.getEntity()));
+    }
+
+    @Test
+    public void testGetDocumentResourceRangeLengthFromMetacard() throws Exception {
+
+        Response response = getCachedRange(String.valueOf(GET_STREAM.length()),
+                createServletRequest("5"));
+
+        assertEquals(PARTIAL_CONTENT, response.getStatus());
+        assertEquals("bytes 5-" + (GET_STREAM.length() - 1) + "/" + GET_STREAM.length(),
+                response.getMetadata().getFirst("Content-Range"));
+        assertEquals(GET_STREAM.substring(5),
+                IOUtils.toString((InputStream) response.getEntity()));
+    }
+
+    @Test
+    public void testGetDocumentResourceRangeWithEnd() throws Exception {
+
+        Response response = getCachedRange(String.valueOf(GET_STREAM.length()),
+                createRangeRequest("bytes=5-9"));
+
+        assertEquals(PARTIAL_CONTENT, response.getStatus());
+        assertEquals("bytes 5-9/" + GET_STREAM.length(),
+                response.getMetadata().getFirst("Content-Range"));
+        assertEquals(GET_STREAM.substring(5, 10),
+                IOUtils.toString((InputStream) response.getEntity()));
+    }
+
+    @Test
+    public void testGetDocumentResourceRangeEndPastLength() throws Exception {
+
+        Response response = getCachedRange(String.valueOf(GET_STREAM.length()),
+                createRangeRequest("bytes=5-1000"));
+
+        assertEquals(PARTIAL_CONTENT, response.getStatus());
+        assertEquals("bytes 5-" + (GET_STREAM.length() - 1) + "/" + GET_STREAM.length(),
+                response.getMetadata().getFirst("Content-Range"));
+        assertEquals(GET_STREAM.substring(5),
+                IOUtils.toString((InputStream) response.getEntity()));
+    }
+
+    @Test
+    public void testGetDocumentResourceInvalidRangeIgnored() throws Exception {
+
+        Response response = getCachedRange(String.valueOf(GET_STREAM.length()),
+                createRangeRequest("bytes=9-5"));
+
+        assertEquals(OK, response.getStatus());
+        assertThat(response.getMetadata().getFirst("Content-Range"), nullValue());
+        assertEquals(GET_STREAM, IOUtils.toString((InputStream) response.getEntity()));
+    }
+
+    private Response getCachedRange(String resourceSize, HttpServletRequest request)
+            throws Exception {
+        CatalogFramework framework = givenCatalogFramework(SAMPLE_ID);
+        MetacardImpl metacard = givenModifiedMetacard(framework);
+        metacard.setResourceSize(resourceSize);
+
+        // the size of the remaining bytes is not known
+        ResourceImpl resource = new ResourceImpl(
+                new ByteArrayInputStream(GET_STREAM.substring(5).getBytes(GET_OUTPUT_TYPE)),
+                GET_MIME_TYPE, GET_FILENAME);
+        Map<String, Serializable> properties = new HashMap<String, Serializable>();
+        properties.put(RESTEndpoint.BYTES_SKIPPED, true);
+        when(framework.getResource(isA(ResourceRequest.class), eq(GET_SITENAME)))
+                .thenReturn(new ResourceResponseImpl(null, properties, resource));
+
+        // the whole resource, for responses that cannot be partial
+        BinaryContent content = mock(BinaryContent.class);
+        when(content.getInputStream()).thenReturn(
+                new ByteArrayInputStream(GET_STREAM.getBytes(GET_OUTPUT_TYPE)));
+        when(content.getMimeTypeValue()).thenReturn(GET_MIME_TYPE);
+        when(framework.transform(isA(Metacard.class), eq("resource"), isA(Map.class)))
+                .thenReturn(content);
+
+        RESTEndpoint rest = new RESTEndpoint(framework);
+        rest.setFilterBuilder(new GeotoolsFilterBuilder());
+        rest.setTikaMimeTypeResolver(new TikaMimeTypeResolver());
+
+        return rest.getDocument(GET_ID, "resource", createSpecificUriInfo(LOCAL_RETRIEVE_ADDRESS),
+                request);
+    }
+
     /**
      * Tests federated retrieve with a successful response
      *
@@ -1038,6 +1478,22 @@ protected CatalogFramework givenCatalogFramework(String returnId)
         return framework;
     }
 
+    private MetacardImpl givenModifiedMetacard(CatalogFramework framework) throws Exception {
+        MetacardImpl metacard = new MetacardImpl();
+        metacard.setId(GET_ID);
+        metacard.setSourceId(GET_SITENAME);
+        metacard.setModifiedDate(new Date(1400000000000L));
+
+        Result result = mock(Result.class);
+        when(result.getMetacard()).thenReturn(metacard);
+        QueryResponse queryResponse = mock(QueryResponse.class);
+        when(queryResponse.getResults()).thenReturn(Arrays.asList(result));
+        when(framework.query(isA(QueryRequest.class), isNull(FederationStrategy.class)))
+                .thenReturn(queryResponse);
+
+        return metacard;
+    }
+
     protected UriInfo givenUriInfo(String metacardId) throws URISyntaxException {
         UriInfo info = mock(UriInfo.class);
 
@@ -1107,8 +1563,12 @@ private MimeTypeToTransformerMapper addMatchingService(RESTEndpoint rest,
     }
 
     private HttpServletRequest createServletRequest(String bytesToSkip) {
+        return createRangeRequest("bytes=" + bytesToSkip + "-");
+    }
+
+    private HttpServletRequest createRangeRequest(String range) {
         HttpServletRequest request = mock(HttpServletRequest.class);
-        when(request.getHeader(HEADER_RANGE)).thenReturn("bytes=" + bytesToSkip + "-");
+        when(request.getHeader(HEADER_RANGE)).thenReturn(range);
 
         return request;
     }
@@ -137,6 +137,10 @@ public void setDisableTextPath(boolean disableTextPath) {
         ConfigurationStore.getInstance().setDisableTextPath(disableTextPath);
     }
 
+    public void setXpathValueElements(String[] xpathValueElements) {
+        ConfigurationStore.getInstance().setXpathValueElements(xpathValueElements);
+    }
+
     @Override
     public Set<ContentType> getContentTypes() {
         return getProvider().getContentTypes();
@@ -211,7 +211,7 @@ public class CswEndpoint implements Csw {
 
     private static Map<String, Element> documentElements = new HashMap<String, Element>();
 
-    private static JAXBContext jaxBContext;
+    private static final JAXBContext JAX_B_CONTEXT = createJaxBContext();
 
     private final TransformerManager mimeTypeTransformerManager;
 
@@ -247,13 +247,25 @@ public CswEndpoint(BundleContext context, CatalogFramework ddf, FilterBuilder fi
         this.uri = uri;
     }
 
-    public static synchronized JAXBContext getJaxBContext() throws JAXBException {
-        if (jaxBContext == null) {
+    /**
+     * Returns the CSW {@link JAXBContext}. The context is created once, when this class is loaded,
+     * and is thread safe, so callers share it without locking.
+     */
+    public static JAXBContext getJaxBContext() throws JAXBException {
+        if (JAX_B_CONTEXT == null) {
+            throw new JAXBException("Unable to create the CSW JAXBContext.");
+        }
+        return JAX_B_CONTEXT;
+    }
 
-            jaxBContext = JAXBContext.newInstance("net.opengis.cat.csw.v_2_0_2:"
+    private static JAXBContext createJaxBContext() {
+        try {
+            return JAXBContext.newInstance("net.opengis.cat.csw.v_2_0_2:"
                     + "net.opengis.filter.v_1_1_0:net.opengis.gml.v_3_1_1:net.opengis.ows.v_1_0_0");
+        } catch (JAXBException e) {
+            LOGGER.error("Unable to create the CSW JAXBContext.", e);
+            return null;
         }
-        return jaxBContext;
     }
 
     @Override
@@ -35,6 +35,7 @@
 import org.apache.commons.lang.StringUtils;
 import org.codice.ddf.spatial.ogc.csw.catalog.common.CswConstants;
 import org.codice.ddf.spatial.ogc.csw.catalog.common.CswRecordCollection;
+import org.codice.ddf.spatial.ogc.csw.catalog.transformer.CswQueryResponseTransformer;
 import org.codice.ddf.spatial.ogc.csw.catalog.transformer.TransformerManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +46,9 @@
 
 /**
  * CswRecordCollectionMessageBodyWriter generates an xml response for a {@link CswRecordCollection}
+ * <p/>
+ * When the registered CSW transformer is a {@link CswQueryResponseTransformer}, CSW responses are
+ * written directly to the output stream as each record is transformed.
  */
 @Provider
 public class CswRecordCollectionMessageBodyWriter
@@ -86,10 +90,12 @@ public void writeTo(CswRecordCollection recordCollection, Class<?> type, Type ge
                 mimeType, recordCollection.getOutputSchema());
         QueryResponseTransformer transformer;
         Map<String, Serializable> arguments = new HashMap<String, Serializable>();
+        boolean isCswResponse = false;
         if (StringUtils.isBlank(recordCollection.getOutputSchema()) && StringUtils
                 .isNotBlank(mimeType) && !XML_MIME_TYPES.contains(mimeType)) {
             transformer = transformerManager.getTransformerByMimeType(mimeType);
         } else {
+            isCswResponse = true;
             transformer = transformerManager.getCswQueryResponseTransformer();
             if (recordCollection.getElementName() != null) {
                 arguments.put(CswConstants.ELEMENT_NAMES,
@@ -108,6 +114,18 @@ public void writeTo(CswRecordCollection recordCollection, Class<?> type, Type ge
                     new CatalogTransformerException("Unable to locate Transformer."));
         }
 
+        if (isCswResponse && transformer instanceof CswQueryResponseTransformer
+                && recordCollection.getSourceResponse() != null
+                && recordCollection.getSourceResponse().getResults() != null) {
+            try {
+                ((CswQueryResponseTransformer) transformer)
+                        .write(recordCollection.getSourceResponse(), arguments, outStream);
+            } catch (CatalogTransformerException e) {
+                throw new WebApplicationException(e);
+            }
+            return;
+        }
+
         BinaryContent content = null;
         try {
             content = transformer.transform(recordCollection.getSourceResponse(), arguments);
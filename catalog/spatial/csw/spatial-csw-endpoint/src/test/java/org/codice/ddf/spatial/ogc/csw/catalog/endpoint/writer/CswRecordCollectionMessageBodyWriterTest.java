@@ -16,8 +16,13 @@
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -25,10 +30,16 @@
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
@@ -37,14 +48,25 @@
 
 import org.codice.ddf.spatial.ogc.csw.catalog.common.CswConstants;
 import org.codice.ddf.spatial.ogc.csw.catalog.common.CswRecordCollection;
+import org.codice.ddf.spatial.ogc.csw.catalog.converter.CswRecordConverter;
+import org.codice.ddf.spatial.ogc.csw.catalog.converter.CswTransformProvider;
+import org.codice.ddf.spatial.ogc.csw.catalog.converter.GetRecordsResponseConverter;
+import org.codice.ddf.spatial.ogc.csw.catalog.converter.RecordMarshallingExecutor;
+import org.codice.ddf.spatial.ogc.csw.catalog.transformer.CswQueryResponseTransformer;
 import org.codice.ddf.spatial.ogc.csw.catalog.transformer.TransformerManager;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.opengis.filter.Filter;
 
 import ddf.catalog.data.BinaryContent;
 import ddf.catalog.data.Metacard;
+import ddf.catalog.data.Result;
 import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.data.impl.ResultImpl;
 import ddf.catalog.operation.SourceResponse;
+import ddf.catalog.operation.impl.QueryImpl;
+import ddf.catalog.operation.impl.QueryRequestImpl;
+import ddf.catalog.operation.impl.QueryResponseImpl;
 import ddf.catalog.transform.CatalogTransformerException;
 import ddf.catalog.transform.QueryResponseTransformer;
 import net.opengis.cat.csw.v_2_0_2.ElementSetType;
@@ -170,6 +192,132 @@ public void testWriteToWithMimeType() throws WebApplicationException, IOExceptio
         // TODO failure case
     }
 
+    @Test
+    public void testWriteToStreamsGetRecordsResponse() throws Exception {
+        CswQueryResponseTransformer cswTransformer = spy(createCswTransformer());
+        when(mockManager.getCswQueryResponseTransformer()).thenReturn(cswTransformer);
+        CswRecordCollectionMessageBodyWriter writer = new CswRecordCollectionMessageBodyWriter(
+                mockManager);
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        writer.writeTo(createGetRecordsCollection(50), null, null, null, null, null, stream);
+
+        assertRecordsInOrder(stream.toString("UTF-8"), 50);
+        verify(cswTransformer).write(any(SourceResponse.class), any(Map.class),
+                any(OutputStream.class));
+        verify(cswTransformer, never()).transform(any(SourceResponse.class), any(Map.class));
+    }
+
+    @Test
+    public void testWriteToWithoutCswTransformer() throws Exception {
+        CswRecordCollectionMessageBodyWriter writer = new CswRecordCollectionMessageBodyWriter(
+                mockManager);
+
+        try {
+            writer.writeTo(createGetRecordsCollection(5), null, null, null, null, null,
+                    new ByteArrayOutputStream());
+            fail("Expected a WebApplicationException");
+        } catch (WebApplicationException e) {
+            assertThat(e.getCause().getMessage(), is("Unable to locate Transformer."));
+        }
+    }
+
+    @Test
+    public void testWriteToWithoutSourceResponseUsesTransformer() throws Exception {
+        CswRecordCollectionMessageBodyWriter writer = new CswRecordCollectionMessageBodyWriter(
+                mockManager);
+        when(mockManager.getCswQueryResponseTransformer()).thenReturn(mockTransformer);
+        when(mockTransformer.transform(any(SourceResponse.class), any(Map.class)))
+                .thenReturn(mockContent);
+        when(mockContent.getInputStream()).thenReturn(new ByteArrayInputStream("bytes".getBytes()));
+
+        CswRecordCollection collection = createCswRecordCollection(6);
+        collection.setById(true);
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        writer.writeTo(collection, null, null, null, null, null, stream);
+
+        assertThat(stream.toString(), is("bytes"));
+    }
+
+    /**
+     * Streams 50 concurrent GetRecords responses through a marshalling pool too small for them,
+     * so that most records are transformed by the threads writing the responses.
+     */
+    @Test
+    public void testConcurrentGetRecordsResponses() throws Exception {
+        final int clients = 50;
+        final int records = 100;
+        RecordMarshallingExecutor marshallingExecutor = new RecordMarshallingExecutor();
+        marshallingExecutor.setMarshallingThreads(2);
+        when(mockManager.getCswQueryResponseTransformer()).thenReturn(
+                new CswQueryResponseTransformer(new GetRecordsResponseConverter(
+                        new CswTransformProvider(createMetacardTransformerManager(), null),
+                        marshallingExecutor, 32)));
+        final CswRecordCollectionMessageBodyWriter writer =
+                new CswRecordCollectionMessageBodyWriter(mockManager);
+
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(clients);
+        try {
+            List<Callable<String>> requests = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                requests.add(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+                        writer.writeTo(createGetRecordsCollection(records), null, null, null,
+                                null, null, stream);
+                        return stream.toString("UTF-8");
+                    }
+                });
+            }
+
+            for (Future<String> response : clientExecutor.invokeAll(requests)) {
+                assertRecordsInOrder(response.get(), records);
+            }
+        } finally {
+            clientExecutor.shutdownNow();
+            marshallingExecutor.shutdownNow();
+        }
+    }
+
+    private void assertRecordsInOrder(String xml, int records) {
+        assertThat(xml, containsString("numberOfRecordsReturned=\"" + (records + 1) + "\""));
+        int previous = -1;
+        for (int i = 0; i <= records; i++) {
+            int position = xml.indexOf(">id_" + i + "<");
+            assertThat(position > previous, is(true));
+            previous = position;
+        }
+    }
+
+    private CswQueryResponseTransformer createCswTransformer() {
+        return new CswQueryResponseTransformer(new GetRecordsResponseConverter(
+                new CswTransformProvider(createMetacardTransformerManager(), null)));
+    }
+
+    private TransformerManager createMetacardTransformerManager() {
+        TransformerManager metacardTransformerManager = mock(TransformerManager.class);
+        when(metacardTransformerManager.getTransformerBySchema(anyString()))
+                .thenReturn(new CswRecordConverter());
+        return metacardTransformerManager;
+    }
+
+    private CswRecordCollection createGetRecordsCollection(int resultCount) {
+        List<Result> results = new ArrayList<>();
+        for (Metacard metacard : createMetacardList(resultCount)) {
+            results.add(new ResultImpl(metacard));
+        }
+
+        CswRecordCollection collection = new CswRecordCollection();
+        collection.setOutputSchema(CswConstants.CSW_OUTPUT_SCHEMA);
+        collection.setElementSetType(ElementSetType.FULL);
+        collection.setResultType(ResultType.RESULTS);
+        collection.setSourceResponse(new QueryResponseImpl(
+                new QueryRequestImpl(new QueryImpl(Filter.INCLUDE)), results, results.size()));
+        return collection;
+    }
+
     private CswRecordCollection createCswRecordCollection(int resultCount) {
         CswRecordCollection collection = new CswRecordCollection();
         collection.setCswRecords(createMetacardList(resultCount));
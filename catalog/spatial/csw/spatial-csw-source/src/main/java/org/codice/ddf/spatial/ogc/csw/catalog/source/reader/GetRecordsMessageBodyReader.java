@@ -15,11 +15,13 @@
 package org.codice.ddf.spatial.ogc.csw.catalog.source.reader;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
@@ -27,6 +29,9 @@
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.ext.MessageBodyReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.apache.commons.io.IOUtils;
 import org.codice.ddf.spatial.ogc.csw.catalog.common.CswConstants;
@@ -35,26 +40,36 @@
 import org.codice.ddf.spatial.ogc.csw.catalog.converter.GetRecordsResponseConverter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xmlpull.v1.XmlPullParserException;
-import org.xmlpull.v1.XmlPullParserFactory;
 
 import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.XStreamException;
 import com.thoughtworks.xstream.converters.Converter;
 import com.thoughtworks.xstream.converters.DataHolder;
 import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.xml.QNameMap;
+import com.thoughtworks.xstream.io.xml.StaxReader;
 import com.thoughtworks.xstream.io.xml.XppDriver;
-import com.thoughtworks.xstream.io.xml.XppReader;
 
 import ddf.catalog.data.Metacard;
 
 /**
  * Custom JAX-RS MessageBodyReader for parsing a CSW GetRecords response, extracting the search
  * results and CSW records.
+ * <br/>
+ * The response is parsed with a StAX reader as it arrives, and each record is converted to a
+ * metacard as soon as it has been read, so the response as a whole is never held in memory.
  */
 public class GetRecordsMessageBodyReader implements MessageBodyReader<CswRecordCollection> {
     private static final Logger LOGGER = LoggerFactory.getLogger(GetRecordsMessageBodyReader.class);
 
+    /**
+     * Size of the start of the response kept to report an error the remote site sent instead of
+     * a GetRecords response.
+     */
+    private static final int MAX_RECORDED_RESPONSE_SIZE = 64 * 1024;
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
     private XStream xstream;
 
     private DataHolder argumentHolder;
@@ -79,6 +94,18 @@ private void buildArguments(CswSourceConfiguration configuration) {
         argumentHolder.put(Metacard.THUMBNAIL, configuration.getThumbnailMapping());
     }
 
+    /**
+     * Namespace processing is turned off so element and attribute names keep their prefixes and
+     * namespace declarations are read as attributes, which the CSW converters rely on.
+     */
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return xmlInputFactory;
+    }
+
     @Override
     public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations,
             MediaType mediaType) {
@@ -91,24 +118,22 @@ public CswRecordCollection readFrom(Class<CswRecordCollection> type, Type generi
             MultivaluedMap<String, String> httpHeaders, InputStream inStream) throws IOException,
             WebApplicationException {
 
-        // Save original input stream for any exception message that might need to be
-        // created
-        String originalInputStream = IOUtils.toString(inStream, "UTF-8");
-        LOGGER.debug("Converting to CswRecordCollection: \n {}", originalInputStream);
-
-        // Re-create the input stream (since it has already been read for potential
-        // exception message creation)
-        inStream = new ByteArrayInputStream(originalInputStream.getBytes("UTF-8"));
-
-        CswRecordCollection cswRecords = null;
+        if (LOGGER.isDebugEnabled()) {
+            String originalInputStream = IOUtils.toString(inStream, StandardCharsets.UTF_8.name());
+            LOGGER.debug("Converting to CswRecordCollection: \n {}", originalInputStream);
+            inStream = new ByteArrayInputStream(
+                    originalInputStream.getBytes(StandardCharsets.UTF_8.name()));
+        }
 
+        // Keep the start of the response for any exception message that might need to be created
+        RecordingInputStream recordingStream = new RecordingInputStream(inStream,
+                MAX_RECORDED_RESPONSE_SIZE);
+        XMLStreamReader xmlStreamReader = null;
         try {
-            HierarchicalStreamReader reader = new XppReader(new InputStreamReader(inStream),
-                    XmlPullParserFactory.newInstance().newPullParser());
-            cswRecords = (CswRecordCollection) xstream.unmarshal(reader, null, argumentHolder);
-        } catch (XmlPullParserException e) {
-            LOGGER.error("Unable to create XmlPullParser, and cannot parse CSW Response.", e);
-        } catch (XStreamException e) {
+            xmlStreamReader = XML_INPUT_FACTORY.createXMLStreamReader(recordingStream);
+            HierarchicalStreamReader reader = new StaxReader(new QNameMap(), xmlStreamReader);
+            return (CswRecordCollection) xstream.unmarshal(reader, null, argumentHolder);
+        } catch (XMLStreamException | XStreamException e) {
             // If an ExceptionReport is sent from the remote CSW site it will be sent with an
             // JAX-RS "OK" status, hence the ErrorResponse exception mapper will not fire.
             // Instead the ExceptionReport will come here and be treated like a GetRecords
@@ -118,16 +143,75 @@ public CswRecordCollection readFrom(Class<CswRecordCollection> type, Type generi
             // (with the ExceptionReport) and rethrowing it as a WebApplicatioNException,
             // which CXF will wrap as a ClientException that the CswSource catches, converts
             // to a CswException, and logs.
-            ByteArrayInputStream bis = new ByteArrayInputStream(originalInputStream.getBytes());
+            ByteArrayInputStream bis = new ByteArrayInputStream(recordingStream.getRecording());
             ResponseBuilder responseBuilder = Response.ok(bis);
             responseBuilder.type("text/xml");
             Response response = responseBuilder.build();
             throw new WebApplicationException(e, response);
         } finally {
+            if (xmlStreamReader != null) {
+                try {
+                    xmlStreamReader.close();
+                } catch (XMLStreamException e) {
+                    LOGGER.debug("Unable to close XML stream reader.", e);
+                }
+            }
             IOUtils.closeQuietly(inStream);
         }
-
-        return cswRecords;
     }
 
+    /**
+     * Keeps a copy of the start of the stream as it is read.
+     */
+    private static class RecordingInputStream extends FilterInputStream {
+
+        private final ByteArrayOutputStream recording = new ByteArrayOutputStream();
+
+        private final int limit;
+
+        RecordingInputStream(InputStream in, int limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1 && recording.size() < limit) {
+                recording.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                recording.write(b, off, Math.min(read, limit - recording.size()));
+            }
+            return read;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * Reads the rest of the stream up to the limit, since the parser may have stopped before
+         * the end of a short error report, and returns what was recorded.
+         */
+        byte[] getRecording() {
+            byte[] buffer = new byte[IOUtils.DEFAULT_BUFFER_SIZE];
+            try {
+                int read = 0;
+                while (read != -1 && recording.size() < limit) {
+                    read = read(buffer, 0, buffer.length);
+                }
+            } catch (IOException e) {
+                LOGGER.debug("Unable to read the rest of the response.", e);
+            }
+            return recording.toByteArray();
+        }
+    }
 }
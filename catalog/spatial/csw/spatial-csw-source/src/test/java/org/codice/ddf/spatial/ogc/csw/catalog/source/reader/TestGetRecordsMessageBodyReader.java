@@ -15,12 +15,14 @@
 package org.codice.ddf.spatial.ogc.csw.catalog.source.reader;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
@@ -28,13 +30,26 @@
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.ws.rs.WebApplicationException;
+
+import org.apache.commons.io.IOUtils;
+
 import org.codice.ddf.spatial.ogc.csw.catalog.common.CswConstants;
 import org.codice.ddf.spatial.ogc.csw.catalog.common.CswRecordCollection;
 import org.codice.ddf.spatial.ogc.csw.catalog.common.CswRecordMetacardType;
@@ -48,6 +63,12 @@
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
 
 import com.thoughtworks.xstream.converters.UnmarshallingContext;
 import com.thoughtworks.xstream.io.HierarchicalStreamReader;
@@ -56,6 +77,9 @@
 
 public class TestGetRecordsMessageBodyReader {
 
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(TestGetRecordsMessageBodyReader.class);
+
     private CswTransformProvider mockProvider = mock(CswTransformProvider.class);
 
     private TransformerManager mockInputManager = mock(TransformerManager.class);
@@ -223,6 +247,128 @@ public void testGetMultipleMetacardsWithForeignText() throws Exception {
         assertThat(metacards.size(), equalTo(10));
     }
 
+    @Test
+    public void testExceptionReport() throws Exception {
+        CswSourceConfiguration config = new CswSourceConfiguration();
+        config.setOutputSchema(CswConstants.CSW_OUTPUT_SCHEMA);
+        GetRecordsMessageBodyReader reader = new GetRecordsMessageBodyReader(mockProvider, config);
+        String exceptionReport = "<ows:ExceptionReport xmlns:ows=\"http://www.opengis.net/ows\""
+                + " version=\"1.2.0\"><ows:Exception exceptionCode=\"InvalidParameterValue\">"
+                + "<ows:ExceptionText>Unknown type</ows:ExceptionText></ows:Exception>"
+                + "</ows:ExceptionReport>";
+
+        try {
+            reader.readFrom(CswRecordCollection.class, null, null, null, null,
+                    new ByteArrayInputStream(exceptionReport.getBytes(StandardCharsets.UTF_8)));
+            fail("Expected a WebApplicationException");
+        } catch (WebApplicationException e) {
+            String entity = IOUtils.toString((InputStream) e.getResponse().getEntity(),
+                    StandardCharsets.UTF_8.name());
+            assertThat(entity, equalTo(exceptionReport));
+        }
+    }
+
+    /**
+     * Reads a large GetRecords response from a local HTTP server and logs how long it takes and
+     * the peak heap used.
+     */
+    @Test
+    public void testLargeResponse() throws Exception {
+        final int recordCount = 1000;
+        final byte[] response = createGetRecordsResponse(recordCount);
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/csw", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("Content-Type", "text/xml");
+                exchange.sendResponseHeaders(200, response.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(response);
+                }
+            }
+        });
+        server.start();
+
+        try {
+            when(mockInputManager.getTransformerBySchema(anyString()))
+                    .thenReturn(new CswRecordConverter());
+            CswSourceConfiguration config = new CswSourceConfiguration();
+            config.setMetacardCswMappings(
+                    DefaultCswRecordMap.getDefaultCswRecordMap().getCswToMetacardAttributeNames());
+            config.setOutputSchema(CswConstants.CSW_OUTPUT_SCHEMA);
+            GetRecordsMessageBodyReader reader = new GetRecordsMessageBodyReader(
+                    new CswTransformProvider(null, mockInputManager), config);
+            URL url = new URL("http", "localhost", server.getAddress().getPort(), "/csw");
+
+            resetPeakHeap();
+            long start = System.nanoTime();
+            CswRecordCollection cswRecords;
+            try (InputStream is = url.openStream()) {
+                cswRecords = reader.readFrom(CswRecordCollection.class, null, null, null, null,
+                        is);
+            }
+            long elapsedMillis = (System.nanoTime() - start) / 1000000;
+            LOGGER.info("Read {} records ({} KB) in {} ms with a peak heap of {} KB",
+                    recordCount, response.length / 1024, elapsedMillis, getPeakHeap() / 1024);
+
+            List<Metacard> metacards = cswRecords.getCswRecords();
+            assertThat(metacards.size(), equalTo(recordCount));
+            assertThat(metacards.get(recordCount - 1).getId(),
+                    equalTo("identifier-" + (recordCount - 1)));
+            assertThat(metacards.get(0).getMetadata(), containsString("xmlns:dc="));
+            assertThat(metacards.get(0).getMetadata(), containsString("title 0"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private byte[] createGetRecordsResponse(int recordCount) {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+                .append("<csw:GetRecordsResponse")
+                .append(" xmlns:csw=\"http://www.opengis.net/cat/csw/2.0.2\"")
+                .append(" xmlns:dc=\"http://purl.org/dc/elements/1.1/\"")
+                .append(" xmlns:dct=\"http://purl.org/dc/terms/\"")
+                .append(" xmlns:ows=\"http://www.opengis.net/ows\">")
+                .append("<csw:SearchStatus timestamp=\"2015-05-01T02:13:36+0200\"/>")
+                .append("<csw:SearchResults elementSet=\"full\" nextRecord=\"0\"")
+                .append(" numberOfRecordsMatched=\"").append(recordCount)
+                .append("\" numberOfRecordsReturned=\"").append(recordCount)
+                .append("\" recordSchema=\"csw:Record\">");
+        for (int i = 0; i < recordCount; i++) {
+            xml.append("<csw:Record><dc:identifier>identifier-").append(i)
+                    .append("</dc:identifier><dc:title>title ").append(i)
+                    .append("</dc:title><dct:modified>2015-05-01</dct:modified>")
+                    .append("<dc:subject>subject</dc:subject><dct:abstract>");
+            for (int j = 0; j < 20; j++) {
+                xml.append("A long abstract describing record ").append(i).append(". ");
+            }
+            xml.append("</dct:abstract><dc:type>dataset</dc:type><dc:format>Shapefile</dc:format>")
+                    .append("<ows:BoundingBox crs=\"EPSG:4326\">")
+                    .append("<ows:LowerCorner>5.121 52.139</ows:LowerCorner>")
+                    .append("<ows:UpperCorner>4.468 52.517</ows:UpperCorner>")
+                    .append("</ows:BoundingBox></csw:Record>");
+        }
+        xml.append("</csw:SearchResults></csw:GetRecordsResponse>");
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void resetPeakHeap() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+    }
+
+    private long getPeakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
     // //////////////////////////////////////////////////////////////////////////////////////////////////////
 
     private void assertMetacard(Metacard mc, Map<String, Object> expectedValues) {
@@ -590,9 +590,8 @@ protected MetacardImpl createMetacardFromCswRecord(HierarchicalStreamReader hrea
             Map<String, String> cswToMetacardAttributeNames, String resourceUriMapping,
             String thumbnailMapping, boolean isLatLonOrder, Map<String, String> namespaceMap) {
 
-        StringWriter metadataWriter = new StringWriter();
-        HierarchicalStreamReader reader = XStreamAttributeCopier
-                .copyXml(hreader, metadataWriter, namespaceMap);
+        String metadata = XStreamAttributeCopier.copyXml(hreader, namespaceMap);
+        HierarchicalStreamReader reader = XStreamAttributeCopier.createReader(metadata);
 
         MetacardImpl mc = new MetacardImpl(CSW_METACARD_TYPE);
         Map<String, Attribute> attributes = new TreeMap<>();
@@ -664,7 +663,7 @@ protected MetacardImpl createMetacardFromCswRecord(HierarchicalStreamReader hrea
         }
 
         // Save entire CSW Record XML as the metacard's metadata string
-        mc.setMetadata(metadataWriter.toString());
+        mc.setMetadata(metadata);
 
         // Set Metacard ID to the CSW Record's identifier
         // TODO: may need to sterilize the CSW Record identifier if it has
@@ -18,7 +18,6 @@
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Serializable;
-import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -84,7 +83,23 @@ public void marshal(Object o, HierarchicalStreamWriter writer, MarshallingContex
             return;
         }
         Metacard metacard = (Metacard) o;
-        Object arg = context.get(CswConstants.OUTPUT_SCHEMA_PARAMETER);
+        BinaryContent content = null;
+        try {
+            content = getTransformer(context).transform(metacard, getArguments(context));
+        } catch (CatalogTransformerException e) {
+            throw new ConversionException("Unable to transform Metacard", e);
+        }
+
+        writeXml(content, writer);
+    }
+
+    /**
+     * Looks up the {@link MetacardTransformer} for the output schema held by the given context.
+     *
+     * @throws ConversionException if no transformer is registered for the output schema
+     */
+    MetacardTransformer getTransformer(DataHolder holder) {
+        Object arg = holder.get(CswConstants.OUTPUT_SCHEMA_PARAMETER);
         MetacardTransformer transformer = null;
 
         if (arg != null && StringUtils.isNotBlank((String) arg)) {
@@ -99,18 +114,10 @@ public void marshal(Object o, HierarchicalStreamWriter writer, MarshallingContex
             throw new ConversionException(
                     "Unable to locate a transformer for output schema: " + arg);
         }
-
-        BinaryContent content = null;
-        try {
-            content = transformer.transform(metacard, getArguments(context));
-        } catch (CatalogTransformerException e) {
-            throw new ConversionException("Unable to transform Metacard", e);
-        }
-
-        writeXml(content, writer);
+        return transformer;
     }
 
-    private void writeXml(BinaryContent content, HierarchicalStreamWriter writer) {
+    void writeXml(BinaryContent content, HierarchicalStreamWriter writer) {
         try {
             XmlPullParser parser = XppFactory.createDefaultParser();
             new HierarchicalStreamCopier()
@@ -122,7 +129,7 @@ private void writeXml(BinaryContent content, HierarchicalStreamWriter writer) {
 
     }
 
-    private Map<String, Serializable> getArguments(DataHolder holder) {
+    Map<String, Serializable> getArguments(DataHolder holder) {
         Map<String, Serializable> arguments = new HashMap<>();
         Iterator<Object> contextIterator = holder.keys();
         while (contextIterator.hasNext()) {
@@ -185,17 +192,14 @@ public Object unmarshal(HierarchicalStreamReader reader, UnmarshallingContext co
 
     private InputStream readXml(HierarchicalStreamReader reader, UnmarshallingContext context)
             throws IOException {
-        InputStream is = null;
-
         Map<String, String> namespaces = null;
         Object namespaceObj = context.get(CswConstants.WRITE_NAMESPACES);
         if (namespaceObj instanceof Map<?, ?>) {
             namespaces = (Map<String, String>) namespaceObj;
         }
 
-        StringWriter writer = new StringWriter();
-        XStreamAttributeCopier.copyXml(reader, writer, namespaces);
-        return IOUtils.toInputStream(writer.toString(), StandardCharsets.UTF_8.name());
+        return IOUtils.toInputStream(XStreamAttributeCopier.copyXml(reader, namespaces),
+                StandardCharsets.UTF_8.name());
     }
 
     @Override
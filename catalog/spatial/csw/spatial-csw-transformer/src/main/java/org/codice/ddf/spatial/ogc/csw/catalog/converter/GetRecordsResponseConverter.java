@@ -13,16 +13,25 @@
  */
 package org.codice.ddf.spatial.ogc.csw.catalog.converter;
 
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.measure.converter.ConversionException;
 import javax.xml.XMLConstants;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
 import org.codice.ddf.spatial.ogc.csw.catalog.common.CswConstants;
 import org.codice.ddf.spatial.ogc.csw.catalog.common.CswRecordCollection;
 import org.joda.time.DateTime;
@@ -30,6 +39,7 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.thoughtworks.xstream.XStreamException;
 import com.thoughtworks.xstream.converters.Converter;
 import com.thoughtworks.xstream.converters.MarshallingContext;
 import com.thoughtworks.xstream.converters.UnmarshallingContext;
@@ -37,8 +47,10 @@
 import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
 
 import ddf.catalog.data.Attribute;
+import ddf.catalog.data.BinaryContent;
 import ddf.catalog.data.Metacard;
 import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.transform.MetacardTransformer;
 
 import net.opengis.cat.csw.v_2_0_2.ResultType;
 
@@ -71,6 +83,10 @@ public class GetRecordsResponseConverter implements Converter {
 
     private Converter transformProvider;
 
+    private final ExecutorService executor;
+
+    private final int maxPendingRecords;
+
     private String outputSchema = CswConstants.CSW_OUTPUT_SCHEMA;
 
     /**
@@ -80,7 +96,25 @@ public class GetRecordsResponseConverter implements Converter {
      *                          format and vice versa.
      */
     public GetRecordsResponseConverter(Converter transformProvider) {
+        this(transformProvider, null, 1);
+    }
+
+    /**
+     * Creates a new GetRecordsResponseConverter Object that transforms metacards on the given
+     * executor while marshalling. Records are still written in result order; at most
+     * maxPendingRecords transformed records are held in memory at a time. The transformations run
+     * as the {@link Subject} bound to the thread writing the response.
+     *
+     * @param transformProvider The converter which will transform a {@link Metacard} to the
+     *                          appropriate XML format and vice versa.
+     * @param executor          executor the metacard transformations are run on
+     * @param maxPendingRecords number of records transformed ahead of the one being written
+     */
+    public GetRecordsResponseConverter(Converter transformProvider, ExecutorService executor,
+            int maxPendingRecords) {
         this.transformProvider = transformProvider;
+        this.executor = executor;
+        this.maxPendingRecords = Math.max(1, maxPendingRecords);
     }
 
     @Override
@@ -162,8 +196,12 @@ public void marshal(Object source, HierarchicalStreamWriter writer,
 
         if (!ResultType.HITS.equals(cswRecordCollection.getResultType())) {
             LOGGER.debug("Transforming individual metacards.");
-            for (Metacard mc : cswRecordCollection.getCswRecords()) {
-                context.convertAnother(mc, transformProvider);
+            if (executor != null && transformProvider instanceof CswTransformProvider) {
+                marshalRecordsInParallel(cswRecordCollection.getCswRecords(), writer, context);
+            } else {
+                for (Metacard mc : cswRecordCollection.getCswRecords()) {
+                    context.convertAnother(mc, transformProvider);
+                }
             }
         }
         if (!cswRecordCollection.isById()) {
@@ -172,6 +210,54 @@ public void marshal(Object source, HierarchicalStreamWriter writer,
 
     }
 
+    private void marshalRecordsInParallel(List<Metacard> metacards,
+            HierarchicalStreamWriter writer, MarshallingContext context) {
+        CswTransformProvider provider = (CswTransformProvider) transformProvider;
+        final MetacardTransformer transformer = provider.getTransformer(context);
+        final Map<String, Serializable> arguments = provider.getArguments(context);
+        Subject subject = ThreadContext.getSubject();
+
+        Deque<Future<BinaryContent>> pending = new ArrayDeque<>();
+        try {
+            for (final Metacard mc : metacards) {
+                if (mc == null) {
+                    continue;
+                }
+                Callable<BinaryContent> transformation = new Callable<BinaryContent>() {
+                    @Override
+                    public BinaryContent call() throws Exception {
+                        return transformer.transform(mc, arguments);
+                    }
+                };
+                if (subject != null) {
+                    transformation = subject.associateWith(transformation);
+                }
+                pending.add(executor.submit(transformation));
+                if (pending.size() >= maxPendingRecords) {
+                    provider.writeXml(getTransformedRecord(pending.poll()), writer);
+                }
+            }
+            while (!pending.isEmpty()) {
+                provider.writeXml(getTransformedRecord(pending.poll()), writer);
+            }
+        } finally {
+            for (Future<BinaryContent> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private BinaryContent getTransformedRecord(Future<BinaryContent> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XStreamException("Interrupted while transforming Metacards", e);
+        } catch (ExecutionException e) {
+            throw new XStreamException("Unable to transform Metacard", e.getCause());
+        }
+    }
+
     /**
      * Parses GetRecordsResponse XML of this form:
      * <p/>
@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.spatial.ogc.csw.catalog.converter;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread pool the metacards of CSW responses are transformed on by the
+ * {@link GetRecordsResponseConverter}. Its queue is bounded; once the pool is busy and the queue
+ * is full, a record is transformed on the thread writing the response instead, so a loaded
+ * server slows down rather than holding a growing backlog of records.
+ */
+public class RecordMarshallingExecutor extends ThreadPoolExecutor {
+
+    private static final int DEFAULT_MARSHALLING_THREADS = 4;
+
+    private static final int MAX_QUEUED_RECORDS = 64;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    public RecordMarshallingExecutor() {
+        this(DEFAULT_MARSHALLING_THREADS, MAX_QUEUED_RECORDS);
+    }
+
+    RecordMarshallingExecutor(int threads, int maxQueuedRecords) {
+        super(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(maxQueuedRecords), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable,
+                                "csw-record-marshaller-" + THREAD_COUNT.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }, new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable runnable,
+                            ThreadPoolExecutor executor) {
+                        // unlike CallerRunsPolicy, also runs tasks submitted after shutdown, so
+                        // a response never waits on a record that is not transformed
+                        runnable.run();
+                    }
+                });
+        allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param marshallingThreads number of records transformed at the same time across all
+     *                           responses
+     */
+    public synchronized void setMarshallingThreads(int marshallingThreads) {
+        int threads = Math.max(1, marshallingThreads);
+        if (threads > getMaximumPoolSize()) {
+            setMaximumPoolSize(threads);
+            setCorePoolSize(threads);
+        } else {
+            setCorePoolSize(threads);
+            setMaximumPoolSize(threads);
+        }
+    }
+}
@@ -13,20 +13,15 @@
  **/
 package org.codice.ddf.spatial.ogc.csw.catalog.converter;
 
-import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.StringReader;
 import java.io.StringWriter;
-import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.codice.ddf.spatial.ogc.csw.catalog.common.CswConstants;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
@@ -44,10 +39,25 @@
  * XStream tool to copy the contents of a HierarchicalStreamReader into another container.
  */
 public class XStreamAttributeCopier {
-    private static final Logger LOGGER = LoggerFactory.getLogger(XStreamAttributeCopier.class);
-
     private static final HierarchicalStreamCopier COPIER = new HierarchicalStreamCopier();
 
+    /**
+     * Buffers larger than this are not kept for reuse, so one unusually large record does not
+     * stay in memory.
+     */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Elements are copied into a buffer reused by each thread, so converting a page of records
+     * does not grow a new buffer for every record.
+     */
+    private static final ThreadLocal<StringWriter> BUFFER = new ThreadLocal<StringWriter>() {
+        @Override
+        protected StringWriter initialValue() {
+            return new StringWriter();
+        }
+    };
+
     private static void copyElementWithAttributes(HierarchicalStreamReader source,
             HierarchicalStreamWriter destination, Map<String, String> namespaceMap) {
         destination.startNode(source.getNodeName());
@@ -92,7 +102,44 @@ public static HierarchicalStreamReader copyXml(HierarchicalStreamReader reader,
             StringWriter writer, Map<String, String> attributeMap) {
         copyElementWithAttributes(reader, new CompactWriter(writer, new NoNameCoder()),
                 attributeMap);
+        return createReader(writer.toString());
+    }
+
+    /**
+     * Copies the entire XML element {@code reader} is currently at and returns it as a string.
+     * After the call, {@code reader} will be at the end of the element that was copied.
+     * <p>
+     * If {@code attributeMap} is provided, the attributes will be added to the copy.
+     *
+     * @param reader       the reader currently at the XML element you want to copy
+     * @param attributeMap the map of attribute names to values that will be added as attributes of
+     *                     the copy, may be null
+     * @return the copied element
+     */
+    public static String copyXml(HierarchicalStreamReader reader,
+            Map<String, String> attributeMap) {
+        StringWriter buffer = BUFFER.get();
+        try {
+            copyElementWithAttributes(reader, new CompactWriter(buffer, new NoNameCoder()),
+                    attributeMap);
+            return buffer.toString();
+        } finally {
+            if (buffer.getBuffer().capacity() > MAX_RETAINED_BUFFER_SIZE) {
+                BUFFER.remove();
+            } else {
+                buffer.getBuffer().setLength(0);
+            }
+        }
+    }
 
+    /**
+     * Creates a reader positioned at the root element of the given XML.
+     *
+     * @param xml the XML to read
+     * @return a new reader ready to read the XML
+     * @throws ConversionException if a parser to use for the new reader can't be created
+     */
+    public static HierarchicalStreamReader createReader(String xml) {
         XmlPullParser parser;
         try {
             parser = XmlPullParserFactory.newInstance().newPullParser();
@@ -100,17 +147,8 @@ public static HierarchicalStreamReader copyXml(HierarchicalStreamReader reader,
             throw new ConversionException("Unable to create XmlPullParser, cannot parse XML.", e);
         }
 
-        try {
-            // NOTE: must specify encoding here, otherwise the platform default
-            // encoding will be used which will not always work
-            return new XppReader(new InputStreamReader(
-                    IOUtils.toInputStream(writer.toString(), StandardCharsets.UTF_8.name())),
-                    parser);
-        } catch (IOException e) {
-            LOGGER.warn("Unable create reader with UTF-8 encoding, Exception {}", e);
-            return new XppReader(new InputStreamReader(IOUtils.toInputStream(writer.toString())),
-                    parser);
-        }
+        // Reading characters directly avoids encoding the copy to bytes and decoding it again.
+        return new XppReader(new StringReader(xml), parser);
     }
 
     /**
@@ -65,6 +65,8 @@ public class CswQueryResponseTransformer implements QueryResponseTransformer {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CswQueryResponseTransformer.class);
 
+    private static final JAXBContext JAX_B_CONTEXT = createJaxBContext();
+
     private XStream xstreamGetRecordsResponse;
 
     private XStream xstreamGetRecordByIdResponse;
@@ -85,8 +87,28 @@ public BinaryContent transform(SourceResponse sourceResponse,
             return null;
         }
 
-        BinaryContent transformedContent = null;
         ByteArrayOutputStream os = new ByteArrayOutputStream();
+        write(sourceResponse, arguments, os);
+
+        ByteArrayInputStream bais = new ByteArrayInputStream(os.toByteArray());
+        return new BinaryContentImpl(bais, new MimeType());
+    }
+
+    /**
+     * Writes the response for the given {@link SourceResponse} directly to an {@link OutputStream}
+     * rather than buffering it as {@link BinaryContent}, so that records are written out as they
+     * are transformed.
+     *
+     * @param sourceResponse the results to write
+     * @param arguments      the same arguments accepted by {@link #transform(SourceResponse, Map)}
+     * @param os             the stream the response is written to; it is not closed
+     * @throws CatalogTransformerException if the response cannot be written
+     */
+    public void write(SourceResponse sourceResponse, Map<String, Serializable> arguments,
+            OutputStream os) throws CatalogTransformerException {
+        if (sourceResponse.getResults() == null) {
+            throw new CatalogTransformerException("Unable to transform a null Result list.");
+        }
 
         LOGGER.debug("Creating recordCollection");
         CswRecordCollection recordCollection = new CswRecordCollection();
@@ -125,10 +147,6 @@ public BinaryContent transform(SourceResponse sourceResponse,
                 throw new CatalogTransformerException(e);
             }
         }
-
-        ByteArrayInputStream bais = new ByteArrayInputStream(os.toByteArray());
-        transformedContent = new BinaryContentImpl(bais, new MimeType());
-        return transformedContent;
     }
 
     /*
@@ -183,6 +201,16 @@ private void evaluateArguments(Map<String, Serializable> arguments,
         }
     }
 
+    private static JAXBContext createJaxBContext() {
+        try {
+            return JAXBContext.newInstance("net.opengis.cat.csw.v_2_0_2:"
+                    + "net.opengis.filter.v_1_1_0:net.opengis.gml.v_3_1_1:net.opengis.ows.v_1_0_0");
+        } catch (JAXBException e) {
+            LOGGER.error("Unable to create JAXBContext for the Acknowledgement", e);
+            return null;
+        }
+    }
+
     private XStream initXstream(final String elementName, GetRecordsResponseConverter converter) {
         XStream xstream = new XStream(new StaxDriver(new NoNameCoder()));
         xstream.setClassLoader(xstream.getClass().getClassLoader());
@@ -198,10 +226,11 @@ private XStream initXstream(final String elementName, GetRecordsResponseConverte
 
     private void writeAcknowledgement(GetRecordsType request, OutputStream outStream) throws
             IOException {
+        if (JAX_B_CONTEXT == null) {
+            throw new IOException("Unable to create JAXBContext for the Acknowledgement");
+        }
         try {
-            JAXBContext jaxBContext = JAXBContext.newInstance("net.opengis.cat.csw.v_2_0_2:"
-                    + "net.opengis.filter.v_1_1_0:net.opengis.gml.v_3_1_1:net.opengis.ows.v_1_0_0");
-            Marshaller marshaller = jaxBContext.createMarshaller();
+            Marshaller marshaller = JAX_B_CONTEXT.createMarshaller();
             marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
 
             AcknowledgementType ack = new AcknowledgementType();
@@ -21,6 +21,7 @@
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
@@ -35,6 +36,7 @@
 import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -42,6 +44,9 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
@@ -49,6 +54,10 @@
 import javax.xml.namespace.QName;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.shiro.mgt.SecurityManager;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.subject.support.DelegatingSubject;
+import org.apache.shiro.util.ThreadContext;
 import org.apache.tika.io.IOUtils;
 import org.codice.ddf.spatial.ogc.csw.catalog.common.CswConstants;
 import org.codice.ddf.spatial.ogc.csw.catalog.common.CswJAXBElementProvider;
@@ -60,12 +69,15 @@
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
 
 import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.XStreamException;
 import com.thoughtworks.xstream.converters.MarshallingContext;
 import com.thoughtworks.xstream.converters.UnmarshallingContext;
 import com.thoughtworks.xstream.io.HierarchicalStreamReader;
@@ -76,12 +88,16 @@
 import com.thoughtworks.xstream.io.xml.XppReader;
 
 import ddf.catalog.data.AttributeDescriptor;
+import ddf.catalog.data.BinaryContent;
 import ddf.catalog.data.Metacard;
 import ddf.catalog.data.impl.AttributeDescriptorImpl;
 import ddf.catalog.data.impl.AttributeImpl;
 import ddf.catalog.data.impl.BasicTypes;
+import ddf.catalog.data.impl.BinaryContentImpl;
 import ddf.catalog.data.impl.MetacardImpl;
 import ddf.catalog.data.impl.MetacardTypeImpl;
+import ddf.catalog.transform.CatalogTransformerException;
+import ddf.catalog.transform.MetacardTransformer;
 import net.opengis.cat.csw.v_2_0_2.ElementSetNameType;
 import net.opengis.cat.csw.v_2_0_2.ElementSetType;
 import net.opengis.cat.csw.v_2_0_2.GetRecordByIdResponseType;
@@ -712,8 +728,181 @@ public void testMarshalRecordCollectionFullXml() throws UnsupportedEncodingExcep
         assertThat(resultsType.getRecordSchema(), is(CswConstants.CSW_OUTPUT_SCHEMA));
     }
 
+    @Test
+    public void testMarshalRecordCollectionInParallelPreservesOrder() throws Exception {
+        final int totalResults = 20;
+
+        MetacardTransformer slowTransformer = mock(MetacardTransformer.class);
+        when(slowTransformer.transform(any(Metacard.class), any(Map.class)))
+                .thenAnswer(new Answer<BinaryContent>() {
+                    @Override
+                    public BinaryContent answer(InvocationOnMock invocation) throws Throwable {
+                        Metacard metacard = (Metacard) invocation.getArguments()[0];
+                        int index = Integer
+                                .parseInt(metacard.getId().substring(ID_PREFIX.length()));
+                        // later records finish first
+                        Thread.sleep((totalResults - index) * 2);
+                        return new BinaryContentImpl(new ByteArrayInputStream(
+                                ("<record id=\"" + metacard.getId() + "\"/>").getBytes("UTF-8")));
+                    }
+                });
+        TransformerManager mockMetacardManager = mock(TransformerManager.class);
+        when(mockMetacardManager.getTransformerBySchema(anyString())).thenReturn(slowTransformer);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            XStream xstream = new XStream(new StaxDriver(new NoNameCoder()));
+            xstream.registerConverter(new GetRecordsResponseConverter(
+                    new CswTransformProvider(mockMetacardManager, null), executor, 5));
+            xstream.alias(CswConstants.CSW_NAMESPACE_PREFIX + CswConstants.NAMESPACE_DELIMITER
+                    + CswConstants.GET_RECORDS_RESPONSE, CswRecordCollection.class);
+
+            CswRecordCollection collection = new CswRecordCollection();
+            collection.setCswRecords(createMetacardList(1, totalResults));
+            collection.setNumberOfRecordsMatched(totalResults);
+            collection.setNumberOfRecordsReturned(totalResults);
+
+            String xml = xstream.toXML(collection);
+
+            int previous = -1;
+            for (int i = 1; i <= totalResults; i++) {
+                int position = xml.indexOf("<record id=\"" + ID_PREFIX + i + "\"");
+                assertThat(position > previous, is(true));
+                previous = position;
+            }
+            verify(mockMetacardManager, times(1)).getTransformerBySchema(anyString());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = XStreamException.class)
+    public void testMarshalRecordCollectionInParallelTransformFailure() throws Exception {
+        MetacardTransformer failingTransformer = mock(MetacardTransformer.class);
+        when(failingTransformer.transform(any(Metacard.class), any(Map.class)))
+                .thenThrow(new CatalogTransformerException("failed"));
+        TransformerManager mockMetacardManager = mock(TransformerManager.class);
+        when(mockMetacardManager.getTransformerBySchema(anyString()))
+                .thenReturn(failingTransformer);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            XStream xstream = new XStream(new StaxDriver(new NoNameCoder()));
+            xstream.registerConverter(new GetRecordsResponseConverter(
+                    new CswTransformProvider(mockMetacardManager, null), executor, 5));
+            xstream.alias(CswConstants.CSW_NAMESPACE_PREFIX + CswConstants.NAMESPACE_DELIMITER
+                    + CswConstants.GET_RECORDS_RESPONSE, CswRecordCollection.class);
+
+            CswRecordCollection collection = new CswRecordCollection();
+            collection.setCswRecords(createMetacardList(1, 3));
+
+            xstream.toXML(collection);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testMarshalRecordCollectionInParallelRunsAsSubject() throws Exception {
+        Subject subject = new DelegatingSubject(mock(SecurityManager.class));
+        List<Subject> subjects = Collections.synchronizedList(new ArrayList<Subject>());
+        List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        ThreadContext.bind(subject);
+        try {
+            marshalInParallel(recordingTransformer(subjects, threads), executor, 10);
+        } finally {
+            ThreadContext.unbindSubject();
+            executor.shutdownNow();
+        }
+
+        assertThat(subjects.size(), is(10));
+        for (Subject transformingSubject : subjects) {
+            assertThat(transformingSubject, sameInstance(subject));
+        }
+    }
+
+    @Test
+    public void testMarshalRecordCollectionWithBusyExecutor() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable blocker = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        List<Subject> subjects = Collections.synchronizedList(new ArrayList<Subject>());
+        List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+
+        // one thread and one queued task, both blocked
+        RecordMarshallingExecutor executor = new RecordMarshallingExecutor(1, 1);
+        executor.execute(blocker);
+        executor.execute(blocker);
+        try {
+            String xml = marshalInParallel(recordingTransformer(subjects, threads), executor,
+                    10);
+
+            assertThat(threads.size(), is(10));
+            for (Thread thread : threads) {
+                assertThat(thread, sameInstance(Thread.currentThread()));
+            }
+            int previous = -1;
+            for (int i = 1; i <= 10; i++) {
+                int position = xml.indexOf("<record id=\"" + ID_PREFIX + i + "\"");
+                assertThat(position > previous, is(true));
+                previous = position;
+            }
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
     // //////////////////////////////////////////////////////////////////////////////////////////////////////
 
+    private String marshalInParallel(MetacardTransformer transformer, ExecutorService executor,
+            int totalResults) {
+        TransformerManager mockMetacardManager = mock(TransformerManager.class);
+        when(mockMetacardManager.getTransformerBySchema(anyString())).thenReturn(transformer);
+
+        XStream xstream = new XStream(new StaxDriver(new NoNameCoder()));
+        xstream.registerConverter(new GetRecordsResponseConverter(
+                new CswTransformProvider(mockMetacardManager, null), executor, 5));
+        xstream.alias(CswConstants.CSW_NAMESPACE_PREFIX + CswConstants.NAMESPACE_DELIMITER
+                + CswConstants.GET_RECORDS_RESPONSE, CswRecordCollection.class);
+
+        CswRecordCollection collection = new CswRecordCollection();
+        collection.setCswRecords(createMetacardList(1, totalResults));
+        collection.setNumberOfRecordsMatched(totalResults);
+        collection.setNumberOfRecordsReturned(totalResults);
+        return xstream.toXML(collection);
+    }
+
+    /**
+     * Creates a transformer that records the subject and thread of each transformation.
+     */
+    private MetacardTransformer recordingTransformer(final List<Subject> subjects,
+            final List<Thread> threads) throws CatalogTransformerException {
+        MetacardTransformer transformer = mock(MetacardTransformer.class);
+        when(transformer.transform(any(Metacard.class), any(Map.class)))
+                .thenAnswer(new Answer<BinaryContent>() {
+                    @Override
+                    public BinaryContent answer(InvocationOnMock invocation) throws Throwable {
+                        subjects.add(ThreadContext.getSubject());
+                        threads.add(Thread.currentThread());
+                        Metacard metacard = (Metacard) invocation.getArguments()[0];
+                        return new BinaryContentImpl(new ByteArrayInputStream(
+                                ("<record id=\"" + metacard.getId() + "\"/>").getBytes("UTF-8")));
+                    }
+                });
+        return transformer;
+    }
+
     private void getRecords(final int maxRecords, final int startPosition, final int totalResults,
             final int expectedNext, final int expectedReturn) throws JAXBException,
             UnsupportedEncodingException {
@@ -156,6 +156,32 @@ public void testCopyXml() throws IOException {
         assertThat(deleteReader.hasMoreChildren(), is(false));
     }
 
+    @Test
+    public void testCopyXmlToString() {
+        // Move to the <Delete> element.
+        reader.moveDown();
+
+        Map<String, String> attributeMap = new HashMap<>();
+        attributeMap.put("xmlns:ogc", CswConstants.OGC_SCHEMA);
+
+        String delete = XStreamAttributeCopier.copyXml(reader, attributeMap);
+
+        // Verify that the reader is at the end of <Delete>.
+        assertThat(reader.hasMoreChildren(), is(false));
+        reader.moveUp();
+        reader.moveDown();
+
+        // The buffer is reused, so the second copy must not contain the first.
+        String insert = XStreamAttributeCopier.copyXml(reader, null);
+        assertThat(insert.startsWith("<csw:Insert"), is(true));
+        assertThat(insert.contains("csw:Delete"), is(false));
+
+        HierarchicalStreamReader deleteReader = XStreamAttributeCopier.createReader(delete);
+        assertThat(deleteReader.getNodeName(), is("csw:Delete"));
+        assertThat(deleteReader.getAttribute("xmlns:ogc"), is(CswConstants.OGC_SCHEMA));
+        assertThat(deleteReader.getAttribute(CswConstants.HANDLE_PARAMETER), is("something"));
+    }
+
     @Test
     public void testCopyXmlNamespaceDeclarationsIntoContext() {
         UnmarshallingContext context = new TreeUnmarshaller(null, null, null, null);
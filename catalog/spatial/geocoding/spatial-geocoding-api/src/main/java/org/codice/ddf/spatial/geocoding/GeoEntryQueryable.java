@@ -33,4 +33,35 @@ public interface GeoEntryQueryable {
      * @throws GeoEntryQueryException if an exception occurs while querying the GeoNames resource
      */
     List<GeoEntry> query(String queryString, int maxResults);
+
+    /**
+     * Retrieves the top results whose names contain words starting with each of the words in
+     * {@code prefix}, up to {@code maxResults} results. Intended for completing place names as they
+     * are typed.
+     *
+     * @param prefix  a {@code String} containing the beginning of a place name
+     * @param maxResults  the maximum number of results to return
+     * @return the top results for the prefix in descending order of significance, or an empty
+     *         {@code List} if no results are found
+     * @throws IllegalArgumentException if {@code prefix} is null or empty, or if
+     *                                  {@code maxResults} is not a positive integer
+     * @throws GeoEntryQueryException if an exception occurs while querying the GeoNames resource
+     */
+    List<GeoEntry> queryPrefix(String prefix, int maxResults);
+
+    /**
+     * Retrieves the place closest to the given point, within {@code radiusKm} kilometers.
+     *
+     * @param latitude  the latitude of the point in degrees
+     * @param longitude  the longitude of the point in degrees
+     * @param radiusKm  the maximum distance to the place in kilometers
+     * @param featureCodePrefix  if not null, only places whose feature code starts with this
+     *                           prefix are considered, e.g. {@code PPL} for populated places or
+     *                           {@code PCL} for countries
+     * @return the closest place, or null if there is no place within {@code radiusKm}
+     * @throws IllegalArgumentException if the point is not a valid latitude and longitude, or if
+     *                                  {@code radiusKm} is not positive
+     * @throws GeoEntryQueryException if an exception occurs while querying the GeoNames resource
+     */
+    GeoEntry nearest(double latitude, double longitude, double radiusKm, String featureCodePrefix);
 }
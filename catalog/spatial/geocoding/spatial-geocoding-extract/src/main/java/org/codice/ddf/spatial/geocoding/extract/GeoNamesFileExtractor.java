@@ -15,14 +15,18 @@
 package org.codice.ddf.spatial.geocoding.extract;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.LineNumberReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.input.CountingInputStream;
 import org.codice.ddf.spatial.geocoding.GeoEntry;
 import org.codice.ddf.spatial.geocoding.GeoEntryCreator;
 import org.codice.ddf.spatial.geocoding.GeoEntryExtractionException;
@@ -31,6 +35,7 @@
 
 import net.lingala.zip4j.core.ZipFile;
 import net.lingala.zip4j.exception.ZipException;
+import net.lingala.zip4j.model.FileHeader;
 
 public class GeoNamesFileExtractor implements GeoEntryExtractor {
     private GeoEntryCreator geoEntryCreator;
@@ -72,66 +77,86 @@ public void getGeoEntriesStreaming(final String resource,
             throw new IllegalArgumentException("You must pass a non-null callback.");
         }
 
-        final String inputTextFileLocation = getInputTextFileLocation(resource);
-
-        try (final BufferedReader reader = new BufferedReader(
-                new InputStreamReader(new FileInputStream(inputTextFileLocation)));
-            final LineNumberReader lineNumberReader = new LineNumberReader(
-                new InputStreamReader(new FileInputStream(inputTextFileLocation)))) {
-            // Use the number of lines in the file to track the extraction progress.
-            lineNumberReader.skip(Long.MAX_VALUE);
-            final int lineCount = lineNumberReader.getLineNumber() + 1;
+        if (FilenameUtils.isExtension(resource, "zip")) {
+            // The GeoNames .zip files at http://download.geonames.org/export/dump each contain
+            // a text file with the same name. It is read straight out of the archive so the
+            // (possibly multi-gigabyte) text file never has to be written to disk.
+            final String textFileName = FilenameUtils.getBaseName(resource) + ".txt";
+            final InputStream inputStream;
+            final long size;
+            try {
+                final ZipFile zipFile = new ZipFile(resource);
+                final FileHeader fileHeader = zipFile.getFileHeader(textFileName);
+                if (fileHeader == null) {
+                    throw new GeoEntryExtractionException(
+                            resource + " does not contain " + textFileName + ".");
+                }
+                inputStream = zipFile.getInputStream(fileHeader);
+                size = fileHeader.getUncompressedSize();
+            } catch (ZipException e) {
+                throw new GeoEntryExtractionException("Error unzipping " + textFileName + " from " +
+                        resource, e);
+            }
+            extractGeoEntries(inputStream, size, resource, extractionCallback);
+        } else if (FilenameUtils.isExtension(resource, "txt")) {
+            final InputStream inputStream;
+            try {
+                inputStream = new FileInputStream(resource);
+            } catch (FileNotFoundException e) {
+                throw new GeoEntryExtractionException("An error occurred while reading " +
+                        resource, e);
+            }
+            extractGeoEntries(inputStream, new File(resource).length(), resource,
+                    extractionCallback);
+        } else {
+            throw new GeoEntryExtractionException("Input must be a .txt or a .zip.");
+        }
+    }
 
+    /**
+     * Parses one {@link GeoEntry} per line of {@code inputStream} and passes each to
+     * {@code extractionCallback} as soon as it is read, then closes the stream.
+     *
+     * @param inputStream  the stream of GeoNames text
+     * @param size  the number of bytes in the stream, used to report progress
+     * @param resource  the resource the stream was opened from, used in error messages
+     * @param extractionCallback  the callback that receives each extracted {@code GeoEntry}
+     */
+    private void extractGeoEntries(final InputStream inputStream, final long size,
+            final String resource, final ExtractionCallback extractionCallback) {
+        try (final CountingInputStream countingInputStream = new CountingInputStream(inputStream);
+            final BufferedReader reader = new BufferedReader(
+                new InputStreamReader(countingInputStream, StandardCharsets.UTF_8))) {
+            // Track the extraction progress by the number of bytes read so the input doesn't need
+            // to be read twice.
             int progress = 0;
-            int currentLine = 0;
+            extractionCallback.updateProgress(progress);
+
             for (String line; (line = reader.readLine()) != null;) {
                 extractionCallback.extracted(extractGeoEntry(line));
 
-                if (currentLine == (int) (lineCount * (progress / 100.0f))) {
-                    extractionCallback.updateProgress(progress);
-                    progress += 5;
+                if (size > 0) {
+                    final int bytesReadPercent =
+                            (int) (countingInputStream.getByteCount() * 100 / size);
+                    if (bytesReadPercent >= progress + 5 && bytesReadPercent < 100) {
+                        progress = bytesReadPercent - bytesReadPercent % 5;
+                        extractionCallback.updateProgress(progress);
+                    }
                 }
-                ++currentLine;
             }
-            // Since we start counting the lines at 0, the progress callback won't be called in the
-            // above loop when progress is 100. In any case, we need to give a progress update when
-            // the work is complete.
+            // The last update in the loop is always below 100, since the reader buffers ahead of
+            // the line being parsed. In any case, we need to give a progress update when the work
+            // is complete.
             extractionCallback.updateProgress(100);
         } catch (IndexOutOfBoundsException | NumberFormatException e) {
-            throw new GeoEntryExtractionException(inputTextFileLocation + " does not follow the " +
+            throw new GeoEntryExtractionException(resource + " does not follow the " +
                     "expected GeoNames file format.", e);
         } catch (IOException e) {
             throw new GeoEntryExtractionException("An error occurred while reading " +
-                    inputTextFileLocation, e);
+                    resource, e);
         }
     }
 
-    private String getInputTextFileLocation(final String fileLocation) {
-        if (FilenameUtils.isExtension(fileLocation, "zip")) {
-            // The GeoNames .zip files at http://download.geonames.org/export/dump each contain
-            // a text file with the same name.
-            final String baseName = FilenameUtils.getBaseName(fileLocation);
-            final String textFileName = baseName + ".txt";
-            try {
-                unzipFile(fileLocation, textFileName);
-                return FilenameUtils.getFullPath(fileLocation) + textFileName;
-            } catch (ZipException e) {
-                throw new GeoEntryExtractionException("Error unzipping " + textFileName + " from " +
-                    fileLocation, e);
-            }
-        } else if (FilenameUtils.isExtension(fileLocation, "txt")) {
-            return fileLocation;
-        } else {
-            throw new GeoEntryExtractionException("Input must be a .txt or a .zip.");
-        }
-    }
-
-    private void unzipFile(final String zipFileLocation, final String textFileName)
-            throws ZipException {
-        final ZipFile zipFile = new ZipFile(zipFileLocation);
-        zipFile.extractFile(textFileName, FilenameUtils.getFullPath(zipFileLocation));
-    }
-
     private GeoEntry extractGeoEntry(final String line) {
         return geoEntryCreator.createGeoEntry(line);
     }
@@ -17,8 +17,10 @@
 import static org.codice.ddf.spatial.geocoding.GeoEntryExtractor.ExtractionCallback;
 import static org.hamcrest.core.IsInstanceOf.instanceOf;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
@@ -126,6 +128,19 @@ public void testExtractFromValidZipFileStreaming() {
                 FilenameUtils.removeExtension(VALID_ZIP_FILE_PATH) + ".txt"));
     }
 
+    @Test
+    public void testExtractFromZipFileDoesNotUnzipToDisk() {
+        final ExtractionCallback extractionCallback = mock(ExtractionCallback.class);
+
+        geoNamesFileExtractor.getGeoEntriesStreaming(VALID_ZIP_FILE_PATH, extractionCallback);
+
+        verify(extractionCallback, times(3)).extracted(any(GeoEntry.class));
+        verify(extractionCallback, times(1)).updateProgress(0);
+        verify(extractionCallback, times(1)).updateProgress(100);
+        assertFalse(new File(FilenameUtils.removeExtension(VALID_ZIP_FILE_PATH) + ".txt")
+                .exists());
+    }
+
     @Test
     public void testExtractFromTextFileWrongFormat() {
         try {
@@ -19,6 +19,7 @@
  */
 public class GeoNamesLuceneConstants {
     public static final String NAME_FIELD = "name";
+    public static final String NAME_PREFIX_FIELD = "name_prefix";
     public static final String LATITUDE_FIELD = "latitude";
     public static final String LONGITUDE_FIELD = "longitude";
     public static final String FEATURE_CODE_FIELD = "feature_code";
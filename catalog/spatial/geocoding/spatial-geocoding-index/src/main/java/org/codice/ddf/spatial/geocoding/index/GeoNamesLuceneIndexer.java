@@ -18,16 +18,33 @@
 import static org.codice.ddf.spatial.geocoding.GeoEntryExtractor.ExtractionCallback;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.LowerCaseFilter;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.ngram.EdgeNGramTokenFilter;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DoubleDocValuesField;
 import org.apache.lucene.document.DoubleField;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.FloatDocValuesField;
 import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.FieldInvertState;
 import org.apache.lucene.index.IndexWriter;
@@ -35,23 +52,81 @@
 import org.apache.lucene.search.similarities.DefaultSimilarity;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.IOUtils;
 import org.codice.ddf.spatial.geocoding.GeoCodingConstants;
 import org.codice.ddf.spatial.geocoding.GeoEntry;
-import org.codice.ddf.spatial.geocoding.GeoEntryExtractionException;
 import org.codice.ddf.spatial.geocoding.GeoEntryExtractor;
 import org.codice.ddf.spatial.geocoding.GeoEntryIndexer;
 import org.codice.ddf.spatial.geocoding.GeoEntryIndexingException;
 import org.codice.ddf.spatial.geocoding.ProgressCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class GeoNamesLuceneIndexer implements GeoEntryIndexer {
-    private static final Analyzer ANALYZER = new StandardAnalyzer();
+    /**
+     * The longest name prefix that is indexed; longer prefixes must be truncated to this length
+     * when querying.
+     */
+    public static final int MAX_NAME_PREFIX_LENGTH = 20;
+
+    /**
+     * Splits text into lower-case words, as is done for the name prefix field before the prefixes
+     * of each word are generated.
+     */
+    public static final Analyzer WORD_ANALYZER = new Analyzer() {
+        @Override
+        protected TokenStreamComponents createComponents(final String fieldName) {
+            final Tokenizer tokenizer = new StandardTokenizer();
+            return new TokenStreamComponents(tokenizer, new LowerCaseFilter(tokenizer));
+        }
+    };
+
+    private static final Analyzer NAME_PREFIX_ANALYZER = new Analyzer() {
+        @Override
+        protected TokenStreamComponents createComponents(final String fieldName) {
+            final Tokenizer tokenizer = new StandardTokenizer();
+            final TokenStream words = new LowerCaseFilter(tokenizer);
+            return new TokenStreamComponents(tokenizer,
+                    new EdgeNGramTokenFilter(words, 1, MAX_NAME_PREFIX_LENGTH));
+        }
+    };
+
+    public static final Analyzer ANALYZER = new PerFieldAnalyzerWrapper(new StandardAnalyzer(),
+            Collections.singletonMap(GeoNamesLuceneConstants.NAME_PREFIX_FIELD,
+                    NAME_PREFIX_ANALYZER));
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GeoNamesLuceneIndexer.class);
+
+    private static final String STAGING_SUFFIX = "-staging";
+
+    /**
+     * The number of extracted entries handed to an indexing thread at a time.
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * Marks the end of the entries in an {@link IndexingPipeline}'s queue.
+     */
+    private static final List<GeoEntry> END_OF_ENTRIES = Collections.emptyList();
 
     private String indexLocation;
 
+    private int indexingThreads = 4;
+
+    private double ramBufferSizeMB = 64;
+
     public void setIndexLocation(final String indexLocation) {
         this.indexLocation = indexLocation;
     }
 
+    public void setIndexingThreads(final int indexingThreads) {
+        this.indexingThreads = Math.max(1, indexingThreads);
+    }
+
+    public void setRamBufferSizeMB(final double ramBufferSizeMB) {
+        this.ramBufferSizeMB = ramBufferSizeMB;
+    }
+
     public static final DefaultSimilarity SIMILARITY = new DefaultSimilarity() {
         @Override
         public float lengthNorm(final FieldInvertState fieldInvertState) {
@@ -84,45 +159,52 @@ public void updateIndex(final List<GeoEntry> geoEntryList, final boolean create,
     @Override
     public void updateIndex(final String resource, final GeoEntryExtractor geoEntryExtractor,
             final boolean create, final ProgressCallback progressCallback) {
+        // A new index is built next to the existing one and only replaces it once it's complete,
+        // so the existing index can still be searched in the meantime.
+        final Path indexPath = Paths.get(indexLocation);
+        final Path buildPath = create ?
+                indexPath.resolveSibling(indexPath.getFileName() + STAGING_SUFFIX) : indexPath;
+
         Directory directory;
 
         try {
-            directory = FSDirectory.open(Paths.get(indexLocation));
+            directory = FSDirectory.open(buildPath);
         } catch (IOException e) {
             throw new GeoEntryIndexingException(
-                    "Couldn't open the directory for the index, " + indexLocation, e);
+                    "Couldn't open the directory for the index, " + buildPath, e);
         }
 
-        // Try-with-resources to ensure the IndexWriter always gets closed.
-        try (final IndexWriter indexWriter = createIndexWriter(create, directory)) {
-            final ExtractionCallback extractionCallback = new ExtractionCallback() {
-                @Override
-                public void extracted(final GeoEntry newEntry) {
-                    try {
-                        addDocument(indexWriter, newEntry);
-                    } catch (IOException e) {
-                        throw new GeoEntryIndexingException("Error writing to the index.", e);
-                    }
-                }
+        try {
+            // Try-with-resources to ensure the IndexWriter always gets closed.
+            try (final IndexWriter indexWriter = createIndexWriter(create, directory)) {
+                final IndexingPipeline indexingPipeline =
+                        new IndexingPipeline(indexWriter, progressCallback);
 
-                @Override
-                public void updateProgress(final int progress) {
-                    if (progressCallback != null) {
-                        progressCallback.updateProgress(progress);
-                    }
+                try {
+                    geoEntryExtractor.getGeoEntriesStreaming(resource, indexingPipeline);
+                    indexingPipeline.finish();
+                } catch (RuntimeException e) {
+                    indexingPipeline.abort();
+                    // Need to roll back here before the IndexWriter is closed at the end of the
+                    // try block.
+                    indexWriter.rollback();
+                    throw e;
                 }
-            };
+            }
 
-            try {
-                geoEntryExtractor.getGeoEntriesStreaming(resource, extractionCallback);
-            } catch (GeoEntryExtractionException | GeoEntryIndexingException e) {
-                // Need to roll back here before the IndexWriter is closed at the end of the try
-                // block.
-                indexWriter.rollback();
-                throw e;
+            if (create) {
+                replaceIndex(directory);
             }
         } catch (IOException e) {
             throw new GeoEntryIndexingException("Error writing to the index.", e);
+        } finally {
+            if (create) {
+                deleteStagingDirectory(directory, buildPath);
+            }
+        }
+
+        if (progressCallback != null) {
+            progressCallback.updateProgress(100);
         }
     }
 
@@ -131,9 +213,31 @@ IndexWriter createIndexWriter(final boolean create, final Directory directory)
         final IndexWriterConfig indexWriterConfig = new IndexWriterConfig(ANALYZER);
         indexWriterConfig.setOpenMode(create ? OpenMode.CREATE : OpenMode.APPEND);
         indexWriterConfig.setSimilarity(SIMILARITY);
+        indexWriterConfig.setRAMBufferSizeMB(ramBufferSizeMB);
         return new IndexWriter(directory, indexWriterConfig);
     }
 
+    /**
+     * Replaces the contents of the index at {@code indexLocation} with the index in
+     * {@code stagingDirectory}. The new index becomes visible to searchers in a single commit;
+     * searchers that are open on the old index keep working until they are reopened.
+     */
+    private void replaceIndex(final Directory stagingDirectory) throws IOException {
+        try (final Directory indexDirectory = FSDirectory.open(Paths.get(indexLocation));
+            final IndexWriter indexWriter = createIndexWriter(true, indexDirectory)) {
+            indexWriter.addIndexes(stagingDirectory);
+        }
+    }
+
+    private void deleteStagingDirectory(final Directory directory, final Path path) {
+        try {
+            directory.close();
+            IOUtils.rm(path);
+        } catch (IOException e) {
+            LOGGER.warn("Couldn't delete the temporary index directory {}", path, e);
+        }
+    }
+
     private void buildIndex(final List<GeoEntry> geoEntryList, final boolean create,
             final ProgressCallback progressCallback) {
         Directory directory;
@@ -189,12 +293,21 @@ private void addDocument(final IndexWriter indexWriter, final GeoEntry geoEntry)
         final Document document = new Document();
         document.add(new TextField(GeoNamesLuceneConstants.NAME_FIELD, geoEntry.getName(),
                 Field.Store.YES));
+        // Used for autocompletion; every word of the name is indexed along with its prefixes.
+        document.add(new TextField(GeoNamesLuceneConstants.NAME_PREFIX_FIELD, geoEntry.getName(),
+                Field.Store.NO));
         document.add(new DoubleField(GeoNamesLuceneConstants.LATITUDE_FIELD, geoEntry.getLatitude(),
                 Field.Store.YES));
         document.add(new DoubleField(GeoNamesLuceneConstants.LONGITUDE_FIELD,
                 geoEntry.getLongitude(), Field.Store.YES));
-        document.add(new StoredField(GeoNamesLuceneConstants.FEATURE_CODE_FIELD,
-                geoEntry.getFeatureCode()));
+        // Doc values let nearest-place lookups compute distances without loading stored fields.
+        document.add(new DoubleDocValuesField(GeoNamesLuceneConstants.LATITUDE_FIELD,
+                geoEntry.getLatitude()));
+        document.add(new DoubleDocValuesField(GeoNamesLuceneConstants.LONGITUDE_FIELD,
+                geoEntry.getLongitude()));
+        // Indexed so nearest-place lookups can be restricted by feature code prefix.
+        document.add(new StringField(GeoNamesLuceneConstants.FEATURE_CODE_FIELD,
+                geoEntry.getFeatureCode(), Field.Store.YES));
         document.add(new StoredField(GeoNamesLuceneConstants.POPULATION_FIELD,
                 geoEntry.getPopulation()));
         document.add(new TextField(GeoNamesLuceneConstants.ALTERNATE_NAMES_FIELD,
@@ -263,4 +376,147 @@ private float calculateBoost(final GeoEntry geoEntry) {
         boost += Math.min(population / 25000000.0f, 1.0f) * 5.0f;
         return boost;
     }
+
+    /**
+     * Adds extracted entries to an {@link IndexWriter} on several threads. Entries are handed to
+     * the indexing threads in batches through a bounded queue, so extraction can't get far ahead
+     * of indexing and only a few batches are held in memory at once.
+     */
+    private class IndexingPipeline implements ExtractionCallback {
+        private final IndexWriter indexWriter;
+
+        private final ProgressCallback progressCallback;
+
+        private final BlockingQueue<List<GeoEntry>> queue;
+
+        private final ExecutorService executor;
+
+        private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+        private volatile boolean aborted;
+
+        private boolean stopped;
+
+        private List<GeoEntry> batch = new ArrayList<>(BATCH_SIZE);
+
+        IndexingPipeline(final IndexWriter indexWriter, final ProgressCallback progressCallback) {
+            this.indexWriter = indexWriter;
+            this.progressCallback = progressCallback;
+            queue = new ArrayBlockingQueue<>(indexingThreads * 2);
+            executor = Executors.newFixedThreadPool(indexingThreads);
+
+            for (int i = 0; i < indexingThreads; ++i) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        indexBatches();
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void extracted(final GeoEntry newEntry) {
+            batch.add(newEntry);
+            if (batch.size() == BATCH_SIZE) {
+                enqueue(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+
+        @Override
+        public void updateProgress(final int progress) {
+            // The work isn't complete until the indexed entries have been committed, so 100 is
+            // reported by the indexer itself.
+            if (progressCallback != null && progress < 100) {
+                progressCallback.updateProgress(progress);
+            }
+        }
+
+        /**
+         * Waits until every extracted entry has been added to the index.
+         *
+         * @throws GeoEntryIndexingException if an entry couldn't be added to the index
+         */
+        void finish() {
+            try {
+                if (!batch.isEmpty()) {
+                    enqueue(batch);
+                }
+            } finally {
+                stop();
+            }
+            checkForFailure();
+        }
+
+        /**
+         * Stops the indexing threads without adding the remaining entries to the index.
+         */
+        void abort() {
+            aborted = true;
+            stop();
+        }
+
+        private void stop() {
+            if (stopped) {
+                return;
+            }
+            stopped = true;
+
+            executor.shutdown();
+            try {
+                for (int i = 0; i < indexingThreads; ++i) {
+                    queue.put(END_OF_ENTRIES);
+                }
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new GeoEntryIndexingException("Interrupted while indexing.", e);
+            }
+        }
+
+        private void enqueue(final List<GeoEntry> entries) {
+            // Stop extracting as soon as an indexing thread has failed.
+            checkForFailure();
+            try {
+                queue.put(entries);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new GeoEntryIndexingException("Interrupted while indexing.", e);
+            }
+        }
+
+        private void checkForFailure() {
+            final Exception exception = failure.get();
+            if (exception != null) {
+                throw new GeoEntryIndexingException("Error writing to the index.", exception);
+            }
+        }
+
+        private void indexBatches() {
+            try {
+                for (List<GeoEntry> entries = queue.take(); entries != END_OF_ENTRIES;
+                        entries = queue.take()) {
+                    // After a failure, keep taking batches (without indexing them) so extraction
+                    // is never left blocked on a full queue.
+                    if (!aborted && failure.get() == null) {
+                        addDocuments(entries);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void addDocuments(final List<GeoEntry> entries) {
+            try {
+                for (GeoEntry geoEntry : entries) {
+                    addDocument(indexWriter, geoEntry);
+                }
+            } catch (IOException | RuntimeException e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+    }
 }
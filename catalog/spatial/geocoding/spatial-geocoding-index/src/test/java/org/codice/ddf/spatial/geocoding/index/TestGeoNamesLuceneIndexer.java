@@ -34,8 +34,10 @@
 
 import org.apache.commons.io.FileUtils;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
 import org.codice.ddf.spatial.geocoding.GeoEntry;
 import org.codice.ddf.spatial.geocoding.GeoEntryExtractor;
 import org.codice.ddf.spatial.geocoding.ProgressCallback;
@@ -168,6 +170,8 @@ public void testCreateIndexFromListWithProgressUpdates() throws IOException {
     @Test
     public void testCreateIndexFromExtractor() throws IOException {
         configureMocks();
+        // A single indexing thread adds the documents in the order they were extracted.
+        geoNamesLuceneIndexer.setIndexingThreads(1);
 
         final ProgressCallback progressCallback = mock(ProgressCallback.class);
 
@@ -218,4 +222,66 @@ public void testDirectoryCreatedForNewIndex() {
 
         assertTrue(Files.exists(Paths.get(INDEX_PATH)));
     }
+
+    private GeoEntryExtractor createExtractor(final List<GeoEntry> geoEntries, final int count) {
+        return new GeoEntryExtractor() {
+            @Override
+            public List<GeoEntry> getGeoEntries(final String resource,
+                    final ProgressCallback progressCallback) {
+                return null;
+            }
+
+            @Override
+            public void getGeoEntriesStreaming(final String resource,
+                    final ExtractionCallback extractionCallback) {
+                for (int i = 0; i < count; ++i) {
+                    extractionCallback.extracted(geoEntries.get(i % geoEntries.size()));
+                }
+                extractionCallback.updateProgress(100);
+            }
+        };
+    }
+
+    @Test
+    public void testCreateIndexFromExtractorInParallel() throws IOException {
+        geoNamesLuceneIndexer = new GeoNamesLuceneIndexer();
+        geoNamesLuceneIndexer.setIndexLocation(INDEX_PATH);
+        geoNamesLuceneIndexer.setIndexingThreads(4);
+
+        final ProgressCallback progressCallback = mock(ProgressCallback.class);
+
+        geoNamesLuceneIndexer.updateIndex(null, createExtractor(GEO_ENTRY_LIST, 2500), true,
+                progressCallback);
+
+        try (final Directory directory = FSDirectory.open(Paths.get(INDEX_PATH));
+            final DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertEquals(2500, reader.numDocs());
+        }
+
+        assertFalse("The staging directory should have been deleted.",
+                Files.exists(Paths.get(INDEX_PATH + "-staging")));
+        verify(progressCallback, times(1)).updateProgress(100);
+    }
+
+    @Test
+    public void testRecreateIndexWhileSearching() throws IOException {
+        geoNamesLuceneIndexer = new GeoNamesLuceneIndexer();
+        geoNamesLuceneIndexer.setIndexLocation(INDEX_PATH);
+        geoNamesLuceneIndexer.updateIndex(GEO_ENTRY_LIST, true, null);
+
+        try (final Directory directory = FSDirectory.open(Paths.get(INDEX_PATH));
+            final DirectoryReader reader = DirectoryReader.open(directory)) {
+            geoNamesLuceneIndexer.updateIndex(null, createExtractor(GEO_ENTRY_LIST, 3), true,
+                    null);
+
+            // The reader that was open during the rebuild still sees the old index.
+            assertEquals(GEO_ENTRY_LIST.size(), reader.numDocs());
+            assertEquals(GEO_ENTRY_1.getName(),
+                    reader.document(0).get(GeoNamesLuceneConstants.NAME_FIELD));
+
+            try (final DirectoryReader newReader = DirectoryReader.openIfChanged(reader)) {
+                assertEquals(3, newReader.numDocs());
+            }
+        }
+    }
 }
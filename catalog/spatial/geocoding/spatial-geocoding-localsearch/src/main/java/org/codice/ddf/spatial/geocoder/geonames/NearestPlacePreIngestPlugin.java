@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ **/
+
+package org.codice.ddf.spatial.geocoder.geonames;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.codice.ddf.spatial.geocoding.GeoEntry;
+import org.codice.ddf.spatial.geocoding.GeoEntryQueryException;
+import org.codice.ddf.spatial.geocoding.GeoEntryQueryable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKTReader;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.impl.AttributeImpl;
+import ddf.catalog.operation.CreateRequest;
+import ddf.catalog.operation.DeleteRequest;
+import ddf.catalog.operation.UpdateRequest;
+import ddf.catalog.plugin.PluginExecutionException;
+import ddf.catalog.plugin.PreIngestPlugin;
+import ddf.catalog.plugin.StopProcessingException;
+
+/**
+ * Labels ingested metacards with the name of the place nearest to the center of their location,
+ * looked up in the local GeoNames index. Metacards are only labeled when an attribute name is
+ * configured, and an existing value of the attribute is never replaced.
+ */
+public class NearestPlacePreIngestPlugin implements PreIngestPlugin {
+    private static final Logger LOGGER = LoggerFactory.getLogger(NearestPlacePreIngestPlugin.class);
+
+    private GeoEntryQueryable geoEntryQueryable;
+
+    private String attributeName;
+
+    private double radiusKm = 50;
+
+    private String featureCodePrefix = "PPL";
+
+    public void setGeoEntryQueryable(final GeoEntryQueryable geoEntryQueryable) {
+        this.geoEntryQueryable = geoEntryQueryable;
+    }
+
+    public void setAttributeName(final String attributeName) {
+        this.attributeName = attributeName;
+    }
+
+    public void setRadiusKm(final double radiusKm) {
+        this.radiusKm = radiusKm;
+    }
+
+    public void setFeatureCodePrefix(final String featureCodePrefix) {
+        this.featureCodePrefix = featureCodePrefix;
+    }
+
+    @Override
+    public CreateRequest process(final CreateRequest input)
+            throws PluginExecutionException, StopProcessingException {
+        if (StringUtils.isNotBlank(attributeName) && input.getMetacards() != null) {
+            for (Metacard metacard : input.getMetacards()) {
+                addPlaceName(metacard);
+            }
+        }
+
+        return input;
+    }
+
+    @Override
+    public UpdateRequest process(final UpdateRequest input)
+            throws PluginExecutionException, StopProcessingException {
+        if (StringUtils.isNotBlank(attributeName) && input.getUpdates() != null) {
+            for (Map.Entry<Serializable, Metacard> update : input.getUpdates()) {
+                if (update != null && update.getValue() != null) {
+                    addPlaceName(update.getValue());
+                }
+            }
+        }
+
+        return input;
+    }
+
+    @Override
+    public DeleteRequest process(final DeleteRequest input)
+            throws PluginExecutionException, StopProcessingException {
+        return input;
+    }
+
+    private void addPlaceName(final Metacard metacard) {
+        final String location = metacard.getLocation();
+        if (StringUtils.isBlank(location) || (metacard.getAttribute(attributeName) != null
+                && metacard.getAttribute(attributeName).getValue() != null)) {
+            return;
+        }
+
+        final Point center;
+        try {
+            center = new WKTReader().read(location).getCentroid();
+        } catch (ParseException e) {
+            LOGGER.debug("Unable to parse the location of metacard {}", metacard.getId(), e);
+            return;
+        }
+
+        if (center.isEmpty()) {
+            return;
+        }
+
+        try {
+            final GeoEntry place = geoEntryQueryable
+                    .nearest(center.getY(), center.getX(), radiusKm, featureCodePrefix);
+            if (place != null) {
+                metacard.setAttribute(new AttributeImpl(attributeName, place.getName()));
+            }
+        } catch (GeoEntryQueryException | IllegalArgumentException e) {
+            LOGGER.debug("Unable to find the place nearest to metacard {}", metacard.getId(), e);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ **/
+
+package org.codice.ddf.spatial.geocoder.geonames;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyDouble;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import org.codice.ddf.spatial.geocoding.GeoEntry;
+import org.codice.ddf.spatial.geocoding.GeoEntryQueryException;
+import org.codice.ddf.spatial.geocoding.GeoEntryQueryable;
+import org.junit.Before;
+import org.junit.Test;
+
+import ddf.catalog.data.impl.AttributeImpl;
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.operation.impl.CreateRequestImpl;
+import ddf.catalog.operation.impl.UpdateRequestImpl;
+import ddf.catalog.plugin.PluginExecutionException;
+import ddf.catalog.plugin.StopProcessingException;
+
+public class TestNearestPlacePreIngestPlugin {
+    private static final String PLACE_ATTRIBUTE = "place-name";
+
+    private static final GeoEntry PHOENIX = new GeoEntry.Builder()
+            .name("Phoenix")
+            .latitude(33.44838)
+            .longitude(-112.07404)
+            .featureCode("PPLA")
+            .population(1445632)
+            .alternateNames("")
+            .build();
+
+    private NearestPlacePreIngestPlugin plugin;
+
+    private GeoEntryQueryable geoEntryQueryable;
+
+    @Before
+    public void setUp() {
+        geoEntryQueryable = mock(GeoEntryQueryable.class);
+        plugin = new NearestPlacePreIngestPlugin();
+        plugin.setGeoEntryQueryable(geoEntryQueryable);
+        plugin.setAttributeName(PLACE_ATTRIBUTE);
+        plugin.setRadiusKm(25);
+        plugin.setFeatureCodePrefix("PPL");
+    }
+
+    @Test
+    public void testCreateAddsNearestPlace() throws PluginExecutionException, StopProcessingException {
+        doReturn(PHOENIX).when(geoEntryQueryable).nearest(33.45, -112.07, 25, "PPL");
+
+        final MetacardImpl metacard = new MetacardImpl();
+        metacard.setLocation("POINT (-112.07 33.45)");
+        plugin.process(new CreateRequestImpl(metacard));
+
+        assertThat(metacard.getAttribute(PLACE_ATTRIBUTE).getValue(),
+                is(equalTo((Object) "Phoenix")));
+    }
+
+    @Test
+    public void testUpdateUsesCenterOfPolygon()
+            throws PluginExecutionException, StopProcessingException {
+        doReturn(PHOENIX).when(geoEntryQueryable).nearest(33.5, -112.0, 25, "PPL");
+
+        final MetacardImpl metacard = new MetacardImpl();
+        metacard.setLocation("POLYGON ((-113 33, -111 33, -111 34, -113 34, -113 33))");
+        plugin.process(new UpdateRequestImpl("id", metacard));
+
+        verify(geoEntryQueryable).nearest(33.5, -112.0, 25, "PPL");
+        assertThat(metacard.getAttribute(PLACE_ATTRIBUTE).getValue(),
+                is(equalTo((Object) "Phoenix")));
+    }
+
+    @Test
+    public void testNoPlaceWithinRadius() throws PluginExecutionException, StopProcessingException {
+        doReturn(null).when(geoEntryQueryable)
+                .nearest(anyDouble(), anyDouble(), anyDouble(), anyString());
+
+        final MetacardImpl metacard = new MetacardImpl();
+        metacard.setLocation("POINT (0 0)");
+        plugin.process(new CreateRequestImpl(metacard));
+
+        assertThat(metacard.getAttribute(PLACE_ATTRIBUTE), nullValue());
+    }
+
+    @Test
+    public void testDisabledWithoutAttributeName()
+            throws PluginExecutionException, StopProcessingException {
+        plugin.setAttributeName("");
+
+        final MetacardImpl metacard = new MetacardImpl();
+        metacard.setLocation("POINT (-112.07 33.45)");
+        plugin.process(new CreateRequestImpl(metacard));
+
+        verifyZeroInteractions(geoEntryQueryable);
+    }
+
+    @Test
+    public void testSkipsMetacardWithoutLocation()
+            throws PluginExecutionException, StopProcessingException {
+        plugin.process(new CreateRequestImpl(new MetacardImpl()));
+
+        verifyZeroInteractions(geoEntryQueryable);
+    }
+
+    @Test
+    public void testKeepsExistingValue() throws PluginExecutionException, StopProcessingException {
+        final MetacardImpl metacard = new MetacardImpl();
+        metacard.setLocation("POINT (-112.07 33.45)");
+        metacard.setAttribute(new AttributeImpl(PLACE_ATTRIBUTE, "Tempe"));
+        plugin.process(new CreateRequestImpl(metacard));
+
+        verifyZeroInteractions(geoEntryQueryable);
+        assertThat(metacard.getAttribute(PLACE_ATTRIBUTE).getValue(),
+                is(equalTo((Object) "Tempe")));
+    }
+
+    @Test
+    public void testInvalidLocation() throws PluginExecutionException, StopProcessingException {
+        final MetacardImpl metacard = new MetacardImpl();
+        metacard.setLocation("POINT (not a point)");
+        plugin.process(new CreateRequestImpl(metacard));
+
+        verifyZeroInteractions(geoEntryQueryable);
+        assertThat(metacard.getAttribute(PLACE_ATTRIBUTE), nullValue());
+    }
+
+    @Test
+    public void testQueryException() throws PluginExecutionException, StopProcessingException {
+        doThrow(GeoEntryQueryException.class).when(geoEntryQueryable)
+                .nearest(anyDouble(), anyDouble(), anyDouble(), anyString());
+
+        final MetacardImpl metacard = new MetacardImpl();
+        metacard.setLocation("POINT (-112.07 33.45)");
+        plugin.process(new CreateRequestImpl(metacard));
+
+        assertThat(metacard.getAttribute(PLACE_ATTRIBUTE), nullValue());
+    }
+}
@@ -32,6 +32,8 @@ public class GeoNamesQueryLuceneDirectoryIndex extends GeoNamesQueryLuceneIndex
 
     public void setIndexLocation(final String indexLocation) {
         this.indexLocation = indexLocation;
+        // The searcher is reopened at the new location by the next query.
+        destroy();
     }
 
     @Override
@@ -40,7 +42,7 @@ protected Directory createDirectory() throws IOException {
     }
 
     @Override
-    protected IndexReader createIndexReader(final Directory directory) throws IOException {
+    protected DirectoryReader createIndexReader(final Directory directory) throws IOException {
         return DirectoryReader.open(directory);
     }
 
@@ -53,6 +55,22 @@ protected IndexSearcher createIndexSearcher(final IndexReader indexReader) {
 
     @Override
     public List<GeoEntry> query(final String queryString, final int maxResults) {
+        return doQuery(queryString, maxResults);
+    }
+
+    @Override
+    public List<GeoEntry> queryPrefix(final String prefix, final int maxResults) {
+        return doPrefixQuery(prefix, maxResults);
+    }
+
+    @Override
+    public GeoEntry nearest(final double latitude, final double longitude, final double radiusKm,
+            final String featureCodePrefix) {
+        return doNearestQuery(latitude, longitude, radiusKm, featureCodePrefix);
+    }
+
+    @Override
+    protected Directory openIndexDirectory() {
         Directory directory;
 
         try {
@@ -64,6 +82,6 @@ public List<GeoEntry> query(final String queryString, final int maxResults) {
             throw new GeoEntryQueryException("Error opening the index directory.", e);
         }
 
-        return doQuery(queryString, maxResults, directory);
+        return directory;
     }
 }
@@ -18,42 +18,169 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.queries.CustomScoreQuery;
 import org.apache.lucene.queries.function.FunctionQuery;
 import org.apache.lucene.queries.function.valuesource.FloatFieldSource;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
 import org.apache.lucene.search.DisjunctionMaxQuery;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.Directory;
 import org.codice.ddf.spatial.geocoding.GeoEntry;
 import org.codice.ddf.spatial.geocoding.GeoEntryQueryException;
 import org.codice.ddf.spatial.geocoding.GeoEntryQueryable;
 import org.codice.ddf.spatial.geocoding.index.GeoNamesLuceneConstants;
+import org.codice.ddf.spatial.geocoding.index.GeoNamesLuceneIndexer;
 
+/**
+ * Queries a GeoNames Lucene index through a searcher that is kept open between queries. The index
+ * is checked for changes, e.g. a rebuild by the GeoNames update command, at most once every
+ * second, and results of recent queries are cached until it changes.
+ */
 public abstract class GeoNamesQueryLuceneIndex implements GeoEntryQueryable {
+    private static final long DEFAULT_REFRESH_INTERVAL_MILLIS = 1000;
+
+    static final int RESULT_CACHE_SIZE = 1000;
+
+    private final Object searcherLock = new Object();
+
+    // Guarded by searcherLock. The holder owns one reference to the searcher's reader.
+    private IndexSearcher indexSearcher;
+
+    private long nextRefreshTime;
+
+    private long refreshIntervalMillis = DEFAULT_REFRESH_INTERVAL_MILLIS;
+
+    private final Map<CacheKey, CachedResults> resultCache = Collections.synchronizedMap(
+            new LinkedHashMap<CacheKey, CachedResults>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        final Map.Entry<CacheKey, CachedResults> eldest) {
+                    return size() > RESULT_CACHE_SIZE;
+                }
+            });
+
     protected abstract Directory createDirectory() throws IOException;
 
-    protected abstract IndexReader createIndexReader(Directory directory) throws IOException;
+    protected abstract DirectoryReader createIndexReader(Directory directory) throws IOException;
 
     protected abstract IndexSearcher createIndexSearcher(IndexReader indexReader);
 
+    /**
+     * Opens the index directory, throwing a {@link GeoEntryQueryException} if there is no index.
+     */
+    protected abstract Directory openIndexDirectory();
+
     protected boolean indexExists(final Directory directory) throws IOException {
         return DirectoryReader.indexExists(directory);
     }
 
-    protected List<GeoEntry> doQuery(final String queryString, final int maxResults,
-            final Directory directory) {
+    protected List<GeoEntry> doQuery(final String queryString, final int maxResults) {
+        validate(queryString, maxResults);
+
+        try {
+            return search(new CacheKey(false, queryString, maxResults), createQuery(queryString));
+        } catch (ParseException e) {
+            throw new GeoEntryQueryException("Error parsing query", e);
+        }
+    }
+
+    protected List<GeoEntry> doPrefixQuery(final String prefix, final int maxResults) {
+        validate(prefix, maxResults);
+
+        final Query query;
+        try {
+            query = createPrefixQuery(prefix);
+        } catch (IOException e) {
+            throw new GeoEntryQueryException("Error parsing query", e);
+        }
+
+        if (query == null) {
+            return Collections.emptyList();
+        }
+
+        return search(new CacheKey(true, prefix, maxResults), query);
+    }
+
+    protected GeoEntry doNearestQuery(final double latitude, final double longitude,
+            final double radiusKm, final String featureCodePrefix) {
+        if (!(latitude >= -90 && latitude <= 90 && longitude >= -180 && longitude <= 180)) {
+            throw new IllegalArgumentException("The point must be a valid latitude and longitude.");
+        }
+
+        if (!(radiusKm > 0)) {
+            throw new IllegalArgumentException("radiusKm must be positive.");
+        }
+
+        final Query boundingBoxQuery =
+                NearestPlaceCollector.createBoundingBoxQuery(latitude, longitude, radiusKm);
+        final Query query;
+        if (StringUtils.isNotEmpty(featureCodePrefix)) {
+            final BooleanQuery featureCodeQuery = new BooleanQuery();
+            featureCodeQuery.add(boundingBoxQuery, BooleanClause.Occur.MUST);
+            featureCodeQuery.add(new PrefixQuery(
+                            new Term(GeoNamesLuceneConstants.FEATURE_CODE_FIELD, featureCodePrefix)),
+                    BooleanClause.Occur.MUST);
+            query = featureCodeQuery;
+        } else {
+            query = boundingBoxQuery;
+        }
+
+        final IndexSearcher searcher = acquireSearcher();
+
+        try {
+            final NearestPlaceCollector collector =
+                    new NearestPlaceCollector(latitude, longitude, radiusKm);
+            searcher.search(query, collector);
+
+            if (collector.getNearestDoc() < 0) {
+                return null;
+            }
+            return createGeoEntry(searcher.doc(collector.getNearestDoc()));
+        } catch (IOException e) {
+            throw new GeoEntryQueryException("Error reading the index", e);
+        } finally {
+            release(searcher);
+        }
+    }
+
+    /**
+     * Closes the searcher, if one is open. It is reopened by the next query.
+     */
+    public void destroy() {
+        synchronized (searcherLock) {
+            if (indexSearcher != null) {
+                release(indexSearcher);
+                indexSearcher = null;
+            }
+        }
+    }
+
+    void setRefreshIntervalMillis(final long refreshIntervalMillis) {
+        this.refreshIntervalMillis = refreshIntervalMillis;
+    }
+
+    private void validate(final String queryString, final int maxResults) {
         if (StringUtils.isBlank(queryString)) {
             throw new IllegalArgumentException("The query string cannot be null or empty.");
         }
@@ -61,38 +188,90 @@ protected List<GeoEntry> doQuery(final String queryString, final int maxResults,
         if (maxResults < 1) {
             throw new IllegalArgumentException("maxResults must be positive.");
         }
+    }
 
-        try (final IndexReader indexReader = createIndexReader(directory)) {
-            final IndexSearcher indexSearcher = createIndexSearcher(indexReader);
-
-            final Query query = createQuery(queryString);
-
-            final TopDocs topDocs = indexSearcher.search(query, maxResults);
-            if (topDocs.totalHits > 0) {
-                final List<GeoEntry> results = new ArrayList<>();
-                for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
-                    final Document document = indexSearcher.doc(scoreDoc.doc);
-                    // The alternate names aren't being stored (they are only used for queries),
-                    // so we don't retrieve them here.
-                    results.add(new GeoEntry.Builder()
-                            .name(document.get(GeoNamesLuceneConstants.NAME_FIELD))
-                            .latitude(Double.parseDouble(
-                                    document.get(GeoNamesLuceneConstants.LATITUDE_FIELD)))
-                            .longitude(Double.parseDouble(
-                                    document.get(GeoNamesLuceneConstants.LONGITUDE_FIELD)))
-                            .featureCode(document.get(GeoNamesLuceneConstants.FEATURE_CODE_FIELD))
-                            .population(Long.parseLong(
-                                    document.get(GeoNamesLuceneConstants.POPULATION_FIELD)))
-                            .build());
-                }
-                return results;
-            } else {
-                return Collections.emptyList();
+    private List<GeoEntry> search(final CacheKey cacheKey, final Query query) {
+        final IndexSearcher searcher = acquireSearcher();
+
+        try {
+            final CachedResults cachedResults = resultCache.get(cacheKey);
+            if (cachedResults != null && cachedResults.indexReader == searcher.getIndexReader()) {
+                return new ArrayList<>(cachedResults.results);
             }
+
+            final List<GeoEntry> results = search(searcher, query, cacheKey.maxResults);
+            resultCache.put(cacheKey, new CachedResults(searcher.getIndexReader(), results));
+            return new ArrayList<>(results);
         } catch (IOException e) {
             throw new GeoEntryQueryException("Error reading the index", e);
-        } catch (ParseException e) {
-            throw new GeoEntryQueryException("Error parsing query", e);
+        } finally {
+            release(searcher);
+        }
+    }
+
+    private List<GeoEntry> search(final IndexSearcher searcher, final Query query,
+            final int maxResults) throws IOException {
+        final TopDocs topDocs = searcher.search(query, maxResults);
+        if (topDocs.totalHits > 0) {
+            final List<GeoEntry> results = new ArrayList<>();
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                results.add(createGeoEntry(searcher.doc(scoreDoc.doc)));
+            }
+            return results;
+        } else {
+            return Collections.emptyList();
+        }
+    }
+
+    private GeoEntry createGeoEntry(final Document document) {
+        // The alternate names aren't being stored (they are only used for queries), so we don't
+        // retrieve them here.
+        return new GeoEntry.Builder()
+                .name(document.get(GeoNamesLuceneConstants.NAME_FIELD))
+                .latitude(Double.parseDouble(document.get(GeoNamesLuceneConstants.LATITUDE_FIELD)))
+                .longitude(
+                        Double.parseDouble(document.get(GeoNamesLuceneConstants.LONGITUDE_FIELD)))
+                .featureCode(document.get(GeoNamesLuceneConstants.FEATURE_CODE_FIELD))
+                .population(Long.parseLong(document.get(GeoNamesLuceneConstants.POPULATION_FIELD)))
+                .build();
+    }
+
+    /**
+     * Returns the current searcher with an additional reference to its reader, which must be
+     * released with {@link #release(IndexSearcher)}.
+     */
+    private IndexSearcher acquireSearcher() {
+        synchronized (searcherLock) {
+            final long now = System.currentTimeMillis();
+            try {
+                if (indexSearcher == null) {
+                    indexSearcher = createIndexSearcher(createIndexReader(openIndexDirectory()));
+                    nextRefreshTime = now + refreshIntervalMillis;
+                } else if (now >= nextRefreshTime) {
+                    nextRefreshTime = now + refreshIntervalMillis;
+                    final DirectoryReader newReader = DirectoryReader
+                            .openIfChanged((DirectoryReader) indexSearcher.getIndexReader());
+                    if (newReader != null) {
+                        final IndexSearcher oldSearcher = indexSearcher;
+                        indexSearcher = createIndexSearcher(newReader);
+                        release(oldSearcher);
+                        resultCache.clear();
+                    }
+                }
+            } catch (IOException e) {
+                throw new GeoEntryQueryException("Error reading the index", e);
+            }
+
+            indexSearcher.getIndexReader().incRef();
+            return indexSearcher;
+        }
+    }
+
+    private void release(final IndexSearcher searcher) {
+        try {
+            searcher.getIndexReader().decRef();
+        } catch (IOException e) {
+            throw new GeoEntryQueryException("Error closing the index reader", e);
         }
     }
 
@@ -163,4 +342,81 @@ query searching for any of the terms in the query string (the OR query). We take
 
         return new CustomScoreQuery(disjunctionMaxQuery, boostQuery);
     }
+
+    /**
+     * Creates a query matching places with a word starting with each word of {@code prefix},
+     * scored by the significance of the place alone, or null if {@code prefix} contains no words.
+     */
+    protected Query createPrefixQuery(final String prefix) throws IOException {
+        final BooleanQuery prefixQuery = new BooleanQuery();
+
+        try (final TokenStream tokenStream = GeoNamesLuceneIndexer.WORD_ANALYZER
+                .tokenStream(GeoNamesLuceneConstants.NAME_PREFIX_FIELD, prefix)) {
+            final CharTermAttribute term = tokenStream.addAttribute(CharTermAttribute.class);
+            tokenStream.reset();
+            while (tokenStream.incrementToken()) {
+                // Longer prefixes aren't indexed, so only the beginning of a long word is matched.
+                final String word = term.length() > GeoNamesLuceneIndexer.MAX_NAME_PREFIX_LENGTH ?
+                        term.subSequence(0, GeoNamesLuceneIndexer.MAX_NAME_PREFIX_LENGTH)
+                                .toString() :
+                        term.toString();
+                prefixQuery.add(
+                        new TermQuery(new Term(GeoNamesLuceneConstants.NAME_PREFIX_FIELD, word)),
+                        BooleanClause.Occur.MUST);
+            }
+            tokenStream.end();
+        }
+
+        if (prefixQuery.clauses().isEmpty()) {
+            return null;
+        }
+
+        final FunctionQuery boostQuery =
+                new FunctionQuery(new FloatFieldSource(GeoNamesLuceneConstants.BOOST_FIELD));
+
+        return new CustomScoreQuery(new ConstantScoreQuery(prefixQuery), boostQuery);
+    }
+
+    private static class CacheKey {
+        private final boolean prefix;
+
+        private final String queryString;
+
+        private final int maxResults;
+
+        CacheKey(final boolean prefix, final String queryString, final int maxResults) {
+            this.prefix = prefix;
+            this.queryString = queryString;
+            this.maxResults = maxResults;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CacheKey)) {
+                return false;
+            }
+            final CacheKey other = (CacheKey) obj;
+            return prefix == other.prefix && maxResults == other.maxResults &&
+                    queryString.equals(other.queryString);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new Object[] {prefix, queryString, maxResults});
+        }
+    }
+
+    private static class CachedResults {
+        private final IndexReader indexReader;
+
+        private final List<GeoEntry> results;
+
+        CachedResults(final IndexReader indexReader, final List<GeoEntry> results) {
+            this.indexReader = indexReader;
+            this.results = results;
+        }
+    }
 }
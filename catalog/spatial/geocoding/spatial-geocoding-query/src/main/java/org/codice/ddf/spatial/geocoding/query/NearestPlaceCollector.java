@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ **/
+
+package org.codice.ddf.spatial.geocoding.query;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SimpleCollector;
+import org.codice.ddf.spatial.geocoding.index.GeoNamesLuceneConstants;
+
+/**
+ * Finds the document closest to a point among the documents it collects, ignoring documents
+ * farther away than a given radius. Distances are great-circle distances on a spherical earth.
+ */
+class NearestPlaceCollector extends SimpleCollector {
+    static final double EARTH_RADIUS_KM = 6371.0088;
+
+    private static final Set<String> COORDINATE_FIELDS = new HashSet<>(
+            Arrays.asList(GeoNamesLuceneConstants.LATITUDE_FIELD,
+                    GeoNamesLuceneConstants.LONGITUDE_FIELD));
+
+    private final double latitude;
+
+    private final double longitude;
+
+    private final double radiusKm;
+
+    private LeafReader reader;
+
+    private int docBase;
+
+    private NumericDocValues latitudes;
+
+    private NumericDocValues longitudes;
+
+    private int nearestDoc = -1;
+
+    private double nearestDistanceKm = Double.POSITIVE_INFINITY;
+
+    NearestPlaceCollector(final double latitude, final double longitude, final double radiusKm) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radiusKm = radiusKm;
+    }
+
+    /**
+     * Creates a query matching the points in the smallest latitude and longitude box containing
+     * the circle of {@code radiusKm} kilometers around the given point.
+     */
+    static Query createBoundingBoxQuery(final double latitude, final double longitude,
+            final double radiusKm) {
+        final double angularRadius = radiusKm / EARTH_RADIUS_KM;
+        final double minLatitude = latitude - Math.toDegrees(angularRadius);
+        final double maxLatitude = latitude + Math.toDegrees(angularRadius);
+
+        final BooleanQuery boundingBoxQuery = new BooleanQuery();
+        boundingBoxQuery.add(NumericRangeQuery
+                        .newDoubleRange(GeoNamesLuceneConstants.LATITUDE_FIELD,
+                                Math.max(minLatitude, -90), Math.min(maxLatitude, 90), true, true),
+                BooleanClause.Occur.MUST);
+
+        // Near the poles, and for very large radii, the circle spans all longitudes.
+        final double sinLongitudeDelta =
+                Math.sin(angularRadius) / Math.cos(Math.toRadians(latitude));
+        if (minLatitude <= -90 || maxLatitude >= 90 || angularRadius >= Math.PI / 2
+                || sinLongitudeDelta >= 1) {
+            return boundingBoxQuery;
+        }
+
+        final double longitudeDelta = Math.toDegrees(Math.asin(sinLongitudeDelta));
+        final double minLongitude = longitude - longitudeDelta;
+        final double maxLongitude = longitude + longitudeDelta;
+
+        final BooleanQuery longitudeQuery = new BooleanQuery();
+        if (minLongitude < -180) {
+            // The box crosses the antimeridian, so it is split in two.
+            longitudeQuery.add(createLongitudeRange(minLongitude + 360, 180),
+                    BooleanClause.Occur.SHOULD);
+            longitudeQuery.add(createLongitudeRange(-180, maxLongitude),
+                    BooleanClause.Occur.SHOULD);
+        } else if (maxLongitude > 180) {
+            longitudeQuery.add(createLongitudeRange(minLongitude, 180),
+                    BooleanClause.Occur.SHOULD);
+            longitudeQuery.add(createLongitudeRange(-180, maxLongitude - 360),
+                    BooleanClause.Occur.SHOULD);
+        } else {
+            longitudeQuery.add(createLongitudeRange(minLongitude, maxLongitude),
+                    BooleanClause.Occur.SHOULD);
+        }
+        boundingBoxQuery.add(longitudeQuery, BooleanClause.Occur.MUST);
+
+        return boundingBoxQuery;
+    }
+
+    private static Query createLongitudeRange(final double minLongitude,
+            final double maxLongitude) {
+        return NumericRangeQuery
+                .newDoubleRange(GeoNamesLuceneConstants.LONGITUDE_FIELD, minLongitude,
+                        maxLongitude, true, true);
+    }
+
+    /**
+     * Returns the haversine distance between two points in kilometers.
+     */
+    static double distanceKm(final double latitude1, final double longitude1,
+            final double latitude2, final double longitude2) {
+        final double sinHalfLatitudeDelta = Math.sin(Math.toRadians(latitude2 - latitude1) / 2);
+        final double sinHalfLongitudeDelta = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        final double a = sinHalfLatitudeDelta * sinHalfLatitudeDelta +
+                Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2)) *
+                        sinHalfLongitudeDelta * sinHalfLongitudeDelta;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    @Override
+    protected void doSetNextReader(final LeafReaderContext context) throws IOException {
+        reader = context.reader();
+        docBase = context.docBase;
+        latitudes = reader.getNumericDocValues(GeoNamesLuceneConstants.LATITUDE_FIELD);
+        longitudes = reader.getNumericDocValues(GeoNamesLuceneConstants.LONGITUDE_FIELD);
+    }
+
+    @Override
+    public void collect(final int doc) throws IOException {
+        final double docLatitude;
+        final double docLongitude;
+        if (latitudes != null && longitudes != null) {
+            docLatitude = Double.longBitsToDouble(latitudes.get(doc));
+            docLongitude = Double.longBitsToDouble(longitudes.get(doc));
+        } else {
+            // Indexes created before the coordinates had doc values only have them stored.
+            final Document document = reader.document(doc, COORDINATE_FIELDS);
+            docLatitude = Double.parseDouble(document.get(GeoNamesLuceneConstants.LATITUDE_FIELD));
+            docLongitude =
+                    Double.parseDouble(document.get(GeoNamesLuceneConstants.LONGITUDE_FIELD));
+        }
+
+        final double distanceKm = distanceKm(latitude, longitude, docLatitude, docLongitude);
+        if (distanceKm <= radiusKm && distanceKm < nearestDistanceKm) {
+            nearestDistanceKm = distanceKm;
+            nearestDoc = docBase + doc;
+        }
+    }
+
+    @Override
+    public boolean needsScores() {
+        return false;
+    }
+
+    /**
+     * Returns the index-wide number of the nearest document, or -1 if none was within the radius.
+     */
+    int getNearestDoc() {
+        return nearestDoc;
+    }
+}
@@ -17,6 +17,7 @@
 import static org.apache.lucene.index.IndexWriterConfig.OpenMode;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.hamcrest.core.IsNull.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
@@ -24,12 +25,14 @@
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 import java.io.IOException;
 import java.util.List;
 
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DoubleDocValuesField;
 import org.apache.lucene.document.DoubleField;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.LongField;
@@ -44,6 +47,7 @@
 import org.codice.ddf.spatial.geocoding.GeoEntryQueryException;
 import org.codice.ddf.spatial.geocoding.TestBase;
 import org.codice.ddf.spatial.geocoding.index.GeoNamesLuceneConstants;
+import org.codice.ddf.spatial.geocoding.index.GeoNamesLuceneIndexer;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -102,13 +106,27 @@ public class TestGeoNamesQueryLuceneIndex extends TestBase {
             .alternateNames(ALT_NAMES_3)
             .build();
 
+    private static final GeoEntry GEO_ENTRY_4 = new GeoEntry.Builder()
+            .name("Tempe")
+            .latitude(LAT_1)
+            .longitude(LON_1)
+            .featureCode(FEATURE_CODE_1)
+            .population(POP_1)
+            .alternateNames(ALT_NAMES_3)
+            .build();
+
+    private IndexWriter createIndexWriter(final OpenMode openMode) throws IOException {
+        final IndexWriterConfig indexWriterConfig =
+                new IndexWriterConfig(GeoNamesLuceneIndexer.ANALYZER);
+        indexWriterConfig.setOpenMode(openMode);
+
+        return new IndexWriter(directory, indexWriterConfig);
+    }
+
     private void initializeIndex() throws IOException {
         directory = new RAMDirectory();
 
-        final IndexWriterConfig indexWriterConfig = new IndexWriterConfig(new StandardAnalyzer());
-        indexWriterConfig.setOpenMode(OpenMode.CREATE);
-
-        final IndexWriter indexWriter = new IndexWriter(directory, indexWriterConfig);
+        final IndexWriter indexWriter = createIndexWriter(OpenMode.CREATE);
 
         indexWriter.addDocument(createDocumentFromGeoEntry(GEO_ENTRY_1));
         indexWriter.addDocument(createDocumentFromGeoEntry(GEO_ENTRY_2));
@@ -132,11 +150,17 @@ private Document createDocumentFromGeoEntry(final GeoEntry geoEntry) {
 
         document.add(new TextField(GeoNamesLuceneConstants.NAME_FIELD, geoEntry.getName(),
                 Field.Store.YES));
+        document.add(new TextField(GeoNamesLuceneConstants.NAME_PREFIX_FIELD, geoEntry.getName(),
+                Field.Store.NO));
         document.add(new DoubleField(GeoNamesLuceneConstants.LATITUDE_FIELD, geoEntry.getLatitude(),
                 Field.Store.YES));
         document.add(
                 new DoubleField(GeoNamesLuceneConstants.LONGITUDE_FIELD, geoEntry.getLongitude(),
                         Field.Store.YES));
+        document.add(new DoubleDocValuesField(GeoNamesLuceneConstants.LATITUDE_FIELD,
+                geoEntry.getLatitude()));
+        document.add(new DoubleDocValuesField(GeoNamesLuceneConstants.LONGITUDE_FIELD,
+                geoEntry.getLongitude()));
         document.add(new StringField(GeoNamesLuceneConstants.FEATURE_CODE_FIELD,
                 geoEntry.getFeatureCode(), Field.Store.YES));
         document.add(
@@ -258,4 +282,108 @@ public void testExceptionInQueryParsing() throws ParseException {
                     e.getCause(), instanceOf(ParseException.class));
         }
     }
+
+    @Test
+    public void testPrefixQuery() {
+        final List<GeoEntry> results = directoryIndex.queryPrefix("Phoe", 5);
+        assertThat(results.size(), is(2));
+        verifyGeoEntry(results.get(0), NAME_1, LAT_1, LON_1, FEATURE_CODE_1, POP_1, null);
+        verifyGeoEntry(results.get(1), NAME_2, LAT_2, LON_2, FEATURE_CODE_2, POP_2, null);
+    }
+
+    @Test
+    public void testPrefixQueryMatchesEveryWord() {
+        final List<GeoEntry> results = directoryIndex.queryPrefix("phoenix air", 5);
+        assertThat(results.size(), is(1));
+        verifyGeoEntry(results.get(0), NAME_2, LAT_2, LON_2, FEATURE_CODE_2, POP_2, null);
+    }
+
+    @Test
+    public void testPrefixQueryWithoutWords() {
+        assertThat(directoryIndex.queryPrefix("?!", 5).size(), is(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBlankPrefixQuery() {
+        directoryIndex.queryPrefix(" ", 1);
+    }
+
+    @Test
+    public void testSearcherIsReusedAcrossQueries() throws IOException {
+        final List<GeoEntry> firstResults = directoryIndex.query("phoenix", 2);
+        final List<GeoEntry> cachedResults = directoryIndex.query("phoenix", 2);
+        directoryIndex.query("glendale", 2);
+
+        assertThat(cachedResults, is(firstResults));
+        verify(directoryIndex, times(1)).createIndexReader(directory);
+    }
+
+    @Test
+    public void testIndexChangesAreVisibleAfterRefresh() throws IOException {
+        directoryIndex.setRefreshIntervalMillis(0);
+        assertThat(directoryIndex.query("tempe", 1).size(), is(0));
+
+        final IndexWriter indexWriter = createIndexWriter(OpenMode.APPEND);
+        indexWriter.addDocument(createDocumentFromGeoEntry(GEO_ENTRY_4));
+        indexWriter.close();
+
+        final List<GeoEntry> results = directoryIndex.query("tempe", 1);
+        assertThat(results.size(), is(1));
+        verifyGeoEntry(results.get(0), "Tempe", LAT_1, LON_1, FEATURE_CODE_1, POP_1, null);
+    }
+
+    @Test
+    public void testDestroyClosesSearcher() throws IOException {
+        directoryIndex.query("phoenix", 1);
+        directoryIndex.destroy();
+        directoryIndex.query("phoenix", 1);
+
+        verify(directoryIndex, times(2)).createIndexReader(directory);
+    }
+
+    @Test
+    public void testNearest() {
+        final GeoEntry nearest = directoryIndex.nearest(1.3, 56.7, 50, null);
+        verifyGeoEntry(nearest, NAME_1, LAT_1, LON_1, FEATURE_CODE_1, POP_1, null);
+    }
+
+    @Test
+    public void testNearestOutsideRadius() {
+        assertThat(directoryIndex.nearest(1.3, 56.7, 5, null), nullValue());
+    }
+
+    @Test
+    public void testNearestWithFeatureCodePrefix() {
+        assertThat(directoryIndex.nearest(-1.0, -5.0, 500, "PPL"), nullValue());
+
+        final GeoEntry nearest = directoryIndex.nearest(-1.0, -5.0, 500, "PCL");
+        verifyGeoEntry(nearest, NAME_3, LAT_3, LON_3, FEATURE_CODE_3, POP_3, null);
+    }
+
+    @Test
+    public void testNearestAcrossAntimeridian() throws IOException {
+        final IndexWriter indexWriter = createIndexWriter(OpenMode.APPEND);
+        indexWriter.addDocument(createDocumentFromGeoEntry(new GeoEntry.Builder()
+                .name("Taveuni")
+                .latitude(-16.8)
+                .longitude(179.9)
+                .featureCode(FEATURE_CODE_1)
+                .population(POP_1)
+                .alternateNames(ALT_NAMES_3)
+                .build()));
+        indexWriter.close();
+
+        final GeoEntry nearest = directoryIndex.nearest(-16.8, -179.9, 50, null);
+        verifyGeoEntry(nearest, "Taveuni", -16.8, 179.9, FEATURE_CODE_1, POP_1, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNearestInvalidLatitude() {
+        directoryIndex.nearest(91, 0, 10, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNearestNonPositiveRadius() {
+        directoryIndex.nearest(0, 0, 0, null);
+    }
 }
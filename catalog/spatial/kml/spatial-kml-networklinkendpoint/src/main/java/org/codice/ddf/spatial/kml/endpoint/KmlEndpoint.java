@@ -30,6 +30,10 @@
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriBuilderException;
@@ -117,6 +121,8 @@ public class KmlEndpoint implements ConfigurationWatcher {
 
     private Kml styleDoc;
 
+    private EntityTag styleTag;
+
     private String styleUrl;
 
     private String iconLoc;
@@ -161,6 +167,8 @@ public void setStyleUrl(String url) {
             try {
                 styleDoc = null;
                 styleUrl = url;
+                // the tag changes each time the document is loaded
+                styleTag = new EntityTag(Long.toHexString(System.currentTimeMillis()));
                 styleDoc = Kml.unmarshal(new URL(styleUrl).openStream());
             } catch (MalformedURLException e) {
                 LOGGER.warn("StyleUrl is not a valid URL. Unable to serve up custom KML de.micromata.opengis.kml.v_2_2_0.Style.", e);
@@ -409,18 +417,28 @@ private UriBuilder generateEndpointUrl(String path, UriBuilder uriBuilder) throw
     }
 
     /**
-     * Kml REST Get. Returns the style Document.
+     * Kml REST Get. Returns the style Document, tagged so clients and caches can revalidate it
+     * instead of downloading it again.
      *
      * @param uriInfo
+     * @param request
+     *            - injected request, used to evaluate If-None-Match
      * @return stylesDoc
      * @throws WebApplicationException
      */
     @GET
     @Path(FORWARD_SLASH + "styles")
     @Produces(KML_MIME_TYPE)
-    public Kml getKmlStyles(@Context UriInfo uriInfo) {
-        if (styleDoc != null) {
-            return styleDoc;
+    public Response getKmlStyles(@Context UriInfo uriInfo, @Context Request request) {
+        Kml styles = styleDoc;
+        EntityTag tag = styleTag;
+        if (styles != null) {
+            ResponseBuilder notModified =
+                    request == null ? null : request.evaluatePreconditions(tag);
+            if (notModified != null) {
+                return notModified.tag(tag).build();
+            }
+            return Response.ok(styles).tag(tag).build();
         }
         throw new WebApplicationException(new FileNotFoundException(
                 "No KML de.micromata.opengis.kml.v_2_2_0.Style has been configured or unable to load document."), Status.NOT_FOUND);
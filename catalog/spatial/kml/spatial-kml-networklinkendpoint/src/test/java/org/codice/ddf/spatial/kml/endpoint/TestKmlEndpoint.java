@@ -16,8 +16,10 @@
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.anyOf;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -34,7 +36,10 @@
 import java.util.Set;
 
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriBuilderException;
 import javax.ws.rs.core.UriInfo;
@@ -251,4 +256,36 @@ public void testExceptionGetCustomIconLocation() {
         kmlEndpoint.setIconLoc(bomberPath);
         kmlEndpoint.getIcon(null, JET_ICON);
     }
+
+    @Test
+    public void testGetKmlStyles() {
+        KmlEndpoint kmlEndpoint = new KmlEndpoint(mockBranding, mockFramework);
+        kmlEndpoint.setStyleUrl(TestKmlEndpoint.class.getResource("/styles.kml").toString());
+
+        Response response = kmlEndpoint.getKmlStyles(mockUriInfo, null);
+
+        assertThat(response.getStatus(), is(Response.Status.OK.getStatusCode()));
+        assertThat(response.getEntity(), is(instanceOf(Kml.class)));
+        assertThat(response.getEntityTag(), notNullValue());
+    }
+
+    @Test
+    public void testGetKmlStylesNotModified() {
+        KmlEndpoint kmlEndpoint = new KmlEndpoint(mockBranding, mockFramework);
+        kmlEndpoint.setStyleUrl(TestKmlEndpoint.class.getResource("/styles.kml").toString());
+        Request request = mock(Request.class);
+        when(request.evaluatePreconditions(any(EntityTag.class)))
+                .thenReturn(Response.notModified());
+
+        Response response = kmlEndpoint.getKmlStyles(mockUriInfo, request);
+
+        assertThat(response.getStatus(), is(Response.Status.NOT_MODIFIED.getStatusCode()));
+        assertThat(response.getEntity(), nullValue());
+    }
+
+    @Test(expected = WebApplicationException.class)
+    public void testGetKmlStylesNotConfigured() {
+        KmlEndpoint kmlEndpoint = new KmlEndpoint(mockBranding, mockFramework);
+        kmlEndpoint.getKmlStyles(mockUriInfo, null);
+    }
 }
@@ -15,6 +15,7 @@
 package org.codice.ddf.commands.spatial.geonames;
 
 import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.felix.gogo.commands.Argument;
 import org.apache.felix.gogo.commands.Command;
@@ -40,7 +41,8 @@ public final class GeoNamesUpdateCommand extends OsgiCommandSupport {
     private String resource = null;
 
     @Option(name = "-c", aliases = "--create",
-            description = "Create a new index, overwriting any existing index at the destination.")
+            description = "Create a new index, replacing any existing index at the destination. " +
+                    "The existing index can still be searched until the new one is complete.")
     private boolean create;
 
     private GeoEntryExtractor geoEntryExtractor;
@@ -58,10 +60,15 @@ public void setGeoEntryIndexer(final GeoEntryIndexer geoEntryIndexer) {
     protected Object doExecute() {
         final PrintStream console = System.out;
 
+        final long start = System.currentTimeMillis();
+
         final ProgressCallback progressCallback = new ProgressCallback() {
             @Override
             public void updateProgress(final int progress) {
-                console.printf("\r%d%%", progress);
+                final long elapsedSeconds =
+                        TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - start);
+                console.printf("\r%d%% (%d:%02d elapsed)", progress, elapsedSeconds / 60,
+                        elapsedSeconds % 60);
                 console.flush();
             }
         };
@@ -14,7 +14,10 @@
 package ddf.catalog.transformer.response.query.atom;
 
 import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -26,18 +29,26 @@
 import javax.activation.MimeType;
 import javax.activation.MimeTypeParseException;
 import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 import org.apache.abdera.Abdera;
 import org.apache.abdera.ext.geo.GeoHelper;
 import org.apache.abdera.ext.geo.GeoHelper.Encoding;
 import org.apache.abdera.ext.geo.Position;
 import org.apache.abdera.ext.opensearch.OpenSearchConstants;
-import org.apache.abdera.model.Content.Type;
 import org.apache.abdera.model.Element;
 import org.apache.abdera.model.Entry;
 import org.apache.abdera.model.Feed;
 import org.apache.abdera.model.Link;
-import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.apache.abdera.util.Constants;
+import org.apache.axiom.om.OMElement;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
 import org.apache.commons.lang.StringUtils;
 import org.codice.ddf.configuration.ConfigurationManager;
 import org.codice.ddf.configuration.ConfigurationWatcher;
@@ -100,6 +111,16 @@ public class AtomTransformer implements QueryResponseTransformer, ConfigurationW
 
     private static final String MIME_TYPE_OCTET_STREAM = "application/octet-stream";
 
+    private static final String TEXT_CONTENT_TYPE = "text";
+
+    private static final String XML_CONTENT_TYPE = "application/xml";
+
+    private static final int SPOOL_MEMORY_THRESHOLD = 1024 * 1024;
+
+    private static final String SPOOL_FILE_PREFIX = "atom-feed-";
+
+    private static final String SPOOL_FILE_SUFFIX = ".xml";
+
     // expensive creation, meant to be done once
     private static final Abdera ABDERA = new Abdera();
 
@@ -129,6 +150,16 @@ public class AtomTransformer implements QueryResponseTransformer, ConfigurationW
 
     private WKTReader reader = new WKTReader();
 
+    private final XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
+
+    private final XMLInputFactory xmlInputFactory = createXmlInputFactory();
+
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return xmlInputFactory;
+    }
+
     public void setViewMetacardActionProvider(ActionProvider viewMetacardActionProvider) {
         this.viewMetacardActionProvider = viewMetacardActionProvider;
     }
@@ -154,19 +185,101 @@ public BinaryContent transform(SourceResponse sourceResponse,
                     "Cannot transform null " + SourceResponse.class.getName());
         }
 
+        // Large feeds are spooled to a temporary file instead of being held on the heap.
+        DeferredFileOutputStream spool = new DeferredFileOutputStream(SPOOL_MEMORY_THRESHOLD,
+                SPOOL_FILE_PREFIX, SPOOL_FILE_SUFFIX, null);
+        boolean transformed = false;
+
+        try {
+            try {
+                write(sourceResponse, spool);
+            } finally {
+                spool.close();
+            }
+
+            BinaryContentImpl binaryContent = new BinaryContentImpl(openSpool(spool), MIME_TYPE);
+            binaryContent.setSize(spool.getByteCount());
+            transformed = true;
+            return binaryContent;
+        } catch (IOException e) {
+            LOGGER.info("Could not write to output stream.", e);
+            throw new CatalogTransformerException("Could not transform into Atom.", e);
+        } finally {
+            if (!transformed) {
+                FileUtils.deleteQuietly(spool.getFile());
+            }
+        }
+    }
+
+    /**
+     * Writes query results to an output stream as an Atom feed. The feed elements, including
+     * os:totalResults, are written first and each result is then mapped to an entry and written
+     * before the next one is read, so the whole feed never has to be held in memory.
+     *
+     * @param sourceResponse
+     *            the query results to write
+     * @param outputStream
+     *            the stream the feed is written to, which is not closed
+     * @throws CatalogTransformerException
+     *             if the feed could not be written
+     */
+    public void write(SourceResponse sourceResponse, OutputStream outputStream)
+            throws CatalogTransformerException {
+
+        if (sourceResponse == null) {
+            throw new CatalogTransformerException(
+                    "Cannot transform null " + SourceResponse.class.getName());
+        }
+
         Date currentDate = new Date();
 
         ClassLoader tccl = Thread.currentThread().getContextClassLoader();
-        Feed feed = null;
         try {
 
             Thread.currentThread().setContextClassLoader(AtomTransformer.class.getClassLoader());
 
-            feed = ABDERA.newFeed();
+            XMLStreamWriter writer = xmlOutputFactory
+                    .createXMLStreamWriter(outputStream, StandardCharsets.UTF_8.name());
+
+            writer.writeStartDocument(StandardCharsets.UTF_8.name(), "1.0");
+            writer.setDefaultNamespace(Constants.ATOM_NS);
+            writeStartElement(writer, Constants.FEED);
+            writer.writeDefaultNamespace(Constants.ATOM_NS);
+
+            writeChildren(createFeed(sourceResponse, currentDate), writer);
+
+            for (Result result : sourceResponse.getResults()) {
+
+                Metacard metacard = result.getMetacard();
 
+                if (metacard == null) {
+                    continue;
+                }
+
+                writeStartElement(writer, Constants.ENTRY);
+                writeChildren(createEntry(result, metacard, currentDate), writer);
+                writeContent(metacard, writer);
+                writer.writeEndElement();
+            }
+
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.close();
+
+        } catch (XMLStreamException e) {
+            LOGGER.info("Could not write to output stream.", e);
+            throw new CatalogTransformerException("Could not transform into Atom.", e);
         } finally {
             Thread.currentThread().setContextClassLoader(tccl);
         }
+    }
+
+    /**
+     * Creates a feed holding the feed level elements, without any entries.
+     */
+    private Feed createFeed(SourceResponse sourceResponse, Date currentDate) {
+
+        Feed feed = ABDERA.newFeed();
 
         /*
          * Atom spec text (rfc4287) Sect 4.2.14: "The "atom:title" element is a Text construct that
@@ -241,164 +354,277 @@ public BinaryContent transform(SourceResponse sourceResponse,
                     Integer.toString(sourceResponse.getRequest().getQuery().getStartIndex()));
         }
 
-        for (Result result : sourceResponse.getResults()) {
+        return feed;
+    }
 
-            Metacard metacard = result.getMetacard();
+    /**
+     * Creates an entry for a result, without its content. The content is written separately by
+     * {@link #writeContent(Metacard, XMLStreamWriter)}.
+     */
+    private Entry createEntry(Result result, Metacard metacard, Date currentDate) {
 
-            if (metacard == null) {
-                continue;
-            }
+        Entry entry = ABDERA.newEntry();
 
-            Entry entry = feed.addEntry();
+        String sourceName = DEFAULT_SOURCE_ID;
 
-            String sourceName = DEFAULT_SOURCE_ID;
+        if (metacard.getSourceId() != null) {
+            sourceName = metacard.getSourceId();
+        }
 
-            if (result.getMetacard().getSourceId() != null) {
-                sourceName = result.getMetacard().getSourceId();
-            }
+        Element source = entry
+                .addExtension(new QName(FEDERATION_EXTENSION_NAMESPACE, "resultSource", "fs"));
 
-            Element source = entry
-                    .addExtension(new QName(FEDERATION_EXTENSION_NAMESPACE, "resultSource", "fs"));
+        /*
+         * According to the os-federation.xsd, the resultSource element text has a max length of
+         * 16 and is the shortname of the source id. Previously, we were duplicating the names
+         * in both positions, but since we truly do not have a shortname for our source ids, I
+         * am purposely omitting the shortname text and leaving it as the empty string. The real
+         * source id can still be found in the attribute instead.
+         */
 
-            /*
-             * According to the os-federation.xsd, the resultSource element text has a max length of
-             * 16 and is the shortname of the source id. Previously, we were duplicating the names
-             * in both positions, but since we truly do not have a shortname for our source ids, I
-             * am purposely omitting the shortname text and leaving it as the empty string. The real
-             * source id can still be found in the attribute instead.
-             */
+        source.setAttributeValue(new QName(FEDERATION_EXTENSION_NAMESPACE, "sourceId"),
+                sourceName);
 
-            source.setAttributeValue(new QName(FEDERATION_EXTENSION_NAMESPACE, "sourceId"),
-                    sourceName);
+        if (result.getRelevanceScore() != null) {
+            Element relevance = entry.addExtension(
+                    new QName("http://a9.com/-/opensearch/extensions/relevance/1.0/", "score",
+                            "relevance"));
+            relevance.setText(result.getRelevanceScore().toString());
+        }
 
-            if (result.getRelevanceScore() != null) {
-                Element relevance = entry.addExtension(
-                        new QName("http://a9.com/-/opensearch/extensions/relevance/1.0/", "score",
-                                "relevance"));
-                relevance.setText(result.getRelevanceScore().toString());
-            }
+        entry.setId(URN_CATALOG_ID + metacard.getId());
 
-            entry.setId(URN_CATALOG_ID + metacard.getId());
+        /*
+         * Atom spec text (rfc4287): "The "atom:title" element is a Text construct that conveys
+         * a human- readable title for an entry or feed."
+         */
+        entry.setTitle(metacard.getTitle());
 
-            /*
-             * Atom spec text (rfc4287): "The "atom:title" element is a Text construct that conveys
-             * a human- readable title for an entry or feed."
-             */
-            entry.setTitle(metacard.getTitle());
+        /*
+         * Atom spec text (rfc4287): "The "atom:updated" element is a Date construct indicating
+         * the most recent instant in time when an entry or feed was modified in a way the
+         * publisher considers significant." Therefore, a new Date is used because we are making
+         * the entry for the first time.
+         */
+        if (metacard.getModifiedDate() != null) {
+            entry.setUpdated(metacard.getModifiedDate());
+        } else {
+            entry.setUpdated(currentDate);
+        }
 
-            /*
-             * Atom spec text (rfc4287): "The "atom:updated" element is a Date construct indicating
-             * the most recent instant in time when an entry or feed was modified in a way the
-             * publisher considers significant." Therefore, a new Date is used because we are making
-             * the entry for the first time.
-             */
-            if (metacard.getModifiedDate() != null) {
-                entry.setUpdated(metacard.getModifiedDate());
-            } else {
-                entry.setUpdated(currentDate);
-            }
+        /*
+         * Atom spec text (rfc4287): "Typically, atom:published will be associated with the
+         * initial creation or first availability of the resource."
+         */
+        if (metacard.getCreatedDate() != null) {
+            entry.setPublished(metacard.getCreatedDate());
+        }
 
-            /*
-             * Atom spec text (rfc4287): "Typically, atom:published will be associated with the
-             * initial creation or first availability of the resource."
-             */
-            if (metacard.getCreatedDate() != null) {
-                entry.setPublished(metacard.getCreatedDate());
-            }
+        /*
+         * For atom:link elements, Atom spec text (rfc4287): "The value "related" signifies that
+         * the IRI in the value of the href attribute identifies a resource related to the
+         * resource described by the containing element."
+         */
+        addLink(resourceActionProvider, metacard, entry, Link.REL_RELATED);
 
-            /*
-             * For atom:link elements, Atom spec text (rfc4287): "The value "related" signifies that
-             * the IRI in the value of the href attribute identifies a resource related to the
-             * resource described by the containing element."
-             */
-            addLink(resourceActionProvider, metacard, entry, Link.REL_RELATED);
+        addLink(viewMetacardActionProvider, metacard, entry, Link.REL_ALTERNATE);
 
-            addLink(viewMetacardActionProvider, metacard, entry, Link.REL_ALTERNATE);
+        addLink(thumbnailActionProvider, metacard, entry, REL_PREVIEW);
 
-            addLink(thumbnailActionProvider, metacard, entry, REL_PREVIEW);
+        /*
+         * Atom spec text (rfc4287) Sect. 4.2.2.: "The "atom:category" element conveys
+         * information about a category associated with an entry or feed. This specification
+         * assigns no meaning to the content (if any) of this element."
+         */
+        if (metacard.getContentTypeName() != null) {
+            entry.addCategory(metacard.getContentTypeName());
+        }
 
-            /*
-             * Atom spec text (rfc4287) Sect. 4.2.2.: "The "atom:category" element conveys
-             * information about a category associated with an entry or feed. This specification
-             * assigns no meaning to the content (if any) of this element."
-             */
-            if (metacard.getContentTypeName() != null) {
-                entry.addCategory(metacard.getContentTypeName());
-            }
+        for (Position position : getGeoRssPositions(metacard)) {
+            GeoHelper.addPosition(entry, position, Encoding.GML);
+        }
 
-            for (Position position : getGeoRssPositions(metacard)) {
-                GeoHelper.addPosition(entry, position, Encoding.GML);
+        return entry;
+    }
+
+    /**
+     * Writes the atom:content of an entry. The output of the {@link MetacardTransformer} is copied
+     * into the feed event by event when it is available, otherwise the metacard id is used as
+     * text content.
+     */
+    private void writeContent(Metacard metacard, XMLStreamWriter writer)
+            throws XMLStreamException {
+
+        byte[] xmlBytes = getXmlContent(metacard);
+
+        writeStartElement(writer, Constants.CONTENT);
+
+        if (xmlBytes != null) {
+            writer.writeAttribute("type", XML_CONTENT_TYPE);
+            copyXml(xmlBytes, writer);
+        } else {
+            writer.writeAttribute("type", TEXT_CONTENT_TYPE);
+            if (metacard.getId() != null) {
+                writer.writeCharacters(metacard.getId());
             }
+        }
 
-            BinaryContent binaryContent = null;
+        writer.writeEndElement();
+    }
 
-            String contentOutput = metacard.getId();
-            Type atomContentType = Type.TEXT;
+    private byte[] getXmlContent(Metacard metacard) {
 
-            if (metacardTransformer != null) {
+        if (metacardTransformer == null) {
+            return null;
+        }
 
-                try {
-                    binaryContent = metacardTransformer.transform(metacard, null);
+        BinaryContent binaryContent = null;
 
-                // If the transformer cannot handle the data appropriately
-                } catch (CatalogTransformerException e) {
-                    LOGGER.warn(COULD_NOT_CREATE_XML_CONTENT_MESSAGE, e);
+        try {
+            binaryContent = metacardTransformer.transform(metacard, null);
 
-                // If the transformer service is unavailable
-                } catch (RuntimeException e) {
-                    LOGGER.info(COULD_NOT_CREATE_XML_CONTENT_MESSAGE, e);
-                }
+        // If the transformer cannot handle the data appropriately
+        } catch (CatalogTransformerException e) {
+            LOGGER.warn(COULD_NOT_CREATE_XML_CONTENT_MESSAGE, e);
 
-                if (binaryContent != null) {
-                    try {
-                        byte[] xmlBytes = binaryContent.getByteArray();
-                        if (xmlBytes != null && xmlBytes.length > 0) {
-                            contentOutput = new String(xmlBytes, StandardCharsets.UTF_8);
+        // If the transformer service is unavailable
+        } catch (RuntimeException e) {
+            LOGGER.info(COULD_NOT_CREATE_XML_CONTENT_MESSAGE, e);
+        }
 
-                            atomContentType = Type.XML;
-                        }
-                    } catch (IOException e) {
-                        LOGGER.warn(COULD_NOT_CREATE_XML_CONTENT_MESSAGE, e);
-                    }
+        if (binaryContent != null) {
+            try {
+                byte[] xmlBytes = binaryContent.getByteArray();
+                if (xmlBytes != null && xmlBytes.length > 0) {
+                    return xmlBytes;
                 }
+            } catch (IOException e) {
+                LOGGER.warn(COULD_NOT_CREATE_XML_CONTENT_MESSAGE, e);
             }
+        }
 
-            tccl = Thread.currentThread().getContextClassLoader();
-            try {
+        return null;
+    }
 
-                Thread.currentThread()
-                        .setContextClassLoader(AtomTransformer.class.getClassLoader());
+    /**
+     * Copies the root element of an XML document into the feed without building a tree for it.
+     */
+    private void copyXml(byte[] xmlBytes, XMLStreamWriter writer) throws XMLStreamException {
 
-                entry.setContent(contentOutput, atomContentType);
+        XMLStreamReader reader = xmlInputFactory
+                .createXMLStreamReader(new ByteArrayInputStream(xmlBytes));
 
-            } finally {
-                Thread.currentThread().setContextClassLoader(tccl);
+        try {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    copyStartElement(reader, writer);
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    writer.writeEndElement();
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                    writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(),
+                            reader.getTextLength());
+                    break;
+                case XMLStreamConstants.CDATA:
+                    writer.writeCData(reader.getText());
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    writer.writeComment(reader.getText());
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    writer.writeProcessingInstruction(reader.getPITarget(), reader.getPIData());
+                    break;
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    writer.writeEntityRef(reader.getLocalName());
+                    break;
+                default:
+                    // the document declaration and DTD are not part of the content
+                    break;
+                }
             }
-
+        } finally {
+            reader.close();
         }
+    }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    private void copyStartElement(XMLStreamReader reader, XMLStreamWriter writer)
+            throws XMLStreamException {
 
-        try {
+        String prefix = StringUtils.defaultString(reader.getPrefix());
+        String namespace = StringUtils.defaultString(reader.getNamespaceURI());
 
-            tccl = Thread.currentThread().getContextClassLoader();
-            try {
+        // Atom is the default namespace in the feed, so content in no namespace must reset it.
+        // The binding is looked up before the element is started, since some writers bind the
+        // element's own prefix when it is.
+        boolean bound = namespace.equals(StringUtils
+                .defaultString(writer.getNamespaceContext().getNamespaceURI(prefix)));
 
-                Thread.currentThread()
-                        .setContextClassLoader(AtomTransformer.class.getClassLoader());
+        writer.writeStartElement(prefix, reader.getLocalName(), namespace);
 
-                feed.writeTo(baos);
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String declaredPrefix = StringUtils.defaultString(reader.getNamespacePrefix(i));
+            writeNamespace(writer, declaredPrefix,
+                    StringUtils.defaultString(reader.getNamespaceURI(i)));
+            bound |= declaredPrefix.equals(prefix);
+        }
 
-            } finally {
-                Thread.currentThread().setContextClassLoader(tccl);
+        if (!bound) {
+            writeNamespace(writer, prefix, namespace);
+        }
+
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String attributePrefix = reader.getAttributePrefix(i);
+            if (StringUtils.isEmpty(attributePrefix)) {
+                writer.writeAttribute(reader.getAttributeLocalName(i),
+                        reader.getAttributeValue(i));
+            } else {
+                writer.writeAttribute(attributePrefix, reader.getAttributeNamespace(i),
+                        reader.getAttributeLocalName(i), reader.getAttributeValue(i));
             }
+        }
+    }
 
-        } catch (IOException e) {
-            LOGGER.info("Could not write to output stream.", e);
-            throw new CatalogTransformerException("Could not transform into Atom.", e);
+    private void writeNamespace(XMLStreamWriter writer, String prefix, String namespace)
+            throws XMLStreamException {
+        if (prefix.isEmpty()) {
+            writer.writeDefaultNamespace(namespace);
+            writer.setDefaultNamespace(namespace);
+        } else {
+            writer.writeNamespace(prefix, namespace);
+            writer.setPrefix(prefix, namespace);
         }
+    }
+
+    private void writeStartElement(XMLStreamWriter writer, QName name)
+            throws XMLStreamException {
+        writer.writeStartElement(name.getNamespaceURI(), name.getLocalPart());
+    }
 
-        return new BinaryContentImpl(new ByteArrayInputStream(baos.toByteArray()), MIME_TYPE);
+    private void writeChildren(Element parent, XMLStreamWriter writer)
+            throws XMLStreamException {
+        for (Element child : parent.getElements()) {
+            ((OMElement) child).serialize(writer);
+        }
+    }
+
+    private InputStream openSpool(final DeferredFileOutputStream spool) throws IOException {
+        if (spool.isInMemory()) {
+            return new ByteArrayInputStream(spool.getData());
+        }
+
+        return new FileInputStream(spool.getFile()) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    FileUtils.deleteQuietly(spool.getFile());
+                }
+            }
+        };
     }
 
     // a Link object could not be made and returned without a classpath problem in the OSGi runtime
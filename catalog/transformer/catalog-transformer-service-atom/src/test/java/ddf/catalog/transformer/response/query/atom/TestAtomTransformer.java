@@ -26,13 +26,17 @@
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
 
@@ -40,6 +44,10 @@
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.Source;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamSource;
@@ -49,6 +57,7 @@
 
 import org.apache.abdera.model.Link;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
 import org.codice.ddf.configuration.ConfigurationManager;
 import org.custommonkey.xmlunit.NamespaceContext;
 import org.custommonkey.xmlunit.SimpleNamespaceContext;
@@ -492,6 +501,32 @@ public void testNoBinaryContentXml()
 
     }
 
+    /**
+     * Content elements in no namespace must not take on the Atom default namespace of the feed.
+     */
+    @Test
+    public void testNoNamespaceContentXml()
+            throws IOException, CatalogTransformerException, XpathException, SAXException {
+        // given
+        MetacardTransformer metacardTransformer = getXmlMetacardTransformerStub();
+
+        AtomTransformer transformer = getConfiguredAtomTransformer(metacardTransformer,
+                getDefaultSystemConfiguration());
+
+        SourceResponse response = getSourceResponseStub(SAMPLE_ID, null);
+
+        // when
+        BinaryContent binaryContent = transformer.transform(response, null);
+
+        // then
+        String output = new String(binaryContent.getByteArray());
+
+        assertXpathEvaluatesTo("me", "/atom:feed/atom:entry/atom:content/*/to", output);
+        assertXpathEvaluatesTo("you", "/atom:feed/atom:entry/atom:content/*/from", output);
+        assertXpathNotExists("//atom:to", output);
+
+    }
+
     @Test
     public void testTotalResultsNegative()
             throws IOException, CatalogTransformerException, XpathException, SAXException {
@@ -825,6 +860,115 @@ public void testNoEntries()
 
     }
 
+    /**
+     * Transforms a large page of results and reads the feed back as a stream, so neither side
+     * holds the whole feed as a tree.
+     */
+    @Test
+    public void testLargeFeed() throws Exception {
+
+        // given
+        AtomTransformer transformer = new AtomTransformer();
+        transformer.setMetacardTransformer(getXmlMetacardTransformerStub());
+        transformer.configurationUpdateCallback(getDefaultSystemConfiguration());
+
+        SourceResponse response = getLargeResponse(1000);
+
+        // when
+        BinaryContent binaryContent = transformer.transform(response, null);
+
+        // then
+        assertThat(binaryContent.getMimeType(), is(AtomTransformer.MIME_TYPE));
+        assertThat(binaryContent.getSize() > 0, is(true));
+
+        try (InputStream feed = binaryContent.getInputStream()) {
+            assertStreamedFeed(feed, 1000);
+        }
+    }
+
+    @Test
+    public void testWriteLargeFeedToStream() throws Exception {
+
+        // given
+        AtomTransformer transformer = new AtomTransformer();
+        transformer.setMetacardTransformer(getXmlMetacardTransformerStub());
+        transformer.configurationUpdateCallback(getDefaultSystemConfiguration());
+
+        SourceResponse response = getLargeResponse(10000);
+
+        File feedFile = new File(TARGET_FOLDER + getMethodName() + ATOM_EXTENSION);
+
+        // when
+        try (OutputStream output = new FileOutputStream(feedFile)) {
+            transformer.write(response, output);
+        }
+
+        // then
+        try (InputStream feed = new FileInputStream(feedFile)) {
+            assertStreamedFeed(feed, 10000);
+        }
+    }
+
+    private SourceResponse getLargeResponse(int resultCount) {
+
+        List<Result> results = new ArrayList<Result>(resultCount);
+        for (int i = 0; i < resultCount; i++) {
+            MetacardStub metacard = new MetacardStub("");
+            metacard.setId(SAMPLE_ID + i);
+            metacard.setSourceId(SAMPLE_SOURCE_ID);
+            results.add(new ResultImpl(metacard));
+        }
+
+        SourceResponse response = mock(SourceResponse.class);
+        when(response.getHits()).thenReturn((long) resultCount);
+        when(response.getRequest()).thenReturn(getStubRequest());
+        when(response.getResults()).thenReturn(results);
+        return response;
+    }
+
+    /**
+     * Checks that os:totalResults comes before the first entry, that every entry is present and
+     * that the metacard XML kept its namespaces when it was copied into the feed.
+     */
+    private void assertStreamedFeed(InputStream feed, int entryCount) throws XMLStreamException {
+
+        XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(feed);
+
+        String totalResults = null;
+        int entries = 0;
+        int notes = 0;
+
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+
+                String localName = reader.getLocalName();
+                String namespace = reader.getNamespaceURI();
+
+                if ("totalResults".equals(localName)) {
+                    assertThat("os:totalResults must precede the entries", entries, is(0));
+                    totalResults = reader.getElementText();
+                } else if ("entry".equals(localName)) {
+                    assertThat(namespace, is("http://www.w3.org/2005/Atom"));
+                    entries++;
+                } else if ("note".equals(localName)) {
+                    assertThat(namespace, is("http://www.lockheedmartin.com/schema/sample"));
+                    notes++;
+                } else if ("to".equals(localName) || "from".equals(localName)) {
+                    assertThat(StringUtils.defaultString(namespace), is(""));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        assertThat(totalResults, is(Integer.toString(entryCount)));
+        assertThat(entries, is(entryCount));
+        assertThat(notes, is(entryCount));
+    }
+
     @Test
     public void testDistanceInMeters() {
         // TODO research if there is a way to display this information
@@ -45,6 +45,8 @@ public abstract class AbstractXsltTransformer {
 
     protected Templates templates;
 
+    protected TransformerPool transformerPool;
+
     protected MimeType mimeType;
 
     protected BundleContext context;
@@ -98,6 +100,7 @@ public void init(String mimeString, InputStream xslStream) {
         xsltSource = new StreamSource(xslStream);
         try {
             templates = tf.newTemplates(xsltSource);
+            transformerPool = new TransformerPool(templates);
         } catch (TransformerConfigurationException tce) {
             throw new RuntimeException(
                     "Could not create new templates for XsltTransformer ( " + xslStream + ") : "
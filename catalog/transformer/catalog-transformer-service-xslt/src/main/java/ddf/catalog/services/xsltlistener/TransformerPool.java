@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.services.xsltlistener;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+
+/**
+ * Keeps idle {@link Transformer}s created from one set of {@link Templates} so they can be reused
+ * instead of being created for every transform. A {@code Transformer} is not thread safe, so each
+ * one is only ever used by the thread that acquired it until it is released.
+ */
+class TransformerPool {
+
+    private static final int MAX_IDLE = 16;
+
+    private final Templates templates;
+
+    private final BlockingQueue<Transformer> idle = new ArrayBlockingQueue<Transformer>(MAX_IDLE);
+
+    TransformerPool(Templates templates) {
+        this.templates = templates;
+    }
+
+    /**
+     * @return an idle transformer, or a new one if none are idle
+     */
+    Transformer acquire() throws TransformerConfigurationException {
+        Transformer transformer = idle.poll();
+        if (transformer == null) {
+            transformer = templates.newTransformer();
+        }
+        return transformer;
+    }
+
+    /**
+     * Resets the transformer and keeps it for reuse, unless enough transformers are already idle.
+     */
+    void release(Transformer transformer) {
+        if (transformer != null) {
+            transformer.reset();
+            idle.offer(transformer);
+        }
+    }
+}
@@ -131,7 +131,7 @@ public BinaryContent transform(Metacard metacard, Map<String, Serializable> argu
         resultOutput = new StreamResult(baos);
 
         try {
-            transformer = templates.newTransformer();
+            transformer = transformerPool.acquire();
         } catch (TransformerConfigurationException tce) {
             throw new CatalogTransformerException(
                     "Could not perform Xslt transform: " + tce.getException(), tce.getCause());
@@ -147,6 +147,7 @@ public BinaryContent transform(Metacard metacard, Map<String, Serializable> argu
 
         try {
             transformer.transform(source, resultOutput);
+            transformerPool.release(transformer);
             byte[] bytes = baos.toByteArray();
             IOUtils.closeQuietly(baos);
             LOGGER.debug("Transform complete.");
@@ -154,10 +155,6 @@ public BinaryContent transform(Metacard metacard, Map<String, Serializable> argu
         } catch (TransformerException te) {
             throw new CatalogTransformerException(
                     "Could not perform Xslt transform: " + te.getMessage(), te.getCause());
-        } finally {
-            // TODO: if we ever start to reuse transformers, we should add this
-            // code back in
-            // transformer.reset();
         }
 
         return resultContent;
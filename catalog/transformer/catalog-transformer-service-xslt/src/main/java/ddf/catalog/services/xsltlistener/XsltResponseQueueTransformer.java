@@ -13,54 +13,39 @@
  */
 package ddf.catalog.services.xsltlistener;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
-import java.net.URLConnection;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXSource;
 import javax.xml.transform.stream.StreamResult;
 
-import org.apache.commons.codec.binary.Base64;
-import org.joda.time.format.DateTimeFormatter;
-import org.joda.time.format.ISODateTimeFormat;
 import org.osgi.framework.Bundle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.DOMException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.ls.DOMImplementationLS;
-import org.w3c.dom.ls.LSSerializer;
+import org.xml.sax.InputSource;
+
+import com.google.common.io.CountingOutputStream;
+import com.google.common.io.FileBackedOutputStream;
 
-import ddf.catalog.data.BinaryContent;
-import ddf.catalog.data.Metacard;
-import ddf.catalog.data.Result;
 import ddf.catalog.operation.SourceResponse;
 import ddf.catalog.transform.CatalogTransformerException;
 import ddf.catalog.transform.QueryResponseTransformer;
-import ddf.util.XPathHelper;
 
 public class XsltResponseQueueTransformer extends AbstractXsltTransformer
         implements QueryResponseTransformer {
 
     private static final String GRAND_TOTAL = "grandTotal";
 
-    // private static final String XML_RESULTS_NAMESPACE =
-    // "http://ddf/xslt-response-queue-transformer";
-    private static final String XML_RESULTS_NAMESPACE = null;
+    // Transformed results larger than this are spooled to a temporary file.
+    private static final int SPOOL_MEMORY_THRESHOLD = 1024 * 1024;
 
     private static final Logger LOGGER = LoggerFactory
             .getLogger(XsltResponseQueueTransformer.class);
@@ -78,199 +63,88 @@ public ddf.catalog.data.BinaryContent transform(SourceResponse upstreamResponse,
 
         LOGGER.debug("Transforming ResponseQueue with XSLT tranformer");
 
-        long grandTotal = -1;
-
-        try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-
-            factory.setNamespaceAware(true);
-            DocumentBuilder builder = factory.newDocumentBuilder();
-
-            Document doc = builder.newDocument();
-
-            Node resultsElement = doc
-                    .appendChild(createElement(doc, XML_RESULTS_NAMESPACE, "results", null));
-
-            // TODO use streaming XSLT, not DOM
-            List<Result> results = upstreamResponse.getResults();
-            grandTotal = upstreamResponse.getHits();
+        Map<String, Object> mergedMap = new HashMap<String, Object>();
+        mergedMap.put(GRAND_TOTAL, upstreamResponse.getHits());
+        if (arguments != null) {
+            mergedMap.putAll(arguments);
+        }
 
-            for (Result result : results) {
-                Metacard metacard = result.getMetacard();
-                String thisMetacard = metacard.getMetadata();
-                if (metacard != null && thisMetacard != null) {
-                    Element metacardElement = createElement(doc, XML_RESULTS_NAMESPACE, "metacard",
-                            null);
-                    if (metacard.getId() != null) {
-                        metacardElement.appendChild(
-                                createElement(doc, XML_RESULTS_NAMESPACE, "id", metacard.getId()));
-                    }
-                    if (metacard.getMetacardType().toString() != null) {
-                        metacardElement.appendChild(
-                                createElement(doc, XML_RESULTS_NAMESPACE, "type",
-                                        metacard.getMetacardType().getName()));
-                    }
-                    if (metacard.getTitle() != null) {
-                        metacardElement.appendChild(
-                                createElement(doc, XML_RESULTS_NAMESPACE, "title",
-                                        metacard.getTitle()));
-                    }
-                    if (result.getRelevanceScore() != null) {
-                        metacardElement.appendChild(
-                                createElement(doc, XML_RESULTS_NAMESPACE, "score",
-                                        result.getRelevanceScore().toString()));
-                    }
-                    if (result.getDistanceInMeters() != null) {
-                        metacardElement.appendChild(
-                                createElement(doc, XML_RESULTS_NAMESPACE, "distance",
-                                        result.getDistanceInMeters().toString()));
-                    }
-                    if (metacard.getSourceId() != null) {
-                        metacardElement.appendChild(
-                                createElement(doc, XML_RESULTS_NAMESPACE, "site",
-                                        metacard.getSourceId()));
-                    }
-                    if (metacard.getContentTypeName() != null) {
-                        String contentType = metacard.getContentTypeName();
-                        Element typeElement = createElement(doc, XML_RESULTS_NAMESPACE,
-                                "content-type", contentType);
-                        // TODO revisit what to put in the qualifier
-                        typeElement.setAttribute("qualifier", "content-type");
-                        metacardElement.appendChild(typeElement);
-                    }
-                    if (metacard.getResourceURI() != null) {
-                        try {
-                            metacardElement.appendChild(
-                                    createElement(doc, XML_RESULTS_NAMESPACE, "product",
-                                            metacard.getResourceURI().toString()));
-                        } catch (DOMException e) {
-                            LOGGER.warn(" Unable to create resource uri element", e);
-                        }
-                    }
-                    if (metacard.getThumbnail() != null) {
-                        metacardElement.appendChild(
-                                createElement(doc, XML_RESULTS_NAMESPACE, "thumbnail",
-                                        Base64.encodeBase64String(metacard.getThumbnail())));
-                        try {
-                            String mimeType = URLConnection.guessContentTypeFromStream(
-                                    new ByteArrayInputStream(metacard.getThumbnail()));
-                            metacardElement.appendChild(
-                                    createElement(doc, XML_RESULTS_NAMESPACE, "t_mimetype",
-                                            mimeType));
-                        } catch (IOException e) {
-                            // TODO Auto-generated catch block
-                            metacardElement.appendChild(
-                                    createElement(doc, XML_RESULTS_NAMESPACE, "t_mimetype",
-                                            "image/png"));
-                        }
-                    }
-                    DateTimeFormatter fmt = ISODateTimeFormat.dateTime();
-                    if (metacard.getCreatedDate() != null) {
-                        metacardElement.appendChild(
-                                createElement(doc, XML_RESULTS_NAMESPACE, "created",
-                                        fmt.print(metacard.getCreatedDate().getTime())));
-                    }
-                    // looking at the date last modified
-                    if (metacard.getModifiedDate() != null) {
-                        metacardElement.appendChild(
-                                createElement(doc, XML_RESULTS_NAMESPACE, "updated",
-                                        fmt.print(metacard.getModifiedDate().getTime())));
-                    }
-                    if (metacard.getEffectiveDate() != null) {
-                        metacardElement.appendChild(
-                                createElement(doc, XML_RESULTS_NAMESPACE, "effective",
-                                        fmt.print(metacard.getEffectiveDate().getTime())));
-                    }
-                    if (metacard.getLocation() != null) {
-                        metacardElement.appendChild(
-                                createElement(doc, XML_RESULTS_NAMESPACE, "location",
-                                        metacard.getLocation()));
-                    }
-                    Element documentElement = doc
-                            .createElementNS(XML_RESULTS_NAMESPACE, "document");
-                    metacardElement.appendChild(documentElement);
-                    resultsElement.appendChild(metacardElement);
+        // The results are handed to the stylesheet as SAX events, one metacard at a time,
+        // rather than being assembled into a DOM first.
+        Source source = new SAXSource(new XsltResultsReader(upstreamResponse.getResults()),
+                new InputSource());
 
-                    Node importedNode = doc
-                            .importNode(new XPathHelper(thisMetacard).getDocument().getFirstChild(),
-                                    true);
-                    documentElement.appendChild(importedNode);
-                } else {
-                    LOGGER.debug("Null content/document returned to XSLT ResponseQueueTransformer");
-                    continue;
-                }
-            }
+        TransformerPool pool = transformerPool;
+        Transformer transformer;
+        try {
+            transformer = pool.acquire();
+        } catch (TransformerConfigurationException tce) {
+            throw new CatalogTransformerException(
+                    "Could not perform Xslt transform: " + tce.getException(), tce.getCause());
+        }
 
+        for (Map.Entry<String, Object> entry : mergedMap.entrySet()) {
             if (LOGGER.isDebugEnabled()) {
-                DOMImplementationLS domImplementation = (DOMImplementationLS) doc
-                        .getImplementation();
-                LSSerializer lsSerializer = domImplementation.createLSSerializer();
-                LOGGER.debug(
-                        "Generated XML input for transform: " + lsSerializer.writeToString(doc));
+                LOGGER.debug("Adding parameter to transform {" + entry.getKey() + ":" + entry
+                        .getValue() + "}");
             }
+            transformer.setParameter(entry.getKey(), entry.getValue());
+        }
 
-            LOGGER.debug("Starting responsequeue xslt transform.");
+        LOGGER.debug("Starting responsequeue xslt transform.");
 
-            Transformer transformer;
+        FileBackedOutputStream spool = new FileBackedOutputStream(SPOOL_MEMORY_THRESHOLD, true);
+        CountingOutputStream output = new CountingOutputStream(spool);
+        try {
+            transformer.transform(source, new StreamResult(output));
+            output.flush();
+            // Only a transformer that completed cleanly goes back into the pool.
+            pool.release(transformer);
+            LOGGER.debug("Transform complete.");
+            return new XsltTransformedContent(new SpoolInputStream(spool), output.getCount(),
+                    mimeType);
+        } catch (TransformerException te) {
+            resetSpool(spool);
+            LOGGER.error("Could not perform Xslt transform: " + te.getException(),
+                    te.getCause());
+            throw new CatalogTransformerException(
+                    "Could not perform Xslt transform: " + te.getException(), te.getCause());
+        } catch (IOException e) {
+            resetSpool(spool);
+            LOGGER.warn("Unable to buffer transformed results: " + e.getMessage(), e);
+            throw new CatalogTransformerException("Unable to buffer transformed results.", e);
+        }
+    }
 
-            Map<String, Object> mergedMap = new HashMap<String, Object>();
-            mergedMap.put(GRAND_TOTAL, grandTotal);
-            if (arguments != null) {
-                mergedMap.putAll(arguments);
-            }
+    private void resetSpool(FileBackedOutputStream spool) {
+        try {
+            spool.reset();
+        } catch (IOException e) {
+            LOGGER.debug("Unable to delete transformed results spool.", e);
+        }
+    }
 
-            BinaryContent resultContent;
-            StreamResult resultOutput = null;
-            Source source = new DOMSource(doc);
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            resultOutput = new StreamResult(baos);
+    /**
+     * Reads back the transformed results and releases the spool, including any backing file, once
+     * the caller closes the stream.
+     */
+    private static class SpoolInputStream extends FilterInputStream {
 
-            try {
-                transformer = templates.newTransformer();
-            } catch (TransformerConfigurationException tce) {
-                throw new CatalogTransformerException(
-                        "Could not perform Xslt transform: " + tce.getException(), tce.getCause());
-            }
+        private final FileBackedOutputStream spool;
 
-            if (mergedMap != null && !mergedMap.isEmpty()) {
-                for (Map.Entry<String, Object> entry : mergedMap.entrySet()) {
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug(
-                                "Adding parameter to transform {" + entry.getKey() + ":" + entry
-                                        .getValue() + "}");
-                    }
-                    transformer.setParameter(entry.getKey(), entry.getValue());
-                }
-            }
+        SpoolInputStream(FileBackedOutputStream spool) throws IOException {
+            super(spool.asByteSource().openStream());
+            this.spool = spool;
+        }
 
+        @Override
+        public void close() throws IOException {
             try {
-                transformer.transform(source, resultOutput);
-                byte[] bytes = baos.toByteArray();
-                LOGGER.debug("Transform complete.");
-                resultContent = new XsltTransformedContent(bytes, mimeType);
-            } catch (TransformerException te) {
-                LOGGER.error("Could not perform Xslt transform: " + te.getException(),
-                        te.getCause());
-                throw new CatalogTransformerException(
-                        "Could not perform Xslt transform: " + te.getException(), te.getCause());
+                super.close();
             } finally {
-                // transformer.reset();
-                // don't need to do that unless we are putting it back into a
-                // pool -- which we should do, but that can wait until later.
+                spool.reset();
             }
-
-            return resultContent;
-        } catch (ParserConfigurationException e) {
-            LOGGER.warn("Error creating new document: " + e.getMessage(), e.getCause());
-            throw new CatalogTransformerException("Error merging entries to xml feed.", e);
         }
     }
 
-    private Element createElement(Document parentDoc, String namespace, String tagName,
-            String elementValue) {
-        Element element = parentDoc.createElementNS(namespace, tagName);
-        element.setTextContent(elementValue);
-        return element;
-    }
-
 }
@@ -0,0 +1,354 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.services.xsltlistener;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URLConnection;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.commons.codec.binary.Base64;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.Result;
+
+/**
+ * Presents query results to a {@link javax.xml.transform.Transformer} as a stream of SAX events
+ * instead of a DOM. The events describe the document the response queue stylesheets expect: a
+ * {@code results} element holding one {@code metacard} element per result, with the metacard's
+ * metadata inside its {@code document} element. Results are read one at a time while the events
+ * are generated, and each metacard's metadata is parsed directly into the event stream.
+ */
+class XsltResultsReader implements XMLReader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(XsltResultsReader.class);
+
+    private static final String NAMESPACES_FEATURE = "http://xml.org/sax/features/namespaces";
+
+    private static final String NAMESPACE_PREFIXES_FEATURE =
+            "http://xml.org/sax/features/namespace-prefixes";
+
+    private static final String NO_NAMESPACE = "";
+
+    private static final Attributes NO_ATTRIBUTES = new AttributesImpl();
+
+    private static final DateTimeFormatter DATE_FORMATTER = ISODateTimeFormat.dateTime();
+
+    private final List<Result> results;
+
+    private ContentHandler contentHandler;
+
+    private DTDHandler dtdHandler;
+
+    private EntityResolver entityResolver;
+
+    private ErrorHandler errorHandler;
+
+    XsltResultsReader(List<Result> results) {
+        this.results = results;
+    }
+
+    @Override
+    public void parse(InputSource input) throws IOException, SAXException {
+        writeResults();
+    }
+
+    @Override
+    public void parse(String systemId) throws IOException, SAXException {
+        writeResults();
+    }
+
+    private void writeResults() throws IOException, SAXException {
+        if (contentHandler == null) {
+            throw new SAXException("No content handler was set to receive the results.");
+        }
+
+        XMLReader metadataReader = createMetadataReader();
+
+        contentHandler.startDocument();
+        startElement("results", NO_ATTRIBUTES);
+
+        if (results != null) {
+            for (Result result : results) {
+                Metacard metacard = result.getMetacard();
+                if (metacard == null || metacard.getMetadata() == null) {
+                    LOGGER.debug("Null content/document returned to XSLT ResponseQueueTransformer");
+                    continue;
+                }
+                writeMetacard(result, metacard, metadataReader);
+            }
+        }
+
+        endElement("results");
+        contentHandler.endDocument();
+    }
+
+    private void writeMetacard(Result result, Metacard metacard, XMLReader metadataReader)
+            throws IOException, SAXException {
+        startElement("metacard", NO_ATTRIBUTES);
+
+        if (metacard.getId() != null) {
+            writeElement("id", metacard.getId());
+        }
+        if (metacard.getMetacardType() != null) {
+            writeElement("type", metacard.getMetacardType().getName());
+        }
+        if (metacard.getTitle() != null) {
+            writeElement("title", metacard.getTitle());
+        }
+        if (result.getRelevanceScore() != null) {
+            writeElement("score", result.getRelevanceScore().toString());
+        }
+        if (result.getDistanceInMeters() != null) {
+            writeElement("distance", result.getDistanceInMeters().toString());
+        }
+        if (metacard.getSourceId() != null) {
+            writeElement("site", metacard.getSourceId());
+        }
+        if (metacard.getContentTypeName() != null) {
+            AttributesImpl attributes = new AttributesImpl();
+            // TODO revisit what to put in the qualifier
+            attributes.addAttribute(NO_NAMESPACE, "qualifier", "qualifier", "CDATA",
+                    "content-type");
+            writeElement("content-type", attributes, metacard.getContentTypeName());
+        }
+        if (metacard.getResourceURI() != null) {
+            writeElement("product", metacard.getResourceURI().toString());
+        }
+        byte[] thumbnail = metacard.getThumbnail();
+        if (thumbnail != null) {
+            writeElement("thumbnail", Base64.encodeBase64String(thumbnail));
+            String mimeType;
+            try {
+                mimeType = URLConnection
+                        .guessContentTypeFromStream(new ByteArrayInputStream(thumbnail));
+            } catch (IOException e) {
+                mimeType = "image/png";
+            }
+            writeElement("t_mimetype", mimeType);
+        }
+        if (metacard.getCreatedDate() != null) {
+            writeElement("created", DATE_FORMATTER.print(metacard.getCreatedDate().getTime()));
+        }
+        // looking at the date last modified
+        if (metacard.getModifiedDate() != null) {
+            writeElement("updated", DATE_FORMATTER.print(metacard.getModifiedDate().getTime()));
+        }
+        if (metacard.getEffectiveDate() != null) {
+            writeElement("effective",
+                    DATE_FORMATTER.print(metacard.getEffectiveDate().getTime()));
+        }
+        if (metacard.getLocation() != null) {
+            writeElement("location", metacard.getLocation());
+        }
+
+        startElement("document", NO_ATTRIBUTES);
+        metadataReader.parse(new InputSource(new StringReader(metacard.getMetadata())));
+        endElement("document");
+
+        endElement("metacard");
+    }
+
+    private XMLReader createMetadataReader() throws SAXException {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        XMLReader metadataReader;
+        try {
+            metadataReader = factory.newSAXParser().getXMLReader();
+        } catch (ParserConfigurationException e) {
+            throw new SAXException("Unable to create a parser for metacard metadata.", e);
+        }
+
+        MetadataFilter metadataFilter = new MetadataFilter();
+        metadataFilter.setContentHandler(contentHandler);
+        metadataReader.setContentHandler(metadataFilter);
+        if (errorHandler != null) {
+            metadataReader.setErrorHandler(errorHandler);
+        }
+        return metadataReader;
+    }
+
+    private void writeElement(String name, String value) throws SAXException {
+        writeElement(name, NO_ATTRIBUTES, value);
+    }
+
+    private void writeElement(String name, Attributes attributes, String value)
+            throws SAXException {
+        startElement(name, attributes);
+        if (value != null) {
+            contentHandler.characters(value.toCharArray(), 0, value.length());
+        }
+        endElement(name);
+    }
+
+    private void startElement(String name, Attributes attributes) throws SAXException {
+        contentHandler.startElement(NO_NAMESPACE, name, name, attributes);
+    }
+
+    private void endElement(String name) throws SAXException {
+        contentHandler.endElement(NO_NAMESPACE, name, name);
+    }
+
+    @Override
+    public boolean getFeature(String name)
+            throws SAXNotRecognizedException, SAXNotSupportedException {
+        if (NAMESPACES_FEATURE.equals(name)) {
+            return true;
+        }
+        if (NAMESPACE_PREFIXES_FEATURE.equals(name)) {
+            return false;
+        }
+        throw new SAXNotRecognizedException(name);
+    }
+
+    @Override
+    public void setFeature(String name, boolean value)
+            throws SAXNotRecognizedException, SAXNotSupportedException {
+        // Only namespace-aware events without xmlns attributes are generated.
+        if (getFeature(name) != value) {
+            throw new SAXNotSupportedException(name + " can't be set to " + value);
+        }
+    }
+
+    @Override
+    public Object getProperty(String name)
+            throws SAXNotRecognizedException, SAXNotSupportedException {
+        throw new SAXNotRecognizedException(name);
+    }
+
+    @Override
+    public void setProperty(String name, Object value)
+            throws SAXNotRecognizedException, SAXNotSupportedException {
+        throw new SAXNotRecognizedException(name);
+    }
+
+    @Override
+    public void setEntityResolver(EntityResolver resolver) {
+        this.entityResolver = resolver;
+    }
+
+    @Override
+    public EntityResolver getEntityResolver() {
+        return entityResolver;
+    }
+
+    @Override
+    public void setDTDHandler(DTDHandler handler) {
+        this.dtdHandler = handler;
+    }
+
+    @Override
+    public DTDHandler getDTDHandler() {
+        return dtdHandler;
+    }
+
+    @Override
+    public void setContentHandler(ContentHandler handler) {
+        this.contentHandler = handler;
+    }
+
+    @Override
+    public ContentHandler getContentHandler() {
+        return contentHandler;
+    }
+
+    @Override
+    public void setErrorHandler(ErrorHandler handler) {
+        this.errorHandler = handler;
+    }
+
+    @Override
+    public ErrorHandler getErrorHandler() {
+        return errorHandler;
+    }
+
+    /**
+     * Passes the root element of a metadata document on to the results' content handler. Document
+     * events, and anything outside the root element, are dropped since the metadata is embedded in
+     * the results document.
+     */
+    private static class MetadataFilter extends XMLFilterImpl {
+
+        private int depth = 0;
+
+        @Override
+        public void setDocumentLocator(Locator locator) {
+            // The results document has no locator of its own to replace.
+        }
+
+        @Override
+        public void startDocument() throws SAXException {
+            depth = 0;
+        }
+
+        @Override
+        public void endDocument() throws SAXException {
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes atts)
+                throws SAXException {
+            depth++;
+            super.startElement(uri, localName, qName, atts);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            super.endElement(uri, localName, qName);
+            depth--;
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            if (depth > 0) {
+                super.characters(ch, start, length);
+            }
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+            if (depth > 0) {
+                super.ignorableWhitespace(ch, start, length);
+            }
+        }
+
+        @Override
+        public void processingInstruction(String target, String data) throws SAXException {
+            if (depth > 0) {
+                super.processingInstruction(target, data);
+            }
+        }
+    }
+}
@@ -14,6 +14,7 @@
 package ddf.catalog.services.xsltlistener;
 
 import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 
 import javax.activation.MimeType;
 
@@ -26,4 +27,9 @@ public XsltTransformedContent(byte[] formattedContent, MimeType mimeType) {
         super(new ByteArrayInputStream(formattedContent), mimeType);
     }
 
+    public XsltTransformedContent(InputStream formattedContent, long size, MimeType mimeType) {
+        super(formattedContent, mimeType);
+        setSize(size);
+    }
+
 }
@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.services.xsltlistener;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import net.sf.saxon.TransformerFactoryImpl;
+
+public class TransformerPoolTest {
+
+    private static final String STYLESHEET =
+            "<xsl:stylesheet version=\"2.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+                    + "<xsl:param name=\"greeting\"/>"
+                    + "<xsl:template match=\"/\"><out><xsl:value-of select=\"$greeting\"/></out>"
+                    + "</xsl:template></xsl:stylesheet>";
+
+    @Test
+    public void testReleasedTransformerIsReused() throws Exception {
+        Templates templates = newTemplates();
+        TransformerPool pool = new TransformerPool(templates);
+
+        Transformer transformer = pool.acquire();
+        pool.release(transformer);
+
+        assertThat(pool.acquire(), is(sameInstance(transformer)));
+    }
+
+    @Test
+    public void testReleasedTransformerIsReset() throws Exception {
+        TransformerPool pool = new TransformerPool(newTemplates());
+
+        Transformer transformer = pool.acquire();
+        transformer.setParameter("greeting", "hello");
+        pool.release(transformer);
+
+        Transformer reused = pool.acquire();
+        assertThat(reused, is(sameInstance(transformer)));
+        assertThat(reused.getParameter("greeting"), is(nullValue()));
+    }
+
+    @Test
+    public void testAcquiredTransformersAreNotShared() throws Exception {
+        TransformerPool pool = new TransformerPool(newTemplates());
+
+        Transformer first = pool.acquire();
+        Transformer second = pool.acquire();
+
+        assertThat(second, is(not(sameInstance(first))));
+    }
+
+    @Test
+    public void testIdleTransformersAreBounded() throws Exception {
+        Templates templates = mock(Templates.class);
+        when(templates.newTransformer()).thenAnswer(new Answer<Transformer>() {
+            @Override
+            public Transformer answer(InvocationOnMock invocation) {
+                return mock(Transformer.class);
+            }
+        });
+        TransformerPool pool = new TransformerPool(templates);
+
+        List<Transformer> transformers = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            transformers.add(pool.acquire());
+        }
+        for (Transformer transformer : transformers) {
+            pool.release(transformer);
+            verify(transformer).reset();
+        }
+
+        // only the first 16 released are kept, in the order they were released
+        for (int i = 0; i < 16; i++) {
+            assertThat(pool.acquire(), is(sameInstance(transformers.get(i))));
+        }
+        verify(templates, times(20)).newTransformer();
+        pool.acquire();
+        verify(templates, times(21)).newTransformer();
+    }
+
+    @Test
+    public void testReleasingNullIsIgnored() throws Exception {
+        Templates templates = mock(Templates.class);
+        Transformer transformer = mock(Transformer.class);
+        when(templates.newTransformer()).thenReturn(transformer);
+        TransformerPool pool = new TransformerPool(templates);
+
+        pool.release(null);
+
+        assertThat(pool.acquire(), is(sameInstance(transformer)));
+    }
+
+    @Test(expected = TransformerConfigurationException.class)
+    public void testTemplatesErrorIsPassedOn() throws Exception {
+        Templates templates = mock(Templates.class);
+        when(templates.newTransformer())
+                .thenThrow(new TransformerConfigurationException("broken stylesheet"));
+
+        new TransformerPool(templates).acquire();
+    }
+
+    private Templates newTemplates() throws TransformerConfigurationException {
+        return new TransformerFactoryImpl()
+                .newTemplates(new StreamSource(new StringReader(STYLESHEET)));
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.services.xsltlistener;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import ddf.catalog.data.Result;
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.data.impl.ResultImpl;
+import net.sf.saxon.TransformerFactoryImpl;
+
+public class XsltResultsReaderTest {
+
+    private static final String NAMESPACE = "urn:example:metadata";
+
+    /**
+     * Lists each metacard's title and the name of its metadata root, as the response queue
+     * stylesheets walk the results
+     */
+    private static final String STYLESHEET =
+            "<xsl:stylesheet version=\"2.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+                    + "<xsl:template match=\"/\"><titles><xsl:for-each select=\"results/metacard\">"
+                    + "<t root=\"{local-name(document/*)}\"><xsl:value-of select=\"title\"/></t>"
+                    + "</xsl:for-each></titles></xsl:template></xsl:stylesheet>";
+
+    private TransformerPool transformerPool;
+
+    private XPath xpath;
+
+    @Before
+    public void setUp() throws Exception {
+        TransformerFactoryImpl transformerFactory = new TransformerFactoryImpl();
+        transformerPool = new TransformerPool(
+                transformerFactory.newTemplates(new StreamSource(new StringReader(STYLESHEET))));
+
+        xpath = XPathFactory.newInstance().newXPath();
+        xpath.setNamespaceContext(new NamespaceContext() {
+            @Override
+            public String getNamespaceURI(String prefix) {
+                return "m".equals(prefix) ? NAMESPACE : null;
+            }
+
+            @Override
+            public String getPrefix(String namespaceURI) {
+                return null;
+            }
+
+            @Override
+            public Iterator getPrefixes(String namespaceURI) {
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void testResultsDocument() throws Exception {
+        MetacardImpl metacard = metacard("1", "First",
+                "<?xml version=\"1.0\"?><!-- outside --><m:record xmlns:m=\"" + NAMESPACE
+                        + "\" m:lang=\"en\"><m:name>First record</m:name></m:record>");
+        metacard.setSourceId("local");
+        metacard.setContentTypeName("nitf");
+        ResultImpl result = new ResultImpl(metacard);
+        result.setRelevanceScore(0.5);
+
+        Node document = identity(Collections.<Result>singletonList(result));
+
+        assertThat(evaluate(document, "count(/results/metacard)"), is("1"));
+        assertThat(evaluate(document, "/results/metacard/id"), is("1"));
+        assertThat(evaluate(document, "/results/metacard/title"), is("First"));
+        assertThat(evaluate(document, "/results/metacard/score"), is("0.5"));
+        assertThat(evaluate(document, "/results/metacard/site"), is("local"));
+        assertThat(evaluate(document, "/results/metacard/content-type"), is("nitf"));
+        assertThat(evaluate(document, "/results/metacard/content-type/@qualifier"),
+                is("content-type"));
+        assertThat(evaluate(document, "/results/metacard/document/m:record/m:name"),
+                is("First record"));
+        assertThat(evaluate(document, "/results/metacard/document/m:record/@m:lang"), is("en"));
+        // nothing outside the metadata root element is embedded
+        assertThat(evaluate(document, "count(/results/metacard/document/node())"), is("1"));
+    }
+
+    @Test
+    public void testResultsKeepTheirOrder() throws Exception {
+        List<Result> results = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            results.add(new ResultImpl(metacard(String.valueOf(i), "title" + i, "<r" + i + "/>")));
+        }
+
+        Node document = transform(results);
+
+        assertThat(evaluate(document, "count(/titles/t)"), is("50"));
+        for (int i = 0; i < 50; i++) {
+            assertThat(evaluate(document, "/titles/t[" + (i + 1) + "]"), is("title" + i));
+            assertThat(evaluate(document, "/titles/t[" + (i + 1) + "]/@root"), is("r" + i));
+        }
+    }
+
+    @Test
+    public void testResultsWithoutMetadataAreSkipped() throws Exception {
+        List<Result> results = Arrays.<Result>asList(
+                new ResultImpl(metacard("1", "First", "<a/>")),
+                new ResultImpl(metacard("2", "No metadata", null)), new ResultImpl(),
+                new ResultImpl(metacard("3", "Third", "<c/>")));
+
+        Node document = transform(results);
+
+        assertThat(evaluate(document, "count(/titles/t)"), is("2"));
+        assertThat(evaluate(document, "/titles/t[2]"), is("Third"));
+    }
+
+    @Test
+    public void testNoResults() throws Exception {
+        assertThat(evaluate(identity(null), "count(/results/*)"), is("0"));
+        assertThat(evaluate(identity(Collections.<Result>emptyList()), "count(/results)"),
+                is("1"));
+    }
+
+    @Test(expected = TransformerException.class)
+    public void testMalformedMetadataFailsTransform() throws Exception {
+        transform(Arrays.<Result>asList(new ResultImpl(metacard("1", "First", "<a>")),
+                new ResultImpl(metacard("2", "Second", "<b/>"))));
+    }
+
+    @Test
+    public void testTransformerIsReusableAfterFailure() throws Exception {
+        try {
+            transform(Collections.<Result>singletonList(
+                    new ResultImpl(metacard("1", "Broken", "<a><b></a>"))));
+        } catch (TransformerException e) {
+            // expected
+        }
+
+        Node document = transform(
+                Collections.<Result>singletonList(new ResultImpl(metacard("2", "Fine", "<a/>"))));
+
+        assertThat(evaluate(document, "/titles/t"), is("Fine"));
+    }
+
+    @Test(expected = SAXException.class)
+    public void testParseWithoutContentHandler() throws Exception {
+        new XsltResultsReader(Collections.<Result>emptyList()).parse(new InputSource());
+    }
+
+    private Node transform(List<Result> results) throws Exception {
+        Transformer transformer = transformerPool.acquire();
+        try {
+            DOMResult output = new DOMResult();
+            transformer.transform(new SAXSource(new XsltResultsReader(results), new InputSource()),
+                    output);
+            return output.getNode();
+        } finally {
+            transformerPool.release(transformer);
+        }
+    }
+
+    private Node identity(List<Result> results) throws Exception {
+        DOMResult output = new DOMResult();
+        new TransformerFactoryImpl().newTransformer()
+                .transform(new SAXSource(new XsltResultsReader(results), new InputSource()),
+                        output);
+        return output.getNode();
+    }
+
+    private String evaluate(Node document, String expression) throws Exception {
+        return (String) xpath.evaluate(expression, document, XPathConstants.STRING);
+    }
+
+    private static MetacardImpl metacard(String id, String title, String metadata) {
+        MetacardImpl metacard = new MetacardImpl();
+        metacard.setId(id);
+        metacard.setTitle(title);
+        metacard.setMetadata(metadata);
+        return metacard;
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.transformer.thumbnail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+/**
+ * Keeps generated derivatives, such as thumbnails, in a directory on local disk. When the total
+ * size of the cached files grows past the configured maximum, the least recently used
+ * derivatives are deleted.
+ * <br/>
+ * Derivatives are looked up by a key that should identify the product version and the derivative
+ * size, so an updated product is never served a stale derivative; the stale files simply age out.
+ */
+public class DerivativeCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DerivativeCache.class);
+
+    private static final String DEFAULT_CACHE_DIRECTORY = "data/derivatives";
+
+    private static final long DEFAULT_MAX_CACHE_SIZE_MB = 256;
+
+    private static final long BYTES_PER_MB = 1024L * 1024L;
+
+    private static final String FILE_EXTENSION = ".jpg";
+
+    private static final String TEMP_FILE_EXTENSION = ".tmp";
+
+    /**
+     * Cached file names mapped to their sizes, in least recently used order.
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private Path cacheDirectory;
+
+    private long maxCacheSize = DEFAULT_MAX_CACHE_SIZE_MB * BYTES_PER_MB;
+
+    private long cacheSize = 0;
+
+    public DerivativeCache() {
+        setCacheDirectory(DEFAULT_CACHE_DIRECTORY);
+    }
+
+    /**
+     * Sets the directory derivatives are cached in. Derivatives already in the directory are
+     * reused.
+     *
+     * @param cacheDirectory path of the directory, created if it does not exist
+     */
+    public synchronized void setCacheDirectory(String cacheDirectory) {
+        this.cacheDirectory = new File(cacheDirectory).toPath();
+        entries.clear();
+        cacheSize = 0;
+        try {
+            Files.createDirectories(this.cacheDirectory);
+            loadEntries();
+        } catch (IOException e) {
+            LOGGER.warn("Unable to use derivative cache directory {}.", cacheDirectory, e);
+        }
+        evict();
+    }
+
+    /**
+     * @param maxCacheSizeMB the total size of cached derivatives, in megabytes, above which the
+     *                       least recently used ones are deleted
+     */
+    public synchronized void setMaxCacheSizeMB(long maxCacheSizeMB) {
+        this.maxCacheSize = Math.max(0, maxCacheSizeMB) * BYTES_PER_MB;
+        evict();
+    }
+
+    /**
+     * @param key key the derivative was stored under
+     * @return the cached derivative, or null if it is not cached
+     */
+    public synchronized byte[] get(String key) {
+        String fileName = getFileName(key);
+        if (entries.get(fileName) == null) {
+            return null;
+        }
+
+        try {
+            return Files.readAllBytes(cacheDirectory.resolve(fileName));
+        } catch (IOException e) {
+            LOGGER.debug("Unable to read cached derivative {}.", fileName, e);
+            remove(fileName);
+            return null;
+        }
+    }
+
+    /**
+     * Caches a derivative, replacing any derivative already stored under the key. Failures are
+     * logged, since the derivative can always be generated again.
+     *
+     * @param key        key to store the derivative under
+     * @param derivative the derivative
+     */
+    public void put(String key, byte[] derivative) {
+        String fileName = getFileName(key);
+        Path directory;
+        synchronized (this) {
+            directory = cacheDirectory;
+        }
+
+        Path tempFile = null;
+        try {
+            tempFile = Files.createTempFile(directory, null, TEMP_FILE_EXTENSION);
+            Files.write(tempFile, derivative);
+            synchronized (this) {
+                Files.move(tempFile, directory.resolve(fileName),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                if (directory.equals(cacheDirectory)) {
+                    Long previous = entries.put(fileName, (long) derivative.length);
+                    cacheSize += derivative.length - (previous == null ? 0 : previous);
+                    evict();
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.info("Unable to cache derivative {}.", fileName, e);
+            if (tempFile != null) {
+                deleteFile(tempFile);
+            }
+        }
+    }
+
+    private void loadEntries() throws IOException {
+        // left behind by writes that were interrupted, e.g. by a shutdown
+        try (DirectoryStream<Path> stream = Files
+                .newDirectoryStream(cacheDirectory, "*" + TEMP_FILE_EXTENSION)) {
+            for (Path tempFile : stream) {
+                deleteFile(tempFile);
+            }
+        }
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files
+                .newDirectoryStream(cacheDirectory, "*" + FILE_EXTENSION)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+
+        // Oldest first, so the files touched least recently are evicted first.
+        Collections.sort(files, new Comparator<Path>() {
+            @Override
+            public int compare(Path first, Path second) {
+                return Long.compare(first.toFile().lastModified(), second.toFile().lastModified());
+            }
+        });
+
+        for (Path file : files) {
+            long size = Files.size(file);
+            entries.put(file.getFileName().toString(), size);
+            cacheSize += size;
+        }
+        LOGGER.debug("Found {} cached derivatives using {} bytes in {}.", entries.size(),
+                cacheSize, cacheDirectory);
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (cacheSize > maxCacheSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            cacheSize -= eldest.getValue();
+            delete(eldest.getKey());
+        }
+    }
+
+    private void remove(String fileName) {
+        Long size = entries.remove(fileName);
+        if (size != null) {
+            cacheSize -= size;
+        }
+        delete(fileName);
+    }
+
+    private void delete(String fileName) {
+        deleteFile(cacheDirectory.resolve(fileName));
+    }
+
+    private static void deleteFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.debug("Unable to delete derivative file {}.", file, e);
+        }
+    }
+
+    private static String getFileName(String key) {
+        return Hashing.sha256().hashString(key, Charsets.UTF_8).toString() + FILE_EXTENSION;
+    }
+}
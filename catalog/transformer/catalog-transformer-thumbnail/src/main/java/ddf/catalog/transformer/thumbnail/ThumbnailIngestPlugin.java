@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.transformer.thumbnail;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.impl.AttributeImpl;
+import ddf.catalog.operation.CreateRequest;
+import ddf.catalog.operation.DeleteRequest;
+import ddf.catalog.operation.UpdateRequest;
+import ddf.catalog.plugin.PluginExecutionException;
+import ddf.catalog.plugin.PreIngestPlugin;
+import ddf.catalog.plugin.StopProcessingException;
+
+/**
+ * When thumbnails are not stored, removes the {@link Metacard#THUMBNAIL} bytes from metacards
+ * before they are stored, so they are not kept in every indexed document. The
+ * {@link ThumbnailMetacardTransformer} generates thumbnails from the product when they are
+ * requested instead.
+ * <br/>
+ * Only thumbnails of products that ImageIO can read, judged by the metacard content type, are
+ * removed. Any other thumbnail, such as one of a video, a NITF or a PDF product, cannot be
+ * generated again and is kept.
+ */
+public class ThumbnailIngestPlugin implements PreIngestPlugin {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ThumbnailIngestPlugin.class);
+
+    private boolean storeThumbnails = true;
+
+    /**
+     * @param storeThumbnails true to store the thumbnails of ingested metacards, false to
+     *                        generate the thumbnails of image products on request
+     */
+    public void setStoreThumbnails(boolean storeThumbnails) {
+        this.storeThumbnails = storeThumbnails;
+    }
+
+    @Override
+    public CreateRequest process(CreateRequest input)
+            throws PluginExecutionException, StopProcessingException {
+        if (!storeThumbnails && input != null && input.getMetacards() != null) {
+            for (Metacard metacard : input.getMetacards()) {
+                removeThumbnail(metacard);
+            }
+        }
+        return input;
+    }
+
+    @Override
+    public UpdateRequest process(UpdateRequest input)
+            throws PluginExecutionException, StopProcessingException {
+        if (!storeThumbnails && input != null && input.getUpdates() != null) {
+            for (Map.Entry<Serializable, Metacard> update : input.getUpdates()) {
+                removeThumbnail(update.getValue());
+            }
+        }
+        return input;
+    }
+
+    @Override
+    public DeleteRequest process(DeleteRequest input)
+            throws PluginExecutionException, StopProcessingException {
+        return input;
+    }
+
+    private void removeThumbnail(Metacard metacard) {
+        if (metacard != null && metacard.getThumbnail() != null
+                && metacard.getResourceURI() != null && isImage(metacard.getContentTypeName())) {
+            LOGGER.debug("Not storing the thumbnail of metacard {}.", metacard.getId());
+            metacard.setAttribute(new AttributeImpl(Metacard.THUMBNAIL, (Serializable) null));
+        }
+    }
+
+    private static boolean isImage(String contentType) {
+        if (StringUtils.isBlank(contentType)) {
+            return false;
+        }
+        // drop parameters such as "image/jpeg; charset=binary"
+        String mimeType = StringUtils.substringBefore(contentType, ";").trim();
+        return ImageIO.getImageReadersByMIMEType(mimeType).hasNext();
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.transformer.thumbnail;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.Result;
+import ddf.catalog.data.impl.AttributeImpl;
+import ddf.catalog.operation.QueryRequest;
+import ddf.catalog.operation.QueryResponse;
+import ddf.catalog.plugin.PluginExecutionException;
+import ddf.catalog.plugin.PostQueryPlugin;
+import ddf.catalog.plugin.StopProcessingException;
+
+/**
+ * Removes the inline {@link Metacard#THUMBNAIL} bytes from query results, so they no longer
+ * travel with every federated result and query response. Clients follow the thumbnail action
+ * link instead, which is served by the {@link ThumbnailMetacardTransformer}.
+ * <br/>
+ * Requests that set the {@link #INLINE_THUMBNAIL} property to true keep the bytes, as do
+ * requests for the thumbnail transformer itself.
+ */
+public class ThumbnailLinkPlugin implements PostQueryPlugin {
+
+    /**
+     * Query request property that keeps inline thumbnails in the results when true.
+     */
+    public static final String INLINE_THUMBNAIL = "inline-thumbnail";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ThumbnailLinkPlugin.class);
+
+    /**
+     * Request property set by the REST endpoint from its transform query parameter.
+     */
+    private static final String TRANSFORM_PROPERTY = "transform";
+
+    private static final String THUMBNAIL_TRANSFORMER_ID = "thumbnail";
+
+    private boolean inlineThumbnails = true;
+
+    /**
+     * @param inlineThumbnails true to keep inline thumbnails in all results, false to keep them
+     *                         only when a request asks for them
+     */
+    public void setInlineThumbnails(boolean inlineThumbnails) {
+        this.inlineThumbnails = inlineThumbnails;
+    }
+
+    @Override
+    public QueryResponse process(QueryResponse input)
+            throws PluginExecutionException, StopProcessingException {
+        if (inlineThumbnails || input == null || isInlineRequested(input.getRequest())) {
+            return input;
+        }
+
+        int removed = 0;
+        for (Result result : input.getResults()) {
+            Metacard metacard = result.getMetacard();
+            if (metacard != null && metacard.getThumbnail() != null) {
+                metacard.setAttribute(new AttributeImpl(Metacard.THUMBNAIL, (Serializable) null));
+                removed++;
+            }
+        }
+        LOGGER.debug("Removed {} inline thumbnails from the query response.", removed);
+        return input;
+    }
+
+    private boolean isInlineRequested(QueryRequest request) {
+        if (request == null || request.getProperties() == null) {
+            return false;
+        }
+
+        Map<String, Serializable> properties = request.getProperties();
+        Serializable inline = properties.get(INLINE_THUMBNAIL);
+        return Boolean.TRUE.equals(inline) || "true".equalsIgnoreCase(String.valueOf(inline))
+                || THUMBNAIL_TRANSFORMER_ID.equals(properties.get(TRANSFORM_PROPERTY));
+    }
+}
@@ -0,0 +1,260 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.transformer.thumbnail;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.activation.MimeType;
+import javax.activation.MimeTypeParseException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.apache.commons.lang.StringUtils;
+import org.imgscalr.Scalr;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ddf.catalog.CatalogFramework;
+import ddf.catalog.data.BinaryContent;
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.impl.BinaryContentImpl;
+import ddf.catalog.operation.ResourceResponse;
+import ddf.catalog.operation.impl.ResourceRequestById;
+import ddf.catalog.resource.ResourceNotFoundException;
+import ddf.catalog.resource.ResourceNotSupportedException;
+import ddf.catalog.transform.CatalogTransformerException;
+import ddf.catalog.transform.MetacardTransformer;
+
+/**
+ * Returns a JPEG thumbnail of a metacard's product.
+ * <br/>
+ * Without a {@link #SIZE_ARGUMENT} the stored {@link Metacard#THUMBNAIL} is returned as before.
+ * When a size is requested, or the metacard carries no stored thumbnail, a derivative is
+ * generated from the product on first request and kept in the {@link DerivativeCache}. Products
+ * that cannot be read as images fall back to scaling the stored thumbnail.
+ */
+public class ThumbnailMetacardTransformer implements MetacardTransformer {
+
+    /**
+     * Transformer argument giving the largest side, in pixels, of the requested derivative.
+     */
+    public static final String SIZE_ARGUMENT = "size";
+
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(ThumbnailMetacardTransformer.class);
+
+    private static final MimeType JPEG_MIME_TYPE;
+
+    private static final int DEFAULT_SIZE = 200;
+
+    private static final int MIN_SIZE = 16;
+
+    static {
+        try {
+            JPEG_MIME_TYPE = new MimeType("image/jpeg");
+        } catch (MimeTypeParseException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final CatalogFramework catalogFramework;
+
+    private final DerivativeCache derivativeCache;
+
+    private int maxSize = 1024;
+
+    public ThumbnailMetacardTransformer(CatalogFramework catalogFramework,
+            DerivativeCache derivativeCache) {
+        this.catalogFramework = catalogFramework;
+        this.derivativeCache = derivativeCache;
+    }
+
+    /**
+     * @param maxSize the largest derivative, in pixels, that may be requested; larger requests
+     *                are reduced to this size
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = Math.max(MIN_SIZE, maxSize);
+    }
+
+    @Override
+    public BinaryContent transform(Metacard metacard, Map<String, Serializable> arguments)
+            throws CatalogTransformerException {
+        if (metacard == null || metacard.getId() == null) {
+            throw new CatalogTransformerException(
+                    "Could not transform metacard to a thumbnail; the metacard is not valid.");
+        }
+
+        Integer requestedSize = getRequestedSize(arguments);
+        byte[] storedThumbnail = metacard.getThumbnail();
+        if (requestedSize == null && storedThumbnail != null) {
+            return new BinaryContentImpl(new ByteArrayInputStream(storedThumbnail),
+                    JPEG_MIME_TYPE);
+        }
+
+        int size = requestedSize == null ? DEFAULT_SIZE
+                : Math.min(maxSize, Math.max(MIN_SIZE, requestedSize));
+        String key = getCacheKey(metacard, size);
+        byte[] derivative = derivativeCache.get(key);
+        if (derivative == null) {
+            derivative = createDerivative(metacard, size, storedThumbnail);
+            derivativeCache.put(key, derivative);
+        } else {
+            LOGGER.debug("Using cached {} pixel thumbnail for metacard {}.", size,
+                    metacard.getId());
+        }
+
+        return new BinaryContentImpl(new ByteArrayInputStream(derivative), JPEG_MIME_TYPE);
+    }
+
+    private byte[] createDerivative(Metacard metacard, int size, byte[] storedThumbnail)
+            throws CatalogTransformerException {
+        BufferedImage image = readProduct(metacard, size);
+        if (image == null && storedThumbnail != null) {
+            LOGGER.debug("Scaling the stored thumbnail of metacard {}.", metacard.getId());
+            try (ImageInputStream imageInput = ImageIO
+                    .createImageInputStream(new ByteArrayInputStream(storedThumbnail))) {
+                image = readImage(imageInput, size);
+            } catch (IOException e) {
+                LOGGER.debug("Unable to read the stored thumbnail of metacard {}.",
+                        metacard.getId(), e);
+            }
+        }
+
+        if (image == null) {
+            throw new CatalogTransformerException(
+                    "No thumbnail can be created for metacard " + metacard.getId());
+        }
+
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            ImageIO.write(toThumbnail(image, size), "jpeg", out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new CatalogTransformerException(
+                    "Unable to encode thumbnail for metacard " + metacard.getId(), e);
+        }
+    }
+
+    /**
+     * Reads the product as an image, or returns null if there is no product or it is not an
+     * image. Only the header is read from products that are not images.
+     */
+    private BufferedImage readProduct(Metacard metacard, int size) {
+        if (metacard.getResourceURI() == null) {
+            return null;
+        }
+
+        String sourceId = metacard.getSourceId();
+        if (StringUtils.isBlank(sourceId)) {
+            sourceId = catalogFramework.getId();
+        }
+
+        try {
+            ResourceResponse resourceResponse = catalogFramework
+                    .getResource(new ResourceRequestById(metacard.getId()), sourceId);
+            if (resourceResponse == null || resourceResponse.getResource() == null) {
+                return null;
+            }
+
+            try (InputStream product = resourceResponse.getResource().getInputStream();
+                    ImageInputStream imageInput = ImageIO.createImageInputStream(product)) {
+                return readImage(imageInput, size);
+            }
+        } catch (IOException | ResourceNotFoundException | ResourceNotSupportedException
+                | RuntimeException e) {
+            LOGGER.debug("Unable to read the product of metacard {} as an image.",
+                    metacard.getId(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Decodes only every n-th pixel of every n-th row of the first image, with n chosen so that
+     * the decoded image is still at least as large as the derivative.
+     */
+    private BufferedImage readImage(ImageInputStream imageInput, int size) throws IOException {
+        if (imageInput == null) {
+            return null;
+        }
+
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInput);
+        if (!readers.hasNext()) {
+            return null;
+        }
+
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(imageInput, true, true);
+
+            int largestSide = Math.max(reader.getWidth(0), reader.getHeight(0));
+            int subsampling = Math.max(1, largestSide / size);
+
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            return reader.read(0, param);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    private BufferedImage toThumbnail(BufferedImage image, int size) {
+        // JPEG has no alpha channel, so draw the image onto an RGB one.
+        BufferedImage rgbImage = new BufferedImage(image.getWidth(), image.getHeight(),
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgbImage.createGraphics();
+        graphics.drawImage(image, null, null);
+        graphics.dispose();
+
+        if (Math.max(rgbImage.getWidth(), rgbImage.getHeight()) <= size) {
+            return rgbImage;
+        }
+        return Scalr.resize(rgbImage, size);
+    }
+
+    private Integer getRequestedSize(Map<String, Serializable> arguments) {
+        if (arguments == null) {
+            return null;
+        }
+
+        Serializable size = arguments.get(SIZE_ARGUMENT);
+        if (size instanceof Number) {
+            return ((Number) size).intValue();
+        }
+        if (size instanceof String) {
+            try {
+                return Integer.valueOf(((String) size).trim());
+            } catch (NumberFormatException e) {
+                LOGGER.debug("Ignoring invalid thumbnail size [{}].", size);
+            }
+        }
+        return null;
+    }
+
+    private String getCacheKey(Metacard metacard, int size) {
+        Date modified = metacard.getModifiedDate();
+        return StringUtils.defaultString(metacard.getSourceId()) + '/' + metacard.getId() + '/'
+                + (modified == null ? "" : modified.getTime()) + '/' + size;
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.transformer.thumbnail;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.net.URI;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.operation.impl.CreateRequestImpl;
+import ddf.catalog.operation.impl.UpdateRequestImpl;
+
+public class TestThumbnailIngestPlugin {
+
+    private static final byte[] THUMBNAIL = {1, 2, 3};
+
+    @Test
+    public void testThumbnailStoredByDefault() throws Exception {
+        Metacard metacard = createMetacard(URI.create("file:///products/1"), "image/png");
+
+        new ThumbnailIngestPlugin().process(new CreateRequestImpl(metacard));
+
+        assertThat(metacard.getThumbnail(), is(THUMBNAIL));
+    }
+
+    @Test
+    public void testImageThumbnailRemovedOnCreate() throws Exception {
+        Metacard image = createMetacard(URI.create("file:///products/1"), "image/png");
+        Metacard withoutProduct = createMetacard(null, "image/png");
+
+        createPlugin().process(new CreateRequestImpl(Arrays.asList(image, withoutProduct)));
+
+        assertThat(image.getThumbnail(), nullValue());
+        // there is nothing to generate it from again
+        assertThat(withoutProduct.getThumbnail(), is(THUMBNAIL));
+    }
+
+    @Test
+    public void testImageThumbnailRemovedOnUpdate() throws Exception {
+        Metacard metacard = createMetacard(URI.create("file:///products/1"),
+                "image/png; charset=binary");
+
+        createPlugin().process(new UpdateRequestImpl("1", metacard));
+
+        assertThat(metacard.getThumbnail(), nullValue());
+    }
+
+    @Test
+    public void testOtherThumbnailsKept() throws Exception {
+        Metacard video = createMetacard(URI.create("file:///products/1"), "video/mpeg");
+        Metacard nitf = createMetacard(URI.create("file:///products/2"), "image/nitf");
+        Metacard unknown = createMetacard(URI.create("file:///products/3"), null);
+
+        createPlugin().process(new CreateRequestImpl(Arrays.asList(video, nitf, unknown)));
+
+        // the transformer cannot read these products, so their thumbnails cannot be regenerated
+        assertThat(video.getThumbnail(), is(THUMBNAIL));
+        assertThat(nitf.getThumbnail(), is(THUMBNAIL));
+        assertThat(unknown.getThumbnail(), is(THUMBNAIL));
+    }
+
+    private ThumbnailIngestPlugin createPlugin() {
+        ThumbnailIngestPlugin plugin = new ThumbnailIngestPlugin();
+        plugin.setStoreThumbnails(false);
+        return plugin;
+    }
+
+    private Metacard createMetacard(URI resourceUri, String contentType) {
+        MetacardImpl metacard = new MetacardImpl();
+        metacard.setId("1");
+        metacard.setThumbnail(THUMBNAIL);
+        metacard.setResourceURI(resourceUri);
+        metacard.setContentTypeName(contentType);
+        return metacard;
+    }
+}
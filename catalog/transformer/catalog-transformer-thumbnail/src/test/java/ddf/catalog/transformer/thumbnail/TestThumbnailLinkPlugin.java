@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.transformer.thumbnail;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.opengis.filter.Filter;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.Result;
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.data.impl.ResultImpl;
+import ddf.catalog.operation.QueryResponse;
+import ddf.catalog.operation.impl.QueryImpl;
+import ddf.catalog.operation.impl.QueryRequestImpl;
+import ddf.catalog.operation.impl.QueryResponseImpl;
+
+public class TestThumbnailLinkPlugin {
+
+    private static final byte[] THUMBNAIL = {1, 2, 3};
+
+    @Test
+    public void testInlineByDefault() throws Exception {
+        QueryResponse response = new ThumbnailLinkPlugin()
+                .process(createResponse(new HashMap<String, Serializable>()));
+
+        assertThat(getThumbnail(response), notNullValue());
+    }
+
+    @Test
+    public void testThumbnailRemoved() throws Exception {
+        ThumbnailLinkPlugin plugin = new ThumbnailLinkPlugin();
+        plugin.setInlineThumbnails(false);
+
+        QueryResponse response = plugin
+                .process(createResponse(new HashMap<String, Serializable>()));
+
+        assertThat(getThumbnail(response), nullValue());
+    }
+
+    @Test
+    public void testInlineRequested() throws Exception {
+        ThumbnailLinkPlugin plugin = new ThumbnailLinkPlugin();
+        plugin.setInlineThumbnails(false);
+        Map<String, Serializable> properties = Collections.<String, Serializable>singletonMap(
+                ThumbnailLinkPlugin.INLINE_THUMBNAIL, "true");
+
+        QueryResponse response = plugin.process(createResponse(properties));
+
+        assertThat(getThumbnail(response), is(THUMBNAIL));
+    }
+
+    private QueryResponse createResponse(Map<String, Serializable> properties) {
+        MetacardImpl metacard = new MetacardImpl();
+        metacard.setThumbnail(THUMBNAIL);
+        QueryRequestImpl request = new QueryRequestImpl(new QueryImpl(mock(Filter.class)),
+                properties);
+        return new QueryResponseImpl(request, Collections.<Result>singletonList(
+                new ResultImpl(metacard)), 1);
+    }
+
+    private byte[] getThumbnail(QueryResponse response) {
+        Metacard metacard = response.getResults().get(0).getMetacard();
+        return metacard.getThumbnail();
+    }
+}
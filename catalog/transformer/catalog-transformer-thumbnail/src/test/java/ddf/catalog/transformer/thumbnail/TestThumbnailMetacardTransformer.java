@@ -0,0 +1,223 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.transformer.thumbnail;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+import ddf.catalog.CatalogFramework;
+import ddf.catalog.data.BinaryContent;
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.operation.ResourceRequest;
+import ddf.catalog.operation.ResourceResponse;
+import ddf.catalog.resource.Resource;
+import ddf.catalog.transform.CatalogTransformerException;
+
+public class TestThumbnailMetacardTransformer {
+
+    private static final String TEST_ID = "123456";
+
+    private static final String TEST_SITE = "ddf";
+
+    @Rule
+    public TemporaryFolder cacheFolder = new TemporaryFolder();
+
+    private CatalogFramework framework;
+
+    private DerivativeCache derivativeCache;
+
+    private ThumbnailMetacardTransformer transformer;
+
+    private byte[] product;
+
+    @Before
+    public void setUp() throws Exception {
+        product = createImage(800, 600, "png");
+
+        Resource resource = mock(Resource.class);
+        when(resource.getInputStream()).thenAnswer(new Answer<InputStream>() {
+            @Override
+            public InputStream answer(InvocationOnMock invocation) {
+                return new ByteArrayInputStream(product);
+            }
+        });
+        ResourceResponse resourceResponse = mock(ResourceResponse.class);
+        when(resourceResponse.getResource()).thenReturn(resource);
+
+        framework = mock(CatalogFramework.class);
+        when(framework.getResource(any(ResourceRequest.class), anyString()))
+                .thenReturn(resourceResponse);
+
+        derivativeCache = new DerivativeCache();
+        derivativeCache.setCacheDirectory(cacheFolder.getRoot().getAbsolutePath());
+        transformer = new ThumbnailMetacardTransformer(framework, derivativeCache);
+    }
+
+    @Test
+    public void testStoredThumbnail() throws Exception {
+        byte[] thumbnail = createImage(20, 10, "jpeg");
+        MetacardImpl metacard = createMetacard();
+        metacard.setThumbnail(thumbnail);
+
+        BinaryContent content = transformer.transform(metacard, null);
+
+        assertThat(content.getByteArray(), is(thumbnail));
+        verify(framework, never()).getResource(any(ResourceRequest.class), anyString());
+    }
+
+    @Test
+    public void testSizedThumbnailFromProduct() throws Exception {
+        MetacardImpl metacard = createMetacard();
+
+        BufferedImage thumbnail = read(transformer.transform(metacard, size("100")));
+        assertThat(thumbnail.getWidth(), is(100));
+        assertThat(thumbnail.getHeight(), is(75));
+
+        // The second request is served from the cache.
+        read(transformer.transform(metacard, size("100")));
+        verify(framework, times(1)).getResource(any(ResourceRequest.class), anyString());
+    }
+
+    @Test
+    public void testSizeLimited() throws Exception {
+        transformer.setMaxSize(50);
+
+        BufferedImage thumbnail = read(transformer.transform(createMetacard(), size("4000")));
+
+        assertThat(thumbnail.getWidth(), is(50));
+    }
+
+    @Test
+    public void testStoredThumbnailScaledWhenProductIsNotAnImage() throws Exception {
+        product = "not an image".getBytes("UTF-8");
+        MetacardImpl metacard = createMetacard();
+        metacard.setThumbnail(createImage(200, 100, "jpeg"));
+
+        BufferedImage thumbnail = read(transformer.transform(metacard, size("50")));
+
+        assertThat(thumbnail.getWidth(), is(50));
+        assertThat(thumbnail.getHeight(), is(25));
+    }
+
+    @Test(expected = CatalogTransformerException.class)
+    public void testNoThumbnailAvailable() throws Exception {
+        product = "not an image".getBytes("UTF-8");
+
+        transformer.transform(createMetacard(), null);
+    }
+
+    @Test
+    public void testCacheEviction() throws Exception {
+        derivativeCache.put("first", new byte[] {1, 2, 3});
+        assertThat(derivativeCache.get("first"), notNullValue());
+
+        derivativeCache.setMaxCacheSizeMB(0);
+
+        assertThat(derivativeCache.get("first"), nullValue());
+        assertThat(cacheFolder.getRoot().list().length, is(0));
+    }
+
+    @Test
+    public void testCacheReloaded() throws Exception {
+        derivativeCache.put("first", new byte[] {1, 2, 3});
+
+        DerivativeCache reloaded = new DerivativeCache();
+        reloaded.setCacheDirectory(cacheFolder.getRoot().getAbsolutePath());
+
+        assertThat(reloaded.get("first"), is(new byte[] {1, 2, 3}));
+    }
+
+    @Test
+    public void testTempFileRemovedOnFailedWrite() throws Exception {
+        // a non-empty directory where the derivative belongs makes the write fail
+        File target = cacheFolder.newFolder(
+                Hashing.sha256().hashString("first", Charsets.UTF_8).toString() + ".jpg");
+        new File(target, "blocking").createNewFile();
+
+        derivativeCache.put("first", new byte[] {1, 2, 3});
+
+        assertThat(derivativeCache.get("first"), nullValue());
+        assertThat(cacheFolder.getRoot().list(), is(new String[] {target.getName()}));
+    }
+
+    @Test
+    public void testInterruptedWritesRemovedOnLoad() throws Exception {
+        derivativeCache.put("first", new byte[] {1, 2, 3});
+        File interrupted = cacheFolder.newFile("interrupted.tmp");
+
+        DerivativeCache reloaded = new DerivativeCache();
+        reloaded.setCacheDirectory(cacheFolder.getRoot().getAbsolutePath());
+
+        assertThat(interrupted.exists(), is(false));
+        assertThat(reloaded.get("first"), is(new byte[] {1, 2, 3}));
+    }
+
+    private MetacardImpl createMetacard() {
+        MetacardImpl metacard = new MetacardImpl();
+        metacard.setId(TEST_ID);
+        metacard.setSourceId(TEST_SITE);
+        metacard.setResourceURI(URI.create("file:///products/" + TEST_ID));
+        return metacard;
+    }
+
+    private Map<String, Serializable> size(String size) {
+        return Collections.<String, Serializable>singletonMap(
+                ThumbnailMetacardTransformer.SIZE_ARGUMENT, size);
+    }
+
+    private BufferedImage read(BinaryContent content) throws IOException {
+        try (InputStream inputStream = content.getInputStream()) {
+            return ImageIO.read(inputStream);
+        }
+    }
+
+    private byte[] createImage(int width, int height, String format) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+}
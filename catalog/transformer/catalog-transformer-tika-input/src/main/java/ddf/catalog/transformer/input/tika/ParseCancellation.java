@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.transformer.input.tika;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+import org.apache.tika.sax.ContentHandlerDecorator;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+/**
+ * Stops a running parse. Tika parsers ignore thread interrupts, so instead the input stream and
+ * content handler given to the parser fail on their next read or SAX event once the parse is
+ * cancelled. A parser that neither reads input nor emits events, e.g. one stuck in a loop over
+ * content it has already read, is not stopped.
+ */
+class ParseCancellation {
+
+    private volatile boolean cancelled = false;
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return a stream that throws an {@link InterruptedIOException} once the parse is cancelled
+     */
+    InputStream wrap(InputStream input) {
+        return new FilterInputStream(input) {
+            @Override
+            public int read() throws IOException {
+                checkInput();
+                return super.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                checkInput();
+                return super.read(b, off, len);
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                checkInput();
+                return super.skip(n);
+            }
+        };
+    }
+
+    /**
+     * @return a handler that throws a {@link SAXException} once the parse is cancelled
+     */
+    ContentHandler wrap(ContentHandler handler) {
+        return new ContentHandlerDecorator(handler) {
+            @Override
+            public void startElement(String uri, String localName, String qName,
+                    Attributes atts) throws SAXException {
+                checkHandler();
+                super.startElement(uri, localName, qName, atts);
+            }
+
+            @Override
+            public void endElement(String uri, String localName, String qName)
+                    throws SAXException {
+                checkHandler();
+                super.endElement(uri, localName, qName);
+            }
+
+            @Override
+            public void characters(char[] ch, int start, int length) throws SAXException {
+                checkHandler();
+                super.characters(ch, start, length);
+            }
+
+            @Override
+            public void ignorableWhitespace(char[] ch, int start, int length)
+                    throws SAXException {
+                checkHandler();
+                super.ignorableWhitespace(ch, start, length);
+            }
+        };
+    }
+
+    private void checkInput() throws InterruptedIOException {
+        if (cancelled) {
+            throw new InterruptedIOException("Parse was cancelled.");
+        }
+    }
+
+    private void checkHandler() throws SAXException {
+        if (cancelled) {
+            throw new SAXException("Parse was cancelled.");
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.transformer.input.tika;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.apache.tika.sax.ContentHandlerDecorator;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+/**
+ * Passes at most a fixed number of text characters on to the decorated handler. When the limit is
+ * reached the elements that are still open are closed, so the decorated handler still receives a
+ * well formed document, and the parse is stopped by throwing a {@link SAXException}. Any events
+ * after that are dropped.
+ */
+class TextLimitContentHandler extends ContentHandlerDecorator {
+
+    private final int limit;
+
+    private final Deque<String[]> openElements = new ArrayDeque<>();
+
+    private int textLength = 0;
+
+    private boolean limitReached = false;
+
+    /**
+     * @param handler
+     *            the handler to decorate
+     * @param limit
+     *            maximum number of characters passed on, or a negative number for no limit
+     */
+    TextLimitContentHandler(ContentHandler handler, int limit) {
+        super(handler);
+        this.limit = limit;
+    }
+
+    /**
+     * @return true if text was dropped because the limit was reached
+     */
+    boolean isLimitReached() {
+        return limitReached;
+    }
+
+    @Override
+    public void startDocument() throws SAXException {
+        if (!limitReached) {
+            super.startDocument();
+        }
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        if (!limitReached) {
+            super.endDocument();
+        }
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri) throws SAXException {
+        if (!limitReached) {
+            super.startPrefixMapping(prefix, uri);
+        }
+    }
+
+    @Override
+    public void endPrefixMapping(String prefix) throws SAXException {
+        if (!limitReached) {
+            super.endPrefixMapping(prefix);
+        }
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts)
+            throws SAXException {
+        if (!limitReached) {
+            openElements.push(new String[] {uri, localName, qName});
+            super.startElement(uri, localName, qName, atts);
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        if (!limitReached) {
+            openElements.poll();
+            super.endElement(uri, localName, qName);
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        if (limitReached) {
+            return;
+        }
+
+        if (limit < 0 || textLength + length <= limit) {
+            textLength += length;
+            super.characters(ch, start, length);
+        } else {
+            int remaining = limit - textLength;
+            if (remaining > 0) {
+                super.characters(ch, start, remaining);
+            }
+            textLength = limit;
+            stop();
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        if (!limitReached) {
+            super.ignorableWhitespace(ch, start, length);
+        }
+    }
+
+    @Override
+    public void processingInstruction(String target, String data) throws SAXException {
+        if (!limitReached) {
+            super.processingInstruction(target, data);
+        }
+    }
+
+    @Override
+    public void skippedEntity(String name) throws SAXException {
+        if (!limitReached) {
+            super.skippedEntity(name);
+        }
+    }
+
+    private void stop() throws SAXException {
+        while (!openElements.isEmpty()) {
+            String[] element = openElements.pop();
+            super.endElement(element[0], element[1], element[2]);
+        }
+        super.endDocument();
+        limitReached = true;
+
+        throw new SAXException("Extracted text limit of " + limit + " characters reached.");
+    }
+}
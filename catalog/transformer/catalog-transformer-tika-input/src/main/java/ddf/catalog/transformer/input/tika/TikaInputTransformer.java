@@ -14,7 +14,6 @@
 package ddf.catalog.transformer.input.tika;
 
 import java.awt.Graphics2D;
-import java.awt.Image;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -26,12 +25,27 @@
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Hashtable;
+import java.util.Iterator;
 import java.util.List;
 import java.util.SortedSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
 import javax.imageio.spi.IIORegistry;
-import javax.xml.transform.Transformer;
+import javax.imageio.stream.ImageInputStream;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
@@ -56,6 +70,7 @@
 import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
 
+import com.google.common.io.ByteSource;
 import com.google.common.io.FileBackedOutputStream;
 import com.sun.media.imageioimpl.plugins.jpeg2000.J2KImageReaderSpi;
 import com.sun.media.imageioimpl.plugins.tiff.TIFFImageReaderSpi;
@@ -74,6 +89,32 @@ public class TikaInputTransformer implements InputTransformer {
 
     private static final String XSLT = "/metadata.xslt";
 
+    private static final int SPOOL_MEMORY_THRESHOLD = 1000000;
+
+    private static final int THUMBNAIL_SIZE = 200;
+
+    private static final int DEFAULT_MAX_EXTRACTED_TEXT_LENGTH = 1000000;
+
+    private static final long DEFAULT_PARSE_TIMEOUT_SECONDS = 120;
+
+    private static final int DEFAULT_PARSER_THREADS = 4;
+
+    private static final int MAX_QUEUED_PARSES = 100;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    // AutoDetectParser is thread safe, so every transform shares the one loaded parser
+    private final Parser parser = new AutoDetectParser();
+
+    private final Templates metadataTemplates = createMetadataTemplates();
+
+    private final ThreadPoolExecutor parserExecutor = createParserExecutor(
+            DEFAULT_PARSER_THREADS);
+
+    private volatile int maxExtractedTextLength = DEFAULT_MAX_EXTRACTED_TEXT_LENGTH;
+
+    private volatile long parseTimeoutSeconds = DEFAULT_PARSE_TIMEOUT_SECONDS;
+
     public TikaInputTransformer(BundleContext bundleContext) {
         if (bundleContext == null) {
             LOGGER.error("Bundle context is null. Unable to register {} as an osgi service.",
@@ -86,6 +127,54 @@ public TikaInputTransformer(BundleContext bundleContext) {
         IIORegistry.getDefaultInstance().registerServiceProvider(new TIFFImageReaderSpi());
     }
 
+    /**
+     * Sets the maximum number of text characters extracted from a document into its metadata.
+     * Extraction stops once the limit is reached.
+     *
+     * @param maxExtractedTextLength
+     *            maximum number of characters, or a negative number for no limit
+     */
+    public void setMaxExtractedTextLength(int maxExtractedTextLength) {
+        this.maxExtractedTextLength = maxExtractedTextLength;
+    }
+
+    /**
+     * Sets how long a transform waits for a document to be parsed, including any time spent
+     * waiting for a parser thread, before it gives up on the document.
+     *
+     * @param parseTimeoutSeconds
+     *            timeout in seconds, or 0 to wait indefinitely
+     */
+    public void setParseTimeoutSeconds(long parseTimeoutSeconds) {
+        this.parseTimeoutSeconds = parseTimeoutSeconds;
+    }
+
+    /**
+     * Sets the number of threads documents are parsed on. Parsing is kept off the ingest threads,
+     * and a parse that times out is cancelled at its next read or SAX event. A parser that does
+     * neither keeps its thread until it finishes; once all threads are busy and
+     * {@value #MAX_QUEUED_PARSES} documents are waiting, further documents are rejected.
+     *
+     * @param parserThreads
+     *            number of parser threads, at least 1
+     */
+    public void setParserThreads(int parserThreads) {
+        int threads = Math.max(1, parserThreads);
+        synchronized (parserExecutor) {
+            if (threads > parserExecutor.getMaximumPoolSize()) {
+                parserExecutor.setMaximumPoolSize(threads);
+                parserExecutor.setCorePoolSize(threads);
+            } else {
+                parserExecutor.setCorePoolSize(threads);
+                parserExecutor.setMaximumPoolSize(threads);
+            }
+        }
+    }
+
+    public void destroy() {
+        parserExecutor.shutdownNow();
+    }
+
     @Override
     public Metacard transform(InputStream input) throws IOException, CatalogTransformerException {
         return transform(input, null);
@@ -101,7 +190,9 @@ public Metacard transform(InputStream input, String uri)
             throw new CatalogTransformerException("Cannot transform null input.");
         }
         Metacard metacard;
-        try (FileBackedOutputStream fileBackedOutputStream = new FileBackedOutputStream(1000000)) {
+        FileBackedOutputStream fileBackedOutputStream = new FileBackedOutputStream(
+                SPOOL_MEMORY_THRESHOLD);
+        try {
 
             try {
                 IOUtils.copy(input, fileBackedOutputStream);
@@ -110,31 +201,87 @@ public Metacard transform(InputStream input, String uri)
                         e);
             }
 
-            Parser parser = new AutoDetectParser();
             Metadata metadata = new Metadata();
-            ToXMLContentHandler xmlHandler = new ToXMLContentHandler();
-
-            try (InputStream inputStreamMessageCopy = fileBackedOutputStream.asByteSource()
-                    .openStream()) {
-                parser.parse(inputStreamMessageCopy, xmlHandler, metadata, new ParseContext());
-
-            } catch (SAXException e) {
-                throw new CatalogTransformerException("SAX exception processing input.", e);
-            } catch (TikaException e) {
-                throw new CatalogTransformerException("Tika exception processing input.", e);
-            }
+            String xhtml = parse(fileBackedOutputStream.asByteSource(), metadata);
 
             try (InputStream inputStreamMessageCopy = fileBackedOutputStream.asByteSource()
                     .openStream()) {
                 metacard = createMetacard(inputStreamMessageCopy, metadata, uri,
-                        transformToXml(xmlHandler.toString()));
+                        transformToXml(xhtml));
             }
+        } finally {
+            // also deletes the backing file of large inputs
+            fileBackedOutputStream.reset();
         }
 
         LOGGER.debug("Finished transforming input stream using Tika.");
         return metacard;
     }
 
+    /**
+     * Parses the content on a parser thread, waiting at most the parse timeout for it. A parse
+     * that times out or is interrupted is cancelled, see {@link ParseCancellation}.
+     *
+     * @return the XHTML extracted from the content, limited to the maximum extracted text length
+     */
+    private String parse(final ByteSource content, final Metadata metadata)
+            throws CatalogTransformerException {
+        final ToXMLContentHandler xmlHandler = new ToXMLContentHandler();
+        final TextLimitContentHandler limitHandler = new TextLimitContentHandler(xmlHandler,
+                maxExtractedTextLength);
+        final ParseCancellation cancellation = new ParseCancellation();
+
+        Future<Void> parse;
+        try {
+            parse = parserExecutor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException, SAXException, TikaException {
+                    try (InputStream inputStreamMessageCopy = content.openStream()) {
+                        parser.parse(cancellation.wrap(inputStreamMessageCopy),
+                                cancellation.wrap(limitHandler), metadata, new ParseContext());
+                    } catch (SAXException | TikaException e) {
+                        if (!limitHandler.isLimitReached()) {
+                            throw e;
+                        }
+                        LOGGER.debug("Stopped extracting text at {} characters.",
+                                maxExtractedTextLength);
+                    }
+                    return null;
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            throw new CatalogTransformerException("Tika parser is not available.", e);
+        }
+
+        try {
+            if (parseTimeoutSeconds > 0) {
+                parse.get(parseTimeoutSeconds, TimeUnit.SECONDS);
+            } else {
+                parse.get();
+            }
+        } catch (TimeoutException e) {
+            cancellation.cancel();
+            parse.cancel(true);
+            throw new CatalogTransformerException(
+                    "Timed out after " + parseTimeoutSeconds + " seconds processing input.", e);
+        } catch (InterruptedException e) {
+            cancellation.cancel();
+            parse.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CatalogTransformerException("Interrupted while processing input.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SAXException) {
+                throw new CatalogTransformerException("SAX exception processing input.", cause);
+            } else if (cause instanceof TikaException) {
+                throw new CatalogTransformerException("Tika exception processing input.", cause);
+            }
+            throw new CatalogTransformerException("Could not process input.", cause);
+        }
+
+        return xmlHandler.toString();
+    }
+
     private Metacard createMetacard(InputStream input, Metadata metadata, String uri,
             String metacardMetadata) {
         Metacard metacard = new MetacardImpl(BasicTypes.BASIC_METACARD);
@@ -252,17 +399,18 @@ private List<String> getSupportedMimeTypes() {
     }
 
     private void createThumbnail(InputStream input, Metacard metacard) {
-        try {
-            Image image = ImageIO.read(new CloseShieldInputStream(input));
+        try (ImageInputStream imageInput = ImageIO
+                .createImageInputStream(new CloseShieldInputStream(input))) {
+            BufferedImage image = readSubsampledImage(imageInput);
 
             if (null != image) {
-                BufferedImage bufferedImage = new BufferedImage(image.getWidth(null),
-                        image.getHeight(null), BufferedImage.TYPE_INT_RGB);
+                BufferedImage bufferedImage = new BufferedImage(image.getWidth(),
+                        image.getHeight(), BufferedImage.TYPE_INT_RGB);
                 Graphics2D graphics = bufferedImage.createGraphics();
                 graphics.drawImage(image, null, null);
                 graphics.dispose();
 
-                BufferedImage thumb = Scalr.resize(bufferedImage, 200);
+                BufferedImage thumb = Scalr.resize(bufferedImage, THUMBNAIL_SIZE);
 
                 try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
                     ImageIO.write(thumb, "jpeg", out);
@@ -278,13 +426,46 @@ private void createThumbnail(InputStream input, Metacard metacard) {
         }
     }
 
+    /**
+     * Decodes only every n-th pixel of every n-th row of the first image, with n chosen so that
+     * the decoded image is still at least as large as the thumbnail. Large images are never fully
+     * decoded into memory.
+     */
+    private BufferedImage readSubsampledImage(ImageInputStream imageInput) throws IOException {
+        if (imageInput == null) {
+            return null;
+        }
+
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInput);
+        if (!readers.hasNext()) {
+            return null;
+        }
+
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(imageInput, true, true);
+
+            int largestSide = Math.max(reader.getWidth(0), reader.getHeight(0));
+            int subsampling = Math.max(1, largestSide / THUMBNAIL_SIZE);
+
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            return reader.read(0, param);
+        } finally {
+            reader.dispose();
+        }
+    }
+
     private String transformToXml(String xhtml) {
         LOGGER.debug("Transforming xhtml to xml.");
+        if (metadataTemplates == null) {
+            return xhtml;
+        }
+
         Writer xml = new StringWriter();
         try {
-            Transformer transformer = TRANSFORMER_FACTORY
-                    .newTransformer(new StreamSource(this.getClass().getResourceAsStream(XSLT)));
-            transformer.transform(new StreamSource(new StringReader(xhtml)), new StreamResult(xml));
+            metadataTemplates.newTransformer()
+                    .transform(new StreamSource(new StringReader(xhtml)), new StreamResult(xml));
         } catch (TransformerException e) {
             LOGGER.warn("Unable to transform metdata from XHTML to XML.", e);
             return xhtml;
@@ -292,4 +473,33 @@ private String transformToXml(String xhtml) {
 
         return xml.toString();
     }
+
+    private static Templates createMetadataTemplates() {
+        try {
+            return TRANSFORMER_FACTORY.newTemplates(
+                    new StreamSource(TikaInputTransformer.class.getResourceAsStream(XSLT)));
+        } catch (TransformerConfigurationException e) {
+            LOGGER.warn("Unable to load {}. Metadata will be stored as XHTML.", XSLT, e);
+            return null;
+        }
+    }
+
+    /**
+     * Idle parser threads time out, so an unused transformer does not keep threads around. The
+     * queue is bounded so parsers that cannot be cancelled do not let waiting documents pile up.
+     */
+    private static ThreadPoolExecutor createParserExecutor(int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L,
+                TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(MAX_QUEUED_PARSES), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable,
+                                "tika-parser-" + THREAD_COUNT.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
 }
@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.transformer.input.tika;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+import org.apache.tika.sax.ToTextContentHandler;
+import org.junit.Test;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+public class ParseCancellationTest {
+
+    @Test
+    public void testStreamFailsOnceCancelled() throws IOException {
+        ParseCancellation cancellation = new ParseCancellation();
+        InputStream input = cancellation.wrap(new ByteArrayInputStream(new byte[] {1, 2, 3}));
+
+        assertThat(input.read(), is(1));
+        cancellation.cancel();
+        assertThat(cancellation.isCancelled(), is(true));
+
+        try {
+            input.read(new byte[2], 0, 2);
+            throw new AssertionError("read after cancel should fail");
+        } catch (InterruptedIOException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = SAXException.class)
+    public void testHandlerFailsOnceCancelled() throws SAXException {
+        ParseCancellation cancellation = new ParseCancellation();
+        ToTextContentHandler text = new ToTextContentHandler();
+        ContentHandler handler = cancellation.wrap(text);
+
+        handler.characters("before".toCharArray(), 0, 6);
+        assertThat(text.toString(), is("before"));
+
+        cancellation.cancel();
+        handler.characters("after".toCharArray(), 0, 5);
+    }
+}
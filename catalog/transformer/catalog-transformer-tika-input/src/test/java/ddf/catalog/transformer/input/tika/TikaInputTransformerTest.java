@@ -16,17 +16,24 @@
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
 import static junit.framework.Assert.assertNotNull;
 
 import java.io.InputStream;
+import java.io.StringReader;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilderFactory;
 
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xml.sax.InputSource;
 
 import ddf.catalog.data.Metacard;
 import ddf.catalog.transform.CatalogTransformerException;
@@ -390,6 +397,65 @@ public void testOpenOffice() throws Exception {
         TimeZone.setDefault(defaultTimeZone);
     }
 
+    @Test
+    public void testExtractedTextLimit() throws Exception {
+        InputStream stream = Thread.currentThread().getContextClassLoader()
+                .getResourceAsStream("CatalogFrameworkImpl.class");
+        TikaInputTransformer tikaInputTransformer = new TikaInputTransformer(null);
+        tikaInputTransformer.setMaxExtractedTextLength(10);
+        Metacard metacard = tikaInputTransformer.transform(stream);
+        assertNotNull(metacard);
+        assertNotNull(metacard.getMetadata());
+        // the truncated XHTML is still well formed, so it was transformed to XML
+        assertThat(metacard.getMetadata(), containsString("<metadata"));
+        assertThat(metacard.getMetadata(),
+                not(containsString("DEFAULT_RESOURCE_NOT_FOUND_MESSAGE")));
+        assertThat(metacard.getContentTypeName(), is("application/java-vm"));
+    }
+
+    /**
+     * Transforms a mix of documents with one transformer, checking that each finishes well within
+     * the parse timeout and that the extracted text of each stays within the configured limit.
+     */
+    @Test
+    public void testMixedCorpusWithinLimits() throws Exception {
+        String[] corpus = {"testPDF.pdf", "testWORD.docx", "testEXCEL.xls", "testPPT.pptx",
+                "testOpenOffice2.odt", "testXML.xml", "testJPEG_GEO.jpg", "testTIFF.tif",
+                "testPNG.png", "testMP3id3v1_v2.mp3", "testpackage/testJAVA.java",
+                "CatalogFrameworkImpl.class"};
+        int maxExtractedTextLength = 2000;
+        long parseTimeoutSeconds = 30;
+
+        TikaInputTransformer tikaInputTransformer = new TikaInputTransformer(null);
+        tikaInputTransformer.setMaxExtractedTextLength(maxExtractedTextLength);
+        tikaInputTransformer.setParseTimeoutSeconds(parseTimeoutSeconds);
+        tikaInputTransformer.setParserThreads(2);
+
+        try {
+            for (String document : corpus) {
+                InputStream stream = Thread.currentThread().getContextClassLoader()
+                        .getResourceAsStream(document);
+                long start = System.nanoTime();
+                Metacard metacard = tikaInputTransformer.transform(stream);
+                long elapsedSeconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
+
+                assertNotNull(document, metacard);
+                assertNotNull(document, metacard.getMetadata());
+                assertThat(document, elapsedSeconds < parseTimeoutSeconds, is(true));
+                assertThat(document, getText(metacard.getMetadata()).length(),
+                        lessThanOrEqualTo(maxExtractedTextLength));
+            }
+        } finally {
+            tikaInputTransformer.destroy();
+        }
+    }
+
+    private String getText(String xml) throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new InputSource(new StringReader(xml))).getDocumentElement()
+                .getTextContent();
+    }
+
     private String convertDate(Date date) {
         DateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss z");
         df.setTimeZone(TimeZone.getTimeZone("UTC"));
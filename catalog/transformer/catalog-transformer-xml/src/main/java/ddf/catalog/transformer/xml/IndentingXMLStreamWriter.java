@@ -0,0 +1,262 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.transformer.xml;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Indents the elements written to another {@link XMLStreamWriter}, one level per element, the way
+ * JAXB formats its output. Elements that contain text are left as they are, so whitespace is
+ * never added to mixed content or text values.
+ */
+class IndentingXMLStreamWriter implements XMLStreamWriter {
+
+    private static final String INDENT = "    ";
+
+    private final XMLStreamWriter writer;
+
+    /**
+     * State of the open elements; the first entry is the innermost element.
+     */
+    private final Deque<Level> levels = new ArrayDeque<>();
+
+    IndentingXMLStreamWriter(XMLStreamWriter writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void writeStartElement(String localName) throws XMLStreamException {
+        beforeStartElement();
+        writer.writeStartElement(localName);
+        levels.push(new Level());
+    }
+
+    @Override
+    public void writeStartElement(String namespaceURI, String localName)
+            throws XMLStreamException {
+        beforeStartElement();
+        writer.writeStartElement(namespaceURI, localName);
+        levels.push(new Level());
+    }
+
+    @Override
+    public void writeStartElement(String prefix, String localName, String namespaceURI)
+            throws XMLStreamException {
+        beforeStartElement();
+        writer.writeStartElement(prefix, localName, namespaceURI);
+        levels.push(new Level());
+    }
+
+    @Override
+    public void writeEmptyElement(String namespaceURI, String localName)
+            throws XMLStreamException {
+        beforeStartElement();
+        writer.writeEmptyElement(namespaceURI, localName);
+    }
+
+    @Override
+    public void writeEmptyElement(String prefix, String localName, String namespaceURI)
+            throws XMLStreamException {
+        beforeStartElement();
+        writer.writeEmptyElement(prefix, localName, namespaceURI);
+    }
+
+    @Override
+    public void writeEmptyElement(String localName) throws XMLStreamException {
+        beforeStartElement();
+        writer.writeEmptyElement(localName);
+    }
+
+    @Override
+    public void writeEndElement() throws XMLStreamException {
+        Level level = levels.pop();
+        if (level.hasChildren && !level.hasText) {
+            writeIndent();
+        }
+        writer.writeEndElement();
+    }
+
+    @Override
+    public void writeEndDocument() throws XMLStreamException {
+        while (!levels.isEmpty()) {
+            writeEndElement();
+        }
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public void close() throws XMLStreamException {
+        writer.close();
+    }
+
+    @Override
+    public void flush() throws XMLStreamException {
+        writer.flush();
+    }
+
+    @Override
+    public void writeAttribute(String localName, String value) throws XMLStreamException {
+        writer.writeAttribute(localName, value);
+    }
+
+    @Override
+    public void writeAttribute(String prefix, String namespaceURI, String localName, String value)
+            throws XMLStreamException {
+        writer.writeAttribute(prefix, namespaceURI, localName, value);
+    }
+
+    @Override
+    public void writeAttribute(String namespaceURI, String localName, String value)
+            throws XMLStreamException {
+        writer.writeAttribute(namespaceURI, localName, value);
+    }
+
+    @Override
+    public void writeNamespace(String prefix, String namespaceURI) throws XMLStreamException {
+        writer.writeNamespace(prefix, namespaceURI);
+    }
+
+    @Override
+    public void writeDefaultNamespace(String namespaceURI) throws XMLStreamException {
+        writer.writeDefaultNamespace(namespaceURI);
+    }
+
+    @Override
+    public void writeComment(String data) throws XMLStreamException {
+        writer.writeComment(data);
+    }
+
+    @Override
+    public void writeProcessingInstruction(String target) throws XMLStreamException {
+        writer.writeProcessingInstruction(target);
+    }
+
+    @Override
+    public void writeProcessingInstruction(String target, String data)
+            throws XMLStreamException {
+        writer.writeProcessingInstruction(target, data);
+    }
+
+    @Override
+    public void writeCData(String data) throws XMLStreamException {
+        markText();
+        writer.writeCData(data);
+    }
+
+    @Override
+    public void writeDTD(String dtd) throws XMLStreamException {
+        writer.writeDTD(dtd);
+    }
+
+    @Override
+    public void writeEntityRef(String name) throws XMLStreamException {
+        markText();
+        writer.writeEntityRef(name);
+    }
+
+    @Override
+    public void writeStartDocument() throws XMLStreamException {
+        writer.writeStartDocument();
+    }
+
+    @Override
+    public void writeStartDocument(String version) throws XMLStreamException {
+        writer.writeStartDocument(version);
+    }
+
+    @Override
+    public void writeStartDocument(String encoding, String version) throws XMLStreamException {
+        writer.writeStartDocument(encoding, version);
+    }
+
+    @Override
+    public void writeCharacters(String text) throws XMLStreamException {
+        markText();
+        writer.writeCharacters(text);
+    }
+
+    @Override
+    public void writeCharacters(char[] text, int start, int len) throws XMLStreamException {
+        markText();
+        writer.writeCharacters(text, start, len);
+    }
+
+    @Override
+    public String getPrefix(String uri) throws XMLStreamException {
+        return writer.getPrefix(uri);
+    }
+
+    @Override
+    public void setPrefix(String prefix, String uri) throws XMLStreamException {
+        writer.setPrefix(prefix, uri);
+    }
+
+    @Override
+    public void setDefaultNamespace(String uri) throws XMLStreamException {
+        writer.setDefaultNamespace(uri);
+    }
+
+    @Override
+    public void setNamespaceContext(NamespaceContext context) throws XMLStreamException {
+        writer.setNamespaceContext(context);
+    }
+
+    @Override
+    public NamespaceContext getNamespaceContext() {
+        return writer.getNamespaceContext();
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return writer.getProperty(name);
+    }
+
+    private void beforeStartElement() throws XMLStreamException {
+        Level parent = levels.peek();
+        if (parent == null || !parent.hasText) {
+            writeIndent();
+        }
+        if (parent != null) {
+            parent.hasChildren = true;
+        }
+    }
+
+    private void markText() {
+        Level level = levels.peek();
+        if (level != null) {
+            level.hasText = true;
+        }
+    }
+
+    private void writeIndent() throws XMLStreamException {
+        StringBuilder indent = new StringBuilder(1 + levels.size() * INDENT.length());
+        indent.append('\n');
+        for (int i = 0; i < levels.size(); i++) {
+            indent.append(INDENT);
+        }
+        writer.writeCharacters(indent.toString());
+    }
+
+    private static class Level {
+
+        private boolean hasChildren = false;
+
+        private boolean hasText = false;
+    }
+}
@@ -0,0 +1,469 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.transformer.xml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import javax.xml.bind.DatatypeConverter;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.stream.events.Characters;
+import javax.xml.stream.events.Comment;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.ProcessingInstruction;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+
+import ddf.catalog.data.Attribute;
+import ddf.catalog.data.AttributeDescriptor;
+import ddf.catalog.data.AttributeType.AttributeFormat;
+import ddf.catalog.data.BinaryContent;
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.MetacardType;
+import ddf.catalog.transform.CatalogTransformerException;
+
+/**
+ * Writes metacards as Metacard Element XML, which is GML 3.1.1 compliant, to an
+ * {@link XMLStreamWriter}. Attribute values are written as they are read: binary values are
+ * base64-encoded in chunks, so no value is held as a second, larger copy while it is written, and
+ * XML values are parsed once and their events replayed into the document.
+ * <p>
+ * Instances hold no per-document state and may be shared between threads, as long as each thread
+ * uses its own {@link XMLStreamWriter}.
+ */
+class MetacardWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetacardWriter.class);
+
+    static final String METACARD_NAMESPACE = "urn:catalog:metacard";
+
+    static final String GML_PREFIX = "gml";
+
+    static final String GML_NAMESPACE = "http://www.opengis.net/gml";
+
+    /**
+     * Prefixes declared on the root element of a document; an empty prefix is the default
+     * namespace.
+     */
+    static final Map<String, String> NAMESPACE_MAP = new ImmutableMap.Builder<String, String>()
+            .put("", METACARD_NAMESPACE).put(GML_PREFIX, GML_NAMESPACE)
+            .put("xlink", "http://www.w3.org/1999/xlink")
+            .put("smil", "http://www.w3.org/2001/SMIL20/")
+            .put("smillang", "http://www.w3.org/2001/SMIL20/Language").build();
+
+    /**
+     * This lookup map is...unfortunate. The current JAXB, which will remain in use for many
+     * contexts until/unless we refactor and rewrite all XML processing, determines the attribute
+     * names from the metacard schema. This lookup map provides an ugly shortcut for our purposes.
+     */
+    private static final Map<AttributeFormat, String> TYPE_NAME_LOOKUP =
+            new ImmutableMap.Builder<AttributeFormat, String>()
+            .put(AttributeFormat.BINARY, "base64Binary").put(AttributeFormat.STRING, "string")
+            .put(AttributeFormat.BOOLEAN, "boolean").put(AttributeFormat.DATE, "dateTime")
+            .put(AttributeFormat.DOUBLE, "double").put(AttributeFormat.SHORT, "short")
+            .put(AttributeFormat.INTEGER, "int").put(AttributeFormat.LONG, "long")
+            .put(AttributeFormat.FLOAT, "float").put(AttributeFormat.GEOMETRY, "geometry")
+            .put(AttributeFormat.XML, "stringxml").put(AttributeFormat.OBJECT, "object")
+            .build();
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    /**
+     * Bytes encoded per write; a multiple of 3 so the encoded chunks join without padding.
+     */
+    private static final int BASE64_CHUNK_SIZE = 3 * 1024;
+
+    private final GeometryTransformer geometryTransformer;
+
+    private final XMLInputFactory xmlInputFactory;
+
+    MetacardWriter(GeometryTransformer geometryTransformer) {
+        this.geometryTransformer = geometryTransformer;
+        xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    }
+
+    /**
+     * Declares the metacard namespaces on the element that was just started.
+     */
+    static void writeNamespaces(XMLStreamWriter writer) throws XMLStreamException {
+        for (Map.Entry<String, String> namespace : NAMESPACE_MAP.entrySet()) {
+            writeNamespace(writer, namespace.getKey(), namespace.getValue());
+        }
+    }
+
+    /**
+     * Binds the metacard namespaces in the scope of the element that was just started, without
+     * declaring them, for elements written where an enclosing element declares them.
+     */
+    private static void bindNamespaces(XMLStreamWriter writer) throws XMLStreamException {
+        for (Map.Entry<String, String> namespace : NAMESPACE_MAP.entrySet()) {
+            if (namespace.getKey().isEmpty()) {
+                writer.setDefaultNamespace(namespace.getValue());
+            } else {
+                writer.setPrefix(namespace.getKey(), namespace.getValue());
+            }
+        }
+    }
+
+    private static void writeNamespace(XMLStreamWriter writer, String prefix, String namespace)
+            throws XMLStreamException {
+        if (prefix.isEmpty()) {
+            writer.writeDefaultNamespace(namespace);
+            writer.setDefaultNamespace(namespace);
+        } else {
+            writer.writeNamespace(prefix, namespace);
+            writer.setPrefix(prefix, namespace);
+        }
+    }
+
+    /**
+     * Writes a metacard element.
+     *
+     * @param writer            writer positioned where the element belongs
+     * @param metacard          metacard to write
+     * @param declareNamespaces true if this is the root element of the document; otherwise the
+     *                          enclosing element must already declare the metacard namespaces
+     */
+    void write(XMLStreamWriter writer, Metacard metacard, boolean declareNamespaces)
+            throws XMLStreamException, CatalogTransformerException {
+        writer.writeStartElement("metacard");
+        if (declareNamespaces) {
+            writeNamespaces(writer);
+        } else {
+            // copied XML values are checked against the default namespace in scope
+            bindNamespaces(writer);
+        }
+        if (metacard.getId() != null) {
+            writer.writeAttribute(GML_PREFIX, GML_NAMESPACE, "id", metacard.getId());
+        }
+
+        writer.writeStartElement("type");
+        if (StringUtils.isEmpty(metacard.getMetacardType().getName())) {
+            writeText(writer, MetacardType.DEFAULT_METACARD_TYPE_NAME);
+        } else {
+            writeText(writer, metacard.getMetacardType().getName());
+        }
+        writer.writeEndElement(); // type
+
+        if (StringUtils.isNotEmpty(metacard.getSourceId())) {
+            writer.writeStartElement("source");
+            writeText(writer, metacard.getSourceId());
+            writer.writeEndElement(); // source
+        }
+
+        for (AttributeDescriptor attributeDescriptor : metacard.getMetacardType()
+                .getAttributeDescriptors()) {
+            String attributeName = attributeDescriptor.getName();
+            if (Metacard.ID.equals(attributeName)) {
+                continue;
+            }
+
+            Attribute attribute = metacard.getAttribute(attributeName);
+            if (attribute != null && attribute.getValues() != null) {
+                writeAttribute(writer, attribute,
+                        attributeDescriptor.getType().getAttributeFormat());
+            }
+        }
+        writer.writeEndElement(); // metacard
+    }
+
+    private void writeAttribute(XMLStreamWriter writer, Attribute attribute,
+            AttributeFormat format) throws XMLStreamException, CatalogTransformerException {
+        if (format == AttributeFormat.GEOMETRY) {
+            // The GeometryTransformer creates an XML fragment containing both the name - with
+            // namespaces declared - and the value
+            copyXml(writer, geometryTransformer.transform(attribute));
+            return;
+        }
+
+        for (Serializable value : attribute.getValues()) {
+            if (value == null) {
+                continue;
+            }
+
+            writer.writeStartElement(TYPE_NAME_LOOKUP.get(format));
+            writer.writeAttribute("name", attribute.getName());
+            writer.writeStartElement("value");
+
+            switch (format) {
+            case DATE:
+                writer.writeCharacters(printDateTime((Date) value));
+                break;
+            case BINARY:
+                try (Base64ValueStream base64 = new Base64ValueStream(writer)) {
+                    base64.write((byte[]) value);
+                } catch (IOException e) {
+                    throw new CatalogTransformerException(
+                            "Unable to write binary attribute " + attribute.getName(), e);
+                }
+                break;
+            case OBJECT:
+                try (ObjectOutput output = new ObjectOutputStream(new Base64ValueStream(writer))) {
+                    output.writeObject(value);
+                } catch (IOException e) {
+                    throw new CatalogTransformerException(
+                            "Unable to write object attribute " + attribute.getName(), e);
+                }
+                break;
+            case XML:
+                writeXml(writer, attribute.getName(), value.toString());
+                break;
+            default:
+                writeText(writer, value.toString());
+                break;
+            }
+
+            writer.writeEndElement(); // value
+            writer.writeEndElement(); // type
+        }
+    }
+
+    private void copyXml(XMLStreamWriter writer, BinaryContent content)
+            throws XMLStreamException {
+        try (InputStream inputStream = content.getInputStream()) {
+            copyEvents(writer, readEvents(xmlInputFactory.createXMLEventReader(inputStream)));
+        } catch (IOException e) {
+            throw new XMLStreamException("Unable to read XML content", e);
+        }
+    }
+
+    /**
+     * Copies an XML value into the current element. A value that is not well-formed is written as
+     * escaped text instead, since copying it would fail part way through the element; the value
+     * is read in full before anything is written so it is only parsed once.
+     */
+    private void writeXml(XMLStreamWriter writer, String name, String xml)
+            throws XMLStreamException {
+        List<XMLEvent> events;
+        try {
+            events = readEvents(xmlInputFactory.createXMLEventReader(new StringReader(xml)));
+        } catch (XMLStreamException e) {
+            LOGGER.debug("Value of XML attribute {} is not well-formed, writing it as text.",
+                    name);
+            writeText(writer, xml);
+            return;
+        }
+        copyEvents(writer, events);
+    }
+
+    private List<XMLEvent> readEvents(XMLEventReader reader) throws XMLStreamException {
+        List<XMLEvent> events = new ArrayList<>();
+        try {
+            while (reader.hasNext()) {
+                events.add(reader.nextEvent());
+            }
+        } finally {
+            reader.close();
+        }
+        return events;
+    }
+
+    /**
+     * Copies the events of an XML document, leaving out the prolog, into the current element.
+     */
+    private void copyEvents(XMLStreamWriter writer, List<XMLEvent> events)
+            throws XMLStreamException {
+        for (XMLEvent event : events) {
+            switch (event.getEventType()) {
+            case XMLStreamConstants.START_ELEMENT:
+                copyStartElement(writer, event.asStartElement());
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                writer.writeEndElement();
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.SPACE:
+            case XMLStreamConstants.CDATA:
+                Characters characters = event.asCharacters();
+                if (characters.isCData()) {
+                    writer.writeCData(characters.getData());
+                } else {
+                    writer.writeCharacters(characters.getData());
+                }
+                break;
+            case XMLStreamConstants.COMMENT:
+                writer.writeComment(((Comment) event).getText());
+                break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                ProcessingInstruction instruction = (ProcessingInstruction) event;
+                writer.writeProcessingInstruction(instruction.getTarget(),
+                        instruction.getData());
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    private void copyStartElement(XMLStreamWriter writer, StartElement element)
+            throws XMLStreamException {
+        QName name = element.getName();
+        String prefix = StringUtils.defaultString(name.getPrefix());
+        String namespace = StringUtils.defaultString(name.getNamespaceURI());
+
+        // The metacard namespace is the default in the document, so content in no namespace
+        // must reset it. The binding is looked up before the element is started, since some
+        // writers bind the element's own prefix when it is.
+        boolean bound = namespace.equals(StringUtils
+                .defaultString(writer.getNamespaceContext().getNamespaceURI(prefix)));
+
+        writer.writeStartElement(prefix, name.getLocalPart(), namespace);
+
+        for (Iterator<?> namespaces = element.getNamespaces(); namespaces.hasNext(); ) {
+            Namespace declaration = (Namespace) namespaces.next();
+            String declaredPrefix = StringUtils.defaultString(declaration.getPrefix());
+            writeNamespace(writer, declaredPrefix,
+                    StringUtils.defaultString(declaration.getNamespaceURI()));
+            bound |= declaredPrefix.equals(prefix);
+        }
+
+        if (!bound) {
+            writeNamespace(writer, prefix, namespace);
+        }
+
+        for (Iterator<?> attributes = element.getAttributes(); attributes.hasNext(); ) {
+            javax.xml.stream.events.Attribute attribute =
+                    (javax.xml.stream.events.Attribute) attributes.next();
+            QName attributeName = attribute.getName();
+            if (StringUtils.isEmpty(attributeName.getPrefix())) {
+                writer.writeAttribute(attributeName.getLocalPart(), attribute.getValue());
+            } else {
+                writer.writeAttribute(attributeName.getPrefix(),
+                        attributeName.getNamespaceURI(), attributeName.getLocalPart(),
+                        attribute.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return the date as an xs:dateTime in UTC, with milliseconds
+     */
+    static String printDateTime(Date date) {
+        Calendar calendar = Calendar.getInstance(UTC);
+        calendar.setTime(date);
+        return DatatypeConverter.printDateTime(calendar);
+    }
+
+    /**
+     * Writes text, escaping characters that cannot appear literally in XML as character
+     * references.
+     */
+    private static void writeText(XMLStreamWriter writer, String text)
+            throws XMLStreamException {
+        int start = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '\t' || c == '\n' || (c != '\r' && Character.isDefined(c) && !Character
+                    .isISOControl(c))) {
+                continue;
+            }
+            if (i > start) {
+                writer.writeCharacters(text.substring(start, i));
+            }
+            writer.writeEntityRef("#x" + Integer.toHexString(c));
+            start = i + 1;
+        }
+        if (start == 0) {
+            writer.writeCharacters(text);
+        } else if (start < length) {
+            writer.writeCharacters(text.substring(start));
+        }
+    }
+
+    /**
+     * Base64-encodes the bytes written to it into the current element, a chunk at a time.
+     */
+    private static class Base64ValueStream extends OutputStream {
+
+        private final XMLStreamWriter writer;
+
+        private final byte[] chunk = new byte[BASE64_CHUNK_SIZE];
+
+        private int count = 0;
+
+        Base64ValueStream(XMLStreamWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            chunk[count++] = (byte) b;
+            if (count == chunk.length) {
+                writeChunk();
+            }
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            int remaining = length;
+            int position = offset;
+            while (remaining > 0) {
+                int copied = Math.min(remaining, chunk.length - count);
+                System.arraycopy(bytes, position, chunk, count, copied);
+                count += copied;
+                position += copied;
+                remaining -= copied;
+                if (count == chunk.length) {
+                    writeChunk();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            writeChunk();
+        }
+
+        private void writeChunk() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            byte[] bytes = count == chunk.length ? chunk : Arrays.copyOf(chunk, count);
+            try {
+                writer.writeCharacters(DatatypeConverter.printBase64Binary(bytes));
+            } catch (XMLStreamException e) {
+                throw new IOException("Unable to write base64 value", e);
+            }
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.catalog.transformer.xml;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.FileBackedOutputStream;
+
+/**
+ * Reads back transformed XML written to a {@link FileBackedOutputStream} and releases the spool,
+ * including any backing file, once the caller closes the stream.
+ */
+class SpoolInputStream extends FilterInputStream {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpoolInputStream.class);
+
+    /**
+     * Transformed XML larger than this is spooled to a temporary file.
+     */
+    static final int MEMORY_THRESHOLD = 1024 * 1024;
+
+    private final FileBackedOutputStream spool;
+
+    SpoolInputStream(FileBackedOutputStream spool) throws IOException {
+        super(spool.asByteSource().openStream());
+        this.spool = spool;
+    }
+
+    static FileBackedOutputStream newSpool() {
+        return new FileBackedOutputStream(MEMORY_THRESHOLD, true);
+    }
+
+    static void reset(FileBackedOutputStream spool) {
+        try {
+            spool.reset();
+        } catch (IOException e) {
+            LOGGER.debug("Unable to delete transformed XML spool.", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            spool.reset();
+        }
+    }
+}
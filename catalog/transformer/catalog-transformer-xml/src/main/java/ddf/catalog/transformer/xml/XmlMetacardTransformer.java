@@ -13,34 +13,39 @@
  */
 package ddf.catalog.transformer.xml;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.Map;
 
-import javax.xml.bind.Marshaller;
-import javax.xml.bind.helpers.DefaultValidationEventHandler;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 import org.codice.ddf.parser.Parser;
-import org.codice.ddf.parser.ParserConfigurator;
-import org.codice.ddf.parser.ParserException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.io.FileBackedOutputStream;
+
 import ddf.catalog.data.BinaryContent;
 import ddf.catalog.data.Metacard;
 import ddf.catalog.data.impl.BinaryContentImpl;
 import ddf.catalog.transform.CatalogTransformerException;
 import ddf.catalog.transform.MetacardTransformer;
-import ddf.catalog.transformer.xml.adapter.AdaptedMetacard;
-import ddf.catalog.transformer.xml.adapter.AttributeAdapter;
 
 public class XmlMetacardTransformer extends AbstractXmlTransformer implements MetacardTransformer {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(XmlMetacardTransformer.class);
 
+    private static final String ENCODING = "UTF-8";
+
+    private final MetacardWriter metacardWriter;
+
+    private final XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
+
     public XmlMetacardTransformer(Parser parser) {
         super(parser);
+        metacardWriter = new MetacardWriter(new GeometryTransformer(parser));
     }
 
     @Override
@@ -51,18 +56,18 @@ public BinaryContent transform(Metacard metacard, Map<String, Serializable> argu
             throw new CatalogTransformerException("Unable to transform null metacard");
         }
 
-        ParserConfigurator parserConfigurator = getParserConfigurator()
-                .setAdapter(new AttributeAdapter(metacard.getMetacardType()))
-                .setHandler(new DefaultValidationEventHandler())
-                .addProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-
+        FileBackedOutputStream spool = SpoolInputStream.newSpool();
         try {
-            ByteArrayOutputStream os = new ByteArrayOutputStream();
-            getParser().marshal(parserConfigurator, new AdaptedMetacard(metacard), os);
+            XMLStreamWriter writer = new IndentingXMLStreamWriter(
+                    xmlOutputFactory.createXMLStreamWriter(spool, ENCODING));
+            writer.writeStartDocument(ENCODING, "1.0");
+            metacardWriter.write(writer, metacard, true);
+            writer.writeEndDocument();
+            writer.close();
 
-            ByteArrayInputStream bais = new ByteArrayInputStream(os.toByteArray());
-            return new BinaryContentImpl(bais, MIME_TYPE);
-        } catch (ParserException e) {
+            return new BinaryContentImpl(new SpoolInputStream(spool), MIME_TYPE);
+        } catch (XMLStreamException | IOException | RuntimeException e) {
+            SpoolInputStream.reset(spool);
             throw new CatalogTransformerException("Failed XML Transformation", e);
         }
     }
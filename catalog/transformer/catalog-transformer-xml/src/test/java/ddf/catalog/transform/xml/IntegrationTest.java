@@ -13,17 +13,29 @@
  */
 package ddf.catalog.transform.xml;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Serializable;
+import java.util.List;
 
 import org.codice.ddf.parser.Parser;
 import org.codice.ddf.parser.xml.XmlParser;
+import org.custommonkey.xmlunit.XMLUnit;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
 
 import ddf.catalog.data.Attribute;
 import ddf.catalog.data.AttributeDescriptor;
+import ddf.catalog.data.AttributeType.AttributeFormat;
 import ddf.catalog.data.BinaryContent;
 import ddf.catalog.data.Metacard;
 import ddf.catalog.transform.CatalogTransformerException;
@@ -37,7 +49,8 @@ public class IntegrationTest {
     private static final Logger LOGGER = LoggerFactory.getLogger(IntegrationTest.class);
 
     @Test
-    public void testInputAndOutput() throws CatalogTransformerException, IOException {
+    public void testInputAndOutput()
+            throws CatalogTransformerException, IOException, SAXException {
         Parser parser = new XmlParser();
 
         InputTransformer inputTransformer = new XmlInputTransformer(parser);
@@ -56,10 +69,46 @@ public void testInputAndOutput() throws CatalogTransformerException, IOException
         }
 
         BinaryContent output = outputTransformer.transform(metacard, null);
-        String outputString = new String(output.getByteArray());
-
-        // TODO test equivalence with XMLUnit.
+        byte[] outputBytes = output.getByteArray();
+        String outputString = new String(outputBytes, "UTF-8");
         LOGGER.info(outputString);
+
+        // formatted the way JAXB formats its output
+        assertThat(outputString, containsString("\n    <type>extensible.metacard</type>"));
+
+        Metacard roundTrip = inputTransformer.transform(new ByteArrayInputStream(outputBytes));
+        assertThat(roundTrip.getId(), is(metacard.getId()));
+        assertThat(roundTrip.getSourceId(), is(metacard.getSourceId()));
+        assertThat(roundTrip.getMetacardType().getName(), is(metacard.getMetacardType().getName()));
+        for (AttributeDescriptor descriptor : metacard.getMetacardType()
+                .getAttributeDescriptors()) {
+            assertSameValues(descriptor, metacard.getAttribute(descriptor.getName()),
+                    roundTrip.getAttribute(descriptor.getName()));
+        }
     }
 
+    private void assertSameValues(AttributeDescriptor descriptor, Attribute expected,
+            Attribute actual) throws IOException, SAXException {
+        String name = descriptor.getName();
+        if (expected == null || expected.getValue() == null) {
+            assertTrue(name + " should not have a value",
+                    actual == null || actual.getValue() == null);
+            return;
+        }
+
+        assertThat(name, actual, notNullValue());
+        List<Serializable> expectedValues = expected.getValues();
+        List<Serializable> actualValues = actual.getValues();
+        assertThat(name, actualValues.size(), is(expectedValues.size()));
+        for (int i = 0; i < expectedValues.size(); i++) {
+            if (descriptor.getType().getAttributeFormat() == AttributeFormat.XML) {
+                XMLUnit.setIgnoreWhitespace(true);
+                assertTrue(name + " should be similar XML",
+                        XMLUnit.compareXML((String) expectedValues.get(i),
+                                (String) actualValues.get(i)).similar());
+            } else {
+                assertThat(name, actualValues.get(i), is(expectedValues.get(i)));
+            }
+        }
+    }
 }
@@ -15,9 +15,11 @@
 
 import static org.custommonkey.xmlunit.XMLAssert.assertXpathEvaluatesTo;
 import static org.custommonkey.xmlunit.XMLAssert.assertXpathExists;
+import static org.custommonkey.xmlunit.XMLAssert.assertXpathNotExists;
 import static org.junit.Assert.fail;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -42,6 +44,7 @@
 import ddf.catalog.data.Metacard;
 import ddf.catalog.data.impl.MetacardImpl;
 import ddf.catalog.transform.CatalogTransformerException;
+import ddf.catalog.transformer.xml.XmlInputTransformer;
 import ddf.catalog.transformer.xml.XmlMetacardTransformer;
 
 public class TestXmlMetacardTransformer {
@@ -170,4 +173,44 @@ public void testXmlMetacardTransformer() throws Exception {
         assertXpathExists("/m:metacard/m:dateTime[@name='expiration']/m:value", outputXml);
 
     }
+
+    /**
+     * An XML value that is not well-formed is written as text rather than failing the transform.
+     */
+    @Test
+    public void testMalformedXmlValue() throws Exception {
+        final String metadata = "<foo><bar></foo>";
+        MetacardImpl mc = new MetacardImpl();
+        mc.setId("1234567890987654321");
+        mc.setMetadata(metadata);
+
+        String outputXml = new String(transformer.transform(mc, null).getByteArray(), "UTF-8");
+
+        Map<String, String> m = new HashMap<String, String>();
+        m.put("m", "urn:catalog:metacard");
+        XMLUnit.setXpathNamespaceContext(new SimpleNamespaceContext(m));
+        assertXpathEvaluatesTo(metadata, "/m:metacard/m:stringxml[@name='metadata']/m:value",
+                outputXml);
+    }
+
+    /**
+     * Metadata in no namespace keeps no namespace rather than taking on the metacard default
+     * namespace.
+     */
+    @Test
+    public void testNoNamespaceXmlValueRoundTrip() throws Exception {
+        MetacardImpl mc = new MetacardImpl();
+        mc.setId("1234567890987654321");
+        mc.setMetadata("<foo><bar baz=\"1\"/></foo>");
+
+        byte[] outputXml = transformer.transform(mc, null).getByteArray();
+        Metacard metacard = new XmlInputTransformer(new XmlParser())
+                .transform(new ByteArrayInputStream(outputXml));
+
+        assertXpathExists("/foo/bar[@baz='1']", metacard.getMetadata());
+        Map<String, String> m = new HashMap<String, String>();
+        m.put("m", "urn:catalog:metacard");
+        XMLUnit.setXpathNamespaceContext(new SimpleNamespaceContext(m));
+        assertXpathNotExists("//m:foo", metacard.getMetadata());
+    }
 }
@@ -23,6 +23,7 @@
 import static org.mockito.Mockito.when;
 import static junit.framework.Assert.assertEquals;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -35,9 +36,12 @@
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ForkJoinPool;
 
+import javax.xml.bind.DatatypeConverter;
+
 import org.codice.ddf.parser.Parser;
 import org.codice.ddf.parser.xml.XmlParser;
 import org.custommonkey.xmlunit.NamespaceContext;
@@ -78,6 +82,8 @@ public class TestXmlResponseQueueTransformer {
 
     private static final Date DEFAULT_EXPIRATION_DATE = new DateTime(123456789).toDate();
 
+    private static final String DEFAULT_EXPIRATION_XML = "1970-01-02T10:17:36.789Z";
+
     private static final String DEFAULT_TITLE = "myTitle";
 
     private static final String DEFAULT_GEO = "POLYGON ((35 10, 10 20, 15 40, 45 45, 35 10),(20 30, 35 35, 30 20, 20 30))";
@@ -350,6 +356,49 @@ public void testCompareSerialToFork() throws IOException, CatalogTransformerExce
         assertEquals(serialOutput.replaceAll("\\s", ""), forkOutput.replaceAll("\\s", ""));
     }
 
+    /**
+     * Results marshalled in parallel chunks must be written in the order of the response.
+     */
+    @Test
+    public void testParallelPreservesResultOrder() throws Exception {
+        int count = 200;
+        List<Result> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            results.add(new ResultImpl(new MetacardStub("source" + i, "id" + i)));
+        }
+        transformer.setThreshold(3);
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        transformer.write(new SourceResponseImpl(null, results), os);
+        String output = os.toString("UTF-8");
+
+        assertXpathEvaluatesTo(Integer.toString(count), "count(/mc:metacards/mc:metacard)",
+                output);
+        for (int i = 0; i < count; i++) {
+            assertXpathEvaluatesTo("id" + i, "/mc:metacards/mc:metacard[" + (i + 1) + "]/@gml:id",
+                    output);
+        }
+        verifyDefaults(Integer.toString(count), output);
+    }
+
+    /**
+     * Binary values larger than one base64 chunk must encode the same as a single encoding.
+     */
+    @Test
+    public void testLargeBinaryValue() throws Exception {
+        byte[] thumbnail = new byte[10000];
+        new Random(42).nextBytes(thumbnail);
+        MetacardStub metacard = new MetacardStub(DEFAULT_SOURCE_ID, DEFAULT_ID);
+        metacard.setThumbnail(thumbnail);
+        transformer.setThreshold(2);
+
+        BinaryContent binaryContent = transformer.transform(givenSourceResponse(metacard), null);
+        String output = new String(binaryContent.getByteArray(), "UTF-8");
+
+        assertXpathEvaluatesTo(DatatypeConverter.printBase64Binary(thumbnail),
+                "/mc:metacards/mc:metacard/mc:base64Binary[@name='thumbnail']/mc:value", output);
+    }
+
     @Test
     public void testXmlResponseQueueTransformer() throws Exception {
 
@@ -444,8 +493,8 @@ private void verifyDefaults(String index, String output)
                 "/mc:metacards/mc:metacard[" + index + "]/mc:type", output);
         assertXpathExists("/mc:metacards/mc:metacard[" + index
                 + "]/mc:geometry[@name='location']//gml:Polygon", output);
-        assertXpathExists(
-                "/mc:metacards/mc:metacard[" + index + "]/mc:dateTime[@name='expiration']", output);
+        assertXpathEvaluatesTo(DEFAULT_EXPIRATION_XML, "/mc:metacards/mc:metacard[" + index
+                + "]/mc:dateTime[@name='expiration']/mc:value", output);
         assertXpathExists("/mc:metacards/mc:metacard[" + index + "]/mc:stringxml[@name='metadata']",
                 output);
         assertXpathEvaluatesTo(DEFAULT_TITLE,
@@ -17,15 +17,27 @@
 import java.io.InputStream;
 import java.io.OutputStream;
 
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+
+import org.openexi.proc.EXISchemaResolver;
+import org.openexi.proc.HeaderOptionsOutputType;
 import org.openexi.proc.common.AlignmentType;
 import org.openexi.proc.common.EXIOptionsException;
 import org.openexi.proc.common.GrammarOptions;
+import org.openexi.proc.common.SchemaId;
 import org.openexi.proc.grammars.GrammarCache;
+import org.openexi.sax.EXIReader;
 import org.openexi.sax.Transmogrifier;
 import org.openexi.sax.TransmogrifierException;
+import org.openexi.schema.EXISchema;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
 
 /**
  * Performs encoding and decoding xml compression using EXI.
@@ -37,6 +49,16 @@ public final class EXIEncoder {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(EXIEncoder.class);
 
+    /**
+     * Namespace prefixes are preserved in schema-informed streams so that qualified names used as
+     * values, e.g. xsi:type or CSW typeNames, still resolve after decoding.
+     */
+    private static final short SCHEMA_INFORMED_OPTIONS = GrammarOptions
+            .addNS(GrammarOptions.DEFAULT_OPTIONS);
+
+    private static final SAXTransformerFactory SAX_TRANSFORMER_FACTORY =
+            (SAXTransformerFactory) TransformerFactory.newInstance();
+
     private EXIEncoder() {
 
     }
@@ -52,10 +74,33 @@ private EXIEncoder() {
      */
     public static void encode(InputStream xmlStream, OutputStream exiStream)
             throws EXIOptionsException, TransmogrifierException, IOException {
+        encode(xmlStream, exiStream, null, null);
+    }
+
+    /**
+     * Takes the incoming xmlStream and performs EXI-encoding on it into the exiStream, using the
+     * grammar of a schema. The schema id and options are written to the EXI header, so the stream
+     * can only be decoded by a reader that resolves the schema id to the same schema.
+     *
+     * @param xmlStream Input of xml data
+     * @param exiStream Output of exi-encoded data
+     * @param schema    Schema the xml conforms to, or null to encode without a schema
+     * @param schemaId  Id the decoder resolves the schema by, see {@link EXISchemaRegistry}
+     * @throws EXIOptionsException
+     * @throws TransmogrifierException
+     * @throws java.io.IOException
+     */
+    public static void encode(InputStream xmlStream, OutputStream exiStream, EXISchema schema,
+            String schemaId) throws EXIOptionsException, TransmogrifierException, IOException {
         Transmogrifier trans = new Transmogrifier();
         trans.setAlignmentType(AlignmentType.bitPacked);
-        GrammarCache grammarCache = new GrammarCache(null, GrammarOptions.DEFAULT_OPTIONS);
-        trans.setGrammarCache(grammarCache);
+        if (schema == null) {
+            trans.setGrammarCache(new GrammarCache(null, GrammarOptions.DEFAULT_OPTIONS));
+        } else {
+            trans.setGrammarCache(new GrammarCache(schema, SCHEMA_INFORMED_OPTIONS),
+                    new SchemaId(schemaId));
+            trans.setOutputOptions(HeaderOptionsOutputType.all);
+        }
         trans.setOutputStream(exiStream);
         LOGGER.debug("Starting EXI encoding process.");
         trans.encode(new InputSource(xmlStream));
@@ -63,12 +108,47 @@ public static void encode(InputStream xmlStream, OutputStream exiStream)
     }
 
     /**
-     * Takes the incoming exiStream and performs EXI-decoding on it into the xmlStream.
+     * Takes the incoming exiStream and performs EXI-decoding on it into the xmlStream. Only
+     * streams encoded without a schema can be decoded.
      *
      * @param exiStream Input of exi-encoded data
      * @param xmlStream Output of xml data
+     * @throws IOException
+     * @throws SAXException
+     * @throws TransformerConfigurationException
      */
-    public static void decode(InputStream exiStream, OutputStream xmlStream) {
-        throw new IllegalArgumentException("Decode operation not supported.");
+    public static void decode(InputStream exiStream, OutputStream xmlStream)
+            throws IOException, SAXException, TransformerConfigurationException {
+        decode(exiStream, xmlStream, null);
+    }
+
+    /**
+     * Takes the incoming exiStream and performs EXI-decoding on it into the xmlStream. Streams
+     * whose header names a schema id are decoded with the grammar the schemaResolver returns for
+     * it.
+     *
+     * @param exiStream      Input of exi-encoded data
+     * @param xmlStream      Output of xml data
+     * @param schemaResolver Resolves schema ids found in EXI headers, may be null
+     * @throws IOException
+     * @throws SAXException
+     * @throws TransformerConfigurationException
+     */
+    public static void decode(InputStream exiStream, OutputStream xmlStream,
+            EXISchemaResolver schemaResolver)
+            throws IOException, SAXException, TransformerConfigurationException {
+        EXIReader reader = new EXIReader();
+        reader.setGrammarCache(new GrammarCache(null, GrammarOptions.DEFAULT_OPTIONS));
+        if (schemaResolver != null) {
+            reader.setEXISchemaResolver(schemaResolver);
+        }
+
+        TransformerHandler transformerHandler = SAX_TRANSFORMER_FACTORY.newTransformerHandler();
+        transformerHandler.setResult(new StreamResult(xmlStream));
+        reader.setContentHandler(transformerHandler);
+
+        LOGGER.debug("Starting EXI decoding process.");
+        reader.parse(new InputSource(exiStream));
+        LOGGER.debug("EXI decoding complete.");
     }
 }
@@ -23,17 +23,26 @@
 /**
  * Controls EXI compression of CXF-based messages.
  * Attaching this feature to a cxf endpoint (jaxws:endpoint or jaxrs:server) will allow the server to send responses
- * back in an exi-encoded format.
+ * back in an exi-encoded format, and will decode exi-encoded messages it receives.
  */
 @NoJSR250Annotations
 public class EXIFeature extends AbstractFeature {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(EXIFeature.class);
 
+    private EXISchemaRegistry schemaRegistry;
+
+    public void setSchemaRegistry(EXISchemaRegistry schemaRegistry) {
+        this.schemaRegistry = schemaRegistry;
+    }
+
     @Override
     protected void initializeProvider(InterceptorProvider provider, Bus bus) {
-        EXIOutInterceptor outInterceptor = new EXIOutInterceptor();
+        EXIOutInterceptor outInterceptor = new EXIOutInterceptor(schemaRegistry);
         provider.getOutInterceptors().add(outInterceptor);
         LOGGER.debug("Added EXIOutInterceptor to provider.");
+        EXIInInterceptor inInterceptor = new EXIInInterceptor(schemaRegistry);
+        provider.getInInterceptors().add(inInterceptor);
+        LOGGER.debug("Added EXIInInterceptor to provider.");
     }
 }
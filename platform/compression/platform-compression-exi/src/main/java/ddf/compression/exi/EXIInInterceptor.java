@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.compression.exi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.xml.transform.TransformerConfigurationException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.cxf.helpers.CastUtils;
+import org.apache.cxf.interceptor.Fault;
+import org.apache.cxf.io.CachedOutputStream;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+/**
+ * Interceptor that decodes exi-encoded message content, so the rest of the interceptor chain
+ * sees plain XML. Streams encoded against a schema are decoded with the matching schema from the
+ * {@link EXISchemaRegistry}.
+ */
+public class EXIInInterceptor extends AbstractPhaseInterceptor<Message> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EXIInInterceptor.class);
+
+    private final EXISchemaRegistry schemaRegistry;
+
+    /**
+     * Creates a new Interceptor that decodes schemaless exi-encoded messages.
+     */
+    public EXIInInterceptor() {
+        this(null);
+    }
+
+    /**
+     * Creates a new Interceptor that decodes exi-encoded messages.
+     *
+     * @param schemaRegistry Schemas messages may have been encoded against, may be null
+     */
+    public EXIInInterceptor(EXISchemaRegistry schemaRegistry) {
+        super(Phase.RECEIVE);
+        this.schemaRegistry = schemaRegistry;
+    }
+
+    @Override
+    public void handleMessage(Message message) {
+        Map<String, List<String>> headers = CastUtils
+                .cast((Map<?, ?>) message.get(Message.PROTOCOL_HEADERS));
+        if (headers == null || !isExiEncoded(headers.get(HttpHeaders.CONTENT_ENCODING))) {
+            return;
+        }
+
+        InputStream exiStream = message.getContent(InputStream.class);
+        if (exiStream == null) {
+            return;
+        }
+
+        LOGGER.debug("Decoding EXI-encoded message.");
+        CachedOutputStream xmlStream = new CachedOutputStream();
+        try {
+            EXIEncoder.decode(exiStream, xmlStream, schemaRegistry);
+            message.setContent(InputStream.class, xmlStream.getInputStream());
+        } catch (IOException | SAXException | TransformerConfigurationException e) {
+            throw new Fault(e);
+        } finally {
+            // the decoded content stays readable, a temp file is deleted once it has been read
+            IOUtils.closeQuietly(xmlStream);
+        }
+
+        headers.put(HttpHeaders.CONTENT_ENCODING,
+                removeExi(headers.get(HttpHeaders.CONTENT_ENCODING)));
+    }
+
+    private static boolean isExiEncoded(List<String> contentEncodings) {
+        if (contentEncodings != null) {
+            for (String contentEncoding : contentEncodings) {
+                for (String coding : StringUtils.split(contentEncoding, ',')) {
+                    if (EXIOutInterceptor.EXI_ACCEPT_ENCODING.equalsIgnoreCase(coding.trim())) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static List<String> removeExi(List<String> contentEncodings) {
+        List<String> remaining = new ArrayList<>();
+        for (String contentEncoding : contentEncodings) {
+            for (String coding : StringUtils.split(contentEncoding, ',')) {
+                if (!EXIOutInterceptor.EXI_ACCEPT_ENCODING.equalsIgnoreCase(coding.trim())) {
+                    remaining.add(coding.trim());
+                }
+            }
+        }
+        return remaining;
+    }
+}
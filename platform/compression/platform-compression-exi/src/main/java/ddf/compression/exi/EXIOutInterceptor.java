@@ -16,10 +16,17 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 import javax.ws.rs.core.HttpHeaders;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
@@ -29,24 +36,44 @@
 import org.apache.cxf.message.Message;
 import org.apache.cxf.phase.AbstractPhaseInterceptor;
 import org.apache.cxf.phase.Phase;
+import org.openexi.schema.EXISchema;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Interceptor that converts message content to exi-encoding if supporting by calling client.
+ * Requests sent by a client advertise that EXI-encoded responses are accepted.
  */
 public class EXIOutInterceptor extends AbstractPhaseInterceptor<Message> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(EXIOutInterceptor.class);
 
-    private static final String EXI_ACCEPT_ENCODING = "x-exi";
+    static final String EXI_ACCEPT_ENCODING = "x-exi";
+
+    private static final String QUALITY_PARAMETER = "q=";
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
+    private final EXISchemaRegistry schemaRegistry;
 
     /**
      * Creates a new Interceptor that handles converting server responses to exi-encoding.
      */
     public EXIOutInterceptor() {
+        this(null);
+    }
+
+    /**
+     * Creates a new Interceptor that handles converting server responses to exi-encoding, using
+     * the registered schema for the response's namespace when schema-informed encoding is
+     * enabled.
+     *
+     * @param schemaRegistry Schemas responses can be encoded against, may be null
+     */
+    public EXIOutInterceptor(EXISchemaRegistry schemaRegistry) {
         super(Phase.PREPARE_SEND);
         addAfter(MessageSenderInterceptor.class.getName());
+        this.schemaRegistry = schemaRegistry;
     }
 
     @Override
@@ -55,20 +82,22 @@ public void handleMessage(Message message) {
         if (isRequestor(message)) {
             //client sending request
             LOGGER.trace("Not performing any EXI compression for initial request.");
+            addAcceptEncoding(message);
         } else {
             //server sending back response
             Message request = message.getExchange().getInMessage();
             Map<String, List<String>> requestHeaders = CastUtils
                     .cast((Map<?, ?>) request.get(Message.PROTOCOL_HEADERS));
             if (requestHeaders != null) {
-                String acceptEncodingHeader = StringUtils
-                        .join(requestHeaders.get(HttpHeaders.ACCEPT_ENCODING), ",");
-                if (StringUtils.isNotBlank(acceptEncodingHeader) && acceptEncodingHeader
-                        .contains(EXI_ACCEPT_ENCODING)) {
+                if (acceptsExi(requestHeaders.get(HttpHeaders.ACCEPT_ENCODING))) {
                     LOGGER.debug("Sending back response message using EXI-encoding.");
+                    Map<String, List<String>> responseHeaders = getProtocolHeaders(message);
                     OutputStream os = message.getContent(OutputStream.class);
-                    EXIOutputStream cached = new EXIOutputStream(os);
+                    EXIOutputStream cached = new EXIOutputStream(os, responseHeaders,
+                            schemaRegistry);
                     message.setContent(OutputStream.class, cached);
+                    responseHeaders.put(HttpHeaders.CONTENT_ENCODING,
+                            new ArrayList<>(Collections.singletonList(EXI_ACCEPT_ENCODING)));
                 } else {
                     LOGGER.debug("EXI encoding not accepted by the client, skipping EXI encoding.");
                 }
@@ -79,6 +108,75 @@ public void handleMessage(Message message) {
         }
     }
 
+    /**
+     * Checks whether an Accept-Encoding header lists EXI with a non-zero quality value.
+     *
+     * @param acceptEncodings values of the Accept-Encoding header
+     * @return true if EXI-encoded content is acceptable
+     */
+    static boolean acceptsExi(List<String> acceptEncodings) {
+        if (acceptEncodings == null) {
+            return false;
+        }
+
+        for (String acceptEncoding : acceptEncodings) {
+            String[] codings = StringUtils.split(StringUtils.defaultString(acceptEncoding), ',');
+            for (String coding : codings) {
+                String[] parameters = StringUtils.split(coding, ';');
+                if (parameters.length > 0 && EXI_ACCEPT_ENCODING
+                        .equalsIgnoreCase(parameters[0].trim())) {
+                    return getQuality(parameters) > 0;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static float getQuality(String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+            if (StringUtils.startsWithIgnoreCase(parameter, QUALITY_PARAMETER)) {
+                try {
+                    return Float.parseFloat(parameter.substring(QUALITY_PARAMETER.length()));
+                } catch (NumberFormatException e) {
+                    LOGGER.debug("Invalid quality value in Accept-Encoding [{}].", parameter);
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private void addAcceptEncoding(Message message) {
+        Map<String, List<String>> headers = getProtocolHeaders(message);
+        List<String> acceptEncodings = headers.get(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncodings == null) {
+            headers.put(HttpHeaders.ACCEPT_ENCODING,
+                    new ArrayList<>(Collections.singletonList(EXI_ACCEPT_ENCODING)));
+        } else if (!acceptsExi(acceptEncodings)) {
+            List<String> updated = new ArrayList<>(acceptEncodings);
+            updated.add(EXI_ACCEPT_ENCODING);
+            headers.put(HttpHeaders.ACCEPT_ENCODING, updated);
+        }
+    }
+
+    private static Map<String, List<String>> getProtocolHeaders(Message message) {
+        Map<String, List<String>> headers = CastUtils
+                .cast((Map<?, ?>) message.get(Message.PROTOCOL_HEADERS));
+        if (headers == null) {
+            headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            message.put(Message.PROTOCOL_HEADERS, headers);
+        }
+        return headers;
+    }
+
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return xmlInputFactory;
+    }
+
     /**
      * OutputStream that caches data and on close will encode the data into an exi format and send it out on the outputstream
      * provided in the constructor.
@@ -87,31 +185,93 @@ private static class EXIOutputStream extends CachedOutputStream {
 
         private OutputStream outStream;
 
+        private Map<String, List<String>> responseHeaders;
+
+        private EXISchemaRegistry schemaRegistry;
+
         /**
          * Create a new Exi-based output stream.
          *
-         * @param outStream Stream to write the exi-ecoded data to.
+         * @param outStream       Stream to write the exi-ecoded data to.
+         * @param responseHeaders Headers of the response, updated if encoding fails.
+         * @param schemaRegistry  Schemas the data can be encoded against, may be null.
          */
-        public EXIOutputStream(OutputStream outStream) {
+        public EXIOutputStream(OutputStream outStream, Map<String, List<String>> responseHeaders,
+                EXISchemaRegistry schemaRegistry) {
             super();
             this.outStream = outStream;
+            this.responseHeaders = responseHeaders;
+            this.schemaRegistry = schemaRegistry;
         }
 
         @Override
         protected void doClose() throws IOException {
-            InputStream xmlStream = null;
+            // The encoded data is cached as well, so nothing is written out if encoding fails.
+            CachedOutputStream exiStream = new CachedOutputStream();
             try {
-                xmlStream = getInputStream();
-                EXIEncoder.encode(xmlStream, outStream);
-            } catch (Exception exp) {
-                LOGGER.warn(
-                        "Encountered exception when trying to encode outgoing response into EXI. Sending back uncompressed response.",
-                        exp);
-                resetOut(outStream, true);
+                boolean encoded;
+                try {
+                    encode(exiStream);
+                    encoded = true;
+                } catch (Exception exp) {
+                    LOGGER.warn(
+                            "Encountered exception when trying to encode outgoing response into EXI. Sending back uncompressed response.",
+                            exp);
+                    encoded = false;
+                }
+
+                if (encoded) {
+                    try (InputStream exiData = exiStream.getInputStream()) {
+                        IOUtils.copy(exiData, outStream);
+                    }
+                } else {
+                    responseHeaders.remove(HttpHeaders.CONTENT_ENCODING);
+                    resetOut(outStream, true);
+                }
             } finally {
-                IOUtils.closeQuietly(xmlStream);
+                IOUtils.closeQuietly(exiStream);
+            }
+        }
+
+        private void encode(OutputStream exiStream) throws Exception {
+            String namespace = null;
+            EXISchema schema = null;
+            if (schemaRegistry != null && schemaRegistry.isSchemaInformedEncoding()) {
+                try (InputStream xmlStream = getInputStream()) {
+                    namespace = getRootNamespace(xmlStream);
+                }
+                schema = schemaRegistry.getSchema(namespace);
+            }
+
+            try (InputStream xmlStream = getInputStream()) {
+                EXIEncoder.encode(xmlStream, exiStream, schema, namespace);
             }
         }
 
+        /**
+         * Reads only as far as the root element to find the namespace of the document.
+         */
+        private String getRootNamespace(InputStream xmlStream) {
+            XMLStreamReader reader = null;
+            try {
+                reader = XML_INPUT_FACTORY.createXMLStreamReader(xmlStream);
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                        return reader.getNamespaceURI();
+                    }
+                }
+            } catch (XMLStreamException e) {
+                LOGGER.debug("Unable to read the root element of the response.", e);
+            } finally {
+                if (reader != null) {
+                    try {
+                        reader.close();
+                    } catch (XMLStreamException e) {
+                        LOGGER.debug("Unable to close reader.", e);
+                    }
+                }
+            }
+            return null;
+        }
     }
 }
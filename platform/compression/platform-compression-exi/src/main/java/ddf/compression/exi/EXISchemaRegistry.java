@@ -0,0 +1,197 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.compression.exi;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang.StringUtils;
+import org.openexi.proc.EXISchemaResolver;
+import org.openexi.proc.grammars.GrammarCache;
+import org.openexi.schema.EXISchema;
+import org.openexi.scomp.EXISchemaFactory;
+import org.openexi.scomp.EXISchemaFactoryException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.InputSource;
+
+/**
+ * Holds the XML schemas that EXI streams can be encoded and decoded against. Each schema is
+ * registered under the target namespace of the documents it describes, which is also the schema
+ * id written to the header of streams encoded against it.
+ * <br/>
+ * <br/>
+ * Compiling a schema into an EXI grammar is expensive, so each schema is compiled the first time
+ * it is needed and the result is kept until the schemas are reconfigured. A schema that fails to
+ * compile is not retried, and documents in its namespace are encoded without a schema.
+ * <br/>
+ * <br/>
+ * The CSW 2.0.2 and DDF metacard schemas, with the schemas they import, are bundled under
+ * {@code /schemas} and can be registered with {@code classpath:} locations, so compiling them
+ * does not need network access.
+ */
+public class EXISchemaRegistry implements EXISchemaResolver {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EXISchemaRegistry.class);
+
+    private static final String SCHEMA_SEPARATOR = "=";
+
+    private static final String CLASSPATH_PREFIX = "classpath:";
+
+    private volatile Map<String, String> schemaLocations = Collections.emptyMap();
+
+    private final ConcurrentMap<String, CompiledSchema> compiledSchemas = new ConcurrentHashMap<>();
+
+    private volatile boolean schemaInformedEncoding = false;
+
+    /**
+     * Sets the known schemas.
+     *
+     * @param schemas entries of the form {@code namespace=schemaLocation}, where the location is a
+     *                URL of the schema document, or {@code classpath:} followed by the path of a
+     *                schema bundled with this module
+     */
+    public void setSchemas(String[] schemas) {
+        Map<String, String> locations = new HashMap<>();
+        if (schemas != null) {
+            for (String schema : schemas) {
+                String namespace = StringUtils.trim(StringUtils.substringBefore(schema,
+                        SCHEMA_SEPARATOR));
+                String location = StringUtils.trim(StringUtils.substringAfter(schema,
+                        SCHEMA_SEPARATOR));
+                if (StringUtils.isBlank(namespace) || StringUtils.isBlank(location)) {
+                    LOGGER.warn("Ignoring EXI schema [{}], expected namespace=schemaLocation.",
+                            schema);
+                    continue;
+                }
+                locations.put(namespace, location);
+            }
+        }
+
+        schemaLocations = Collections.unmodifiableMap(locations);
+        compiledSchemas.clear();
+    }
+
+    /**
+     * Sets whether outgoing documents are encoded against their registered schema. Clients must
+     * have the same schema to decode such documents, so this is off by default; decoding always
+     * uses the registered schemas.
+     *
+     * @param schemaInformedEncoding true to encode against registered schemas
+     */
+    public void setSchemaInformedEncoding(boolean schemaInformedEncoding) {
+        this.schemaInformedEncoding = schemaInformedEncoding;
+    }
+
+    public boolean isSchemaInformedEncoding() {
+        return schemaInformedEncoding;
+    }
+
+    /**
+     * @param namespace target namespace of a document
+     * @return true if a schema is registered for the namespace, whether or not it compiles
+     */
+    public boolean hasSchema(String namespace) {
+        return namespace != null && schemaLocations.containsKey(namespace);
+    }
+
+    /**
+     * Gets the compiled schema for a namespace, compiling it if this is the first time it is
+     * needed.
+     *
+     * @param namespace target namespace of a document
+     * @return the compiled schema, or null if none is registered for the namespace or it could not
+     * be compiled
+     */
+    public EXISchema getSchema(String namespace) {
+        if (!hasSchema(namespace)) {
+            return null;
+        }
+
+        CompiledSchema compiledSchema = compiledSchemas.get(namespace);
+        if (compiledSchema == null) {
+            CompiledSchema newSchema = new CompiledSchema(schemaLocations.get(namespace));
+            compiledSchema = compiledSchemas.putIfAbsent(namespace, newSchema);
+            if (compiledSchema == null) {
+                compiledSchema = newSchema;
+            }
+        }
+        return compiledSchema.get();
+    }
+
+    /**
+     * Resolves the schema id found in the header of an EXI stream being decoded.
+     */
+    @Override
+    public GrammarCache resolveSchema(String schemaId, short grammarOptions) {
+        EXISchema schema = getSchema(schemaId);
+        if (schema == null) {
+            LOGGER.debug("No EXI schema is available for schema id [{}].", schemaId);
+            return null;
+        }
+        return new GrammarCache(schema, grammarOptions);
+    }
+
+    /**
+     * Compiles a schema once, on first use. Threads asking for the schema while it is being
+     * compiled wait for that compilation instead of starting their own.
+     */
+    private static class CompiledSchema {
+
+        private final String location;
+
+        private boolean compiled = false;
+
+        private EXISchema schema;
+
+        CompiledSchema(String location) {
+            this.location = location;
+        }
+
+        synchronized EXISchema get() {
+            if (!compiled) {
+                compiled = true;
+                try {
+                    LOGGER.debug("Compiling EXI grammar for schema {}.", location);
+                    schema = new EXISchemaFactory().compile(new InputSource(resolve(location)));
+                } catch (IOException | EXISchemaFactoryException | RuntimeException e) {
+                    LOGGER.warn("Unable to compile EXI grammar for schema {}. Documents for this "
+                            + "schema will be encoded without it.", location, e);
+                }
+            }
+            return schema;
+        }
+
+        /**
+         * @return the URL of the schema document, which relative imports are resolved against
+         */
+        private static String resolve(String location) throws IOException {
+            if (!location.startsWith(CLASSPATH_PREFIX)) {
+                return location;
+            }
+
+            URL resource = EXISchemaRegistry.class
+                    .getResource(location.substring(CLASSPATH_PREFIX.length()));
+            if (resource == null) {
+                throw new IOException("Schema " + location + " is not on the classpath.");
+            }
+            return resource.toExternalForm();
+        }
+    }
+}
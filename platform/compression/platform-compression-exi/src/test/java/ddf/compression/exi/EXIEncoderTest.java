@@ -13,14 +13,23 @@
  */
 package ddf.compression.exi;
 
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
-import static org.mockito.Mockito.mock;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.sax.SAXTransformerFactory;
@@ -35,6 +44,9 @@
 import org.openexi.proc.common.GrammarOptions;
 import org.openexi.proc.grammars.GrammarCache;
 import org.openexi.sax.EXIReader;
+import org.openexi.schema.EXISchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.xml.sax.InputSource;
 
 /**
@@ -42,8 +54,26 @@
  */
 public class EXIEncoderTest {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(EXIEncoderTest.class);
+
     private static final String TEST_FILE = "/atom-example.xml";
 
+    private static final String RECORDS_FILE = "/records.xml";
+
+    private static final String RECORDS_SCHEMA = "/records.xsd";
+
+    private static final String RECORDS_NAMESPACE = "urn:ddf:exi:test:records";
+
+    private static final String CSW_NAMESPACE = "http://www.opengis.net/cat/csw/2.0.2";
+
+    private static final String CSW_SCHEMA = "classpath:/schemas/csw/2.0.2/CSW-discovery.xsd";
+
+    private static final String METACARD_NAMESPACE = "urn:catalog:metacard";
+
+    private static final String METACARD_SCHEMA = "classpath:/schemas/metacard.xsd";
+
+    private static final int COMPARISON_RUNS = 5;
+
     @BeforeClass
     public static void setUp() {
         XMLUnit.setControlParser("org.apache.xerces.jaxp.DocumentBuilderFactoryImpl");
@@ -100,10 +130,168 @@ public void testEncode() throws Exception {
     /**
      * Tests that the decode method converts exi-compressed xml into 'normal' xml.
      */
-    @Test(expected = IllegalArgumentException.class)
-    public void testDecode() {
-        InputStream exiStream = mock(InputStream.class);
-        OutputStream xmlStream = mock(OutputStream.class);
-        EXIEncoder.decode(exiStream, xmlStream);
+    @Test
+    public void testDecode() throws Exception {
+        ByteArrayOutputStream exiStream = new ByteArrayOutputStream();
+        EXIEncoder.encode(getClass().getResourceAsStream(TEST_FILE), exiStream);
+
+        ByteArrayOutputStream xmlStream = new ByteArrayOutputStream();
+        EXIEncoder.decode(new ByteArrayInputStream(exiStream.toByteArray()), xmlStream);
+
+        assertSimilar(TEST_FILE, xmlStream.toString("UTF-8"));
+    }
+
+    /**
+     * Tests that xml encoded against a registered schema is decoded using the schema id written
+     * in the exi header.
+     */
+    @Test
+    public void testSchemaInformedRoundTrip() throws Exception {
+        EXISchemaRegistry registry = new EXISchemaRegistry();
+        registry.setSchemas(new String[] {
+                RECORDS_NAMESPACE + "=" + getClass().getResource(RECORDS_SCHEMA).toString()});
+        EXISchema schema = registry.getSchema(RECORDS_NAMESPACE);
+        assertThat(schema, notNullValue());
+
+        ByteArrayOutputStream schemaInformed = new ByteArrayOutputStream();
+        EXIEncoder.encode(getClass().getResourceAsStream(RECORDS_FILE), schemaInformed, schema,
+                RECORDS_NAMESPACE);
+        ByteArrayOutputStream schemaless = new ByteArrayOutputStream();
+        EXIEncoder.encode(getClass().getResourceAsStream(RECORDS_FILE), schemaless);
+        assertThat(schemaInformed.size(), lessThan(schemaless.size()));
+
+        ByteArrayOutputStream xmlStream = new ByteArrayOutputStream();
+        EXIEncoder.decode(new ByteArrayInputStream(schemaInformed.toByteArray()), xmlStream,
+                registry);
+
+        assertSimilar(RECORDS_FILE, xmlStream.toString("UTF-8"));
+    }
+
+    /**
+     * Tests that a schema that cannot be loaded is skipped rather than failing the encoding.
+     */
+    @Test
+    public void testMissingSchema() throws Exception {
+        EXISchemaRegistry registry = new EXISchemaRegistry();
+        registry.setSchemas(new String[] {RECORDS_NAMESPACE + "=file:/does/not/exist.xsd"});
+        assertThat(registry.hasSchema(RECORDS_NAMESPACE), is(true));
+        assertThat(registry.getSchema(RECORDS_NAMESPACE), nullValue());
+        assertThat(registry.resolveSchema(RECORDS_NAMESPACE, GrammarOptions.DEFAULT_OPTIONS),
+                nullValue());
+    }
+
+    /**
+     * Tests that the schemas bundled with the module compile from their classpath locations.
+     */
+    @Test
+    public void testBundledSchemas() {
+        EXISchemaRegistry registry = new EXISchemaRegistry();
+        registry.setSchemas(new String[] {CSW_NAMESPACE + "=" + CSW_SCHEMA,
+                METACARD_NAMESPACE + "=" + METACARD_SCHEMA,
+                RECORDS_NAMESPACE + "=classpath:/schemas/missing.xsd"});
+
+        assertThat(registry.getSchema(CSW_NAMESPACE), notNullValue());
+        assertThat(registry.getSchema(METACARD_NAMESPACE), notNullValue());
+        assertThat(registry.getSchema(RECORDS_NAMESPACE), nullValue());
+    }
+
+    /**
+     * Compares schema-informed exi, schemaless exi and gzip on the size and encoding cpu time of a
+     * CSW GetRecords response.
+     */
+    @Test
+    public void testCompressionComparedToGzip() throws Exception {
+        EXISchemaRegistry registry = new EXISchemaRegistry();
+        registry.setSchemas(new String[] {CSW_NAMESPACE + "=" + CSW_SCHEMA});
+        EXISchema schema = registry.getSchema(CSW_NAMESPACE);
+        assertThat(schema, notNullValue());
+
+        byte[] xml = createGetRecordsResponse(1000);
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        long[] cpuTimes = new long[3];
+        byte[] schemaInformed = null;
+        byte[] schemaless = null;
+        byte[] gzip = null;
+        for (int i = 0; i < COMPARISON_RUNS; i++) {
+            long start = threads.getCurrentThreadCpuTime();
+            ByteArrayOutputStream exiStream = new ByteArrayOutputStream();
+            EXIEncoder.encode(new ByteArrayInputStream(xml), exiStream, schema, CSW_NAMESPACE);
+            schemaInformed = exiStream.toByteArray();
+            long end = threads.getCurrentThreadCpuTime();
+            cpuTimes[0] += end - start;
+
+            start = end;
+            exiStream = new ByteArrayOutputStream();
+            EXIEncoder.encode(new ByteArrayInputStream(xml), exiStream);
+            schemaless = exiStream.toByteArray();
+            end = threads.getCurrentThreadCpuTime();
+            cpuTimes[1] += end - start;
+
+            start = end;
+            ByteArrayOutputStream gzipBytes = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzipStream = new GZIPOutputStream(gzipBytes)) {
+                gzipStream.write(xml);
+            }
+            gzip = gzipBytes.toByteArray();
+            cpuTimes[2] += threads.getCurrentThreadCpuTime() - start;
+        }
+
+        LOGGER.info("GetRecords response of {} bytes, average of {} runs: schema-informed EXI {} "
+                        + "bytes in {} ms cpu, EXI {} bytes in {} ms cpu, GZIP {} bytes in {} ms cpu",
+                xml.length, COMPARISON_RUNS, schemaInformed.length, averageMillis(cpuTimes[0]),
+                schemaless.length, averageMillis(cpuTimes[1]), gzip.length,
+                averageMillis(cpuTimes[2]));
+
+        assertThat(schemaInformed.length, lessThan(schemaless.length));
+        assertThat(schemaless.length, lessThan(xml.length));
+
+        ByteArrayOutputStream xmlStream = new ByteArrayOutputStream();
+        EXIEncoder.decode(new ByteArrayInputStream(schemaInformed), xmlStream, registry);
+        Diff diff = XMLUnit.compareXML(new String(xml, "UTF-8"), xmlStream.toString("UTF-8"));
+        assertTrue("The GetRecords response did not match the EXI-decoded output",
+                diff.similar());
+    }
+
+    private static long averageMillis(long cpuNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(cpuNanos / COMPARISON_RUNS);
+    }
+
+    private byte[] createGetRecordsResponse(int count) throws IOException {
+        StringBuilder builder = new StringBuilder(
+                "<csw:GetRecordsResponse xmlns:csw=\"" + CSW_NAMESPACE + "\" "
+                        + "xmlns:dc=\"http://purl.org/dc/elements/1.1/\" "
+                        + "xmlns:dct=\"http://purl.org/dc/terms/\" "
+                        + "xmlns:ows=\"http://www.opengis.net/ows\" version=\"2.0.2\">"
+                        + "<csw:SearchStatus timestamp=\"2014-03-01T12:00:00Z\"/>"
+                        + "<csw:SearchResults numberOfRecordsMatched=\"" + count
+                        + "\" numberOfRecordsReturned=\"" + count + "\" nextRecord=\"0\" "
+                        + "recordSchema=\"" + CSW_NAMESPACE + "\" elementSet=\"full\">");
+        for (int i = 0; i < count; i++) {
+            builder.append("<csw:Record><dc:identifier>").append(UUID.nameUUIDFromBytes(
+                    String.valueOf(i).getBytes("UTF-8"))).append("</dc:identifier>")
+                    .append("<dc:title>Harbor imagery ").append(i).append("</dc:title>")
+                    .append("<dc:type>Image</dc:type>")
+                    .append("<dc:format>image/nitf</dc:format>")
+                    .append("<dct:modified>2014-03-01T12:00:00Z</dct:modified>")
+                    .append("<ows:BoundingBox crs=\"urn:ogc:def:crs:EPSG:6.6:4326\">")
+                    .append("<ows:LowerCorner>").append(i % 90).append(" ").append(i % 180)
+                    .append("</ows:LowerCorner><ows:UpperCorner>").append(i % 90 + 1)
+                    .append(" ").append(i % 180 + 1)
+                    .append("</ows:UpperCorner></ows:BoundingBox></csw:Record>");
+        }
+        builder.append("</csw:SearchResults></csw:GetRecordsResponse>");
+        return builder.toString().getBytes("UTF-8");
+    }
+
+    private void assertSimilar(String expectedFile, String actualXml) throws Exception {
+        XMLUnit.setNormalize(true);
+        XMLUnit.setNormalizeWhitespace(true);
+        XMLUnit.setIgnoreComments(true);
+        InputStream stream = getClass().getResourceAsStream(expectedFile);
+        Diff diff = XMLUnit.compareXML(IOUtils.toString(stream), actualXml);
+        IOUtils.closeQuietly(stream);
+        assertTrue("The XML input file (" + expectedFile + ") did not match the EXI-decoded output",
+                diff.similar());
     }
 }
@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.compression.exi;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Tests the Accept-Encoding negotiation of the EXIOutInterceptor class.
+ */
+public class EXIOutInterceptorTest {
+
+    @Test
+    public void testAcceptsExi() {
+        assertThat(EXIOutInterceptor.acceptsExi(Collections.singletonList("x-exi")), is(true));
+        assertThat(EXIOutInterceptor.acceptsExi(Collections.singletonList("gzip, X-EXI;q=0.5")),
+                is(true));
+        assertThat(EXIOutInterceptor.acceptsExi(Arrays.asList("gzip", "x-exi")), is(true));
+    }
+
+    @Test
+    public void testRefusesExi() {
+        assertThat(EXIOutInterceptor.acceptsExi(null), is(false));
+        assertThat(EXIOutInterceptor.acceptsExi(Collections.singletonList("gzip, deflate")),
+                is(false));
+        assertThat(EXIOutInterceptor.acceptsExi(Collections.singletonList("x-exi;q=0")),
+                is(false));
+        assertThat(EXIOutInterceptor.acceptsExi(Collections.singletonList("x-exif")), is(false));
+    }
+}
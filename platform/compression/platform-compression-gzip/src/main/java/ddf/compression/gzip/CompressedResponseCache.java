@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.compression.gzip;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps compressed response bodies in memory so a response that is sent again with the same
+ * entity tag does not have to be compressed again. When the total size of the cached bodies grows
+ * past the configured maximum, the least recently used ones are dropped.
+ */
+class CompressedResponseCache {
+
+    private static final long BYTES_PER_KB = 1024L;
+
+    /**
+     * Cached bodies by key, in least recently used order.
+     */
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long maxCacheSize;
+
+    private int maxEntrySize;
+
+    private long cacheSize = 0;
+
+    CompressedResponseCache(long maxCacheSizeKB, int maxEntrySizeKB) {
+        setMaxCacheSizeKB(maxCacheSizeKB);
+        setMaxEntrySizeKB(maxEntrySizeKB);
+    }
+
+    /**
+     * @param maxCacheSizeKB total size of the cached bodies, 0 disables caching
+     */
+    synchronized void setMaxCacheSizeKB(long maxCacheSizeKB) {
+        this.maxCacheSize = Math.max(0, maxCacheSizeKB) * BYTES_PER_KB;
+        evict();
+    }
+
+    /**
+     * @param maxEntrySizeKB size of the largest compressed body that is cached
+     */
+    synchronized void setMaxEntrySizeKB(int maxEntrySizeKB) {
+        this.maxEntrySize = (int) Math.min(Integer.MAX_VALUE,
+                Math.max(0, maxEntrySizeKB) * BYTES_PER_KB);
+    }
+
+    synchronized int getMaxEntrySize() {
+        return maxCacheSize > 0 ? (int) Math.min(maxEntrySize, maxCacheSize) : 0;
+    }
+
+    synchronized byte[] get(String key) {
+        return entries.get(key);
+    }
+
+    synchronized void put(String key, byte[] compressed) {
+        if (compressed.length > getMaxEntrySize()) {
+            return;
+        }
+
+        byte[] previous = entries.put(key, compressed);
+        if (previous != null) {
+            cacheSize -= previous.length;
+        }
+        cacheSize += compressed.length;
+        evict();
+    }
+
+    synchronized long size() {
+        return cacheSize;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, byte[]>> iterator = entries.entrySet().iterator();
+        while (cacheSize > maxCacheSize && iterator.hasNext()) {
+            cacheSize -= iterator.next().getValue().length;
+            iterator.remove();
+        }
+    }
+}
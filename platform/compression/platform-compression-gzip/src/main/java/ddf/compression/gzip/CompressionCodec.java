@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.compression.gzip;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * HTTP content codings the {@link CompressionOutInterceptor} can encode responses with, in order
+ * of preference when a client accepts several with the same quality.
+ */
+enum CompressionCodec {
+
+    GZIP("gzip") {
+        @Override
+        OutputStream wrap(OutputStream out) throws IOException {
+            return new GZIPOutputStream(out, BUFFER_SIZE);
+        }
+    },
+
+    /**
+     * The HTTP deflate coding is the zlib format, which is what {@link DeflaterOutputStream}
+     * writes by default.
+     */
+    DEFLATE("deflate") {
+        @Override
+        OutputStream wrap(OutputStream out) {
+            return new DeflaterOutputStream(out, new Deflater(), BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        def.end();
+                    }
+                }
+            };
+        }
+    };
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final String encoding;
+
+    CompressionCodec(String encoding) {
+        this.encoding = encoding;
+    }
+
+    /**
+     * @return the value of the Content-Encoding header for this codec
+     */
+    String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Wraps a stream so data written to the returned stream is written compressed to the given
+     * one. Closing the returned stream finishes the compressed data and closes the given stream.
+     */
+    abstract OutputStream wrap(OutputStream out) throws IOException;
+
+    static CompressionCodec forEncoding(String encoding) {
+        for (CompressionCodec codec : values()) {
+            if (codec.encoding.equalsIgnoreCase(encoding)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.compression.gzip;
+
+import java.util.List;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.common.injection.NoJSR250Annotations;
+import org.apache.cxf.feature.AbstractFeature;
+import org.apache.cxf.interceptor.InterceptorProvider;
+import org.apache.cxf.transport.common.gzip.GZIPInInterceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ddf.mime.MimeTypeMapper;
+
+/**
+ * Controls gzip and deflate compression of CXF-based messages.
+ * Attaching this feature to a cxf endpoint (jaxws:endpoint or jaxrs:server) will allow the server
+ * to compress responses when the client accepts it, and to read compressed messages it receives.
+ * All endpoints share one {@link CompressionOutInterceptor}, so configuration changes apply to
+ * endpoints the feature was already attached to.
+ */
+@NoJSR250Annotations
+public class CompressionFeature extends AbstractFeature {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompressionFeature.class);
+
+    private final CompressionOutInterceptor outInterceptor = new CompressionOutInterceptor();
+
+    private final GZIPInInterceptor inInterceptor = new GZIPInInterceptor();
+
+    public void setMinimumSize(int minimumSize) {
+        outInterceptor.setMinimumSize(minimumSize);
+    }
+
+    public void setIncompressibleExtensions(String[] incompressibleExtensions) {
+        outInterceptor.setIncompressibleExtensions(incompressibleExtensions);
+    }
+
+    public void setMimeTypeMappers(List<MimeTypeMapper> mimeTypeMappers) {
+        outInterceptor.setMimeTypeMappers(mimeTypeMappers);
+    }
+
+    public void setMaxCacheSizeKB(long maxCacheSizeKB) {
+        outInterceptor.setMaxCacheSizeKB(maxCacheSizeKB);
+    }
+
+    public void setMaxCacheEntrySizeKB(int maxCacheEntrySizeKB) {
+        outInterceptor.setMaxCacheEntrySizeKB(maxCacheEntrySizeKB);
+    }
+
+    @Override
+    protected void initializeProvider(InterceptorProvider provider, Bus bus) {
+        provider.getInInterceptors().add(inInterceptor);
+        provider.getInFaultInterceptors().add(inInterceptor);
+        provider.getOutInterceptors().add(outInterceptor);
+        provider.getOutFaultInterceptors().add(outInterceptor);
+        LOGGER.debug("Added compression interceptors to provider.");
+    }
+}
@@ -0,0 +1,612 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.compression.gzip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.ws.rs.core.HttpHeaders;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.cxf.helpers.CastUtils;
+import org.apache.cxf.interceptor.MessageSenderInterceptor;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ddf.mime.MimeTypeMapper;
+import ddf.mime.MimeTypeResolutionException;
+
+/**
+ * Interceptor that compresses responses with gzip or deflate, whichever the client prefers.
+ * <br/>
+ * Responses smaller than the minimum size, responses that already have a content encoding (such
+ * as EXI) and responses whose content type maps to a file extension of an already compressed
+ * format are sent as they are. Compressed bodies of complete (200) responses with a strong
+ * entity tag are cached, so a popular response is only compressed once for each codec.
+ */
+public class CompressionOutInterceptor extends AbstractPhaseInterceptor<Message> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompressionOutInterceptor.class);
+
+    /**
+     * Sent on client requests, the same as the CXF GZIP interceptor sends.
+     */
+    private static final String CLIENT_ACCEPT_ENCODING = "gzip;q=1.0, identity; q=0.5, *;q=0";
+
+    private static final String EXI_OUT_INTERCEPTOR = "ddf.compression.exi.EXIOutInterceptor";
+
+    private static final String IDENTITY_ENCODING = "identity";
+
+    private static final String ANY_ENCODING = "*";
+
+    private static final String QUALITY_PARAMETER = "q=";
+
+    private static final String WEAK_ENTITY_TAG_PREFIX = "W/";
+
+    private static final String NO_STORE = "no-store";
+
+    private static final String HOST = "Host";
+
+    private static final String RANGE = "Range";
+
+    private static final String CONTENT_RANGE = "Content-Range";
+
+    private static final int OK = 200;
+
+    private static final int DEFAULT_MINIMUM_SIZE = 1024;
+
+    private static final long DEFAULT_MAX_CACHE_SIZE_KB = 16384;
+
+    private static final int DEFAULT_MAX_CACHE_ENTRY_SIZE_KB = 1024;
+
+    private static final String[] DEFAULT_INCOMPRESSIBLE_EXTENSIONS = {"jpg", "jpeg", "jp2",
+            "j2k", "jpx", "png", "gif", "zip", "gz", "tgz", "bz2", "7z", "jar", "mp3", "mp4",
+            "mpeg", "mpg", "mov", "avi"};
+
+    private final CompressedResponseCache cache = new CompressedResponseCache(
+            DEFAULT_MAX_CACHE_SIZE_KB, DEFAULT_MAX_CACHE_ENTRY_SIZE_KB);
+
+    private volatile int minimumSize = DEFAULT_MINIMUM_SIZE;
+
+    private volatile Set<String> incompressibleExtensions = toExtensions(
+            DEFAULT_INCOMPRESSIBLE_EXTENSIONS);
+
+    private volatile List<MimeTypeMapper> mimeTypeMappers = Collections.emptyList();
+
+    public CompressionOutInterceptor() {
+        super(Phase.PREPARE_SEND);
+        addAfter(MessageSenderInterceptor.class.getName());
+        addAfter(EXI_OUT_INTERCEPTOR);
+    }
+
+    /**
+     * @param minimumSize size in bytes below which responses are not compressed
+     */
+    public void setMinimumSize(int minimumSize) {
+        this.minimumSize = Math.max(1, minimumSize);
+    }
+
+    /**
+     * @param incompressibleExtensions file extensions of formats that are already compressed;
+     *                                 responses with a content type mapped to one of them are
+     *                                 not compressed again
+     */
+    public void setIncompressibleExtensions(String[] incompressibleExtensions) {
+        this.incompressibleExtensions = toExtensions(
+                incompressibleExtensions == null ? new String[0] : incompressibleExtensions);
+    }
+
+    /**
+     * @param mimeTypeMappers mappers used to find the file extension of a response's content type
+     */
+    public void setMimeTypeMappers(List<MimeTypeMapper> mimeTypeMappers) {
+        this.mimeTypeMappers =
+                mimeTypeMappers == null ? Collections.<MimeTypeMapper>emptyList() : mimeTypeMappers;
+    }
+
+    /**
+     * @param maxCacheSizeKB total size of cached compressed responses, 0 disables the cache
+     */
+    public void setMaxCacheSizeKB(long maxCacheSizeKB) {
+        cache.setMaxCacheSizeKB(maxCacheSizeKB);
+    }
+
+    /**
+     * @param maxCacheEntrySizeKB size of the largest compressed response that is cached
+     */
+    public void setMaxCacheEntrySizeKB(int maxCacheEntrySizeKB) {
+        cache.setMaxEntrySizeKB(maxCacheEntrySizeKB);
+    }
+
+    @Override
+    public void handleMessage(Message message) {
+        if (isRequestor(message)) {
+            addAcceptEncoding(message);
+            return;
+        }
+
+        Message request = message.getExchange().getInMessage();
+        if (request == null) {
+            return;
+        }
+
+        Map<String, List<Object>> requestHeaders = CastUtils
+                .cast((Map<?, ?>) request.get(Message.PROTOCOL_HEADERS));
+        CompressionCodec codec = selectCodec(getHeaderValues(requestHeaders,
+                HttpHeaders.ACCEPT_ENCODING));
+        OutputStream os = message.getContent(OutputStream.class);
+        if (codec == null || os == null) {
+            LOGGER.trace("Compression not accepted by the client, sending response as is.");
+            return;
+        }
+
+        String requestUri = (String) request.get(Message.REQUEST_URI);
+        String queryString = (String) request.get(Message.QUERY_STRING);
+        if (queryString != null) {
+            requestUri += '?' + queryString;
+        }
+
+        // the same path can name different content on another host, and range requests only
+        // get part of the content
+        String requestKey = null;
+        if (getHeader(requestHeaders, RANGE) == null) {
+            requestKey = StringUtils.defaultString(getHeader(requestHeaders, HOST)) + ' '
+                    + requestUri;
+        }
+        message.setContent(OutputStream.class,
+                new CompressingOutputStream(os, message, codec, requestUri, requestKey));
+    }
+
+    /**
+     * Chooses the codec with the highest quality value in an Accept-Encoding header.
+     *
+     * @param acceptEncodings values of the Accept-Encoding header
+     * @return the codec to compress with, or null if the client does not accept any
+     */
+    static CompressionCodec selectCodec(List<String> acceptEncodings) {
+        float[] qualities = new float[CompressionCodec.values().length];
+        float anyQuality = 0;
+        boolean[] listed = new boolean[qualities.length];
+        for (String acceptEncoding : acceptEncodings) {
+            for (String coding : StringUtils
+                    .split(StringUtils.defaultString(acceptEncoding), ',')) {
+                String[] parameters = StringUtils.split(coding, ';');
+                if (parameters.length == 0) {
+                    continue;
+                }
+
+                String encoding = parameters[0].trim();
+                float quality = getQuality(parameters);
+                CompressionCodec codec = CompressionCodec.forEncoding(encoding);
+                if (codec != null) {
+                    qualities[codec.ordinal()] = quality;
+                    listed[codec.ordinal()] = true;
+                } else if (ANY_ENCODING.equals(encoding)) {
+                    anyQuality = quality;
+                }
+            }
+        }
+
+        CompressionCodec selected = null;
+        float selectedQuality = 0;
+        for (CompressionCodec codec : CompressionCodec.values()) {
+            float quality = listed[codec.ordinal()] ? qualities[codec.ordinal()] : anyQuality;
+            if (quality > selectedQuality) {
+                selected = codec;
+                selectedQuality = quality;
+            }
+        }
+        return selected;
+    }
+
+    private static float getQuality(String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+            if (StringUtils.startsWithIgnoreCase(parameter, QUALITY_PARAMETER)) {
+                try {
+                    return Float.parseFloat(parameter.substring(QUALITY_PARAMETER.length()));
+                } catch (NumberFormatException e) {
+                    LOGGER.debug("Invalid quality value in Accept-Encoding [{}].", parameter);
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Checks whether the content type maps to the file extension of an already compressed
+     * format. Content types no mapper knows are compressed.
+     */
+    boolean isCompressible(String contentType) {
+        if (StringUtils.isBlank(contentType)) {
+            return true;
+        }
+
+        String mimeType = StringUtils.substringBefore(contentType, ";").trim();
+        for (MimeTypeMapper mimeTypeMapper : mimeTypeMappers) {
+            try {
+                String extension = mimeTypeMapper.getFileExtensionForMimeType(mimeType);
+                if (StringUtils.isNotBlank(extension)) {
+                    return !incompressibleExtensions.contains(normalizeExtension(extension));
+                }
+            } catch (MimeTypeResolutionException e) {
+                LOGGER.debug("Unable to find the file extension of {}.", mimeType, e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Advertises gzip on client requests. An Accept-Encoding header set by another interceptor,
+     * such as the EXI one, is kept and gzip is added to it.
+     */
+    private void addAcceptEncoding(Message message) {
+        Map<String, List<Object>> headers = getProtocolHeaders(message);
+        List<String> acceptEncodings = getHeaderValues(headers, HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncodings.isEmpty()) {
+            headers.put(HttpHeaders.ACCEPT_ENCODING,
+                    new ArrayList<Object>(Collections.singletonList(CLIENT_ACCEPT_ENCODING)));
+        } else if (!isListed(acceptEncodings, CompressionCodec.GZIP.getEncoding())) {
+            removeHeader(headers, HttpHeaders.ACCEPT_ENCODING);
+            headers.put(HttpHeaders.ACCEPT_ENCODING, new ArrayList<Object>(
+                    Collections.singletonList(StringUtils.join(acceptEncodings, ", ") + ", "
+                            + CompressionCodec.GZIP.getEncoding())));
+        }
+    }
+
+    private static boolean isListed(List<String> acceptEncodings, String encoding) {
+        for (String acceptEncoding : acceptEncodings) {
+            for (String coding : StringUtils
+                    .split(StringUtils.defaultString(acceptEncoding), ',')) {
+                if (encoding.equalsIgnoreCase(
+                        StringUtils.substringBefore(coding, ";").trim())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Set<String> toExtensions(String[] extensions) {
+        Set<String> normalized = new HashSet<>();
+        for (String extension : extensions) {
+            if (StringUtils.isNotBlank(extension)) {
+                normalized.add(normalizeExtension(extension));
+            }
+        }
+        return normalized;
+    }
+
+    private static String normalizeExtension(String extension) {
+        return StringUtils.removeStart(extension.trim(), ".").toLowerCase(Locale.ENGLISH);
+    }
+
+    private static Map<String, List<Object>> getProtocolHeaders(Message message) {
+        Map<String, List<Object>> headers = CastUtils
+                .cast((Map<?, ?>) message.get(Message.PROTOCOL_HEADERS));
+        if (headers == null) {
+            headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            message.put(Message.PROTOCOL_HEADERS, headers);
+        }
+        return headers;
+    }
+
+    /**
+     * Header names are matched ignoring case, since JAX-RS responses do not use a case
+     * insensitive map. Values may be objects such as entity tags rather than strings.
+     */
+    private static List<String> getHeaderValues(Map<String, List<Object>> headers, String name) {
+        List<String> values = new ArrayList<>();
+        if (headers != null) {
+            for (Map.Entry<String, List<Object>> header : headers.entrySet()) {
+                if (name.equalsIgnoreCase(header.getKey()) && header.getValue() != null) {
+                    for (Object value : header.getValue()) {
+                        values.add(String.valueOf(value));
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    private static String getHeader(Map<String, List<Object>> headers, String name) {
+        List<String> values = getHeaderValues(headers, name);
+        return values.isEmpty() ? null : StringUtils.join(values, ',');
+    }
+
+    private static void removeHeader(Map<String, List<Object>> headers, String name) {
+        Iterator<String> names = headers.keySet().iterator();
+        while (names.hasNext()) {
+            if (name.equalsIgnoreCase(names.next())) {
+                names.remove();
+            }
+        }
+    }
+
+    /**
+     * Stream that buffers the start of the response until the minimum size is reached or the
+     * stream is closed, then decides how the response is sent. By then the response headers,
+     * such as the content type and entity tag, are known.
+     */
+    private class CompressingOutputStream extends OutputStream {
+
+        private final OutputStream out;
+
+        private final Message message;
+
+        private final CompressionCodec codec;
+
+        private final String requestUri;
+
+        private final String requestKey;
+
+        private final int threshold = minimumSize;
+
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        private OutputStream target;
+
+        private CachingOutputStream cachingStream;
+
+        private String cacheKey;
+
+        private long length = 0;
+
+        private boolean closed = false;
+
+        /**
+         * @param requestKey identifies the requested content, or null if the response must not be
+         *                   cached
+         */
+        CompressingOutputStream(OutputStream out, Message message, CompressionCodec codec,
+                String requestUri, String requestKey) {
+            this.out = out;
+            this.message = message;
+            this.codec = codec;
+            this.requestUri = requestUri;
+            this.requestKey = requestKey;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            length += len;
+            if (target != null) {
+                target.write(b, off, len);
+                return;
+            }
+
+            buffer.write(b, off, len);
+            if (buffer.size() >= threshold) {
+                start(true);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // Until the response is started, flushing would commit the headers too early.
+            if (target != null) {
+                target.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            if (target == null) {
+                start(false);
+            }
+            target.close();
+
+            if (cachingStream != null && cachingStream.isComplete() && isEntireResponse()) {
+                cache.put(cacheKey, cachingStream.getCopy());
+                LOGGER.debug("Cached {} compressed response for {}.", codec.getEncoding(),
+                        requestUri);
+            }
+        }
+
+        private void start(boolean thresholdReached) throws IOException {
+            Map<String, List<Object>> headers = getProtocolHeaders(message);
+            String contentType = (String) message.get(Message.CONTENT_TYPE);
+            if (contentType == null) {
+                contentType = getHeader(headers, HttpHeaders.CONTENT_TYPE);
+            }
+            String contentEncoding = getHeader(headers, HttpHeaders.CONTENT_ENCODING);
+
+            if (!thresholdReached) {
+                LOGGER.trace("Response is below the minimum size, sending it as is.");
+                target = out;
+            } else if (StringUtils.isNotBlank(contentEncoding) && !IDENTITY_ENCODING
+                    .equalsIgnoreCase(contentEncoding)) {
+                LOGGER.trace("Response is already {} encoded.", contentEncoding);
+                target = out;
+            } else if (!isCompressible(contentType)) {
+                LOGGER.debug("Not compressing response of type {}.", contentType);
+                target = out;
+            } else {
+                removeHeader(headers, HttpHeaders.CONTENT_LENGTH);
+                removeHeader(headers, HttpHeaders.CONTENT_ENCODING);
+                headers.put(HttpHeaders.CONTENT_ENCODING,
+                        new ArrayList<Object>(Collections.singletonList(codec.getEncoding())));
+                addVary(headers);
+                target = startCompression(headers, contentType);
+            }
+
+            buffer.writeTo(target);
+            buffer = null;
+        }
+
+        private OutputStream startCompression(Map<String, List<Object>> headers,
+                String contentType) throws IOException {
+            cacheKey = getCacheKey(headers, contentType);
+            if (cacheKey == null) {
+                return codec.wrap(out);
+            }
+
+            byte[] cached = cache.get(cacheKey);
+            if (cached != null) {
+                LOGGER.debug("Sending cached {} compressed response for {}.",
+                        codec.getEncoding(), requestUri);
+                out.write(cached);
+                return new DiscardingOutputStream(out);
+            }
+
+            cachingStream = new CachingOutputStream(out, cache.getMaxEntrySize());
+            return codec.wrap(cachingStream);
+        }
+
+        /**
+         * Only complete, successful responses with a strong entity tag are cached, since the tag
+         * promises that the bytes are identical each time it is sent.
+         */
+        private String getCacheKey(Map<String, List<Object>> headers, String contentType) {
+            if (requestKey == null || !isOk() || getHeader(headers, CONTENT_RANGE) != null) {
+                return null;
+            }
+
+            String entityTag = getHeader(headers, HttpHeaders.ETAG);
+            String cacheControl = getHeader(headers, HttpHeaders.CACHE_CONTROL);
+            if (StringUtils.isBlank(entityTag) || entityTag.startsWith(WEAK_ENTITY_TAG_PREFIX)
+                    || StringUtils.containsIgnoreCase(cacheControl, NO_STORE)
+                    || cache.getMaxEntrySize() == 0) {
+                return null;
+            }
+            return codec.getEncoding() + ' ' + contentType + ' ' + requestKey + ' ' + entityTag;
+        }
+
+        private boolean isOk() {
+            Integer responseCode = (Integer) message.get(Message.RESPONSE_CODE);
+            return responseCode == null || responseCode == OK;
+        }
+
+        /**
+         * A response that failed part way through or is shorter than its declared length is not
+         * cached.
+         */
+        private boolean isEntireResponse() {
+            if (message.getContent(Exception.class) != null) {
+                return false;
+            }
+            String contentLength = getHeader(getProtocolHeaders(message),
+                    HttpHeaders.CONTENT_LENGTH);
+            return contentLength == null || String.valueOf(length).equals(contentLength.trim());
+        }
+
+        private void addVary(Map<String, List<Object>> headers) {
+            String vary = getHeader(headers, HttpHeaders.VARY);
+            if (vary == null) {
+                headers.put(HttpHeaders.VARY, new ArrayList<Object>(
+                        Collections.singletonList(HttpHeaders.ACCEPT_ENCODING)));
+            } else if (!StringUtils.containsIgnoreCase(vary, HttpHeaders.ACCEPT_ENCODING)) {
+                removeHeader(headers, HttpHeaders.VARY);
+                headers.put(HttpHeaders.VARY, new ArrayList<Object>(
+                        Arrays.asList(vary, HttpHeaders.ACCEPT_ENCODING)));
+            }
+        }
+    }
+
+    /**
+     * Writes through to the wrapped stream, keeping a copy of the data written as long as it is no
+     * larger than the given limit.
+     */
+    private static class CachingOutputStream extends FilterOutputStream {
+
+        private final int limit;
+
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        CachingOutputStream(OutputStream out, int limit) {
+            super(out);
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (copy != null) {
+                copy.write(b);
+                checkLimit();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (copy != null) {
+                copy.write(b, off, len);
+                checkLimit();
+            }
+        }
+
+        boolean isComplete() {
+            return copy != null;
+        }
+
+        byte[] getCopy() {
+            return copy.toByteArray();
+        }
+
+        private void checkLimit() {
+            if (copy.size() > limit) {
+                copy = null;
+            }
+        }
+    }
+
+    /**
+     * Discards the data written, used once a cached response has been sent in its place.
+     */
+    private static class DiscardingOutputStream extends FilterOutputStream {
+
+        DiscardingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+        }
+    }
+}
@@ -0,0 +1,361 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package ddf.compression.gzip;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.ws.rs.core.EntityTag;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.cxf.helpers.CastUtils;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ddf.mime.MimeTypeMapper;
+import ddf.mime.MimeTypeResolutionException;
+
+public class CompressionOutInterceptorTest {
+
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(CompressionOutInterceptorTest.class);
+
+    private static final String XML = "application/xml";
+
+    private static final byte[] METACARD_XML = createMetacardXml(2000);
+
+    private CompressionOutInterceptor interceptor;
+
+    @Before
+    public void setUp() throws MimeTypeResolutionException {
+        MimeTypeMapper mimeTypeMapper = mock(MimeTypeMapper.class);
+        when(mimeTypeMapper.getFileExtensionForMimeType(XML)).thenReturn(".xml");
+        when(mimeTypeMapper.getFileExtensionForMimeType("image/jpeg")).thenReturn(".jpeg");
+
+        interceptor = new CompressionOutInterceptor();
+        interceptor.setMimeTypeMappers(Collections.singletonList(mimeTypeMapper));
+    }
+
+    @Test
+    public void testSelectCodec() {
+        assertThat(select("gzip"), is(CompressionCodec.GZIP));
+        assertThat(select("deflate"), is(CompressionCodec.DEFLATE));
+        assertThat(select("deflate, gzip"), is(CompressionCodec.GZIP));
+        assertThat(select("gzip;q=0.5, deflate"), is(CompressionCodec.DEFLATE));
+        assertThat(select("*"), is(CompressionCodec.GZIP));
+        assertThat(select("gzip;q=0, *;q=0.1"), is(CompressionCodec.DEFLATE));
+        assertThat(select("identity, x-exi"), nullValue());
+        assertThat(select("gzip;q=0, deflate;q=bad"), nullValue());
+        assertThat(CompressionOutInterceptor.selectCodec(Collections.<String>emptyList()),
+                nullValue());
+    }
+
+    @Test
+    public void testGzipResponse() throws IOException {
+        Message response = send("gzip, deflate", XML, new HashMap<String, List<Object>>());
+
+        assertThat(getHeader(response, "Content-Encoding"), is("gzip"));
+        assertThat(getHeader(response, "Vary"), is("Accept-Encoding"));
+        assertTrue(Arrays.equals(METACARD_XML,
+                IOUtils.toByteArray(new GZIPInputStream(getBody(response)))));
+    }
+
+    @Test
+    public void testDeflateResponse() throws IOException {
+        Message response = send("deflate", XML, new HashMap<String, List<Object>>());
+
+        assertThat(getHeader(response, "Content-Encoding"), is("deflate"));
+        assertTrue(Arrays.equals(METACARD_XML,
+                IOUtils.toByteArray(new InflaterInputStream(getBody(response)))));
+    }
+
+    @Test
+    public void testSmallResponseNotCompressed() throws IOException {
+        byte[] body = createMetacardXml(1);
+        Message response = send("gzip", XML, new HashMap<String, List<Object>>(), body);
+
+        assertThat(getHeader(response, "Content-Encoding"), nullValue());
+        assertTrue(Arrays.equals(body, IOUtils.toByteArray(getBody(response))));
+    }
+
+    @Test
+    public void testIncompressibleTypeNotCompressed() throws IOException {
+        Message response = send("gzip", "image/jpeg", new HashMap<String, List<Object>>());
+
+        assertThat(getHeader(response, "Content-Encoding"), nullValue());
+        assertTrue(Arrays.equals(METACARD_XML, IOUtils.toByteArray(getBody(response))));
+
+        interceptor.setIncompressibleExtensions(new String[] {"png"});
+        response = send("gzip", "image/jpeg", new HashMap<String, List<Object>>());
+        assertThat(getHeader(response, "Content-Encoding"), is("gzip"));
+    }
+
+    @Test
+    public void testEncodedResponseNotCompressed() throws IOException {
+        Map<String, List<Object>> headers = new HashMap<>();
+        headers.put("Content-Encoding", new ArrayList<Object>(Collections.singletonList("x-exi")));
+        Message response = send("gzip, x-exi", XML, headers);
+
+        assertThat(getHeader(response, "Content-Encoding"), is("x-exi"));
+        assertTrue(Arrays.equals(METACARD_XML, IOUtils.toByteArray(getBody(response))));
+    }
+
+    @Test
+    public void testNotAccepted() throws IOException {
+        Message response = send(null, XML, new HashMap<String, List<Object>>());
+
+        assertThat(getHeader(response, "Content-Encoding"), nullValue());
+        assertTrue(Arrays.equals(METACARD_XML, IOUtils.toByteArray(getBody(response))));
+    }
+
+    @Test
+    public void testClientAcceptsGzip() {
+        Message request = new MessageImpl();
+        request.put(Message.REQUESTOR_ROLE, Boolean.TRUE);
+
+        interceptor.handleMessage(request);
+
+        assertThat(getHeader(request, "Accept-Encoding"), is("gzip;q=1.0, identity; q=0.5, *;q=0"));
+    }
+
+    @Test
+    public void testClientAddsGzipToAcceptEncoding() {
+        Message request = new MessageImpl();
+        request.put(Message.REQUESTOR_ROLE, Boolean.TRUE);
+        Map<String, List<Object>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.put("Accept-Encoding", new ArrayList<Object>(Collections.singletonList("x-exi")));
+        request.put(Message.PROTOCOL_HEADERS, headers);
+
+        interceptor.handleMessage(request);
+        assertThat(getHeader(request, "Accept-Encoding"), is("x-exi, gzip"));
+
+        // gzip is only listed once
+        interceptor.handleMessage(request);
+        assertThat(getHeader(request, "Accept-Encoding"), is("x-exi, gzip"));
+    }
+
+    @Test
+    public void testCachedByEntityTag() throws IOException {
+        Message first = send("gzip", XML, entityTagHeaders(new EntityTag("1")));
+        Message second = send("gzip", XML, entityTagHeaders(new EntityTag("1")));
+        Message deflated = send("deflate", XML, entityTagHeaders(new EntityTag("1")));
+
+        byte[] firstBody = IOUtils.toByteArray(getBody(first));
+        assertTrue(Arrays.equals(firstBody, IOUtils.toByteArray(getBody(second))));
+        assertThat(getHeader(second, "Content-Encoding"), is("gzip"));
+        assertThat(getHeader(deflated, "Content-Encoding"), is("deflate"));
+
+        // a different tag means different content, which must not be served from the cache
+        byte[] changed = createMetacardXml(1500);
+        Message third = send("gzip", XML, entityTagHeaders(new EntityTag("2")), changed);
+        assertTrue(Arrays.equals(changed,
+                IOUtils.toByteArray(new GZIPInputStream(getBody(third)))));
+    }
+
+    @Test
+    public void testWeakEntityTagNotCached() throws IOException {
+        send("gzip", XML, entityTagHeaders(new EntityTag("1", true)));
+        byte[] changed = createMetacardXml(1500);
+        Message response = send("gzip", XML, entityTagHeaders(new EntityTag("1", true)),
+                changed);
+
+        assertTrue(Arrays.equals(changed,
+                IOUtils.toByteArray(new GZIPInputStream(getBody(response)))));
+    }
+
+    @Test
+    public void testErrorResponseNotCached() throws IOException {
+        send("gzip", XML, entityTagHeaders(new EntityTag("1")));
+        byte[] error = createMetacardXml(1500);
+        Message response = send(requestHeaders("gzip"), 404, XML,
+                entityTagHeaders(new EntityTag("1")), error);
+
+        assertTrue(Arrays.equals(error,
+                IOUtils.toByteArray(new GZIPInputStream(getBody(response)))));
+    }
+
+    @Test
+    public void testPartialContentNotCached() throws IOException {
+        Map<String, List<String>> rangeRequest = requestHeaders("gzip");
+        rangeRequest.put("Range", Collections.singletonList("bytes=0-1499"));
+        byte[] part = createMetacardXml(1500);
+        send(rangeRequest, 206, XML, entityTagHeaders(new EntityTag("1")), part);
+
+        Message response = send("gzip", XML, entityTagHeaders(new EntityTag("1")));
+        assertTrue(Arrays.equals(METACARD_XML,
+                IOUtils.toByteArray(new GZIPInputStream(getBody(response)))));
+
+        // a content range without a range request header is not cached either
+        Map<String, List<Object>> responseHeaders = entityTagHeaders(new EntityTag("2"));
+        responseHeaders.put("Content-Range",
+                new ArrayList<Object>(Collections.singletonList("bytes 0-1499/2000")));
+        send(requestHeaders("gzip"), 200, XML, responseHeaders, part);
+
+        response = send("gzip", XML, entityTagHeaders(new EntityTag("2")));
+        assertTrue(Arrays.equals(METACARD_XML,
+                IOUtils.toByteArray(new GZIPInputStream(getBody(response)))));
+    }
+
+    @Test
+    public void testHostInCacheKey() throws IOException {
+        Map<String, List<String>> firstHost = requestHeaders("gzip");
+        firstHost.put("Host", Collections.singletonList("catalog1.example.com"));
+        send(firstHost, null, XML, entityTagHeaders(new EntityTag("1")), METACARD_XML);
+
+        Map<String, List<String>> secondHost = requestHeaders("gzip");
+        secondHost.put("Host", Collections.singletonList("catalog2.example.com"));
+        byte[] other = createMetacardXml(1500);
+        Message response = send(secondHost, null, XML, entityTagHeaders(new EntityTag("1")),
+                other);
+
+        assertTrue(Arrays.equals(other,
+                IOUtils.toByteArray(new GZIPInputStream(getBody(response)))));
+    }
+
+    /**
+     * Sends the same tagged response repeatedly with and without the cache and logs the CPU time
+     * each takes.
+     */
+    @Test
+    public void testCacheSavesCompression() throws IOException {
+        int requests = 200;
+        interceptor.setMaxCacheSizeKB(0);
+        long uncachedTime = timeRequests(requests);
+        interceptor.setMaxCacheSizeKB(16384);
+        long cachedTime = timeRequests(requests);
+
+        LOGGER.info("Sending {} compressed {} KB responses took {} ms of CPU without the cache "
+                        + "and {} ms with it.", requests, METACARD_XML.length / 1024,
+                uncachedTime / 1000000, cachedTime / 1000000);
+    }
+
+    private long timeRequests(int requests) throws IOException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        boolean cpuTime = threads.isCurrentThreadCpuTimeSupported();
+        long start = cpuTime ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            Message response = send("gzip", XML, entityTagHeaders(new EntityTag("1")));
+            assertThat(getHeader(response, "Content-Encoding"), is("gzip"));
+        }
+        return (cpuTime ? threads.getCurrentThreadCpuTime() : System.nanoTime()) - start;
+    }
+
+    private static CompressionCodec select(String acceptEncoding) {
+        return CompressionOutInterceptor.selectCodec(Collections.singletonList(acceptEncoding));
+    }
+
+    private static Map<String, List<Object>> entityTagHeaders(EntityTag entityTag) {
+        Map<String, List<Object>> headers = new HashMap<>();
+        headers.put("ETag", new ArrayList<Object>(Collections.singletonList(entityTag)));
+        return headers;
+    }
+
+    private Message send(String acceptEncoding, String contentType,
+            Map<String, List<Object>> responseHeaders) throws IOException {
+        return send(acceptEncoding, contentType, responseHeaders, METACARD_XML);
+    }
+
+    private Message send(String acceptEncoding, String contentType,
+            Map<String, List<Object>> responseHeaders, byte[] body) throws IOException {
+        return send(requestHeaders(acceptEncoding), null, contentType, responseHeaders, body);
+    }
+
+    private Message send(Map<String, List<String>> requestHeaders, Integer responseCode,
+            String contentType, Map<String, List<Object>> responseHeaders, byte[] body)
+            throws IOException {
+        Message request = new MessageImpl();
+        request.put(Message.PROTOCOL_HEADERS, requestHeaders);
+        request.put(Message.REQUEST_URI, "/services/catalog/1234");
+        Exchange exchange = new ExchangeImpl();
+        exchange.setInMessage(request);
+
+        Message response = new MessageImpl();
+        response.setExchange(exchange);
+        exchange.setOutMessage(response);
+        response.setContent(OutputStream.class, new ByteArrayOutputStream());
+        response.put(ByteArrayOutputStream.class.getName(),
+                response.getContent(OutputStream.class));
+
+        interceptor.handleMessage(response);
+
+        // like JAX-RS, the status and headers are set before the entity is written
+        if (responseCode != null) {
+            response.put(Message.RESPONSE_CODE, responseCode);
+        }
+        response.put(Message.CONTENT_TYPE, contentType);
+        response.put(Message.PROTOCOL_HEADERS, responseHeaders);
+        try (OutputStream out = response.getContent(OutputStream.class)) {
+            out.write(body);
+        }
+        return response;
+    }
+
+    private static Map<String, List<String>> requestHeaders(String acceptEncoding) {
+        Map<String, List<String>> requestHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (acceptEncoding != null) {
+            requestHeaders.put("Accept-Encoding", Collections.singletonList(acceptEncoding));
+        }
+        return requestHeaders;
+    }
+
+    private static InputStream getBody(Message response) {
+        return new ByteArrayInputStream(
+                ((ByteArrayOutputStream) response.get(ByteArrayOutputStream.class.getName()))
+                        .toByteArray());
+    }
+
+    private static String getHeader(Message message, String name) {
+        Map<String, List<Object>> headers = CastUtils
+                .cast((Map<?, ?>) message.get(Message.PROTOCOL_HEADERS));
+        List<Object> values = headers.get(name);
+        return values == null || values.isEmpty() ? null : String.valueOf(values.get(0));
+    }
+
+    private static byte[] createMetacardXml(int attributes) {
+        StringBuilder xml = new StringBuilder("<metacard xmlns=\"urn:catalog:metacard\">");
+        for (int i = 0; i < attributes; i++) {
+            xml.append("<string name=\"attribute").append(i).append("\"><value>value ")
+                    .append(i).append("</value></string>");
+        }
+        return xml.append("</metacard>").toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -15,18 +15,24 @@
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.activation.MimeType;
 import javax.activation.MimeTypeParseException;
 
-import org.apache.commons.lang.StringUtils;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
 import org.osgi.framework.FrameworkUtil;
-import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTracker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,6 +51,28 @@ public class MimeTypeToTransformerMapperImpl implements MimeTypeToTransformerMap
     private static final Logger LOGGER = LoggerFactory
             .getLogger(MimeTypeToTransformerMapperImpl.class);
 
+    /**
+     * Orders services the same way the framework does: highest service ranking first, then
+     * earliest registration.
+     */
+    private static final Comparator<ServiceReference> RANKING_ORDER =
+            new Comparator<ServiceReference>() {
+                @Override
+                public int compare(ServiceReference ref1, ServiceReference ref2) {
+                    int byRanking = Integer.compare(getRanking(ref2), getRanking(ref1));
+                    if (byRanking != 0) {
+                        return byRanking;
+                    }
+                    return Long.compare(getRegistrationId(ref1), getRegistrationId(ref2));
+                }
+            };
+
+    /**
+     * Trackers for the transformer services that have been looked up, keyed by service interface
+     * name.
+     */
+    private final ConcurrentMap<String, TransformerRegistry> registries = new ConcurrentHashMap<>();
+
     public MimeTypeToTransformerMapperImpl() {
 
     }
@@ -59,89 +87,82 @@ protected BundleContext getContext() {
 
     @Override
     public <T> List<T> findMatches(Class<T> clazz, MimeType userMimeType) {
-        BundleContext bundleContext = getContext();
-        ServiceReference[] refs = null;
         List<T> list = new ArrayList<T>();
 
-        if (bundleContext == null) {
-            LOGGER.debug("Cannot find matches, bundle context is null.");
-            return list;
-        }
         if (clazz == null) {
             LOGGER.warn("Cannot find matches, service argument is null.");
             throw new IllegalArgumentException("Invalid argument supplied, null service argument");
         }
 
-        /*
-         * Extract the services using the bundle context.
-         */
-        try {
-            refs = bundleContext.getServiceReferences(clazz.getName(), null);
-        } catch (InvalidSyntaxException e) {
-            LOGGER.warn("Invalid filter syntax ", e);
-            throw new IllegalArgumentException(
-                    "Invalid syntax supplied: " + userMimeType.toString());
-        }
-
-        // If no InputTransformers found, return empty list
-        if (refs == null) {
-            LOGGER.debug("No {} services found - return empty list", clazz.getName());
+        TransformerRegistry registry = getRegistry(clazz.getName());
+        if (registry == null) {
+            LOGGER.debug("Cannot find matches, bundle context is null.");
             return list;
         }
-        
-        /*
-         * Sort the list of service references based in it's Comparable interface.
-         */
-        Arrays.sort(refs, Collections.reverseOrder());
+
+        TransformerIndex index = registry.getIndex();
 
         /*
-         * If the mime type is null return the whole list of service references
+         * If the mime type is null return the whole list of services
          */
+        List<Object> services;
         if (userMimeType == null) {
-            if (refs.length > 0) {
-                for (ServiceReference ref : refs) {
-                    Object service = (bundleContext.getService(ref));
-                    T typedService = clazz.cast(service);
-                    list.add(typedService);
-                }
-            }
-            return list;
+            services = index.all;
+        } else {
+            String userIdValue = userMimeType.getParameter(MimeTypeToTransformerMapper.ID_KEY);
+            services = index.byMimeType.get(TransformerIndex.key(userMimeType.getBaseType(),
+                    userIdValue));
         }
 
-        String userIdValue = userMimeType.getParameter(MimeTypeToTransformerMapper.ID_KEY);
-        List<T> strictlyMatching = new ArrayList<T>();
-
-        for (ServiceReference ref : refs) {
-
-            List<String> mimeTypesServicePropertyList = getServiceMimeTypesList(ref);
+        if (services == null) {
+            return list;
+        }
 
-            String serviceId = getServiceId(ref);
+        for (Object service : services) {
+            try {
+                list.add(clazz.cast(service));
+            } catch (ClassCastException cce) {
+                LOGGER.debug("Caught illegal cast to transformer type. ", cce);
+            }
+        }
 
-            for (String mimeTypeRawEntry : mimeTypesServicePropertyList) {
+        return list;
+    }
 
-                MimeType mimeTypeEntry = constructMimeType(mimeTypeRawEntry);
+    /**
+     * Stops tracking transformer services.
+     */
+    public void destroy() {
+        for (TransformerRegistry registry : registries.values()) {
+            registry.tracker.close();
+        }
+        registries.clear();
+    }
 
-                if (mimeTypeEntry != null && StringUtils
-                        .equals(mimeTypeEntry.getBaseType(), userMimeType.getBaseType()) && (
-                        userIdValue == null || StringUtils.equals(userIdValue, serviceId))) {
+    private TransformerRegistry getRegistry(String className) {
+        TransformerRegistry registry = registries.get(className);
+        if (registry != null) {
+            return registry;
+        }
 
-                    try {
-                        T service = clazz.cast(bundleContext.getService(ref));
-                        strictlyMatching.add(service);
-                        break; // found exact mimetype, no need to continue within
-                        // the same service
+        BundleContext bundleContext = getContext();
+        if (bundleContext == null) {
+            return null;
+        }
 
-                    } catch (ClassCastException cce) {
-                        LOGGER.debug("Caught illegal cast to transformer type. ", cce);
-                    }
-                }
-            }
+        TransformerRegistry newRegistry = new TransformerRegistry(bundleContext, className);
+        newRegistry.tracker.open();
+        registry = registries.putIfAbsent(className, newRegistry);
+        if (registry != null) {
+            // Another lookup started tracking these services first.
+            newRegistry.tracker.close();
+            return registry;
         }
 
-        return strictlyMatching;
+        return newRegistry;
     }
 
-    private MimeType constructMimeType(String mimeTypeRawEntry) {
+    private static MimeType constructMimeType(String mimeTypeRawEntry) {
 
         try {
             return new MimeType(mimeTypeRawEntry);
@@ -152,7 +173,7 @@ private MimeType constructMimeType(String mimeTypeRawEntry) {
         return null;
     }
 
-    private List<String> getServiceMimeTypesList(ServiceReference ref) {
+    private static List<String> getServiceMimeTypesList(ServiceReference ref) {
 
         Object mimeTypeServiceProperty = ref.getProperty(MIME_TYPE_KEY);
 
@@ -175,7 +196,7 @@ private List<String> getServiceMimeTypesList(ServiceReference ref) {
         return new ArrayList<String>();
     }
 
-    private String getServiceId(ServiceReference ref) {
+    private static String getServiceId(ServiceReference ref) {
         Object idServiceProperty = ref.getProperty(ID_KEY);
 
         if (idServiceProperty != null) {
@@ -186,4 +207,114 @@ private String getServiceId(ServiceReference ref) {
         return null;
     }
 
+    private static int getRanking(ServiceReference ref) {
+        Object ranking = ref.getProperty(Constants.SERVICE_RANKING);
+        return ranking instanceof Integer ? (Integer) ranking : 0;
+    }
+
+    private static long getRegistrationId(ServiceReference ref) {
+        Object serviceId = ref.getProperty(Constants.SERVICE_ID);
+        return serviceId instanceof Long ? (Long) serviceId : 0L;
+    }
+
+    /**
+     * Tracks the services registered under one transformer interface and keeps an index of them
+     * by MIME type. The tracking count changes with every service event, so the index is rebuilt
+     * on the first lookup after a transformer is registered, modified or unregistered.
+     */
+    private static class TransformerRegistry {
+
+        private final ServiceTracker<Object, Object> tracker;
+
+        private volatile TransformerIndex index;
+
+        TransformerRegistry(BundleContext bundleContext, String className) {
+            tracker = new ServiceTracker<Object, Object>(bundleContext, className, null);
+        }
+
+        TransformerIndex getIndex() {
+            TransformerIndex current = index;
+            if (current == null || current.trackingCount != tracker.getTrackingCount()) {
+                synchronized (this) {
+                    current = index;
+                    if (current == null || current.trackingCount != tracker.getTrackingCount()) {
+                        current = new TransformerIndex(tracker);
+                        index = current;
+                    }
+                }
+            }
+            return current;
+        }
+    }
+
+    /**
+     * Immutable snapshot of the tracked services, ranked, and grouped by the base types of their
+     * {@link MimeTypeToTransformerMapper#MIME_TYPE_KEY} property. Services with an
+     * {@link MimeTypeToTransformerMapper#ID_KEY} property are also grouped by base type and id.
+     */
+    private static class TransformerIndex {
+
+        private final int trackingCount;
+
+        private final List<Object> all = new ArrayList<Object>();
+
+        private final Map<String, List<Object>> byMimeType = new HashMap<String, List<Object>>();
+
+        TransformerIndex(ServiceTracker<Object, Object> tracker) {
+            // Read the count first; if the services change while the index is being built, the
+            // count will no longer match and the index is rebuilt on the next lookup.
+            trackingCount = tracker.getTrackingCount();
+
+            ServiceReference<Object>[] refs = tracker.getServiceReferences();
+            if (refs == null) {
+                // If no transformers are found, the index is empty
+                return;
+            }
+
+            /*
+             * Sort the list of service references by ranking.
+             */
+            Arrays.sort(refs, RANKING_ORDER);
+
+            for (ServiceReference<Object> ref : refs) {
+                Object service = tracker.getService(ref);
+                if (service == null) {
+                    // Unregistered since the references were read.
+                    continue;
+                }
+                all.add(service);
+
+                String serviceId = getServiceId(ref);
+                Set<String> baseTypes = new LinkedHashSet<String>();
+                for (String mimeTypeRawEntry : getServiceMimeTypesList(ref)) {
+                    MimeType mimeTypeEntry = constructMimeType(mimeTypeRawEntry);
+                    if (mimeTypeEntry != null) {
+                        baseTypes.add(mimeTypeEntry.getBaseType());
+                    }
+                }
+
+                for (String baseType : baseTypes) {
+                    add(key(baseType, null), service);
+                    if (serviceId != null) {
+                        add(key(baseType, serviceId), service);
+                    }
+                }
+            }
+        }
+
+        static String key(String baseType, String id) {
+            // A base type never contains ';', so the key can't be ambiguous.
+            return id == null ? baseType : baseType + ";" + id;
+        }
+
+        private void add(String key, Object service) {
+            List<Object> services = byMimeType.get(key);
+            if (services == null) {
+                services = new ArrayList<Object>();
+                byMimeType.put(key, services);
+            }
+            services.add(service);
+        }
+    }
+
 }
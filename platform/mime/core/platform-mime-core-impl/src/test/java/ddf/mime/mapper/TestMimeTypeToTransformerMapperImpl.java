@@ -15,22 +15,35 @@
 
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.isA;
 import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.activation.MimeType;
 import javax.activation.MimeTypeParseException;
 import javax.ws.rs.core.MediaType;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
 import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
 import org.osgi.framework.ServiceReference;
 
 import ddf.mime.MimeTypeToTransformerMapper;
@@ -668,6 +681,141 @@ protected BundleContext getContext() {
 
     }
 
+    /**
+     * We expect the service registry to be queried once, and later registrations and
+     * unregistrations to be picked up from service events
+     *
+     * @throws MimeTypeParseException
+     * @throws InvalidSyntaxException
+     */
+    @Test
+    public void testServiceEventsUpdateMatches()
+            throws MimeTypeParseException, InvalidSyntaxException {
+
+        // given
+        final BundleContext context = mock(BundleContext.class);
+
+        ServiceReference ref1 = createMockReference(1, Arrays.asList(MediaType.APPLICATION_JSON),
+                null);
+        ServiceReference ref2 = createMockReference(2, Arrays.asList(MediaType.APPLICATION_JSON),
+                null);
+        ServiceReference[] refs = {ref1};
+
+        Object simpleTransformer1 = new Object();
+        Object simpleTransformer2 = new Object();
+
+        when(context.getService(ref1)).thenReturn(simpleTransformer1);
+        when(context.getService(ref2)).thenReturn(simpleTransformer2);
+        when(context.getServiceReferences(isA(String.class), isNull(String.class)))
+                .thenReturn(refs);
+        MimeTypeToTransformerMapper matcher = new MimeTypeToTransformerMapperImpl() {
+            @Override
+            protected BundleContext getContext() {
+                return context;
+            }
+        };
+        MimeType mimeType = new MimeType(MediaType.APPLICATION_JSON);
+
+        // when
+        matcher.findMatches(Object.class, mimeType);
+        ServiceListener listener = captureServiceListener(context);
+        listener.serviceChanged(new ServiceEvent(ServiceEvent.REGISTERED, ref2));
+        List<Object> afterRegistration = matcher.findMatches(Object.class, mimeType);
+        listener.serviceChanged(new ServiceEvent(ServiceEvent.UNREGISTERING, ref1));
+        List<Object> afterUnregistration = matcher.findMatches(Object.class, mimeType);
+
+        // then
+        verify(context, times(1)).getServiceReferences(isA(String.class), isNull(String.class));
+        assertThat(afterRegistration.size(), is(2));
+        assertThat(afterRegistration.get(0), is(simpleTransformer2));
+        assertThat(afterRegistration.get(1), is(simpleTransformer1));
+        assertThat(afterUnregistration.size(), is(1));
+        assertThat(afterUnregistration.get(0), is(simpleTransformer2));
+
+    }
+
+    /**
+     * We expect lookups that run while transformers are being registered to always succeed, and
+     * to see every transformer once the registrations are done
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRegistrationsDuringLookups() throws Exception {
+
+        // given
+        final BundleContext context = mock(BundleContext.class);
+        final int registrations = 200;
+
+        ServiceReference initialRef = createMockReference(0,
+                Arrays.asList(MediaType.APPLICATION_JSON), null);
+        when(context.getService(initialRef)).thenReturn(new Object());
+        when(context.getServiceReferences(isA(String.class), isNull(String.class)))
+                .thenReturn(new ServiceReference[] {initialRef});
+
+        List<ServiceReference> newRefs = new ArrayList<ServiceReference>();
+        for (int i = 1; i <= registrations; i++) {
+            ServiceReference ref = createMockReference(i,
+                    Arrays.asList(MediaType.APPLICATION_JSON), null);
+            when(context.getService(ref)).thenReturn(new Object());
+            newRefs.add(ref);
+        }
+
+        final MimeTypeToTransformerMapper matcher = new MimeTypeToTransformerMapperImpl() {
+            @Override
+            protected BundleContext getContext() {
+                return context;
+            }
+        };
+        final MimeType mimeType = new MimeType(MediaType.APPLICATION_JSON);
+        matcher.findMatches(Object.class, mimeType);
+        ServiceListener listener = captureServiceListener(context);
+
+        // when
+        final AtomicBoolean registering = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Integer>> lookups = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < 4; i++) {
+            lookups.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    int previousSize = 0;
+                    while (registering.get()) {
+                        int size = matcher.findMatches(Object.class, mimeType).size();
+                        // Transformers are only ever added, so no lookup may see fewer of them
+                        // than an earlier one.
+                        assertThat(size >= previousSize, is(true));
+                        previousSize = size;
+                    }
+                    return previousSize;
+                }
+            }));
+        }
+
+        for (ServiceReference ref : newRefs) {
+            listener.serviceChanged(new ServiceEvent(ServiceEvent.REGISTERED, ref));
+        }
+        registering.set(false);
+
+        // then
+        for (Future<Integer> lookup : lookups) {
+            assertThat(lookup.get(10, TimeUnit.SECONDS) <= registrations + 1, is(true));
+        }
+        executor.shutdown();
+
+        List<Object> matches = matcher.findMatches(Object.class, mimeType);
+        assertThat(matches.size(), is(registrations + 1));
+        assertThat(matches.get(0), is(context.getService(newRefs.get(registrations - 1))));
+
+    }
+
+    private ServiceListener captureServiceListener(BundleContext context) {
+        ArgumentCaptor<ServiceListener> listenerCaptor = ArgumentCaptor
+                .forClass(ServiceListener.class);
+        verify(context).addServiceListener(listenerCaptor.capture(), anyString());
+        return listenerCaptor.getValue();
+    }
+
     private ServiceReference createMockReference(int i, List<String> mimeTypesSupported,
             String id) {
 
@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.persistence;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A page of items returned by {@link PersistentStore#get(String, String, String, int)}.
+ */
+public class PersistentResultPage {
+
+    private final List<Map<String, Object>> results;
+
+    private final String cursor;
+
+    private final String nextCursor;
+
+    public PersistentResultPage(List<Map<String, Object>> results, String cursor,
+            String nextCursor) {
+        this.results = results == null ?
+                Collections.<Map<String, Object>>emptyList() :
+                results;
+        this.cursor = cursor;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @return the items on this page
+     */
+    public List<Map<String, Object>> getResults() {
+        return results;
+    }
+
+    /**
+     * @return the cursor that was used to retrieve this page
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    /**
+     * @return the cursor to pass to {@link PersistentStore#get(String, String, String, int)} to
+     * retrieve the next page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * @return true if there may be more items after this page
+     */
+    public boolean hasMore() {
+        return nextCursor != null && !nextCursor.equals(cursor);
+    }
+}
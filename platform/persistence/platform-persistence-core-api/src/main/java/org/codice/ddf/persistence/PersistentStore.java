@@ -14,6 +14,7 @@
 package org.codice.ddf.persistence;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -32,6 +33,11 @@ public interface PersistentStore {
             Arrays.asList(METACARD_TYPE, SAVED_QUERY_TYPE, NOTIFICATION_TYPE, ACTIVITY_TYPE,
                     WORKSPACE_TYPE, PREFERENCES_TYPE));
 
+    /**
+     * Cursor that retrieves the first page from {@link #get(String, String, String, int)}.
+     */
+    public static final String FIRST_PAGE_CURSOR = "*";
+
     /**
      * Adds item of specified type with the specified properties.
      *
@@ -41,6 +47,16 @@ public interface PersistentStore {
      */
     public void add(String type, Map<String, Object> properties) throws PersistenceException;
 
+    /**
+     * Adds multiple items of the specified type in a single write.
+     *
+     * @param type
+     * @param items
+     * @throws PersistenceException
+     */
+    public void add(String type, Collection<Map<String, Object>> items)
+            throws PersistenceException;
+
     /**
      * Get all of the items of the specified type.
      *
@@ -60,6 +76,21 @@ public interface PersistentStore {
      */
     public List<Map<String, Object>> get(String type, String ecql) throws PersistenceException;
 
+    /**
+     * Get a page of items matching the ECQL query criteria. Pages are retrieved by passing
+     * {@link #FIRST_PAGE_CURSOR} and then the {@link PersistentResultPage#getNextCursor()} of
+     * the previous page until {@link PersistentResultPage#hasMore()} returns false.
+     *
+     * @param type
+     * @param ecql
+     * @param cursor
+     * @param pageSize
+     * @return
+     * @throws PersistenceException
+     */
+    public PersistentResultPage get(String type, String ecql, String cursor, int pageSize)
+            throws PersistenceException;
+
     /**
      * Delete items matching the ECQL query criteria.
      *
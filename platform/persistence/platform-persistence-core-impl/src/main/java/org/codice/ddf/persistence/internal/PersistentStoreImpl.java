@@ -16,6 +16,7 @@
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -27,13 +28,16 @@
 import org.apache.solr.client.solrj.SolrRequest.METHOD;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.client.solrj.response.UpdateResponse;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.CursorMarkParams;
 import org.codice.ddf.persistence.PersistenceException;
 import org.codice.ddf.persistence.PersistentItem;
+import org.codice.ddf.persistence.PersistentResultPage;
 import org.codice.ddf.persistence.PersistentStore;
 import org.codice.solr.factory.SolrServerFactory;
 import org.codice.solr.query.SolrQueryFilterVisitor;
@@ -45,12 +49,27 @@
 
 public class PersistentStoreImpl implements PersistentStore {
 
+    /**
+     * Number of items requested per page when all items matching a query are retrieved.
+     */
+    static final int GET_ALL_PAGE_SIZE = 1000;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(PersistentStoreImpl.class);
 
     private String solrUrl = SolrServerFactory.DEFAULT_HTTPS_ADDRESS;
 
     private ConcurrentHashMap<String, SolrServer> coreSolrServers = new ConcurrentHashMap<>();
 
+    private ConcurrentHashMap<String, SolrQueryFilterVisitor> coreFilterVisitors =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Maximum time in milliseconds before added or deleted items are committed. Writes made
+     * within the same window are committed together by Solr. A value less than or equal to 0
+     * leaves committing to the core's auto commit settings.
+     */
+    private int commitWithinMillis = 1000;
+
     public PersistentStoreImpl() {
         this(SolrServerFactory.DEFAULT_HTTPS_ADDRESS);
     }
@@ -68,6 +87,8 @@ public void setSolrUrl(String url) {
 
                 List<SolrServer> servers = new ArrayList<>(coreSolrServers.values());
                 coreSolrServers.clear();
+                coreFilterVisitors.clear();
+                SolrQueryFilterVisitor.clearSchemaFieldCache(null);
                 for (SolrServer server : servers) {
                     server.shutdown();
                 }
@@ -78,18 +99,47 @@ public void setSolrUrl(String url) {
         }
     }
 
+    public void setCommitWithinMillis(int commitWithinMillis) {
+        LOGGER.debug("Setting commitWithinMillis to {}", commitWithinMillis);
+        this.commitWithinMillis = commitWithinMillis;
+    }
+
     @Override
     // Input Map is expected to have the suffixes on the key names
     public void add(String type, Map<String, Object> properties) throws PersistenceException {
         LOGGER.debug("type = {}", type);
+        if (properties == null) {
+            return;
+        }
+        add(type, Collections.singletonList(properties));
+    }
+
+    @Override
+    // Input Maps are expected to have the suffixes on the key names
+    public void add(String type, Collection<Map<String, Object>> items)
+            throws PersistenceException {
+        LOGGER.debug("type = {}", type);
         if (type == null || type.isEmpty()) {
             return;
         }
-        if (properties == null || properties.isEmpty() || properties.containsValue("guest")) {
+        if (items == null || items.isEmpty()) {
+            return;
+        }
+
+        Date now = new Date();
+        List<SolrInputDocument> solrInputDocuments = new ArrayList<>(items.size());
+        for (Map<String, Object> properties : items) {
+            if (properties == null || properties.isEmpty() || properties.containsValue("guest")) {
+                continue;
+            }
+            solrInputDocuments.add(getSolrInputDocument(properties, now));
+        }
+
+        if (solrInputDocuments.isEmpty()) {
             return;
         }
 
-        LOGGER.debug("Adding entry of type {}", type);
+        LOGGER.debug("Adding {} entries of type {}", solrInputDocuments.size(), type);
 
         // Set Solr Core name to type and create/connect to Solr Core
         SolrServer coreSolrServer = getSolrCore(type);
@@ -97,10 +147,35 @@ public void add(String type, Map<String, Object> properties) throws PersistenceE
             return;
         }
 
-        Date now = new Date();
-        //DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ");
-        //String createdDate = df.format(now);
+        UpdateRequest updateRequest = new UpdateRequest();
+        updateRequest.add(solrInputDocuments);
+        if (commitWithinMillis > 0) {
+            updateRequest.setCommitWithin(commitWithinMillis);
+        }
+
+        try {
+            UpdateResponse response = updateRequest.process(coreSolrServer);
+            LOGGER.debug("UpdateResponse from add of SolrInputDocuments:  {}", response);
+        } catch (SolrServerException e) {
+            LOGGER.info("SolrServerException while adding Solr index for persistent type {}", type,
+                    e);
+            doRollback(coreSolrServer, type);
+            throw new PersistenceException(
+                    "SolrServerException while adding Solr index for persistent type " + type, e);
+        } catch (IOException e) {
+            LOGGER.info("IOException while adding Solr index for persistent type {}", type, e);
+            doRollback(coreSolrServer, type);
+            throw new PersistenceException(
+                    "IOException while adding Solr index for persistent type " + type, e);
+        } catch (RuntimeException e) {
+            LOGGER.info("RuntimeException while adding Solr index for persistent type {}", type, e);
+            doRollback(coreSolrServer, type);
+            throw new PersistenceException(
+                    "RuntimeException while adding Solr index for persistent type " + type, e);
+        }
+    }
 
+    private SolrInputDocument getSolrInputDocument(Map<String, Object> properties, Date now) {
         SolrInputDocument solrInputDocument = new SolrInputDocument();
         solrInputDocument.addField("createddate_tdt", now);
 
@@ -125,26 +200,7 @@ public void add(String type, Map<String, Object> properties) throws PersistenceE
             }
         }
 
-        try {
-            UpdateResponse response = coreSolrServer.add(solrInputDocument);
-            LOGGER.debug("UpdateResponse from add of SolrInputDocument:  {}", response);
-        } catch (SolrServerException e) {
-            LOGGER.info("SolrServerException while adding Solr index for persistent type {}", type,
-                    e);
-            doRollback(coreSolrServer, type);
-            throw new PersistenceException(
-                    "SolrServerException while adding Solr index for persistent type " + type, e);
-        } catch (IOException e) {
-            LOGGER.info("IOException while adding Solr index for persistent type {}", type, e);
-            doRollback(coreSolrServer, type);
-            throw new PersistenceException(
-                    "IOException while adding Solr index for persistent type " + type, e);
-        } catch (RuntimeException e) {
-            LOGGER.info("RuntimeException while adding Solr index for persistent type {}", type, e);
-            doRollback(coreSolrServer, type);
-            throw new PersistenceException(
-                    "RuntimeException while adding Solr index for persistent type " + type, e);
-        }
+        return solrInputDocument;
     }
 
     private void doRollback(SolrServer coreSolrServer, String type) {
@@ -167,58 +223,59 @@ public List<Map<String, Object>> get(String type) throws PersistenceException {
     @Override
     // Returned Map will have suffixes in the key names - client is responsible for handling them
     public List<Map<String, Object>> get(String type, String cql) throws PersistenceException {
+        List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
+
+        String cursor = FIRST_PAGE_CURSOR;
+        PersistentResultPage page;
+        do {
+            page = get(type, cql, cursor, GET_ALL_PAGE_SIZE);
+            results.addAll(page.getResults());
+            cursor = page.getNextCursor();
+        } while (page.hasMore() && !page.getResults().isEmpty());
+
+        return results;
+    }
+
+    @Override
+    // Returned Maps will have suffixes in the key names - client is responsible for handling them
+    public PersistentResultPage get(String type, String cql, String cursor, int pageSize)
+            throws PersistenceException {
         if (StringUtils.isBlank(type)) {
             throw new PersistenceException(
                     "The type of object(s) to retrieve must be non-null and not blank, e.g., notification, metacard, etc.");
         }
+        if (pageSize <= 0) {
+            throw new PersistenceException("The page size must be greater than 0.");
+        }
+
+        String currentCursor = StringUtils.isBlank(cursor) ? FIRST_PAGE_CURSOR : cursor;
 
         List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
 
         // Set Solr Core name to type and create/connect to Solr Core
         SolrServer coreSolrServer = getSolrCore(type);
         if (coreSolrServer == null) {
-            return results;
+            return new PersistentResultPage(results, currentCursor, null);
         }
 
-        SolrQueryFilterVisitor visitor = new SolrQueryFilterVisitor(coreSolrServer, type);
-
         try {
-            SolrQuery solrQuery;
-            // If not cql specified, then return all items
-            if (StringUtils.isBlank(cql)) {
-                solrQuery = new SolrQuery("*:*");
-            } else {
-                Filter filter = CQL.toFilter(cql);
-                solrQuery = (SolrQuery) filter.accept(visitor, null);
-            }
+            SolrQuery solrQuery = getSolrQuery(type, coreSolrServer, cql);
+            solrQuery.setRows(pageSize);
+            // cursors require a sort on the unique key
+            solrQuery.setSort(PersistentItem.ID, SolrQuery.ORDER.asc);
+            solrQuery.set(CursorMarkParams.CURSOR_MARK_PARAM, currentCursor);
+
             QueryResponse solrResponse = coreSolrServer.query(solrQuery, METHOD.POST);
             long numResults = solrResponse.getResults().getNumFound();
             LOGGER.debug("numResults = {}", numResults);
 
             SolrDocumentList docs = solrResponse.getResults();
             for (SolrDocument doc : docs) {
-                PersistentItem result = new PersistentItem();
-                Collection<String> fieldNames = doc.getFieldNames();
-                for (String name : fieldNames) {
-                    LOGGER.debug("field name = {} has value = {}", name, doc.getFieldValue(name));
-                    if (name.endsWith(PersistentItem.TEXT_SET_SUFFIX)) {
-                        result.addProperty(name, (Set<String>) doc.getFieldValue(name));
-                    } else if (name.endsWith(PersistentItem.XML_SUFFIX)) {
-                        result.addXmlProperty(name, (String) doc.getFieldValue(name));
-                    } else if (name.endsWith(PersistentItem.TEXT_SUFFIX)) {
-                        result.addProperty(name, (String) doc.getFieldValue(name));
-                    } else if (name.endsWith(PersistentItem.LONG_SUFFIX)) {
-                        result.addProperty(name, (Long) doc.getFieldValue(name));
-                    } else if (name.endsWith(PersistentItem.INT_SUFFIX)) {
-                        result.addProperty(name, (Integer) doc.getFieldValue(name));
-                    } else if (name.endsWith(PersistentItem.DATE_SUFFIX)) {
-                        result.addProperty(name, (Date) doc.getFieldValue(name));
-                    } else {
-                        LOGGER.info("Not adding field {} because it has invalid suffix", name);
-                    }
-                }
-                results.add(result);
+                results.add(getPersistentItem(doc));
             }
+
+            return new PersistentResultPage(results, currentCursor,
+                    solrResponse.getNextCursorMark());
         } catch (CQLException e) {
             throw new PersistenceException(
                     "CQLException while getting Solr data with cql statement " + cql, e);
@@ -226,67 +283,134 @@ public List<Map<String, Object>> get(String type, String cql) throws Persistence
             throw new PersistenceException(
                     "SolrServerException while getting Solr data with cql statement " + cql, e);
         }
+    }
 
-        return results;
+    @SuppressWarnings("unchecked")
+    private PersistentItem getPersistentItem(SolrDocument doc) {
+        PersistentItem result = new PersistentItem();
+        Collection<String> fieldNames = doc.getFieldNames();
+        for (String name : fieldNames) {
+            LOGGER.debug("field name = {} has value = {}", name, doc.getFieldValue(name));
+            if (name.endsWith(PersistentItem.TEXT_SET_SUFFIX)) {
+                result.addProperty(name, (Set<String>) doc.getFieldValue(name));
+            } else if (name.endsWith(PersistentItem.XML_SUFFIX)) {
+                result.addXmlProperty(name, (String) doc.getFieldValue(name));
+            } else if (name.endsWith(PersistentItem.TEXT_SUFFIX)) {
+                result.addProperty(name, (String) doc.getFieldValue(name));
+            } else if (name.endsWith(PersistentItem.LONG_SUFFIX)) {
+                result.addProperty(name, (Long) doc.getFieldValue(name));
+            } else if (name.endsWith(PersistentItem.INT_SUFFIX)) {
+                result.addProperty(name, (Integer) doc.getFieldValue(name));
+            } else if (name.endsWith(PersistentItem.DATE_SUFFIX)) {
+                result.addProperty(name, (Date) doc.getFieldValue(name));
+            } else {
+                LOGGER.info("Not adding field {} because it has invalid suffix", name);
+            }
+        }
+        return result;
     }
 
     @Override
     public int delete(String type, String cql) throws PersistenceException {
-        List<Map<String, Object>> itemsToDelete = this.get(type, cql);
+        if (StringUtils.isBlank(type)) {
+            throw new PersistenceException(
+                    "The type of object(s) to delete must be non-null and not blank, e.g., notification, metacard, etc.");
+        }
+
         SolrServer coreSolrServer = getSolrCore(type);
         if (coreSolrServer == null) {
             return 0;
         }
-        List<String> idsToDelete = new ArrayList<String>();
-        for (Map<String, Object> item : itemsToDelete) {
-            String uuid = (String) item.get(PersistentItem.ID);
-            if (StringUtils.isNotBlank(uuid)) {
-                idsToDelete.add(uuid);
-            }
+
+        SolrQuery solrQuery;
+        long numToDelete;
+        try {
+            solrQuery = getSolrQuery(type, coreSolrServer, cql);
+            solrQuery.setRows(0);
+            numToDelete = coreSolrServer.query(solrQuery, METHOD.POST).getResults()
+                    .getNumFound();
+        } catch (CQLException e) {
+            throw new PersistenceException(
+                    "CQLException while getting Solr data with cql statement " + cql, e);
+        } catch (SolrServerException e) {
+            throw new PersistenceException(
+                    "SolrServerException while getting Solr data with cql statement " + cql, e);
         }
 
-        if (!idsToDelete.isEmpty()) {
+        if (numToDelete > 0) {
             try {
-                LOGGER.info("Deleting {} items by ID", idsToDelete.size());
-                coreSolrServer.deleteById(idsToDelete);
+                LOGGER.info("Deleting {} items by query", numToDelete);
+                if (commitWithinMillis > 0) {
+                    coreSolrServer.deleteByQuery(solrQuery.getQuery(), commitWithinMillis);
+                } else {
+                    coreSolrServer.deleteByQuery(solrQuery.getQuery());
+                }
             } catch (SolrServerException e) {
                 LOGGER.info(
-                        "SolrServerException while trying to delete items by ID for persistent type {}",
+                        "SolrServerException while trying to delete items by query for persistent type {}",
                         type, e);
                 doRollback(coreSolrServer, type);
                 throw new PersistenceException(
-                        "SolrServerException while trying to delete items by ID for persistent type "
+                        "SolrServerException while trying to delete items by query for persistent type "
                                 + type, e);
             } catch (IOException e) {
-                LOGGER.info("IOException while trying to delete items by ID for persistent type {}",
+                LOGGER.info(
+                        "IOException while trying to delete items by query for persistent type {}",
                         type, e);
                 doRollback(coreSolrServer, type);
                 throw new PersistenceException(
-                        "IOException while trying to delete items by ID for persistent type "
+                        "IOException while trying to delete items by query for persistent type "
                                 + type, e);
             } catch (RuntimeException e) {
                 LOGGER.info(
-                        "RuntimeException while trying to delete items by ID for persistent type {}",
+                        "RuntimeException while trying to delete items by query for persistent type {}",
                         type, e);
                 doRollback(coreSolrServer, type);
                 throw new PersistenceException(
-                        "RuntimeException while trying to delete items by ID for persistent type "
+                        "RuntimeException while trying to delete items by query for persistent type "
                                 + type, e);
             }
         }
 
-        return idsToDelete.size();
+        return (int) numToDelete;
+    }
+
+    private SolrQuery getSolrQuery(String type, SolrServer coreSolrServer, String cql)
+            throws CQLException {
+        // If not cql specified, then return all items
+        if (StringUtils.isBlank(cql)) {
+            return new SolrQuery("*:*");
+        }
+        Filter filter = CQL.toFilter(cql);
+        return (SolrQuery) filter.accept(getFilterVisitor(type, coreSolrServer), null);
+    }
+
+    private SolrQueryFilterVisitor getFilterVisitor(String type, SolrServer coreSolrServer) {
+        SolrQueryFilterVisitor visitor = coreFilterVisitors.get(type);
+        if (visitor == null) {
+            visitor = new SolrQueryFilterVisitor(coreSolrServer, type);
+            SolrQueryFilterVisitor existing = coreFilterVisitors.putIfAbsent(type, visitor);
+            if (existing != null) {
+                visitor = existing;
+            }
+        }
+        return visitor;
     }
 
-    private SolrServer getSolrCore(String storeName) {
-        if (coreSolrServers.containsKey(storeName)) {
-            LOGGER.info("Returning core {} from map of coreSolrServers", storeName);
-            return coreSolrServers.get(storeName);
+    SolrServer getSolrCore(String storeName) {
+        SolrServer coreSolrServer = coreSolrServers.get(storeName);
+        if (coreSolrServer != null) {
+            LOGGER.debug("Returning core {} from map of coreSolrServers", storeName);
+            return coreSolrServer;
         }
 
         // Must specify shard in URL so proper core is used
-        SolrServer coreSolrServer = SolrServerFactory.getHttpSolrServer(solrUrl, storeName);
-        coreSolrServers.put(storeName, coreSolrServer);
+        coreSolrServer = SolrServerFactory.getHttpSolrServer(solrUrl, storeName);
+        SolrServer existing = coreSolrServers.putIfAbsent(storeName, coreSolrServer);
+        if (existing != null) {
+            coreSolrServer.shutdown();
+            coreSolrServer = existing;
+        }
 
         LOGGER.trace("EXITING: getSolrCore");
 
@@ -294,4 +418,3 @@ private SolrServer getSolrCore(String storeName) {
     }
 
 }
-
@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.persistence.internal;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrRequest.METHOD;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.apache.solr.common.params.SolrParams;
+import org.codice.ddf.persistence.PersistentItem;
+import org.codice.ddf.persistence.PersistentResultPage;
+import org.codice.ddf.persistence.PersistentStore;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class PersistentStoreImplTest {
+
+    private SolrServer solrServer;
+
+    private PersistentStoreImpl persistentStore;
+
+    @Before
+    public void setup() {
+        solrServer = mock(SolrServer.class);
+        persistentStore = new PersistentStoreImpl() {
+            @Override
+            SolrServer getSolrCore(String storeName) {
+                return solrServer;
+            }
+        };
+    }
+
+    @Test
+    public void testBatchAddSendsSingleRequest() throws Exception {
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            PersistentItem item = new PersistentItem();
+            item.addIdProperty("id" + i);
+            item.addProperty("title", "notification " + i);
+            items.add(item);
+        }
+
+        persistentStore.add(PersistentStore.NOTIFICATION_TYPE, items);
+
+        ArgumentCaptor<SolrRequest> captor = ArgumentCaptor.forClass(SolrRequest.class);
+        verify(solrServer).request(captor.capture());
+        UpdateRequest request = (UpdateRequest) captor.getValue();
+        assertThat(request.getDocuments().size(), is(3));
+        assertThat(request.getCommitWithin(), is(1000));
+    }
+
+    @Test
+    public void testBatchAddSkipsGuestItems() throws Exception {
+        PersistentItem guest = new PersistentItem();
+        guest.addProperty("user", "guest");
+
+        persistentStore.add(PersistentStore.NOTIFICATION_TYPE,
+                Arrays.<Map<String, Object>>asList(guest));
+
+        verify(solrServer, never()).request(any(SolrRequest.class));
+    }
+
+    @Test
+    public void testPagedGet() throws Exception {
+        QueryResponse firstPage = getQueryResponse(2, "cursor1", "id1", "id2");
+        QueryResponse lastPage = getQueryResponse(2, "cursor1");
+        when(solrServer.query(any(SolrParams.class), eq(METHOD.POST)))
+                .thenReturn(firstPage, lastPage);
+
+        PersistentResultPage page = persistentStore
+                .get(PersistentStore.NOTIFICATION_TYPE, "", PersistentStore.FIRST_PAGE_CURSOR,
+                        2);
+        assertThat(page.getResults().size(), is(2));
+        assertThat(page.getNextCursor(), is("cursor1"));
+        assertThat(page.hasMore(), is(true));
+
+        page = persistentStore
+                .get(PersistentStore.NOTIFICATION_TYPE, "", page.getNextCursor(), 2);
+        assertThat(page.getResults().size(), is(0));
+        assertThat(page.hasMore(), is(false));
+
+        ArgumentCaptor<SolrParams> captor = ArgumentCaptor.forClass(SolrParams.class);
+        verify(solrServer, times(2)).query(captor.capture(), eq(METHOD.POST));
+        assertThat(captor.getAllValues().get(1).get(CursorMarkParams.CURSOR_MARK_PARAM),
+                is("cursor1"));
+    }
+
+    @Test
+    public void testGetAllFollowsCursor() throws Exception {
+        QueryResponse firstPage = getQueryResponse(3, "cursor1", "id1", "id2");
+        QueryResponse secondPage = getQueryResponse(3, "cursor2", "id3");
+        QueryResponse lastPage = getQueryResponse(3, "cursor2");
+        when(solrServer.query(any(SolrParams.class), eq(METHOD.POST)))
+                .thenReturn(firstPage, secondPage, lastPage);
+
+        List<Map<String, Object>> results = persistentStore.get(PersistentStore.NOTIFICATION_TYPE);
+
+        assertThat(results.size(), is(3));
+    }
+
+    @Test
+    public void testDeleteByQuery() throws Exception {
+        QueryResponse countResponse = getQueryResponse(42, null);
+        when(solrServer.query(any(SolrParams.class), eq(METHOD.POST))).thenReturn(countResponse);
+
+        int deleted = persistentStore.delete(PersistentStore.NOTIFICATION_TYPE, "");
+
+        assertThat(deleted, is(42));
+        verify(solrServer).deleteByQuery("*:*", 1000);
+    }
+
+    @Test
+    public void testDeleteNothingMatches() throws Exception {
+        QueryResponse countResponse = getQueryResponse(0, null);
+        when(solrServer.query(any(SolrParams.class), eq(METHOD.POST))).thenReturn(countResponse);
+
+        int deleted = persistentStore.delete(PersistentStore.NOTIFICATION_TYPE, "");
+
+        assertThat(deleted, is(0));
+        verify(solrServer, never()).deleteByQuery(anyString(), anyInt());
+    }
+
+    private QueryResponse getQueryResponse(long numFound, String nextCursor, String... ids) {
+        SolrDocumentList docs = new SolrDocumentList();
+        docs.setNumFound(numFound);
+        for (String id : ids) {
+            SolrDocument doc = new SolrDocument();
+            doc.addField(PersistentItem.ID, id);
+            docs.add(doc);
+        }
+        QueryResponse response = mock(QueryResponse.class);
+        when(response.getResults()).thenReturn(docs);
+        when(response.getNextCursorMark()).thenReturn(nextCursor);
+        return response;
+    }
+}
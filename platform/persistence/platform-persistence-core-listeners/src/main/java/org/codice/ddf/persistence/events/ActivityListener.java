@@ -44,9 +44,8 @@ public ActivityListener(PersistentStore persistentStore) {
                         ActivityEvent.ActivityStatus.FAILED.toString());
                 result.put(ActivityEvent.MESSAGE_KEY + "_txt", "Resource retrieval failed");
                 result.put(ActivityEvent.PROGRESS_KEY + "_txt", "");
-
-                persistentStore.add(PersistentStore.ACTIVITY_TYPE, result);
             }
+            persistentStore.add(PersistentStore.ACTIVITY_TYPE, results);
         } catch (PersistenceException e) {
             LOGGER.debug("PersistenceException while creating ActivityListener", e);
         } catch (Exception e) {
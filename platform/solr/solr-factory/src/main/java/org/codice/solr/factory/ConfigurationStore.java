@@ -31,6 +31,8 @@ public class ConfigurationStore {
 
     private boolean disableTextPath;
 
+    private String[] xpathValueElements = {"title"};
+
     private boolean inMemory;
 
     private Double nearestNeighborDistanceLimit;
@@ -66,6 +68,25 @@ public void setDisableTextPath(boolean disableTextPath) {
         this.disableTextPath = disableTextPath;
     }
 
+    /**
+     * @return local names of the metadata elements whose values are indexed to pre-filter XPath
+     *         queries
+     */
+    public String[] getXpathValueElements() {
+        return xpathValueElements.clone();
+    }
+
+    /**
+     * @param xpathValueElements local names of the metadata elements, e.g. {@code title}, whose
+     *                           values are indexed for every subsequent update or insert, so that
+     *                           XPath queries comparing their text skip documents that cannot match
+     */
+    public void setXpathValueElements(String[] xpathValueElements) {
+        this.xpathValueElements = xpathValueElements == null ?
+                new String[0] :
+                xpathValueElements.clone();
+    }
+
     public String getDataDirectoryPath() {
         return dataDirectoryPath;
     }
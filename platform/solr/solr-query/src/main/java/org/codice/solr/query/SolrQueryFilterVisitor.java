@@ -16,6 +16,8 @@
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.solr.client.solrj.SolrQuery;
@@ -46,11 +48,12 @@ public class SolrQueryFilterVisitor extends DefaultFilterVisitor {
 
     private static final String SPATIAL_INDEX = "_geo_index";
 
-    // key=solrCoreName.propertyName without suffix, e.g., "notification.user"
-    // Since this FilterVisitor is used across multiple Solr cores and this cache map
-    // is static, the key must be able to distinguish values that may have the same property name
-    // in multiple cores.
-    private static Map<String, SchemaField> schemaFieldsCache = new HashMap<String, SchemaField>();
+    // key=solrCoreName, value=map of propertyName without suffix, e.g., "user", to its resolved
+    // SchemaField. Since this FilterVisitor is used across multiple Solr cores and this cache is
+    // static, fields are cached per core so the same property name can resolve differently in
+    // different cores.
+    private static final ConcurrentMap<String, ConcurrentMap<String, SchemaField>> SCHEMA_FIELDS_CACHE =
+            new ConcurrentHashMap<>();
 
     static {
         Map<String, String> tempMap = new HashMap<String, String>();
@@ -106,30 +109,61 @@ String getMappedPropertyName(String propertyName) {
         // propertyName will not have the suffix. Field names (the keys) in the fieldsInfo map
         // will have the suffix and the variations on the property name, e.g., for propertyName="user"
         // fieldsInfo will have keys for "user_txt", "user_txt_tokenized", and "user_txt_tokenized_has_case"
-        SchemaField schemaField = null;
-        String cacheKey = solrCoreName + "." + propertyName;
-        if (schemaFieldsCache.containsKey(cacheKey)) {
-            LOGGER.info("Getting SchemaField for propertyName {} from cache", propertyName);
-            schemaField = schemaFieldsCache.get(cacheKey);
+        ConcurrentMap<String, SchemaField> coreSchemaFields = getCoreSchemaFields(solrCoreName);
+        SchemaField schemaField = coreSchemaFields.get(propertyName);
+        if (schemaField != null) {
+            LOGGER.debug("Getting SchemaField for propertyName {} from cache", propertyName);
         } else {
-            LOGGER.info("Using SchemaFieldResolver for propertyName {}", propertyName);
+            LOGGER.debug("Using SchemaFieldResolver for propertyName {}", propertyName);
             schemaField = schemaFieldResolver.getSchemaField(propertyName, true);
-            schemaFieldsCache.put(cacheKey, schemaField);
+            // Fields that are not in the index yet are not cached so that they are resolved
+            // once documents containing them have been added.
+            if (schemaField != null) {
+                coreSchemaFields.putIfAbsent(propertyName, schemaField);
+            }
         }
 
         if (schemaField != null) {
             mappedPropertyName = schemaField.getName();
-            LOGGER.info("propertyName = {},    mappedPropertyName = {},   schemaField = {}",
+            LOGGER.debug("propertyName = {},    mappedPropertyName = {},   schemaField = {}",
                     propertyName, mappedPropertyName, schemaField);
         } else {
             // Fallback - treat all fields as String
             mappedPropertyName = getMappedPropertyName(propertyName, AttributeFormat.STRING, true);
-            LOGGER.info("Used fallback to get mappedPropertyName of {}", mappedPropertyName);
+            LOGGER.debug("Used fallback to get mappedPropertyName of {}", mappedPropertyName);
         }
 
         return mappedPropertyName;
     }
 
+    /**
+     * Discards the cached schema field resolutions for a Solr core, e.g., after the core has been
+     * recreated on a different server.
+     *
+     * @param solrCoreName name of the core, or null to clear the cache for all cores
+     */
+    public static void clearSchemaFieldCache(String solrCoreName) {
+        if (solrCoreName == null) {
+            SCHEMA_FIELDS_CACHE.clear();
+        } else {
+            SCHEMA_FIELDS_CACHE.remove(solrCoreName);
+        }
+    }
+
+    private static ConcurrentMap<String, SchemaField> getCoreSchemaFields(String solrCoreName) {
+        ConcurrentMap<String, SchemaField> coreSchemaFields = SCHEMA_FIELDS_CACHE
+                .get(solrCoreName);
+        if (coreSchemaFields == null) {
+            coreSchemaFields = new ConcurrentHashMap<>();
+            ConcurrentMap<String, SchemaField> existing = SCHEMA_FIELDS_CACHE
+                    .putIfAbsent(solrCoreName, coreSchemaFields);
+            if (existing != null) {
+                coreSchemaFields = existing;
+            }
+        }
+        return coreSchemaFields;
+    }
+
     private String getMappedPropertyName(String propertyName, AttributeFormat format,
             boolean isSearchedAsExactString) {
         //        if (propertyName == null) {
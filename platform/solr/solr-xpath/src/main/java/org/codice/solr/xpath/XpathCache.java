@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.solr.xpath;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import lux.Config;
+import net.sf.saxon.Configuration;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XPathCompiler;
+import net.sf.saxon.s9api.XPathExecutable;
+
+/**
+ * Least recently used cache of compiled XPath expressions, keyed by expression and namespace
+ * bindings. All expressions are compiled against one Saxon configuration, which documents to be
+ * evaluated must also be built with.
+ */
+public class XpathCache {
+
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    private final Configuration configuration = new Config();
+
+    private final Processor processor = new Processor(configuration);
+
+    private final Map<Key, XPathExecutable> executables;
+
+    public XpathCache(final int maxSize) {
+        executables = Collections
+                .synchronizedMap(new LinkedHashMap<Key, XPathExecutable>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<Key, XPathExecutable> eldest) {
+                        return size() > maxSize;
+                    }
+                });
+    }
+
+    /**
+     * Returns the compiled form of an XPath expression, compiling it if it is not cached.
+     * Executables are thread safe; selectors loaded from them are not.
+     *
+     * @param xpath
+     *            XPath expression
+     * @param namespaces
+     *            prefix to namespace URI bindings used by the expression
+     * @return compiled XPath
+     * @throws SaxonApiException
+     *             if the expression does not compile
+     */
+    public XPathExecutable getExecutable(String xpath, Map<String, String> namespaces)
+            throws SaxonApiException {
+        Key key = new Key(xpath, namespaces);
+        XPathExecutable executable = executables.get(key);
+        if (executable == null) {
+            XPathCompiler compiler = processor.newXPathCompiler();
+            for (Map.Entry<String, String> namespace : key.namespaces.entrySet()) {
+                compiler.declareNamespace(namespace.getKey(), namespace.getValue());
+            }
+            executable = compiler.compile(xpath);
+            executables.put(key, executable);
+        }
+        return executable;
+    }
+
+    public Configuration getConfiguration() {
+        return configuration;
+    }
+
+    int size() {
+        return executables.size();
+    }
+
+    private static class Key {
+
+        private final String xpath;
+
+        private final Map<String, String> namespaces;
+
+        Key(String xpath, Map<String, String> namespaces) {
+            this.xpath = xpath;
+            this.namespaces = new TreeMap<>(namespaces);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * xpath.hashCode() + namespaces.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return xpath.equals(other.xpath) && namespaces.equals(other.namespaces);
+        }
+    }
+}
@@ -14,19 +14,28 @@
 package org.codice.solr.xpath;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Scorer;
 import org.apache.lucene.util.BytesRef;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.search.DelegatingCollector;
 
-import lux.Config;
 import lux.index.field.TinyBinaryField;
 import lux.xml.tinybin.TinyBinary;
-import net.sf.saxon.Configuration;
-import net.sf.saxon.s9api.Processor;
 import net.sf.saxon.s9api.SaxonApiException;
-import net.sf.saxon.s9api.XPathCompiler;
+import net.sf.saxon.s9api.XPathExecutable;
 import net.sf.saxon.s9api.XPathSelector;
 import net.sf.saxon.s9api.XdmNode;
 import net.sf.saxon.s9api.XdmValue;
@@ -34,35 +43,133 @@
 /**
  * Collector that evaluates each Lucene document against a given XPath
  * and collects the results that match.
+ * <p/>
+ * Candidate documents are gathered per index segment while the query runs and evaluated in
+ * batches on the given executor once it finishes. Matches are then passed on segment by segment,
+ * in the order they were collected, with the scores they had when collected.
  */
 public class XpathFilterCollector extends DelegatingCollector {
 
     public static final String LUX_XML_FIELD_NAME = "lux_xml";
 
+    /**
+     * Number of documents evaluated by one task
+     */
+    static final int BATCH_SIZE = 256;
+
     private final String xpath;
 
-    private final XPathSelector selector;
+    private final XPathExecutable executable;
 
-    private final Configuration config;
+    private final XpathCache xpathCache;
 
-    public XpathFilterCollector(String query) {
-        xpath = query;
+    private final ExecutorService executor;
 
-        config = new Config();
-        Processor processor = new Processor(config);
-        XPathCompiler compiler = processor.newXPathCompiler();
+    private final List<SegmentCandidates> segments = new ArrayList<>();
+
+    private SegmentCandidates currentSegment;
+
+    public XpathFilterCollector(String query, XpathCache xpathCache, ExecutorService executor) {
+        xpath = query;
+        this.xpathCache = xpathCache;
+        this.executor = executor;
 
         try {
-            selector = compiler.compile(xpath).load();
+            executable = xpathCache.getExecutable(xpath, XpathFilterQuery.NO_NAMESPACES);
         } catch (SaxonApiException e) {
             throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
                     "Unable to compile xpath: " + query, e);
         }
     }
 
+    @Override
+    public void setNextReader(AtomicReaderContext context) throws IOException {
+        // the delegate is moved to the segment when its matches are passed on
+        this.context = context;
+        this.docBase = context.docBase;
+        currentSegment = new SegmentCandidates(context);
+        segments.add(currentSegment);
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) throws IOException {
+        this.scorer = scorer;
+    }
+
     @Override
     public void collect(int docId) throws IOException {
-        Document doc = this.context.reader().document(docId);
+        currentSegment.add(docId, scorer == null ? 0 : scorer.score());
+    }
+
+    @Override
+    public void finish() throws IOException {
+        List<Batch> batches = new ArrayList<>();
+        for (SegmentCandidates segment : segments) {
+            for (int start = 0; start < segment.size; start += BATCH_SIZE) {
+                batches.add(new Batch(segment, start, Math.min(start + BATCH_SIZE, segment.size)));
+            }
+        }
+
+        evaluate(batches);
+
+        for (SegmentCandidates segment : segments) {
+            delegate.setNextReader(segment.context);
+            ReplayScorer replayScorer = new ReplayScorer(segment.docs, segment.scores,
+                    segment.size, segment.matches);
+            if (scorer != null) {
+                delegate.setScorer(replayScorer);
+            }
+            for (int doc = replayScorer.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS;
+                    doc = replayScorer.nextDoc()) {
+                delegate.collect(doc);
+            }
+        }
+        segments.clear();
+
+        super.finish();
+    }
+
+    private void evaluate(List<Batch> batches) throws IOException {
+        if (batches.size() <= 1) {
+            for (Batch batch : batches) {
+                batch.call();
+            }
+            return;
+        }
+
+        List<Future<Void>> futures = new ArrayList<>(batches.size());
+        try {
+            for (Batch batch : batches) {
+                futures.add(executor.submit(batch));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+                    "Interrupted while evaluating xpath: " + xpath, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SolrException) {
+                throw (SolrException) e.getCause();
+            } else if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+                    "Unable to evaluate xpath: " + xpath, e.getCause());
+        } finally {
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Evaluates the XPath against one document. Called concurrently, each thread with its own
+     * selector.
+     */
+    boolean matches(XPathSelector selector, AtomicReader reader, int docId) throws IOException {
+        Document doc = reader.document(docId);
 
         BytesRef binaryValue = doc.getBinaryValue(LUX_XML_FIELD_NAME);
         if (binaryValue != null) {
@@ -72,20 +179,168 @@ public void collect(int docId) throws IOException {
             // Lux update chain
             if (bytes.length > 4 && bytes[0] == 'T' && bytes[1] == 'I' && bytes[2] == 'N') {
                 TinyBinary tb = new TinyBinary(bytes, TinyBinaryField.UTF8);
-                XdmNode node = new XdmNode(tb.getTinyDocument(config));
+                XdmNode node = new XdmNode(tb.getTinyDocument(xpathCache.getConfiguration()));
 
                 try {
                     selector.setContextItem(node);
                     XdmValue result = selector.evaluate();
-                    if (result.size() > 0) {
-                        super.collect(docId);
-                    }
+                    return result.size() > 0;
                 } catch (SaxonApiException e) {
                     throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
                             "Unable to evaluate xpath: " + xpath, e);
                 }
             }
         }
+        return false;
+    }
+
+    /**
+     * Documents collected from one segment, with their scores and, after evaluation, which of them
+     * matched
+     */
+    private static class SegmentCandidates {
+
+        private final AtomicReaderContext context;
+
+        private final BitSet matches = new BitSet();
+
+        private int[] docs = new int[16];
+
+        private float[] scores = new float[16];
+
+        private int size;
+
+        SegmentCandidates(AtomicReaderContext context) {
+            this.context = context;
+        }
+
+        void add(int docId, float score) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            docs[size] = docId;
+            scores[size] = score;
+            size++;
+        }
+
+        synchronized void setMatch(int index) {
+            matches.set(index);
+        }
+    }
+
+    private class Batch implements Callable<Void> {
+
+        private final SegmentCandidates segment;
+
+        private final int start;
+
+        private final int end;
+
+        Batch(SegmentCandidates segment, int start, int end) {
+            this.segment = segment;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            // selectors hold evaluation state and are not shared between threads
+            XPathSelector selector = executable.load();
+            AtomicReader reader = segment.context.reader();
+            for (int i = start; i < end; i++) {
+                if (matches(selector, reader, segment.docs[i])) {
+                    segment.setMatch(i);
+                }
+            }
+            return null;
+        }
     }
 
+    /**
+     * Scorer handed to the delegate while matches are passed on. It iterates over the matching
+     * documents of one segment, in the order they were collected, and returns the score each
+     * document had when it was collected.
+     */
+    static class ReplayScorer extends Scorer {
+
+        private final int[] docs;
+
+        private final float[] scores;
+
+        private final int size;
+
+        private final BitSet matches;
+
+        private int index = -1;
+
+        private int doc = -1;
+
+        /**
+         * @param docs
+         *            collected documents in increasing order, of which the first {@code size} are
+         *            used
+         * @param scores
+         *            score of each collected document
+         * @param matches
+         *            indexes of the collected documents that matched
+         */
+        ReplayScorer(int[] docs, float[] scores, int size, BitSet matches) {
+            super(null);
+            this.docs = docs;
+            this.scores = scores;
+            this.size = size;
+            this.matches = matches;
+        }
+
+        @Override
+        public float score() {
+            return scores[index];
+        }
+
+        @Override
+        public int freq() {
+            return 1;
+        }
+
+        @Override
+        public int docID() {
+            return doc;
+        }
+
+        @Override
+        public int nextDoc() {
+            if (doc == NO_MORE_DOCS) {
+                return doc;
+            }
+            return moveTo(matches.nextSetBit(index + 1));
+        }
+
+        @Override
+        public int advance(int target) {
+            if (doc == NO_MORE_DOCS) {
+                return doc;
+            }
+            int position = Arrays.binarySearch(docs, 0, size, target);
+            if (position < 0) {
+                position = -position - 1;
+            }
+            return moveTo(matches.nextSetBit(Math.max(position, index + 1)));
+        }
+
+        @Override
+        public long cost() {
+            return matches.cardinality();
+        }
+
+        private int moveTo(int nextIndex) {
+            if (nextIndex < 0 || nextIndex >= size) {
+                doc = NO_MORE_DOCS;
+            } else {
+                index = nextIndex;
+                doc = docs[nextIndex];
+            }
+            return doc;
+        }
+    }
 }
@@ -13,6 +13,10 @@
  */
 package org.codice.solr.xpath;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.solr.search.DelegatingCollector;
 import org.apache.solr.search.ExtendedQueryBase;
@@ -25,20 +29,32 @@ public class XpathFilterQuery extends ExtendedQueryBase implements PostFilter {
 
     public static final int POST_FILTER_COST = 100;
 
+    /**
+     * Namespace bindings of the XPath; prefixes are currently removed from queries before they are
+     * sent, see {@link XpathQParserPlugin}
+     */
+    static final Map<String, String> NO_NAMESPACES = Collections.emptyMap();
+
     private final String xpath;
 
-    public XpathFilterQuery(String xpath) {
+    private final XpathCache xpathCache;
+
+    private final ExecutorService executor;
+
+    public XpathFilterQuery(String xpath, XpathCache xpathCache, ExecutorService executor) {
         super();
         super.setCost(POST_FILTER_COST);
         super.setCache(false);
         super.setCacheSep(false);
 
         this.xpath = xpath;
+        this.xpathCache = xpathCache;
+        this.executor = executor;
     }
 
     @Override
     public DelegatingCollector getFilterCollector(IndexSearcher searcher) {
-        return new XpathFilterCollector(xpath);
+        return new XpathFilterCollector(xpath, xpathCache, executor);
     }
 
     @Override
@@ -0,0 +1,257 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.solr.xpath;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.WildcardQuery;
+
+/**
+ * Translates simple XPath location paths into a conservative Lucene pre-filter on the path and
+ * value fields populated at ingest, so the Saxon post filter only evaluates documents that could
+ * match.
+ * <p/>
+ * The pre-filter never rejects a document the XPath would select: predicates that cannot be
+ * translated are ignored, and documents indexed without the XPath fields always pass. Expressions
+ * that are not plain location paths, e.g. unions or function calls, are not translated.
+ */
+public final class XpathIndexQueryBuilder {
+
+    // Field names and markers must match the ones written by the catalog Solr provider
+    public static final String XPATH_PATHS_FIELD_NAME = "xpath_paths";
+
+    public static final String XPATH_VALUES_FIELD_NAME = "xpath_values";
+
+    private static final String INDEXED_MARKER = "#indexed";
+
+    private static final String VALUE_SEPARATOR = "=";
+
+    private static final String NAME = "[\\p{L}_][\\p{L}\\p{N}_.\\-]*";
+
+    private static final Pattern NAME_TEST = Pattern
+            .compile("(@?)(?:" + NAME + ":)?(" + NAME + "|\\*)");
+
+    private static final Pattern NODE_TEST = Pattern
+            .compile("(?:text|node|comment|processing-instruction)\\s*\\([^)]*\\)");
+
+    private static final Pattern CONTAINS_PREDICATE = Pattern.compile(
+            "\\s*contains\\s*\\(\\s*(?:lower-case\\s*\\(\\s*\\.\\s*\\)|string\\s*\\(\\s*\\.\\s*\\)|\\.)"
+                    + "\\s*,\\s*(?:'([^']*)'|\"([^\"]*)\")\\s*\\)\\s*");
+
+    private XpathIndexQueryBuilder() {
+    }
+
+    /**
+     * Builds the pre-filter for an XPath expression evaluated against the document root.
+     *
+     * @param xpath
+     *            absolute XPath expression
+     * @return pre-filter query, or {@code null} if the expression cannot be translated
+     */
+    public static Query build(String xpath) {
+        StringBuilder pathPattern = new StringBuilder();
+        BooleanQuery valueQueries = new BooleanQuery();
+
+        int position = 0;
+        while (position < xpath.length()) {
+            String separator;
+            if (xpath.startsWith("//", position)) {
+                separator = "*/";
+                position += 2;
+            } else if (xpath.charAt(position) == '/') {
+                separator = "/";
+                position++;
+            } else {
+                return null;
+            }
+
+            int end = findStepEnd(xpath, position);
+            if (end < 0) {
+                return null;
+            }
+            String step = xpath.substring(position, end).trim();
+            position = end;
+
+            int predicatesStart = step.indexOf('[');
+            if (predicatesStart < 0) {
+                predicatesStart = step.length();
+            }
+            String nodeTest = step.substring(0, predicatesStart).trim();
+            List<String> predicates = splitPredicates(step.substring(predicatesStart));
+            if (predicates == null) {
+                return null;
+            }
+
+            Matcher name = NAME_TEST.matcher(nodeTest);
+            if (name.matches()) {
+                String localName = name.group(2);
+                pathPattern.append(separator).append(name.group(1)).append(localName);
+
+                if (name.group(1).isEmpty() && !"*".equals(localName)) {
+                    for (String predicate : predicates) {
+                        Query valueQuery = getValueQuery(localName, predicate);
+                        if (valueQuery != null) {
+                            valueQueries.add(valueQuery, Occur.MUST);
+                        }
+                    }
+                }
+            } else if (".".equals(nodeTest)) {
+                // the context node itself, or it and its descendants, are already required
+                continue;
+            } else if (NODE_TEST.matcher(nodeTest).matches()) {
+                // text and other non-element nodes are not indexed; the parent path is required
+                break;
+            } else {
+                return null;
+            }
+        }
+
+        if (pathPattern.length() == 0) {
+            return null;
+        }
+
+        BooleanQuery indexedQuery = new BooleanQuery();
+        indexedQuery.add(new WildcardQuery(
+                new Term(XPATH_PATHS_FIELD_NAME, pathPattern.toString())), Occur.MUST);
+        for (BooleanClause clause : valueQueries.clauses()) {
+            indexedQuery.add(clause);
+        }
+
+        BooleanQuery query = new BooleanQuery();
+        query.add(indexedQuery, Occur.SHOULD);
+        query.add(notIndexed(XPATH_PATHS_FIELD_NAME, INDEXED_MARKER), Occur.SHOULD);
+        return query;
+    }
+
+    /**
+     * Returns the end of the step starting at {@code start}, or -1 if the step contains a top-level
+     * union or unbalanced brackets or quotes.
+     */
+    private static int findStepEnd(String xpath, int start) {
+        int depth = 0;
+        char quote = 0;
+        for (int i = start; i < xpath.length(); i++) {
+            char c = xpath.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '[' || c == '(') {
+                depth++;
+            } else if (c == ']' || c == ')') {
+                if (--depth < 0) {
+                    return -1;
+                }
+            } else if (depth == 0 && c == '/') {
+                return i;
+            } else if (depth == 0 && c == '|') {
+                return -1;
+            }
+        }
+        return depth == 0 && quote == 0 ? xpath.length() : -1;
+    }
+
+    /**
+     * Splits {@code [a][b]} into its predicate expressions, or returns null if anything other than
+     * predicates is present.
+     */
+    private static List<String> splitPredicates(String text) {
+        List<String> predicates = new ArrayList<>();
+        int depth = 0;
+        char quote = 0;
+        int start = -1;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '[' || c == '(') {
+                if (depth == 0) {
+                    if (c == '(') {
+                        return null;
+                    }
+                    start = i + 1;
+                }
+                depth++;
+            } else if (c == ']' || c == ')') {
+                depth--;
+                if (depth == 0) {
+                    predicates.add(text.substring(start, i));
+                }
+            } else if (depth == 0 && !Character.isWhitespace(c)) {
+                return null;
+            }
+        }
+        return predicates;
+    }
+
+    /**
+     * Translates a {@code contains(., 'text')} predicate on an element into a query on the values
+     * indexed for that element name. Documents where some value of that element was not indexed
+     * still match.
+     */
+    private static Query getValueQuery(String localName, String predicate) {
+        Matcher contains = CONTAINS_PREDICATE.matcher(predicate);
+        if (!contains.matches()) {
+            return null;
+        }
+        String literal = contains.group(1) != null ? contains.group(1) : contains.group(2);
+        if (literal.isEmpty()) {
+            return null;
+        }
+
+        BooleanQuery query = new BooleanQuery();
+        query.add(new WildcardQuery(new Term(XPATH_VALUES_FIELD_NAME,
+                localName + VALUE_SEPARATOR + "*" + escape(literal.toLowerCase(Locale.ENGLISH))
+                        + "*")), Occur.SHOULD);
+        query.add(notIndexed(XPATH_VALUES_FIELD_NAME, localName + INDEXED_MARKER), Occur.SHOULD);
+        return query;
+    }
+
+    private static Query notIndexed(String field, String marker) {
+        BooleanQuery query = new BooleanQuery();
+        query.add(new MatchAllDocsQuery(), Occur.MUST);
+        query.add(new TermQuery(new Term(field, marker)), Occur.MUST_NOT);
+        return query;
+    }
+
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == WildcardQuery.WILDCARD_STRING || c == WildcardQuery.WILDCARD_CHAR
+                    || c == WildcardQuery.WILDCARD_ESCAPE) {
+                escaped.append(WildcardQuery.WILDCARD_ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
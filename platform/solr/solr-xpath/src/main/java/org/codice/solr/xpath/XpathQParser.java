@@ -13,6 +13,8 @@
  */
 package org.codice.solr.xpath;
 
+import java.util.concurrent.ExecutorService;
+
 import org.apache.lucene.search.Query;
 import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.SolrParams;
@@ -25,10 +27,16 @@ public class XpathQParser extends QParser {
 
     private final SolrQueryRequest request;
 
+    private final XpathCache xpathCache;
+
+    private final ExecutorService evaluationExecutor;
+
     public XpathQParser(String qstr, SolrParams localParams, SolrParams params,
-            SolrQueryRequest req) {
+            SolrQueryRequest req, XpathCache xpathCache, ExecutorService evaluationExecutor) {
         super(qstr, localParams, params, req);
         request = req;
+        this.xpathCache = xpathCache;
+        this.evaluationExecutor = evaluationExecutor;
     }
 
     @Override
@@ -52,4 +60,12 @@ public SolrQueryRequest getRequest() {
         return request;
     }
 
+    public XpathCache getXpathCache() {
+        return xpathCache;
+    }
+
+    public ExecutorService getEvaluationExecutor() {
+        return evaluationExecutor;
+    }
+
 }
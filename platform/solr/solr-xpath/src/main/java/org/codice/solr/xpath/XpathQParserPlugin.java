@@ -13,24 +13,70 @@
  */
 package org.codice.solr.xpath;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.CloseHook;
+import org.apache.solr.core.SolrCore;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.search.QParser;
 import org.apache.solr.search.QParserPlugin;
 
+/**
+ * Creates XPath query parsers. Supports the optional init arguments {@code xpathCacheSize}, the
+ * number of compiled XPath expressions to keep, and {@code evaluationThreads}, the number of threads
+ * evaluating XPath post filters. The evaluation threads are stopped when the core closes.
+ */
 public class XpathQParserPlugin extends QParserPlugin {
 
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private XpathCache xpathCache = new XpathCache(XpathCache.DEFAULT_MAX_SIZE);
+
+    private final AtomicBoolean isCloseHookAdded = new AtomicBoolean();
+
+    private volatile ExecutorService evaluationExecutor = createExecutor(
+            Runtime.getRuntime().availableProcessors());
+
     @Override
     public void init(NamedList args) {
+        Object xpathCacheSize = args.get("xpathCacheSize");
+        if (xpathCacheSize != null) {
+            xpathCache = new XpathCache(Integer.parseInt(xpathCacheSize.toString()));
+        }
 
+        Object evaluationThreads = args.get("evaluationThreads");
+        if (evaluationThreads != null) {
+            evaluationExecutor.shutdown();
+            evaluationExecutor = createExecutor(Integer.parseInt(evaluationThreads.toString()));
+        }
     }
 
     @Override
     public QParser createParser(String qstr, SolrParams localParams, SolrParams params,
             SolrQueryRequest req) {
+        // query parser plugins cannot be SolrCoreAware, so the close hook is added on first use
+        if (isCloseHookAdded.compareAndSet(false, true)) {
+            req.getCore().addCloseHook(new CloseHook() {
+                @Override
+                public void preClose(SolrCore core) {
+                    evaluationExecutor.shutdownNow();
+                }
+
+                @Override
+                public void postClose(SolrCore core) {
+                }
+            });
+        }
         // TODO use local params to pass prefix to namespace mappings used in XPath
-        return new XpathQParser(qstr, localParams, params, req);
+        return new XpathQParser(qstr, localParams, params, req, xpathCache, evaluationExecutor);
     }
 
     @Override
@@ -42,4 +88,23 @@ public String getSource() {
     public String getName() {
         return "xpath";
     }
+
+    /**
+     * Idle threads time out, so executors of discarded plugin instances, e.g. after a core reload,
+     * do not keep threads around.
+     */
+    private static ExecutorService createExecutor(int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable,
+                                "xpath-evaluation-" + THREAD_COUNT.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
 }
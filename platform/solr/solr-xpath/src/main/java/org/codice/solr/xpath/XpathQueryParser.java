@@ -47,9 +47,15 @@ protected Query getFieldQuery(String field, String queryText, boolean quoted)
 
         if (field.equals("xpath")) {
             // post filter with Saxon
-            return new XpathFilterQuery(queryText);
+            return new XpathFilterQuery(queryText, parser.getXpathCache(),
+                    parser.getEvaluationExecutor());
         } else if (field.equals("xpath_index")) {
-            // pre filter with Lux index fields
+            // pre filter with the XPath path and value index, falling back to Lux index fields
+            // for expressions it cannot translate
+            Query indexQuery = XpathIndexQueryBuilder.build(normalize(queryText));
+            if (indexQuery != null) {
+                return indexQuery;
+            }
             return getLuceneQuery(queryText);
         } else {
             // pass through any non-XPath related fields
@@ -79,14 +85,7 @@ private Query getLuceneQuery(final String queryText) {
         LuceneSearch lsearch = new LuceneSearch();
         evaluator.getCompiler().getProcessor().registerExtensionFunction(lsearch);
 
-        // Assume root is context node since evaluation does not have a context item
-        if (StringUtils.startsWith(xpath, "./")) {
-            xpath = StringUtils.removeStart(xpath, ".");
-        } else if (!StringUtils.startsWith(xpath, "/")) {
-            xpath = "/" + xpath;
-        }
-
-        XdmResultSet result = evaluator.evaluate(xpath);
+        XdmResultSet result = evaluator.evaluate(normalize(xpath));
 
         Query luxQuery = lsearch.getQuery();
         if (luxQuery == null || result.getErrors().size() > 0) {
@@ -98,6 +97,18 @@ private Query getLuceneQuery(final String queryText) {
         return luxQuery;
     }
 
+    /**
+     * Assume root is context node since evaluation does not have a context item
+     */
+    private String normalize(final String xpath) {
+        if (StringUtils.startsWith(xpath, "./")) {
+            return StringUtils.removeStart(xpath, ".");
+        } else if (!StringUtils.startsWith(xpath, "/")) {
+            return "/" + xpath;
+        }
+        return xpath;
+    }
+
     /**
      * Lux search function that is overridden to store the Lucene query and return an empty sequence
      * iterator to bypass further Saxon evaluation. This extension function, like the evaluator, is
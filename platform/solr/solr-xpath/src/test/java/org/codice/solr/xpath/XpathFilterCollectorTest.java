@@ -0,0 +1,313 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.solr.xpath;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.apache.solr.common.SolrException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.sf.saxon.s9api.XPathSelector;
+
+public class XpathFilterCollectorTest {
+
+    private static final String XPATH = "//title";
+
+    private final XpathCache xpathCache = new XpathCache(XpathCache.DEFAULT_MAX_SIZE);
+
+    private ExecutorService executor;
+
+    private Directory directory;
+
+    private DirectoryReader reader;
+
+    private RecordingCollector delegate;
+
+    @Before
+    public void setUp() throws IOException {
+        executor = Executors.newFixedThreadPool(4);
+
+        // two segments, each with a single document; the collector only needs their contexts
+        directory = new RAMDirectory();
+        IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_47,
+                new KeywordAnalyzer());
+        config.setMergePolicy(NoMergePolicy.NO_COMPOUND_FILES);
+        IndexWriter writer = new IndexWriter(directory, config);
+        for (int i = 0; i < 2; i++) {
+            Document document = new Document();
+            document.add(new StringField("id", String.valueOf(i), Field.Store.YES));
+            writer.addDocument(document);
+            writer.commit();
+        }
+        writer.close();
+        reader = DirectoryReader.open(directory);
+        assertThat(reader.leaves().size(), is(2));
+
+        delegate = new RecordingCollector();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        reader.close();
+        directory.close();
+    }
+
+    @Test
+    public void testMatchesArePassedOnAfterFinishInCollectedOrder() throws IOException {
+        XpathFilterCollector collector = new EvenDocsCollector(executor);
+        collector.setDelegate(delegate);
+
+        // enough documents in the first segment to be evaluated in several batches
+        int firstSegmentSize = XpathFilterCollector.BATCH_SIZE * 3 + 7;
+        collect(collector, reader.leaves().get(0), 0, firstSegmentSize);
+        collect(collector, reader.leaves().get(1), 3, 11);
+
+        assertThat(delegate.collected, is(empty()));
+
+        collector.finish();
+
+        List<String> expected = new ArrayList<>();
+        for (int doc = 0; doc < firstSegmentSize; doc += 2) {
+            expected.add(entry(0, doc, score(doc)));
+        }
+        for (int doc = 4; doc < 11; doc += 2) {
+            expected.add(entry(1, doc, score(doc)));
+        }
+        assertThat(delegate.collected, is(expected));
+    }
+
+    @Test
+    public void testSingleBatchIsEvaluatedOnCallingThread() throws IOException {
+        ExecutorService unusedExecutor = mock(ExecutorService.class);
+        XpathFilterCollector collector = new EvenDocsCollector(unusedExecutor);
+        collector.setDelegate(delegate);
+
+        collect(collector, reader.leaves().get(0), 0, 10);
+        collector.finish();
+
+        assertThat(delegate.collected.size(), is(5));
+        verifyZeroInteractions(unusedExecutor);
+    }
+
+    @Test(expected = SolrException.class)
+    public void testEvaluationErrorIsRethrown() throws IOException {
+        XpathFilterCollector collector = new XpathFilterCollector(XPATH, xpathCache, executor) {
+            @Override
+            boolean matches(XPathSelector selector, AtomicReader reader, int docId) {
+                if (docId == XpathFilterCollector.BATCH_SIZE + 1) {
+                    throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "bad document");
+                }
+                return true;
+            }
+        };
+        collector.setDelegate(delegate);
+
+        collect(collector, reader.leaves().get(0), 0, XpathFilterCollector.BATCH_SIZE * 2);
+        collector.finish();
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadErrorIsRethrown() throws IOException {
+        XpathFilterCollector collector = new XpathFilterCollector(XPATH, xpathCache, executor) {
+            @Override
+            boolean matches(XPathSelector selector, AtomicReader reader, int docId)
+                    throws IOException {
+                throw new IOException("unreadable document");
+            }
+        };
+        collector.setDelegate(delegate);
+
+        collect(collector, reader.leaves().get(0), 0, XpathFilterCollector.BATCH_SIZE * 2);
+        collector.finish();
+    }
+
+    @Test(expected = SolrException.class)
+    public void testInvalidXpath() {
+        new XpathFilterCollector("//title[", xpathCache, executor);
+    }
+
+    @Test
+    public void testReplayScorerIteratesMatches() {
+        BitSet matches = new BitSet();
+        matches.set(1);
+        matches.set(2);
+        matches.set(4);
+        XpathFilterCollector.ReplayScorer scorer = new XpathFilterCollector.ReplayScorer(
+                new int[] {3, 5, 8, 13, 21, 0}, new float[] {0.3f, 0.5f, 0.8f, 1.3f, 2.1f, 0},
+                5, matches);
+
+        assertThat(scorer.docID(), is(-1));
+        assertThat(scorer.nextDoc(), is(5));
+        assertThat(scorer.score(), is(0.5f));
+        assertThat(scorer.nextDoc(), is(8));
+        assertThat(scorer.nextDoc(), is(21));
+        assertThat(scorer.score(), is(2.1f));
+        assertThat(scorer.nextDoc(), is(DocIdSetIterator.NO_MORE_DOCS));
+        assertThat(scorer.nextDoc(), is(DocIdSetIterator.NO_MORE_DOCS));
+        assertThat(scorer.cost(), is(3L));
+    }
+
+    @Test
+    public void testReplayScorerAdvances() {
+        BitSet matches = new BitSet();
+        matches.set(0);
+        matches.set(2);
+        matches.set(3);
+        XpathFilterCollector.ReplayScorer scorer = new XpathFilterCollector.ReplayScorer(
+                new int[] {3, 5, 8, 13}, new float[] {0.3f, 0.5f, 0.8f, 1.3f}, 4, matches);
+
+        assertThat(scorer.advance(4), is(8));
+        assertThat(scorer.score(), is(0.8f));
+        // targets at or before the current document move to the next match
+        assertThat(scorer.advance(8), is(13));
+        assertThat(scorer.advance(14), is(DocIdSetIterator.NO_MORE_DOCS));
+        assertThat(scorer.docID(), is(DocIdSetIterator.NO_MORE_DOCS));
+    }
+
+    private void collect(XpathFilterCollector collector, AtomicReaderContext context, int from,
+            int to) throws IOException {
+        FixedScorer scorer = new FixedScorer();
+        collector.setNextReader(context);
+        collector.setScorer(scorer);
+        for (int doc = from; doc < to; doc++) {
+            scorer.doc = doc;
+            scorer.score = score(doc);
+            collector.collect(doc);
+        }
+    }
+
+    private static float score(int doc) {
+        return doc / 2f;
+    }
+
+    private static String entry(int docBase, int doc, float score) {
+        return docBase + ":" + doc + ":" + score;
+    }
+
+    /**
+     * Matches documents with even ids, without evaluating the XPath
+     */
+    private class EvenDocsCollector extends XpathFilterCollector {
+
+        EvenDocsCollector(ExecutorService executor) {
+            super(XPATH, xpathCache, executor);
+        }
+
+        @Override
+        boolean matches(XPathSelector selector, AtomicReader reader, int docId) {
+            return docId % 2 == 0;
+        }
+    }
+
+    private static class RecordingCollector extends Collector {
+
+        private final List<String> collected = new ArrayList<>();
+
+        private Scorer scorer;
+
+        private int docBase;
+
+        @Override
+        public void setScorer(Scorer scorer) {
+            this.scorer = scorer;
+        }
+
+        @Override
+        public void collect(int doc) throws IOException {
+            assertThat(scorer.docID(), is(doc));
+            collected.add(entry(docBase, doc, scorer.score()));
+        }
+
+        @Override
+        public void setNextReader(AtomicReaderContext context) {
+            docBase = context.docBase;
+        }
+
+        @Override
+        public boolean acceptsDocsOutOfOrder() {
+            return false;
+        }
+    }
+
+    private static class FixedScorer extends Scorer {
+
+        private int doc = -1;
+
+        private float score;
+
+        FixedScorer() {
+            super(null);
+        }
+
+        @Override
+        public float score() {
+            return score;
+        }
+
+        @Override
+        public int freq() {
+            return 1;
+        }
+
+        @Override
+        public int docID() {
+            return doc;
+        }
+
+        @Override
+        public int nextDoc() {
+            return NO_MORE_DOCS;
+        }
+
+        @Override
+        public int advance(int target) {
+            return NO_MORE_DOCS;
+        }
+
+        @Override
+        public long cost() {
+            return 1;
+        }
+    }
+}
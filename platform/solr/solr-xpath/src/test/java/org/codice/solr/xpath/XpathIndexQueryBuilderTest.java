@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.solr.xpath;
+
+import static org.codice.solr.xpath.XpathIndexQueryBuilder.XPATH_PATHS_FIELD_NAME;
+import static org.codice.solr.xpath.XpathIndexQueryBuilder.XPATH_VALUES_FIELD_NAME;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class XpathIndexQueryBuilderTest {
+
+    private static final String NAME_FIELD = "name";
+
+    private static final String INDEXED = "#indexed";
+
+    private static Directory directory;
+
+    private static DirectoryReader reader;
+
+    @BeforeClass
+    public static void setUpIndex() throws IOException {
+        directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(directory,
+                new IndexWriterConfig(Version.LUCENE_47, new KeywordAnalyzer()));
+
+        writer.addDocument(document("flood",
+                new String[] {INDEXED, "/metacard", "/metacard/title", "/metacard/@id"},
+                new String[] {"title" + INDEXED, "title=flood map"}));
+        writer.addDocument(document("rivers", new String[] {INDEXED, "/metacard", "/metacard/title"},
+                new String[] {"title" + INDEXED, "title=rivers"}));
+        // a title too long to index, its value check must pass
+        writer.addDocument(document("longTitle",
+                new String[] {INDEXED, "/metacard", "/metacard/title"}, new String[] {}));
+        writer.addDocument(document("abstract",
+                new String[] {INDEXED, "/metacard", "/metacard/abstract"}, new String[] {}));
+        // ingested before the XPath fields existed, must always pass
+        writer.addDocument(document("legacy", new String[] {}, new String[] {}));
+        writer.close();
+
+        reader = DirectoryReader.open(directory);
+    }
+
+    @AfterClass
+    public static void tearDownIndex() throws IOException {
+        reader.close();
+        directory.close();
+    }
+
+    @Test
+    public void testDescendantPath() throws IOException {
+        assertThat(search("//title"),
+                containsInAnyOrder("flood", "rivers", "longTitle", "legacy"));
+    }
+
+    @Test
+    public void testAbsolutePath() throws IOException {
+        assertThat(search("/metacard/abstract"), containsInAnyOrder("abstract", "legacy"));
+    }
+
+    @Test
+    public void testAbsolutePathDoesNotMatchDeeperElements() throws IOException {
+        assertThat(search("/title"), containsInAnyOrder("legacy"));
+    }
+
+    @Test
+    public void testAttributePath() throws IOException {
+        assertThat(search("/metacard/@id"), containsInAnyOrder("flood", "legacy"));
+    }
+
+    @Test
+    public void testNamespacePrefixIsIgnored() throws IOException {
+        assertThat(search("//ddms:title"),
+                containsInAnyOrder("flood", "rivers", "longTitle", "legacy"));
+    }
+
+    @Test
+    public void testTextNodeRequiresParent() throws IOException {
+        assertThat(search("/metacard/abstract/text()"), containsInAnyOrder("abstract", "legacy"));
+    }
+
+    @Test
+    public void testContainsPredicate() throws IOException {
+        assertThat(search("//title[contains(., 'Flood')]"),
+                containsInAnyOrder("flood", "longTitle", "legacy"));
+        assertThat(search("/metacard/title[contains(lower-case(.), \"rivers\")]"),
+                containsInAnyOrder("rivers", "longTitle", "legacy"));
+    }
+
+    @Test
+    public void testContainsPredicateEscapesWildcards() throws IOException {
+        assertThat(search("//title[contains(., '*')]"), containsInAnyOrder("longTitle", "legacy"));
+    }
+
+    @Test
+    public void testUnknownPredicatesAreIgnored() throws IOException {
+        assertThat(search("//title[@lang = 'en'][1]"),
+                containsInAnyOrder("flood", "rivers", "longTitle", "legacy"));
+    }
+
+    @Test
+    public void testUntranslatableExpressions() {
+        assertThat(XpathIndexQueryBuilder.build("//title | //abstract"), nullValue());
+        assertThat(XpathIndexQueryBuilder.build("count(//title)"), nullValue());
+        assertThat(XpathIndexQueryBuilder.build("title"), nullValue());
+        assertThat(XpathIndexQueryBuilder.build("//title[contains(., 'a')"), nullValue());
+        assertThat(XpathIndexQueryBuilder.build("/."), nullValue());
+    }
+
+    private List<String> search(String xpath) throws IOException {
+        Query query = XpathIndexQueryBuilder.build(xpath);
+        IndexSearcher searcher = new IndexSearcher(reader);
+        List<String> names = new ArrayList<>();
+        for (ScoreDoc scoreDoc : searcher.search(query, reader.maxDoc()).scoreDocs) {
+            names.add(searcher.doc(scoreDoc.doc).get(NAME_FIELD));
+        }
+        return names;
+    }
+
+    private static Document document(String name, String[] paths, String[] values) {
+        Document document = new Document();
+        document.add(new StringField(NAME_FIELD, name, Field.Store.YES));
+        for (String path : paths) {
+            document.add(new StringField(XPATH_PATHS_FIELD_NAME, path, Field.Store.NO));
+        }
+        for (String value : values) {
+            document.add(new StringField(XPATH_VALUES_FIELD_NAME, value, Field.Store.NO));
+        }
+        return document;
+    }
+}